@@ -0,0 +1,174 @@
+package io.sunhe.sealion.client;
+
+import io.netty.channel.Channel;
+import io.netty.util.AttributeKey;
+import io.netty.util.Timeout;
+import io.netty.util.Timer;
+import io.netty.util.TimerTask;
+import io.netty.util.concurrent.Promise;
+import io.sunhe.sealion.protocol.SeaLionResponse;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The requests of a single connection which are waiting for their responses,
+ * keyed by the opaque. The opaques are numeric and increase monotonically
+ * per connection, so they never collide as long as a request doesn't wait
+ * for 2^32 others.
+ *
+ * Every request is completed exactly once: with the response, with the failure
+ * of the connection, or with a TimeoutException by the hashed-wheel timer.
+ * Registering, completing and timing out a request are all O(1).
+ *
+ * Thread-safe.
+ *
+ * @author sunhe
+ * @date 2015年6月20日 下午2:10:36
+ */
+public class InFlightTable {
+
+	/**
+	 * The attribute of the channel that holds its table.
+	 */
+	public static final AttributeKey<InFlightTable> KEY = AttributeKey.valueOf("inFlightTable");
+
+	private Channel channel;
+
+	private Timer timer;
+
+	/**
+	 * In second unit.
+	 */
+	private int timeout;
+
+	private AtomicInteger lastOpaque = new AtomicInteger();
+
+	private ConcurrentHashMap<Integer, InFlightRequest> requests = new ConcurrentHashMap<Integer, InFlightRequest>();
+
+	/**
+	 * @param channel
+	 * @param timer Shared by all connections of the client.
+	 * @param timeout The timeout in second unit to wait for the response.
+	 * @author sunhe
+	 * @date 2015年6月20日 下午2:14:02
+	 */
+	public InFlightTable(Channel channel, Timer timer, int timeout) {
+		this.channel = channel;
+		this.timer = timer;
+		this.timeout = timeout;
+	}
+
+	/**
+	 * Register a request with a new opaque.
+	 *
+	 * @return The registered request, whose promise is to be completed.
+	 * @author sunhe
+	 * @date 2015年6月20日 下午2:16:40
+	 */
+	public InFlightRequest register() {
+		InFlightRequest request = new InFlightRequest(lastOpaque.incrementAndGet(),
+				channel.eventLoop().<SeaLionResponse>newPromise());
+		// the timeout is set before the request is visible to the I/O thread.
+		request.timeout = timer.newTimeout(request, timeout, TimeUnit.SECONDS);
+		requests.put(request.opaque, request);
+		return request;
+	}
+
+	/**
+	 * Complete the request with its response.
+	 *
+	 * @param opaque
+	 * @param response
+	 * @return False if no request waits for the response, e.g., it has timed out.
+	 * @author sunhe
+	 * @date 2015年6月20日 下午2:19:25
+	 */
+	public boolean complete(int opaque, SeaLionResponse response) {
+		InFlightRequest request = requests.remove(opaque);
+		if (request == null) {
+			return false;
+		}
+		request.timeout.cancel();
+		request.promise.trySuccess(response);
+		return true;
+	}
+
+	/**
+	 * Fail the request, e.g., it cann't be written.
+	 *
+	 * @param opaque
+	 * @param cause
+	 * @author sunhe
+	 * @date 2015年6月20日 下午2:21:08
+	 */
+	public void fail(int opaque, Throwable cause) {
+		InFlightRequest request = requests.remove(opaque);
+		if (request != null) {
+			request.timeout.cancel();
+			request.promise.tryFailure(cause);
+		}
+	}
+
+	/**
+	 * Fail all requests, once the connection is broken.
+	 *
+	 * @param cause
+	 * @author sunhe
+	 * @date 2015年6月20日 下午2:22:40
+	 */
+	public void failAll(Throwable cause) {
+		for (Integer opaque : requests.keySet()) {
+			fail(opaque, cause);
+		}
+	}
+
+	/**
+	 * @return The number of requests waiting for their responses.
+	 * @author sunhe
+	 * @date 2015年6月20日 下午2:23:15
+	 */
+	public int size() {
+		return requests.size();
+	}
+
+	/**
+	 * A request waiting for its response, which is also the timer task
+	 * to time it out.
+	 *
+	 * @author sunhe
+	 * @date 2015年6月20日 下午2:25:30
+	 */
+	public class InFlightRequest implements TimerTask {
+
+		private int opaque;
+
+		private Promise<SeaLionResponse> promise;
+
+		private volatile Timeout timeout;
+
+		private InFlightRequest(int opaque, Promise<SeaLionResponse> promise) {
+			this.opaque = opaque;
+			this.promise = promise;
+		}
+
+		public int getOpaque() {
+			return opaque;
+		}
+
+		public Promise<SeaLionResponse> getPromise() {
+			return promise;
+		}
+
+		public void run(Timeout timeout) throws Exception {
+			if (requests.remove(opaque, this)) {
+				promise.tryFailure(new TimeoutException(
+						"No response in " + InFlightTable.this.timeout + " seconds. Opaque: " + opaque));
+			}
+		}
+
+	}
+
+}
@@ -0,0 +1,105 @@
+package io.sunhe.sealion.client;
+
+import io.netty.util.concurrent.Future;
+import io.sunhe.sealion.protocol.SeaLionResponse;
+
+/**
+ * Interface definition of the asynchronous SeaLion client operations.
+ * All of those operations work in safe mode, but none of them blocks the caller:
+ * the returned future is completed with the response by the I/O thread once it
+ * is received, so that many requests can be in flight on a few threads.
+ *
+ * The future fails with a TimeoutException if the response isn't received in time,
+ * or with the cause if the request cann't be written. Note that the listeners are
+ * notified in the I/O thread, they mustn't block.
+ *
+ * The futures are netty's, promises of the event loop of the channel the request
+ * is written to, the same as the ChannelFuture of the write itself: they are
+ * completed in the I/O thread without handing over to another executor. It's a
+ * choice of consistency with netty, not a limit of the Java version.
+ *
+ * @author sunhe
+ * @date 2015年6月20日 上午10:05:12
+ */
+public interface SeaLionAsyncClientOperation {
+
+	/**
+	 * Get the value of the key.
+	 *
+	 * @param key
+	 * @return The future of the response, whose status is SUCCESS and whose data
+	 * 		is the value if the key exists.
+	 * @author sunhe
+	 * @date 2015年6月20日 上午10:08:30
+	 */
+	public Future<SeaLionResponse> getAsync(String key);
+
+	/**
+	 * Get the value of the key only if CAS matched.
+	 *
+	 * @param key
+	 * @param cas
+	 * @return
+	 * @author sunhe
+	 * @date 2015年6月20日 上午10:09:41
+	 */
+	public Future<SeaLionResponse> getAsync(String key, String cas);
+
+	/**
+	 * Set key-value.
+	 *
+	 * @param key
+	 * @param value
+	 * @param timeStamp The expiration time stamp. 0 signifies never expiring.
+	 * @return The future of the response, whose status is SUCCESS if the key-value is set.
+	 * @author sunhe
+	 * @date 2015年6月20日 上午10:11:02
+	 */
+	public Future<SeaLionResponse> setAsync(String key, byte[] value, long timeStamp);
+
+	/**
+	 * Set key-value only if CAS matched.
+	 *
+	 * @param key
+	 * @param value
+	 * @param timeStamp The expiration time stamp. 0 signifies never expiring.
+	 * @param cas
+	 * @return
+	 * @author sunhe
+	 * @date 2015年6月20日 上午10:12:20
+	 */
+	public Future<SeaLionResponse> setAsync(String key, byte[] value, long timeStamp, String cas);
+
+	/**
+	 * Delete the key-value.
+	 *
+	 * @param key
+	 * @return The future of the response, whose status is SUCCESS if the key-value is deleted.
+	 * @author sunhe
+	 * @date 2015年6月20日 上午10:13:35
+	 */
+	public Future<SeaLionResponse> deleteAsync(String key);
+
+	/**
+	 * Delete the key-value only if CAS matched.
+	 *
+	 * @param key
+	 * @param cas
+	 * @return
+	 * @author sunhe
+	 * @date 2015年6月20日 上午10:14:28
+	 */
+	public Future<SeaLionResponse> deleteAsync(String key, String cas);
+
+	/**
+	 * Get the version of the key.
+	 *
+	 * @param key
+	 * @return The future of the response, whose status is SUCCESS and whose CAS
+	 * 		is the version if the key exists.
+	 * @author sunhe
+	 * @date 2015年6月20日 上午10:15:50
+	 */
+	public Future<SeaLionResponse> casAsync(String key);
+
+}
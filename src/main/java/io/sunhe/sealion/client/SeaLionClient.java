@@ -1,15 +1,19 @@
 package io.sunhe.sealion.client;
 
 import java.io.FileNotFoundException;
+import java.nio.channels.ClosedChannelException;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CountDownLatch;
-import java.util.concurrent.LinkedBlockingQueue;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import io.netty.bootstrap.Bootstrap;
 import io.netty.buffer.ByteBuf;
@@ -17,18 +21,29 @@ import io.netty.buffer.Unpooled;
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelFuture;
 import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelInboundHandlerAdapter;
 import io.netty.channel.ChannelInitializer;
 import io.netty.channel.EventLoopGroup;
+import io.netty.channel.embedded.EmbeddedChannel;
 import io.netty.channel.nio.NioEventLoopGroup;
 import io.netty.channel.socket.nio.NioSocketChannel;
+import io.netty.util.HashedWheelTimer;
+import io.netty.util.concurrent.Future;
+import io.netty.util.concurrent.GenericFutureListener;
+import io.netty.util.concurrent.ImmediateEventExecutor;
+import io.netty.util.concurrent.Promise;
 import io.sunhe.sealion.client.hash.HashBalancer;
+import io.sunhe.sealion.client.hash.KeyHashAlgorithm;
+import io.sunhe.sealion.client.hash.Md5HashAlgorithm;
 import io.sunhe.sealion.protocol.Commands;
+import io.sunhe.sealion.protocol.MultiKeyFormat;
 import io.sunhe.sealion.protocol.SeaLionRequest;
 import io.sunhe.sealion.protocol.SeaLionRequestEncoder;
 import io.sunhe.sealion.protocol.SeaLionResponse;
 import io.sunhe.sealion.protocol.SeaLionResponseDecoder;
 import io.sunhe.sealion.protocol.Statuses;
 import io.sunhe.sealion.util.Charsets;
+import io.sunhe.sealion.util.Logger;
 import io.sunhe.sealion.util.OpaqueGenerator;
 import io.sunhe.sealion.util.TimeStampFormatter;
 
@@ -40,7 +55,7 @@ import io.sunhe.sealion.util.TimeStampFormatter;
  * @author sunhe
  * @date 2015年3月15日 下午5:25:16
  */
-public class SeaLionClient implements SeaLionClientOperation, SeaLionServerMonitorOperation {
+public class SeaLionClient implements SeaLionClientOperation, SeaLionAsyncClientOperation, SeaLionServerMonitorOperation {
 	
 	/**
 	 * The timeout in second unit to wait for response. 
@@ -48,22 +63,46 @@ public class SeaLionClient implements SeaLionClientOperation, SeaLionServerMonit
 	private static final int RESPONSE_WAIT_TIMEOUT = 5;
 	
 	/**
-	 * The following three fields is associated with a single channel
-	 * For now, just keep the group channel store field in the SeaLionServerNode. 
+	 * The opaque of the requests in unsafe mode, which are never responded.
 	 */
-	private EventLoopGroup group;
+	private static final String UNSAFE_OPAQUE = "0";
+	
+	/**
+	 * The default number of connections to every server node.
+	 */
+	public static final int DEFAULT_CONNECTIONS_PER_NODE = 1;
+	
+	/**
+	 * The default batching window in microsecond unit, see SeaLionRequestBatcher.
+	 */
+	public static final long DEFAULT_BATCH_WINDOW = 0;
 	
 	/**
-	 * Map opaque to thread-id.
-	 * Will be accessed by multiple thread.
+	 * The default maximum number of requests per flush, see SeaLionRequestBatcher.
 	 */
-	private ConcurrentHashMap<String, Long> opaqueToThreadId;
+	public static final int DEFAULT_MAX_BATCH_SIZE = 64;
 	
 	/**
-	 * Map thread-id to response queue.
-	 * Will be accessed by multiple thread.
+	 * By default, every key lives only on its primary node.
 	 */
-	private ConcurrentHashMap<Long, BlockingQueue<SeaLionResponse>> threadIdToResponseQueue;
+	public static final int DEFAULT_NUM_OF_REPLICAS = 0;
+	
+	/**
+	 * Stands for the connection of a server node whose pool is empty, e.g., while 
+	 * it's being reconnected, so that the unsafe writes to it fail instead of throwing.
+	 */
+	private static final Channel CLOSED_CHANNEL = newClosedChannel();
+	
+	/**
+	 * The following three fields is associated with a single channel
+	 * For now, just keep the group channel store field in the SeaLionServerNode. 
+	 */
+	private EventLoopGroup group;
+	
+	/**
+	 * Times out the requests of all connections, see InFlightTable.
+	 */
+	private HashedWheelTimer timer;
 	
 	private SeaLionResponseHandler responseHandler;
 	
@@ -71,6 +110,46 @@ public class SeaLionClient implements SeaLionClientOperation, SeaLionServerMonit
 	
 	private HashBalancer hashBalancer;
 	
+	/**
+	 * Connects to all server nodes, see bootstrap(ConcurrentHashMap).
+	 */
+	private Bootstrap bootstrap;
+	
+	private SeaLionReconnector reconnector;
+	
+	/**
+	 * Null if disabled, see enableNearCache.
+	 */
+	private volatile SeaLionNearCache nearCache;
+	
+	/**
+	 * The number of the successors every key is replicated to, see setNumOfReplicas.
+	 */
+	private volatile int numOfReplicas = DEFAULT_NUM_OF_REPLICAS;
+	
+	/**
+	 * Orders the replicated writes of every key, see setNumOfReplicas.
+	 */
+	private final WriteSequencer writeSequencer = new WriteSequencer(WriteSequencer.DEFAULT_NUM_OF_STRIPES);
+	
+	/**
+	 * The size of the connection pool of every server node.
+	 */
+	private int connectionsPerNode;
+	
+	/**
+	 * Whether the connections are pinned to the client event loops, 
+	 * see SeaLionServerNode.getChannel().
+	 */
+	private boolean isPinned;
+	
+	/**
+	 * In microsecond unit.
+	 */
+	private long batchWindow;
+	
+	private int maxBatchSize;
+	
 	/**
 	 * Construct a SeaLion client through a single socket address(host and port). 
 	 * 
@@ -81,19 +160,21 @@ public class SeaLionClient implements SeaLionClientOperation, SeaLionServerMonit
 	 * @date 2015年3月19日 下午7:38:11
 	 */
 	public SeaLionClient(String host, int port) {
-		init();
+		init(DEFAULT_CONNECTIONS_PER_NODE, false, DEFAULT_BATCH_WINDOW, DEFAULT_MAX_BATCH_SIZE);
 //		List<SeaLionServerNode> nodes = Collections.synchronizedList(new LinkedList<SeaLionServerNode>());
 		ConcurrentHashMap<String, SeaLionServerNode> nodes = new ConcurrentHashMap<String, SeaLionServerNode>();
 //		nodes.add(new SeaLionServerNode(host, port));
 		SeaLionServerNode node = new SeaLionServerNode(host, port);
 		nodes.put(node.getStrSocketAddress(), node);
+		Map<String, SeaLionServerNode> allNodes = new HashMap<String, SeaLionServerNode>(nodes);
 		bootstrap(nodes);
 		if (nodes.size() == 0) {
 			group.shutdownGracefully().syncUninterruptibly();
+			timer.stop();
 			throw new IllegalStateException("There's not any SeaLion server to connect");
 		}
 		hashBalancer = new HashBalancer(nodes);
-		responseHandler.setHashBalancer(hashBalancer);
+		startReconnector(allNodes);
 	}
 	
 	/**
@@ -113,34 +194,155 @@ public class SeaLionClient implements SeaLionClientOperation, SeaLionServerMonit
 	 * @date 2015年3月19日 下午7:42:52
 	 */
 	public SeaLionClient(String socketAddressesString) {
+		this(socketAddressesString, DEFAULT_CONNECTIONS_PER_NODE, false);
+	}
+	
+	/**
+	 * Construct a SeaLion client through a list of socket address in string format, 
+	 * with a pool of connections to every server node. 
+	 * 
+	 * Every request is sent through the connection of the node with the fewest 
+	 * requests in flight, so the throughput of a node scales with the number of 
+	 * connections, which are handled by different event loops of the server.
+	 * 
+	 * @param socketAddressesString
+	 * 			A list of socket address in string format, see SeaLionClient(String).
+	 * @param connectionsPerNode
+	 * 			The number of connections to every server node.
+	 * @param isPinned
+	 * 			Whether a thread of the client event loops, e.g., a listener of an 
+	 * 			asynchronous request, prefers the connection handled by itself. 
+	 * 			The client has as many event loops as connections per node then, 
+	 * 			so every event loop handles a connection to every node.
+	 * @author sunhe
+	 * @date 2015年6月20日 下午4:20:35
+	 */
+	public SeaLionClient(String socketAddressesString, int connectionsPerNode, boolean isPinned) {
+		this(socketAddressesString, connectionsPerNode, isPinned, DEFAULT_BATCH_WINDOW, DEFAULT_MAX_BATCH_SIZE);
+	}
+	
+	/**
+	 * Construct a SeaLion client with a pool of connections to every server node, 
+	 * whose requests are batched. 
+	 * 
+	 * The requests written to a connection by all threads are flushed together 
+	 * once the batching window is over, or once there are maxBatchSize of them, 
+	 * see SeaLionRequestBatcher.
+	 * 
+	 * @param socketAddressesString
+	 * 			A list of socket address in string format, see SeaLionClient(String).
+	 * @param connectionsPerNode
+	 * 			The number of connections to every server node.
+	 * @param isPinned
+	 * 			See SeaLionClient(String, int, boolean).
+	 * @param batchWindow
+	 * 			The batching window in microsecond unit, 0 signifies flushing once 
+	 * 			the requests already queued in the event loop are written.
+	 * @param maxBatchSize
+	 * 			The maximum number of requests per flush.
+	 * @author sunhe
+	 * @date 2015年6月21日 上午10:40:18
+	 */
+	public SeaLionClient(String socketAddressesString, int connectionsPerNode, boolean isPinned, 
+			long batchWindow, int maxBatchSize) {
+		this(socketAddressesString, connectionsPerNode, isPinned, batchWindow, maxBatchSize, new Md5HashAlgorithm());
+	}
+	
+	/**
+	 * Construct a SeaLion client with a pool of connections to every server node, 
+	 * whose requests are batched, and whose keys are distributed by the given hash.
+	 * 
+	 * @param socketAddressesString
+	 * 			A list of socket address in string format, see SeaLionClient(String).
+	 * @param connectionsPerNode
+	 * 			The number of connections to every server node.
+	 * @param isPinned
+	 * 			See SeaLionClient(String, int, boolean).
+	 * @param batchWindow
+	 * 			See SeaLionClient(String, int, boolean, long, int).
+	 * @param maxBatchSize
+	 * 			See SeaLionClient(String, int, boolean, long, int).
+	 * @param hashAlgorithm
+	 * 			The hash of the keys, Md5HashAlgorithm by default, which keeps the 
+	 * 			keys on the same nodes as those of the older clients. XxHashAlgorithm 
+	 * 			and Murmur3HashAlgorithm are faster, but move the keys, so all clients 
+	 * 			of a cluster must switch together.
+	 * @author sunhe
+	 * @date 2015年6月22日 上午10:40:05
+	 */
+	public SeaLionClient(String socketAddressesString, int connectionsPerNode, boolean isPinned, 
+			long batchWindow, int maxBatchSize, KeyHashAlgorithm hashAlgorithm) {
+		this(socketAddressesString, connectionsPerNode, isPinned, batchWindow, maxBatchSize, 
+				hashAlgorithm, HashBalancer.DEFAULT_SELECTOR);
+	}
+	
+	/**
+	 * Construct a SeaLion client whose keys are distributed by the given node selector.
+	 * 
+	 * @param socketAddressesString
+	 * @param connectionsPerNode
+	 * @param isPinned
+	 * @param batchWindow
+	 * @param maxBatchSize
+	 * @param hashAlgorithm
+	 * 			See SeaLionClient(String, int, boolean, long, int, KeyHashAlgorithm).
+	 * @param nodeSelector
+	 * 			ketama, jump or rendezvous, see HashBalancer.
+	 * @author sunhe
+	 * @date 2015年6月23日 上午10:40:12
+	 */
+	public SeaLionClient(String socketAddressesString, int connectionsPerNode, boolean isPinned, 
+			long batchWindow, int maxBatchSize, KeyHashAlgorithm hashAlgorithm, String nodeSelector) {
+		if (connectionsPerNode < 1) {
+			throw new IllegalArgumentException("Illegal number of connections per node: " + connectionsPerNode);
+		}
+		if (batchWindow < 0) {
+			throw new IllegalArgumentException("Illegal batching window: " + batchWindow);
+		}
+		if (maxBatchSize < 1) {
+			throw new IllegalArgumentException("Illegal batch size: " + maxBatchSize);
+		}
+		if (! HashBalancer.isValidSelector(nodeSelector)) {
+			throw new IllegalArgumentException("Invalid node selector: " + nodeSelector);
+		}
 		String[] socketAddresses = socketAddressesString.split("\\s+");
-		init();
+		init(connectionsPerNode, isPinned, batchWindow, maxBatchSize);
 //		List<SeaLionServerNode> nodes = Collections.synchronizedList(new LinkedList<SeaLionServerNode>());
 		ConcurrentHashMap<String, SeaLionServerNode> nodes = new ConcurrentHashMap<String, SeaLionServerNode>();
 		for (String socketAddress : socketAddresses) {
 			SeaLionServerNode node = new SeaLionServerNode(socketAddress);
 			nodes.put(node.getStrSocketAddress(), node);
 		}
+		Map<String, SeaLionServerNode> allNodes = new HashMap<String, SeaLionServerNode>(nodes);
 		bootstrap(nodes);
 		if (nodes.size() == 0) {
 			group.shutdownGracefully().syncUninterruptibly();
+			timer.stop();
 			throw new IllegalStateException("There's not any SeaLion server to connect");
 		}
-		hashBalancer = new HashBalancer(nodes);
-		responseHandler.setHashBalancer(hashBalancer);
+		hashBalancer = new HashBalancer(nodes, hashAlgorithm, nodeSelector);
+		startReconnector(allNodes);
 	}
 	
 	/**
 	 * Initialize some field of this class.
 	 * 
+	 * @param connectionsPerNode
+	 * @param isPinned
+	 * @param batchWindow
+	 * @param maxBatchSize
 	 * @author sunhe
 	 * @date 2015年3月19日 下午7:52:43
 	 */
-	private void init() {
-		group = new NioEventLoopGroup();
-		opaqueToThreadId = new ConcurrentHashMap<String, Long>();
-		threadIdToResponseQueue = new ConcurrentHashMap<Long, BlockingQueue<SeaLionResponse>>();
-		responseHandler = new SeaLionResponseHandler(opaqueToThreadId, threadIdToResponseQueue);
+	private void init(int connectionsPerNode, boolean isPinned, long batchWindow, int maxBatchSize) {
+		this.connectionsPerNode = connectionsPerNode;
+		this.isPinned = isPinned;
+		this.batchWindow = batchWindow;
+		this.maxBatchSize = maxBatchSize;
+		// by default, twice the number of processors.
+		group = isPinned ? new NioEventLoopGroup(connectionsPerNode) : new NioEventLoopGroup();
+		timer = new HashedWheelTimer();
+		responseHandler = new SeaLionResponseHandler();
 		requestEncoder = new SeaLionRequestEncoder();
 	}
 	
@@ -150,52 +352,66 @@ public class SeaLionClient implements SeaLionClientOperation, SeaLionServerMonit
 	 * @author sunhe
 	 * @date 2015年3月15日 下午5:44:18
 	 */
-	private void bootstrap(final ConcurrentHashMap<String, SeaLionServerNode> nodes) {
-		List<ChannelFuture> futureList = new ArrayList<ChannelFuture>();
-		Set<String> keySet = nodes.keySet();
-		for (String key : keySet) {
-			final SeaLionServerNode node = nodes.get(key);
-			Bootstrap  bootstrap = new Bootstrap();
-			bootstrap.group(group)
-					.channel(NioSocketChannel.class)
-					.remoteAddress(node.getSocketAddress())
-					.handler(new ChannelInitializer<Channel>() {
+	private void bootstrap(ConcurrentHashMap<String, SeaLionServerNode> nodes) {
+		bootstrap = new Bootstrap();
+		bootstrap.group(group)
+				.channel(NioSocketChannel.class)
+				.handler(new ChannelInitializer<Channel>() {
 
-						@Override
-						protected void initChannel(Channel ch) throws Exception {
-							ch.pipeline().addLast(new SeaLionResponseDecoder())
-									.addLast(responseHandler)
-									.addLast(requestEncoder);
-						}
-						
-					});
-			// This method call is asynchronous.
-			ChannelFuture future = bootstrap.connect();
-			future.addListener(new ChannelFutureListener() {
-				
-				public void operationComplete(ChannelFuture future) throws Exception {
-					if (future.isSuccess()) {
-						node.setChannel(future.channel());
+					@Override
+					protected void initChannel(Channel ch) throws Exception {
+						ch.attr(InFlightTable.KEY).set(new InFlightTable(ch, timer, RESPONSE_WAIT_TIMEOUT));
+						ch.pipeline().addLast(new SeaLionResponseDecoder())
+								.addLast(responseHandler)
+								.addLast(requestEncoder)
+								.addLast(new SeaLionRequestBatcher(batchWindow, maxBatchSize));
 					}
-					else {
-						// Fail to connect to the server.
-						nodes.remove(node.getStrSocketAddress());
-					}
-				}
-				
-			});
-			futureList.add(future);
+					
+				});
+		Map<ChannelFuture, SeaLionServerNode> futures = new LinkedHashMap<ChannelFuture, SeaLionServerNode>();
+		Set<String> keySet = nodes.keySet();
+		for (String key : keySet) {
+			SeaLionServerNode node = nodes.get(key);
+			node.setPinned(isPinned);
+			for (int i = 0; i < connectionsPerNode; i++) {
+				// This method call is asynchronous.
+				// The channels are registered to the event loops in turn, 
+				// so the connections to a node are handled by different ones.
+				futures.put(bootstrap.connect(node.getSocketAddress()), node);
+			}
 		}
-		for (ChannelFuture future : futureList) {
-			try {
-				future.syncUninterruptibly();
+		for (Map.Entry<ChannelFuture, SeaLionServerNode> entry : futures.entrySet()) {
+			ChannelFuture future = entry.getKey();
+			future.awaitUninterruptibly();
+			if (future.isSuccess()) {
+				entry.getValue().addChannel(future.channel());
 			}
-			catch (Throwable throwable) {
-				throwable.printStackTrace();
+			else {
+				future.cause().printStackTrace();
+			}
+		}
+		for (String key : keySet) {
+			if (nodes.get(key).getChannels().length == 0) {
+				// Fail to connect to the server.
+				nodes.remove(key);
 			}
 		}
 	}
 	
+	/**
+	 * Start to reconnect the broken connections in the background, 
+	 * and those failed to connect in bootstrap.
+	 * 
+	 * @param allNodes All server nodes, whether connected or not.
+	 * @author sunhe
+	 * @date 2015年6月23日 下午3:05:20
+	 */
+	private void startReconnector(Map<String, SeaLionServerNode> allNodes) {
+		reconnector = new SeaLionReconnector(bootstrap, timer, hashBalancer, allNodes, connectionsPerNode);
+		responseHandler.setReconnector(reconnector);
+		reconnector.start();
+	}
+	
 	/**
 	 * Close the connection to SeaLion server
 	 * and release all related resources.
@@ -205,70 +421,474 @@ public class SeaLionClient implements SeaLionClientOperation, SeaLionServerMonit
 	 * @date 2015年3月15日 下午6:09:47
 	 */
 	public void close() {
-		Collection<SeaLionServerNode> nodes = hashBalancer.getServerNodes().values();
-		for (SeaLionServerNode node : nodes) {
-			Channel channel = node.getChannel();
-			if (channel.isOpen()) {
-				channel.close();
+		reconnector.close();
+		group.shutdownGracefully();
+		timer.stop();
+	}
+	
+	/**
+	 * Set the policy of reconnecting the broken connections, see SeaLionReconnector.
+	 * 
+	 * @param minDelay The delay in millisecond unit before the first reconnection.
+	 * @param maxDelay The maximum delay in millisecond unit between reconnections, 
+	 * 			the delay is doubled after every failed reconnection up to it.
+	 * @param holdDown The time in millisecond unit a node must stay connected 
+	 * 			before it's re-admitted to the hash ring.
+	 * @author sunhe
+	 * @date 2015年6月23日 下午3:10:40
+	 */
+	public void setReconnectPolicy(long minDelay, long maxDelay, long holdDown) {
+		reconnector.setPolicy(minDelay, maxDelay, holdDown);
+	}
+	
+	/**
+	 * By default, a server node is put back on the hash ring once reconnected, 
+	 * even if it kept its memory through the outage, so it serves the values it 
+	 * had before, missing the writes meanwhile. Otherwise, it's put back only 
+	 * after it's restarted, with empty memory, see 
+	 * SeaLionReconnector.setStartTimeProbe(SeaLionStartTimeProbe).
+	 * 
+	 * It blocks until the server nodes on the ring tell their start times.
+	 * 
+	 * @param isReadmittingRestartedOnly
+	 * @author sunhe
+	 * @date 2015年6月29日 下午2:50:10
+	 */
+	public void setReadmitOnlyRestarted(boolean isReadmittingRestartedOnly) {
+		if (! isReadmittingRestartedOnly) {
+			reconnector.setStartTimeProbe(null);
+			return;
+		}
+		reconnector.setStartTimeProbe(new SeaLionStartTimeProbe() {
+			
+			public Future<SeaLionResponse> probe(Channel channel) {
+				SeaLionRequest request = new SeaLionRequest();
+				request.setCommand(Commands.START_TIME);
+				// The key doesn't have any meaning here.
+				request.setKey("N/A");
+				request.setDataLen(0);
+				request.setData(Unpooled.EMPTY_BUFFER);
+				return sendAsync(channel, request);
 			}
+			
+		});
+	}
+	
+	/**
+	 * Enable the near cache, which serves getBytes(String) and getString(String) 
+	 * locally while a value is fresh, and revalidates it with its CAS afterwards, 
+	 * see SeaLionNearCache. The values written through the client are cached 
+	 * with their expiration time stamps.
+	 * 
+	 * @param maxBytes The maximum bytes of the keys and values cached.
+	 * @param ttl The time in millisecond unit a value is served without revalidation. 
+	 * 			The writes of the other clients are seen within it.
+	 * @author sunhe
+	 * @date 2015年6月24日 上午10:10:35
+	 */
+	public void enableNearCache(long maxBytes, long ttl) {
+		nearCache = new SeaLionNearCache(maxBytes, ttl);
+	}
+	
+	/**
+	 * @return The near cache, whose counters show how many reads are served locally, 
+	 * 			null if it isn't enabled.
+	 * @author sunhe
+	 * @date 2015年6月24日 上午10:12:20
+	 */
+	public SeaLionNearCache getNearCache() {
+		return nearCache;
+	}
+	
+	/**
+	 * Replicate every key to the successors of its primary node on the hash ring.
+	 * 
+	 * The writes go to the primary first, which alone checks the CAS, since the 
+	 * CAS values are generated by every server on its own. Once accepted by the 
+	 * primary, a write is applied to the successors unconditionally, so they 
+	 * follow the primary. The writes of a key by concurrent threads are applied 
+	 * one by one, the primary and then the successors, so that the successors 
+	 * end up with the same value as the primary, see WriteSequencer. It's the 
+	 * same for the asynchronous writes, which are queued without blocking, but 
+	 * not for the writes in unsafe mode, which aren't ordered on the primary 
+	 * either. getBytes(String) and getString(String) read from the 
+	 * replica with the fewest requests in flight, and fall back to the primary if 
+	 * the replica misses, e.g., it hasn't caught up yet. All the other reads, 
+	 * including those returning the CAS, go to the primary.
+	 * 
+	 * A successor failing to apply a write, or a successor MSET of a key the primary 
+	 * rejected, has the key deleted, so that it isn't read with its former value. 
+	 * A successor that has been off the hash ring, or whose key cann't be deleted 
+	 * either, may keep outdated values, so it's no longer read as a replica for as 
+	 * long as the client lives, see SeaLionServerNode.markReplicaStale(String). The writes of the other clients 
+	 * aren't tracked, and a write in unsafe mode is replicated even if the primary 
+	 * rejects it.
+	 * 
+	 * It should be set before the keys are written, the keys written before aren't 
+	 * replicated.
+	 * 
+	 * @param numOfReplicas The number of the successors, 0 to disable replication.
+	 * @author sunhe
+	 * @date 2015年6月24日 下午2:40:30
+	 */
+	public void setNumOfReplicas(int numOfReplicas) {
+		if (numOfReplicas < 0) {
+			throw new IllegalArgumentException("Illegal number of replicas: " + numOfReplicas);
 		}
-		group.shutdownGracefully();
+		this.numOfReplicas = numOfReplicas;
 	}
 	
 	/**
-	 * Ensure that current thread has its own response queue.
+	 * Apply a write accepted by the primary node of the key to its successors.
+	 * The successors always respond, even if the primary is written in unsafe mode, 
+	 * so that a successor failing to apply the write is known and dropReplica is 
+	 * called, instead of serving the value it had before.
 	 * 
-	 * @return current thread's response queue.
+	 * @param command SET or DELETE.
+	 * @param key
+	 * @param value Null for DELETE.
+	 * @param timeStamp
+	 * @param isSafeMode Whether to wait for the successors.
+	 * @param done Completed once all successors respond, may be null.
 	 * @author sunhe
-	 * @date 2015年3月17日 下午7:58:09
+	 * @date 2015年6月24日 下午2:45:15
 	 */
-	private BlockingQueue<SeaLionResponse> ensureResponseQueue() {
-		long threadId = Thread.currentThread().getId();
-		BlockingQueue<SeaLionResponse> responseQueue = null;
-		if (! threadIdToResponseQueue.containsKey(threadId)) {
-			responseQueue = new LinkedBlockingQueue<SeaLionResponse>();
-			threadIdToResponseQueue.put(threadId, responseQueue);
+	private void replicate(final String command, final String key, byte[] value, long timeStamp, 
+			boolean isSafeMode, final Promise<Void> done) {
+		int numOfReplicas = this.numOfReplicas;
+		SeaLionServerNode[] replicas = numOfReplicas == 0 
+				? new SeaLionServerNode[0] : hashBalancer.getServerNodesByKey(key, numOfReplicas);
+		final AtomicInteger numOfPending = new AtomicInteger(replicas.length - 1);
+		if (done != null && replicas.length <= 1) {
+			done.setSuccess(null);
 		}
-		else {
-			responseQueue = threadIdToResponseQueue.get(threadId);
+		for (int i = 1; i < replicas.length; i++) {
+			ByteBuf data = value == null ? Unpooled.EMPTY_BUFFER : Unpooled.wrappedBuffer(value);
+			SeaLionRequest request = new SeaLionRequest();
+			request.setCommand(command);
+			request.setKey(key);
+			request.setDataLen(data.capacity());
+			request.setTimeStamp(timeStamp);
+			request.setData(data);
+			final SeaLionServerNode node = replicas[i];
+			final Channel channel = node.getChannel();
+			Future<SeaLionResponse> future = sendAsync(channel, request);
+			if (isSafeMode) {
+				if (! isApplied(command, getResponse(future))) {
+					dropReplica(node, channel, Collections.singletonList(key), true);
+				}
+				if (done != null && numOfPending.decrementAndGet() == 0) {
+					done.setSuccess(null);
+				}
+			}
+			else {
+				future.addListener(new GenericFutureListener<Future<SeaLionResponse>>() {
+					
+					public void operationComplete(Future<SeaLionResponse> future) throws Exception {
+						if (! isApplied(command, future.isSuccess() ? future.getNow() : null)) {
+							// sent before the next write of the key starts.
+							dropReplica(node, channel, Collections.singletonList(key), false);
+						}
+						if (done != null && numOfPending.decrementAndGet() == 0) {
+							done.setSuccess(null);
+						}
+					}
+					
+				});
+			}
 		}
-		return responseQueue;
 	}
 	
 	/**
-	 * Block for a while to wait for the response
+	 * Wait for the replicated writes of the key queued before, if the writes are 
+	 * replicated, see WriteSequencer.
 	 * 
-	 * @param responseQueue 
-	 * 			The response queue where the received response will be put.
-	 * @param opaque 
-	 * 			The request's opaque field.
-	 * @return The received response, null if current thread is interrupted or 
-	 * 			connection is broken.
+	 * @param key
+	 * @return The promise to complete once the write is done, with endTurn, null 
+	 * 			if the writes aren't replicated.
 	 * @author sunhe
-	 * @date 2015年3月17日 下午8:20:52
+	 * @date 2015年6月30日 上午10:40:15
 	 */
-	private SeaLionResponse getResponse(BlockingQueue<SeaLionResponse> responseQueue, String opaque) {
-		SeaLionResponse response = null;
-		try {
-			while (true) {
-				response = responseQueue.poll(RESPONSE_WAIT_TIMEOUT, TimeUnit.SECONDS);
-				if (response == null) {
-					// Waiting for response times out.
-					break;
+	private Promise<Void> awaitTurn(String key) {
+		if (numOfReplicas == 0) {
+			return null;
+		}
+		Promise<Void> done = writeSequencer.newPromise();
+		writeSequencer.enqueue(key, done).awaitUninterruptibly();
+		return done;
+	}
+	
+	private static void endTurn(Promise<Void> done) {
+		if (done != null) {
+			done.setSuccess(null);
+		}
+	}
+	
+	/**
+	 * @param command SET, DELETE, MSET or MDELETE.
+	 * @param response The response of a single key, null if failed.
+	 * @return Whether the write is applied, a key deleted before is also deleted.
+	 * @author sunhe
+	 * @date 2015年6月25日 下午2:20:40
+	 */
+	private static boolean isApplied(String command, SeaLionResponse response) {
+		if (response == null) {
+			return false;
+		}
+		String status = response.getStatus();
+		if (Statuses.SUCCESS.equals(status)) {
+			return true;
+		}
+		return (Commands.DELETE.equals(command) || Commands.MDELETE.equals(command)) 
+				&& Statuses.KEY_NONEXISTS.equals(status);
+	}
+	
+	/**
+	 * Delete the keys whose replicated writes may not be applied by the successor, 
+	 * so that the reads fall back to the primary rather than getting the values 
+	 * the successor had before. The keys are deleted through the same channel if 
+	 * it's still active, so that the deletion isn't applied before a late write. 
+	 * If the keys cann't be deleted either, the replicas on the successor are 
+	 * marked as stale.
+	 * 
+	 * @param node The successor.
+	 * @param channel The channel through which the write was sent, may be null.
+	 * @param keys
+	 * @param isSafeMode Whether to wait for the deletion.
+	 * @author sunhe
+	 * @date 2015年6月25日 下午2:25:10
+	 */
+	private void dropReplica(final SeaLionServerNode node, Channel channel, final List<String> keys, 
+			boolean isSafeMode) {
+		if (channel == null || ! channel.isActive()) {
+			channel = node.getChannel();
+		}
+		SeaLionRequest request;
+		if (keys.size() == 1) {
+			request = new SeaLionRequest();
+			request.setCommand(Commands.DELETE);
+			request.setKey(keys.get(0));
+			request.setDataLen(0);
+			request.setData(Unpooled.EMPTY_BUFFER);
+		}
+		else {
+			request = newMultiKeyRequest(Commands.MDELETE, keys, null, 0);
+		}
+		Future<SeaLionResponse> future = sendAsync(channel, request);
+		if (isSafeMode) {
+			markIfNotDropped(node, keys, getResponse(future));
+		}
+		else {
+			future.addListener(new GenericFutureListener<Future<SeaLionResponse>>() {
+				
+				public void operationComplete(Future<SeaLionResponse> future) throws Exception {
+					markIfNotDropped(node, keys, future.isSuccess() ? future.getNow() : null);
 				}
-				else {
-					if (opaque.equals(response.getOpaque())) {
-						// The received response matches the sent request.
-						opaqueToThreadId.remove(opaque);
-						break;
+				
+			});
+		}
+	}
+	
+	private void markIfNotDropped(SeaLionServerNode node, List<String> keys, SeaLionResponse response) {
+		boolean isDropped;
+		if (keys.size() == 1) {
+			isDropped = isApplied(Commands.DELETE, response);
+		}
+		else {
+			isDropped = response != null && Statuses.SUCCESS.equals(response.getStatus());
+			if (isDropped) {
+				List<SeaLionResponse> results = MultiKeyFormat.decodeResults(response.getData());
+				isDropped = results.size() == keys.size();
+				for (SeaLionResponse result : results) {
+					isDropped &= isApplied(Commands.MDELETE, result);
+				}
+			}
+		}
+		if (! isDropped) {
+			node.markReplicaStale("a failed replicated write cann't be undone");
+		}
+	}
+	
+	/**
+	 * Send a write without waiting for the response, and apply it to the successors 
+	 * of the key once the primary node accepts it. The write is queued after the 
+	 * replicated writes of the key sent before, without blocking, see WriteSequencer.
+	 * 
+	 * @param request
+	 * @param command SET or DELETE.
+	 * @param value Null for DELETE.
+	 * @param timeStamp
+	 * @return The future of the response of the primary, which is a promise of the 
+	 * 			event loop of a connection of the primary, as the one of sendAsync.
+	 * @author sunhe
+	 * @date 2015年6月24日 下午2:48:30
+	 */
+	private Future<SeaLionResponse> sendAndReplicate(final SeaLionRequest request, final String command, 
+			final byte[] value, final long timeStamp) {
+		final String key = request.getKey();
+		Channel channel = getChannelByKey(key);
+		if (numOfReplicas == 0 || channel == null) {
+			return sendAsync(channel, request);
+		}
+		final Promise<SeaLionResponse> promise = channel.eventLoop().newPromise();
+		final Promise<Void> done = writeSequencer.newPromise();
+		writeSequencer.enqueue(key, done).addListener(new GenericFutureListener<Future<Void>>() {
+			
+			public void operationComplete(Future<Void> previous) throws Exception {
+				sendAsync(request).addListener(new GenericFutureListener<Future<SeaLionResponse>>() {
+					
+					public void operationComplete(Future<SeaLionResponse> future) throws Exception {
+						if (! future.isSuccess()) {
+							done.setSuccess(null);
+							promise.setFailure(future.cause());
+							return;
+						}
+						if (Statuses.SUCCESS.equals(future.getNow().getStatus())) {
+							replicate(command, key, value, timeStamp, false, done);
+						}
+						else {
+							done.setSuccess(null);
+						}
+						promise.setSuccess(future.getNow());
 					}
+					
+				});
+			}
+			
+		});
+		return promise;
+	}
+	
+	/**
+	 * Get the value of the key from the replica with the fewest requests in flight, 
+	 * or from the primary node if the replica misses. The successors whose replicas 
+	 * are stale are skipped.
+	 * 
+	 * @param key
+	 * @param numOfReplicas
+	 * @return The response, whose CAS is that of the replica. Null if failed, 
+	 * 			or if there isn't any node on the hash ring.
+	 * @author sunhe
+	 * @date 2015年6月24日 下午2:52:40
+	 */
+	private SeaLionResponse getFromReplica(String key, int numOfReplicas) {
+		SeaLionServerNode[] replicas = hashBalancer.getServerNodesByKey(key, numOfReplicas);
+		if (replicas.length == 0) {
+			return null;
+		}
+		SeaLionServerNode selected = replicas[0];
+		int minInFlight = selected.getNumOfInFlight();
+		for (int i = 1; i < replicas.length; i++) {
+			if (replicas[i].isReplicaStale()) {
+				continue;
+			}
+			int inFlight = replicas[i].getNumOfInFlight();
+			if (inFlight < minInFlight) {
+				selected = replicas[i];
+				minInFlight = inFlight;
+			}
+		}
+		SeaLionResponse response = getResponse(sendAsync(selected.getChannel(), newGetRequest(key)));
+		if (selected != replicas[0] && (response == null || ! Statuses.SUCCESS.equals(response.getStatus()))) {
+			response = getResponse(sendAsync(replicas[0].getChannel(), newGetRequest(key)));
+		}
+		return response;
+	}
+	
+	private SeaLionRequest newGetRequest(String key) {
+		SeaLionRequest request = new SeaLionRequest();
+		request.setCommand(Commands.GET);
+		request.setKey(key);
+		request.setDataLen(0);
+		request.setData(Unpooled.EMPTY_BUFFER);
+		return request;
+	}
+	
+	/**
+	 * Remove the key from the near cache, once it's written or deleted.
+	 * 
+	 * @param key
+	 * @author sunhe
+	 * @date 2015年6月24日 上午10:13:05
+	 */
+	private void invalidateNearCache(String key) {
+		SeaLionNearCache nearCache = this.nearCache;
+		if (nearCache != null) {
+			nearCache.invalidate(key);
+		}
+	}
+	
+	/**
+	 * Set the weight of a server node, which may be any positive number, 
+	 * see HashBalancer.setServerNodeWeight.
+	 * 
+	 * @param strSocketAddress host:port
+	 * @param weight
+	 * @return False if there isn't such a node.
+	 * @author sunhe
+	 * @date 2015年6月23日 上午10:45:30
+	 */
+	public boolean setServerNodeWeight(String strSocketAddress, double weight) {
+		SeaLionServerNode node = hashBalancer.getServerNodes().get(strSocketAddress);
+		if (node == null) {
+			return false;
+		}
+		hashBalancer.setServerNodeWeight(node, weight);
+		return true;
+	}
+	
+	/**
+	 * @param numOfKeys The number of the sample keys.
+	 * @return The share of the keys of every server node, see HashBalancer.getSkewReport.
+	 * @author sunhe
+	 * @date 2015年6月23日 上午10:47:20
+	 */
+	public String getSkewReport(int numOfKeys) {
+		return hashBalancer.getSkewReport(numOfKeys);
+	}
+	
+	/**
+	 * Get the average number of requests per flush of all connections, which shows 
+	 * how well the requests are batched.
+	 * 
+	 * @return 0 if nothing has been flushed.
+	 * @author sunhe
+	 * @date 2015年6月21日 上午10:50:32
+	 */
+	public double getRequestsPerFlush() {
+		long numOfFlushes = 0;
+		long numOfFlushedRequests = 0;
+		for (SeaLionServerNode node : hashBalancer.getServerNodes().values()) {
+			for (Channel channel : node.getChannels()) {
+				SeaLionRequestBatcher batcher = channel.pipeline().get(SeaLionRequestBatcher.class);
+				if (batcher != null) {
+					numOfFlushes += batcher.getNumOfFlushes();
+					numOfFlushedRequests += batcher.getNumOfFlushedRequests();
 				}
 			}
 		}
+		return numOfFlushes == 0 ? 0 : (double) numOfFlushedRequests / numOfFlushes;
+	}
+	
+	/**
+	 * Block for a while to wait for the response
+	 * 
+	 * @param future 
+	 * 			The future of the request sent by sendAsync, which is failed by 
+	 * 			the in-flight table if the response isn't received in time.
+	 * @return The received response, null if current thread is interrupted, 
+	 * 			connection is broken or waiting times out.
+	 * @author sunhe
+	 * @date 2015年3月17日 下午8:20:52
+	 */
+	private SeaLionResponse getResponse(Future<SeaLionResponse> future) {
+		try {
+			future.await();
+		}
 		catch (InterruptedException e) {
 			Thread.currentThread().interrupt();
 		}
-		return response;
+		return future.isSuccess() ? future.getNow() : null;
 	}
 
 	/*
@@ -428,20 +1048,61 @@ public class SeaLionClient implements SeaLionClientOperation, SeaLionServerMonit
 	 * @date 2015年4月9日 下午1:06:23
 	 */
 	public byte[] getBytes(String key, String cas) {
-		SeaLionResponse response = getBytesAndCas(key, cas);
+		SeaLionNearCache nearCache = this.nearCache;
+		if (nearCache != null && cas == null) {
+			return getBytesThroughNearCache(nearCache, key);
+		}
+		int numOfReplicas = this.numOfReplicas;
+		SeaLionResponse response = numOfReplicas > 0 && cas == null 
+				? getFromReplica(key, numOfReplicas) : getBytesAndCas(key, cas);
+		if (response == null) {
+			// May because connection is broken or current thread is interrupted.
+			return null;
+		}
+		else {
+			String status = response.getStatus();
+			ByteBuf data = response.getData();
+			if (Statuses.SUCCESS.equals(status)) {
+				return data.array();
+			}
+			else {
+				return null;
+			}
+		}
+	}
+	
+	/**
+	 * Serve the value from the near cache if it's fresh, or if its CAS is still 
+	 * the same on the server. Otherwise get it from the server, and cache it.
+	 * 
+	 * @param nearCache
+	 * @param key
+	 * @return A copy of the value, null if the key doesn't exist.
+	 * @author sunhe
+	 * @date 2015年6月24日 上午10:20:40
+	 */
+	private byte[] getBytesThroughNearCache(SeaLionNearCache nearCache, String key) {
+		SeaLionNearCache.Entry entry = nearCache.get(key);
+		if (entry != null && (entry.isFresh() || nearCache.revalidate(key, entry, getCas(key)))) {
+			return entry.getValue().clone();
+		}
+		SeaLionResponse response = getBytesAndCas(key, null);
 		if (response == null) {
-			// May because connection is broken or current thread is interrupted.
 			return null;
 		}
-		else {
-			String status = response.getStatus();
+		else if (Statuses.SUCCESS.equals(response.getStatus())) {
 			ByteBuf data = response.getData();
-			if (Statuses.SUCCESS.equals(status)) {
-				return data.array();
-			}
-			else {
-				return null;
+			byte[] value = new byte[data.readableBytes()];
+			data.getBytes(data.readerIndex(), value);
+			if (response.hasCas()) {
+				// the expiration time stamp isn't responded, the CAS is revalidated after the TTL.
+				nearCache.put(key, value.clone(), response.getCas(), 0);
 			}
+			return value;
+		}
+		else {
+			nearCache.invalidate(key);
+			return null;
 		}
 	}
 	
@@ -462,21 +1123,14 @@ public class SeaLionClient implements SeaLionClientOperation, SeaLionServerMonit
 	 * @date 2015年4月9日 下午1:04:34
 	 */
 	public SeaLionResponse getBytesAndCas(String key, String cas) {
-		BlockingQueue<SeaLionResponse> responseQueue = ensureResponseQueue();
-		String opaque = OpaqueGenerator.generate();
-		opaqueToThreadId.put(opaque, Thread.currentThread().getId());
-		
 		SeaLionRequest request = new SeaLionRequest();
 		request.setCommand(Commands.GET);
 		request.setKey(key);
-		request.setOpaque(opaque);
 		request.setDataLen(0);
 		request.setIsSafeMode(true);
 		request.setCas(cas);
 		request.setData(Unpooled.EMPTY_BUFFER);
-		hashBalancer.getServerNodeByKey(key).getChannel().writeAndFlush(request);
-		
-		return getResponse(responseQueue, opaque);
+		return getResponse(sendAsync(request));
 	}
 	
 	/*
@@ -502,35 +1156,40 @@ public class SeaLionClient implements SeaLionClientOperation, SeaLionServerMonit
 		if (timeStamp < 0) {
 			throw new IllegalArgumentException("Illegal time stamp value: " + timeStamp);
 		}
-		BlockingQueue<SeaLionResponse> responseQueue = ensureResponseQueue();
-		String opaque = OpaqueGenerator.generate();
-		opaqueToThreadId.put(opaque, Thread.currentThread().getId());
-		
 		ByteBuf data = Unpooled.wrappedBuffer(value);
 		SeaLionRequest request = new SeaLionRequest();
 		request.setCommand(Commands.SET);
 		request.setKey(key);
-		request.setOpaque(opaque);
 		request.setDataLen(data.capacity());
 		request.setIsSafeMode(true);
 		request.setCas(cas);
 		request.setTimeStamp(timeStamp);
 		request.setData(data);
-		hashBalancer.getServerNodeByKey(key).getChannel().writeAndFlush(request);
-		
-		SeaLionResponse response = getResponse(responseQueue, opaque);
-		if (response == null) {
-			return false;
-		}
-		else {
-			String status = response.getStatus();
-			if (Statuses.SUCCESS.equals(status)) {
-				return true;
+		invalidateNearCache(key);
+		Promise<Void> done = awaitTurn(key);
+		try {
+			SeaLionResponse response = getResponse(sendAsync(request));
+			if (response == null) {
+				return false;
 			}
 			else {
-				return false;
+				String status = response.getStatus();
+				if (Statuses.SUCCESS.equals(status)) {
+					replicate(Commands.SET, key, value, timeStamp, true, null);
+					SeaLionNearCache nearCache = this.nearCache;
+					if (nearCache != null && response.hasCas()) {
+						nearCache.put(key, value.clone(), response.getCas(), timeStamp);
+					}
+					return true;
+				}
+				else {
+					return false;
+				}
 			}
 		}
+		finally {
+			endTurn(done);
+		}
 	}
 	
 	/**
@@ -594,14 +1253,23 @@ public class SeaLionClient implements SeaLionClientOperation, SeaLionServerMonit
 		SeaLionRequest request = new SeaLionRequest();
 		request.setCommand(Commands.SET);
 		request.setKey(key);
-		request.setOpaque(OpaqueGenerator.generate());
+		request.setOpaque(UNSAFE_OPAQUE);
 		request.setDataLen(data.capacity());
 		// unsafe mode
 		request.setIsSafeMode(false);
 		request.setCas(cas);
 		request.setTimeStamp(timeStamp);
 		request.setData(data);
-		return hashBalancer.getServerNodeByKey(key).getChannel().writeAndFlush(request);
+		invalidateNearCache(key);
+		ChannelFuture future = writeUnsafe(getChannelByKey(key), request);
+		// whether the primary accepts the CAS is unknown, so the successors just drop the key.
+		if (cas == null) {
+			replicate(Commands.SET, key, value, timeStamp, false, null);
+		}
+		else {
+			replicate(Commands.DELETE, key, null, 0, false, null);
+		}
+		return future;
 	}
 	
 	/**
@@ -660,33 +1328,37 @@ public class SeaLionClient implements SeaLionClientOperation, SeaLionServerMonit
 	 * @date 2015年4月9日 下午1:42:58
 	 */
 	public boolean deleteValue(String key, String cas) {
-		BlockingQueue<SeaLionResponse> responseQueue = ensureResponseQueue();
-		String opaque = OpaqueGenerator.generate();
-		opaqueToThreadId.put(opaque, Thread.currentThread().getId());
-		
 		SeaLionRequest request = new SeaLionRequest();
 		request.setCommand(Commands.DELETE);
 		request.setKey(key);
-		request.setOpaque(opaque);
 		request.setDataLen(0);
 		request.setIsSafeMode(true);
 		request.setCas(cas);
 		request.setData(Unpooled.EMPTY_BUFFER);
-		hashBalancer.getServerNodeByKey(key).getChannel().writeAndFlush(request);
-		
-		SeaLionResponse response = getResponse(responseQueue, opaque);
-		if (response == null) {
-			return false;
-		}
-		else {
-			String status = response.getStatus();
-			if (Statuses.SUCCESS.equals(status)) {
-				return true;
+		invalidateNearCache(key);
+		Promise<Void> done = awaitTurn(key);
+		try {
+			SeaLionResponse response = getResponse(sendAsync(request));
+			if (response == null) {
+				return false;
 			}
 			else {
-				return false;
+				String status = response.getStatus();
+				if (Statuses.SUCCESS.equals(status) || (cas == null && Statuses.KEY_NONEXISTS.equals(status))) {
+					// the successors may still have the key, if they haven't caught up.
+					replicate(Commands.DELETE, key, null, 0, true, null);
+				}
+				if (Statuses.SUCCESS.equals(status)) {
+					return true;
+				}
+				else {
+					return false;
+				}
 			}
 		}
+		finally {
+			endTurn(done);
+		}
 	}
 	
 	/*
@@ -708,13 +1380,17 @@ public class SeaLionClient implements SeaLionClientOperation, SeaLionServerMonit
 		SeaLionRequest request = new SeaLionRequest();
 		request.setCommand(Commands.DELETE);
 		request.setKey(key);
-		request.setOpaque(OpaqueGenerator.generate());
+		request.setOpaque(UNSAFE_OPAQUE);
 		request.setDataLen(0);
 		// unsafe mode
 		request.setIsSafeMode(false);
 		request.setCas(cas);
 		request.setData(Unpooled.EMPTY_BUFFER);
-		return hashBalancer.getServerNodeByKey(key).getChannel().writeAndFlush(request);
+		invalidateNearCache(key);
+		ChannelFuture future = writeUnsafe(getChannelByKey(key), request);
+		// the successors fall back to the primary once they miss.
+		replicate(Commands.DELETE, key, null, 0, false, null);
+		return future;
 	}
 	
 	/*
@@ -724,20 +1400,13 @@ public class SeaLionClient implements SeaLionClientOperation, SeaLionServerMonit
 	 * @date 2015年4月9日 下午1:28:47
 	 */
 	public String getCas(String key) {
-		BlockingQueue<SeaLionResponse> responseQueue = ensureResponseQueue();
-		String opaque = OpaqueGenerator.generate();
-		opaqueToThreadId.put(opaque, Thread.currentThread().getId());
-		
 		SeaLionRequest request = new SeaLionRequest();
 		request.setCommand(Commands.CAS);
 		request.setKey(key);
-		request.setOpaque(opaque);
 		request.setDataLen(0);
 		request.setIsSafeMode(true);
 		request.setData(Unpooled.EMPTY_BUFFER);
-		hashBalancer.getServerNodeByKey(key).getChannel().writeAndFlush(request);
-		
-		SeaLionResponse response = getResponse(responseQueue, opaque);
+		SeaLionResponse response = getResponse(sendAsync(request));
 		if (response == null) {
 			// May because connection is broken or current thread is interrupted.
 			return null;
@@ -753,6 +1422,430 @@ public class SeaLionClient implements SeaLionClientOperation, SeaLionServerMonit
 		}
 	}
 	
+	/*
+	 * (non-Javadoc)
+	 * @see io.sunhe.sealion.client.SeaLionAsyncClientOperation#getAsync(java.lang.String)
+	 * @author sunhe
+	 * @date 2015年6月20日 上午10:30:15
+	 */
+	public Future<SeaLionResponse> getAsync(String key) {
+		return getAsync(key, null);
+	}
+	
+	/*
+	 * (non-Javadoc)
+	 * @see io.sunhe.sealion.client.SeaLionAsyncClientOperation#getAsync(java.lang.String, java.lang.String)
+	 * @author sunhe
+	 * @date 2015年6月20日 上午10:31:02
+	 */
+	public Future<SeaLionResponse> getAsync(String key, String cas) {
+		SeaLionRequest request = new SeaLionRequest();
+		request.setCommand(Commands.GET);
+		request.setKey(key);
+		request.setDataLen(0);
+		request.setCas(cas);
+		request.setData(Unpooled.EMPTY_BUFFER);
+		return sendAsync(request);
+	}
+	
+	/*
+	 * (non-Javadoc)
+	 * @see io.sunhe.sealion.client.SeaLionAsyncClientOperation#setAsync(java.lang.String, byte[], long)
+	 * @author sunhe
+	 * @date 2015年6月20日 上午10:32:40
+	 */
+	public Future<SeaLionResponse> setAsync(String key, byte[] value, long timeStamp) {
+		return setAsync(key, value, timeStamp, null);
+	}
+	
+	/*
+	 * (non-Javadoc)
+	 * @see io.sunhe.sealion.client.SeaLionAsyncClientOperation#setAsync(java.lang.String, byte[], long, java.lang.String)
+	 * @author sunhe
+	 * @date 2015年6月20日 上午10:33:18
+	 */
+	public Future<SeaLionResponse> setAsync(String key, byte[] value, long timeStamp, String cas) {
+		if (key.contains(" ")) {
+			throw new IllegalArgumentException("Key can't contain any white characters: " + key);
+		}
+		if (timeStamp < 0) {
+			throw new IllegalArgumentException("Illegal time stamp value: " + timeStamp);
+		}
+		ByteBuf data = Unpooled.wrappedBuffer(value);
+		SeaLionRequest request = new SeaLionRequest();
+		request.setCommand(Commands.SET);
+		request.setKey(key);
+		request.setDataLen(data.capacity());
+		request.setCas(cas);
+		request.setTimeStamp(timeStamp);
+		request.setData(data);
+		invalidateNearCache(key);
+		return sendAndReplicate(request, Commands.SET, value, timeStamp);
+	}
+	
+	/*
+	 * (non-Javadoc)
+	 * @see io.sunhe.sealion.client.SeaLionAsyncClientOperation#deleteAsync(java.lang.String)
+	 * @author sunhe
+	 * @date 2015年6月20日 上午10:34:51
+	 */
+	public Future<SeaLionResponse> deleteAsync(String key) {
+		return deleteAsync(key, null);
+	}
+	
+	/*
+	 * (non-Javadoc)
+	 * @see io.sunhe.sealion.client.SeaLionAsyncClientOperation#deleteAsync(java.lang.String, java.lang.String)
+	 * @author sunhe
+	 * @date 2015年6月20日 上午10:35:22
+	 */
+	public Future<SeaLionResponse> deleteAsync(String key, String cas) {
+		SeaLionRequest request = new SeaLionRequest();
+		request.setCommand(Commands.DELETE);
+		request.setKey(key);
+		request.setDataLen(0);
+		request.setCas(cas);
+		request.setData(Unpooled.EMPTY_BUFFER);
+		invalidateNearCache(key);
+		return sendAndReplicate(request, Commands.DELETE, null, 0);
+	}
+	
+	/*
+	 * (non-Javadoc)
+	 * @see io.sunhe.sealion.client.SeaLionAsyncClientOperation#casAsync(java.lang.String)
+	 * @author sunhe
+	 * @date 2015年6月20日 上午10:36:04
+	 */
+	public Future<SeaLionResponse> casAsync(String key) {
+		SeaLionRequest request = new SeaLionRequest();
+		request.setCommand(Commands.CAS);
+		request.setKey(key);
+		request.setDataLen(0);
+		request.setData(Unpooled.EMPTY_BUFFER);
+		return sendAsync(request);
+	}
+	
+	/**
+	 * Send the request in safe mode to the server node of its key
+	 * without waiting for the response.
+	 * 
+	 * @param request The opaque and the safe mode are filled here.
+	 * @return
+	 * @author sunhe
+	 * @date 2015年6月20日 上午10:40:26
+	 */
+	private Future<SeaLionResponse> sendAsync(SeaLionRequest request) {
+		return sendAsync(getChannelByKey(request.getKey()), request);
+	}
+	
+	/**
+	 * Send the request in safe mode without waiting for the response.
+	 * The request is registered in the in-flight table of the channel, whose 
+	 * promise is completed by the response handler once the response is received. 
+	 * It fails if the request cann't be written, or if the response isn't received 
+	 * in RESPONSE_WAIT_TIMEOUT.
+	 * 
+	 * @param channel Null if the server node hasn't any connection, then the 
+	 * 			request fails with ClosedChannelException.
+	 * @param request The opaque and the safe mode are filled here.
+	 * @return
+	 * @author sunhe
+	 * @date 2015年6月20日 下午2:40:12
+	 */
+	private Future<SeaLionResponse> sendAsync(Channel channel, SeaLionRequest request) {
+		if (channel == null) {
+			return ImmediateEventExecutor.INSTANCE.newFailedFuture(new ClosedChannelException());
+		}
+		final InFlightTable inFlightTable = channel.attr(InFlightTable.KEY).get();
+		InFlightTable.InFlightRequest inFlightRequest = inFlightTable.register();
+		final int opaque = inFlightRequest.getOpaque();
+		request.setOpaque(Integer.toString(opaque));
+		request.setIsSafeMode(true);
+		channel.writeAndFlush(request).addListener(new ChannelFutureListener() {
+			
+			public void operationComplete(ChannelFuture future) throws Exception {
+				if (! future.isSuccess()) {
+					inFlightTable.fail(opaque, future.cause());
+				}
+			}
+			
+		});
+		return inFlightRequest.getPromise();
+	}
+	
+	/**
+	 * Write the request in unsafe mode, whose response is never received.
+	 * 
+	 * @param channel Null if the server node hasn't any connection.
+	 * @param request
+	 * @return The future of the write, failed with ClosedChannelException if 
+	 * 			the channel is null.
+	 * @author sunhe
+	 * @date 2015年6月25日 上午10:20:15
+	 */
+	private ChannelFuture writeUnsafe(Channel channel, SeaLionRequest request) {
+		if (channel == null) {
+			return CLOSED_CHANNEL.newFailedFuture(new ClosedChannelException());
+		}
+		return channel.writeAndFlush(request);
+	}
+	
+	/**
+	 * @param key
+	 * @return The channel to the server node of the key, null if the node hasn't 
+	 * 			any connection, or if there isn't any node on the hash ring.
+	 * @author sunhe
+	 * @date 2015年6月25日 上午10:22:40
+	 */
+	private Channel getChannelByKey(String key) {
+		SeaLionServerNode node = hashBalancer.getServerNodeByKey(key);
+		return node == null ? null : node.getChannel();
+	}
+	
+	private static Channel newClosedChannel() {
+		Channel channel = new EmbeddedChannel(new ChannelInboundHandlerAdapter());
+		channel.close();
+		return channel;
+	}
+	
+	/*
+	 * (non-Javadoc)
+	 * @see io.sunhe.sealion.client.SeaLionClientOperation#getMultiBytes(java.util.Collection)
+	 * @author sunhe
+	 * @date 2015年6月19日 下午4:10:12
+	 */
+	public Map<String, byte[]> getMultiBytes(Collection<String> keys) {
+		Map<String, SeaLionResponse> results = executeMultiKey(Commands.MGET, keys, null, 0);
+		Map<String, byte[]> values = new HashMap<String, byte[]>();
+		for (Map.Entry<String, SeaLionResponse> entry : results.entrySet()) {
+			SeaLionResponse result = entry.getValue();
+			if (Statuses.SUCCESS.equals(result.getStatus())) {
+				byte[] value = new byte[result.getDataLen()];
+				result.getData().getBytes(result.getData().readerIndex(), value);
+				values.put(entry.getKey(), value);
+			}
+		}
+		return values;
+	}
+	
+	/*
+	 * (non-Javadoc)
+	 * @see io.sunhe.sealion.client.SeaLionClientOperation#getMultiStrings(java.util.Collection)
+	 * @author sunhe
+	 * @date 2015年6月19日 下午4:12:40
+	 */
+	public Map<String, String> getMultiStrings(Collection<String> keys) {
+		Map<String, String> values = new HashMap<String, String>();
+		for (Map.Entry<String, byte[]> entry : getMultiBytes(keys).entrySet()) {
+			values.put(entry.getKey(), new String(entry.getValue(), Charsets.UTF_8));
+		}
+		return values;
+	}
+	
+	/*
+	 * (non-Javadoc)
+	 * @see io.sunhe.sealion.client.SeaLionClientOperation#setMultiBytes(java.util.Map, long)
+	 * @author sunhe
+	 * @date 2015年6月19日 下午4:14:05
+	 */
+	public Set<String> setMultiBytes(Map<String, byte[]> keyValues, long timeStamp) {
+		if (timeStamp < 0) {
+			throw new IllegalArgumentException("Illegal time stamp value: " + timeStamp);
+		}
+		for (String key : keyValues.keySet()) {
+			invalidateNearCache(key);
+		}
+		return getSucceededKeys(executeMultiKey(Commands.MSET, keyValues.keySet(), keyValues, timeStamp));
+	}
+	
+	/*
+	 * (non-Javadoc)
+	 * @see io.sunhe.sealion.client.SeaLionClientOperation#deleteMultiValues(java.util.Collection)
+	 * @author sunhe
+	 * @date 2015年6月19日 下午4:15:22
+	 */
+	public Set<String> deleteMultiValues(Collection<String> keys) {
+		for (String key : keys) {
+			invalidateNearCache(key);
+		}
+		return getSucceededKeys(executeMultiKey(Commands.MDELETE, keys, null, 0));
+	}
+	
+	private Set<String> getSucceededKeys(Map<String, SeaLionResponse> results) {
+		Set<String> keys = new HashSet<String>();
+		for (Map.Entry<String, SeaLionResponse> entry : results.entrySet()) {
+			if (Statuses.SUCCESS.equals(entry.getValue().getStatus())) {
+				keys.add(entry.getKey());
+			}
+		}
+		return keys;
+	}
+	
+	/**
+	 * Group the keys by server node, send a multi-key request to every node, 
+	 * all before waiting for any response, and then collect the results. 
+	 * The replicated writes are queued after those of the same keys sent before, 
+	 * see WriteSequencer.
+	 * 
+	 * @param command MGET, MSET or MDELETE.
+	 * @param keys
+	 * @param keyValues The values for MSET, null for the others.
+	 * @param timeStamp For MSET.
+	 * @return The result of every key, the keys whose nodes don't respond in time are absent.
+	 * @author sunhe
+	 * @date 2015年6月19日 下午4:18:36
+	 */
+	private Map<String, SeaLionResponse> executeMultiKey(String command, Collection<String> keys, 
+			Map<String, byte[]> keyValues, long timeStamp) {
+		if (numOfReplicas == 0 || Commands.MGET.equals(command)) {
+			return sendMultiKey(command, keys, keyValues, timeStamp);
+		}
+		// queued in the stripes of all keys, after the writes of any of them.
+		Promise<Void> done = writeSequencer.newPromise();
+		for (Future<Void> previous : writeSequencer.enqueue(keys, done)) {
+			previous.awaitUninterruptibly();
+		}
+		try {
+			return sendMultiKey(command, keys, keyValues, timeStamp);
+		}
+		finally {
+			done.setSuccess(null);
+		}
+	}
+	
+	/**
+	 * The same as executeMultiKey, without queuing the writes.
+	 * 
+	 * @author sunhe
+	 * @date 2015年6月30日 上午10:50:35
+	 */
+	private Map<String, SeaLionResponse> sendMultiKey(String command, Collection<String> keys, 
+			Map<String, byte[]> keyValues, long timeStamp) {
+		Map<SeaLionServerNode, List<String>> keysByNode = new LinkedHashMap<SeaLionServerNode, List<String>>();
+		for (String key : keys) {
+			addKey(keysByNode, hashBalancer.getServerNodeByKey(key), key);
+		}
+		
+		Map<Future<SeaLionResponse>, List<String>> keysByFuture = new LinkedHashMap<Future<SeaLionResponse>, List<String>>();
+		for (Map.Entry<SeaLionServerNode, List<String>> entry : keysByNode.entrySet()) {
+			List<String> nodeKeys = entry.getValue();
+			keysByFuture.put(sendAsync(entry.getKey().getChannel(), 
+					newMultiKeyRequest(command, nodeKeys, keyValues, timeStamp)), nodeKeys);
+		}
+		
+		int numOfReplicas = this.numOfReplicas;
+		Map<SeaLionServerNode, List<String>> keysBySuccessor = new LinkedHashMap<SeaLionServerNode, List<String>>();
+		List<Channel> successorChannels = new ArrayList<Channel>();
+		List<Future<SeaLionResponse>> successorFutures = new ArrayList<Future<SeaLionResponse>>();
+		if (numOfReplicas > 0 && ! Commands.MGET.equals(command)) {
+			// MSET and MDELETE are unconditional, so the successors are written 
+			// in parallel with the primaries.
+			for (String key : keys) {
+				SeaLionServerNode[] replicas = hashBalancer.getServerNodesByKey(key, numOfReplicas);
+				for (int i = 1; i < replicas.length; i++) {
+					addKey(keysBySuccessor, replicas[i], key);
+				}
+			}
+			for (Map.Entry<SeaLionServerNode, List<String>> entry : keysBySuccessor.entrySet()) {
+				Channel channel = entry.getKey().getChannel();
+				successorChannels.add(channel);
+				successorFutures.add(sendAsync(channel, 
+						newMultiKeyRequest(command, entry.getValue(), keyValues, timeStamp)));
+			}
+		}
+		
+		// all requests have been sent, so the waits overlap.
+		Map<String, SeaLionResponse> results = new HashMap<String, SeaLionResponse>();
+		for (Map.Entry<Future<SeaLionResponse>, List<String>> entry : keysByFuture.entrySet()) {
+			SeaLionResponse response = getResponse(entry.getKey());
+			if (response == null || ! Statuses.SUCCESS.equals(response.getStatus())) {
+				continue;
+			}
+			List<String> nodeKeys = entry.getValue();
+			List<SeaLionResponse> nodeResults = MultiKeyFormat.decodeResults(response.getData());
+			for (int i = 0; i < nodeKeys.size() && i < nodeResults.size(); i++) {
+				results.put(nodeKeys.get(i), nodeResults.get(i));
+			}
+		}
+		int i = 0;
+		for (Map.Entry<SeaLionServerNode, List<String>> entry : keysBySuccessor.entrySet()) {
+			List<String> droppedKeys = getKeysToDrop(command, entry.getValue(), 
+					getResponse(successorFutures.get(i)), results);
+			if (! droppedKeys.isEmpty()) {
+				dropReplica(entry.getKey(), successorChannels.get(i), droppedKeys, true);
+			}
+			i++;
+		}
+		return results;
+	}
+	
+	/**
+	 * @param command MSET or MDELETE.
+	 * @param keys The keys written to a successor.
+	 * @param response The response of the successor, null if failed.
+	 * @param results The results of the primaries.
+	 * @return The keys the successor may not have applied, and the keys MSET 
+	 * 			by the successor but not by the primary.
+	 * @author sunhe
+	 * @date 2015年6月25日 下午2:35:50
+	 */
+	private List<String> getKeysToDrop(String command, List<String> keys, SeaLionResponse response, 
+			Map<String, SeaLionResponse> results) {
+		if (response == null || ! Statuses.SUCCESS.equals(response.getStatus())) {
+			return keys;
+		}
+		List<SeaLionResponse> successorResults = MultiKeyFormat.decodeResults(response.getData());
+		List<String> droppedKeys = new ArrayList<String>();
+		for (int i = 0; i < keys.size(); i++) {
+			String key = keys.get(i);
+			if (i >= successorResults.size() || ! isApplied(command, successorResults.get(i)) 
+					|| (Commands.MSET.equals(command) && ! isApplied(command, results.get(key)))) {
+				droppedKeys.add(key);
+			}
+		}
+		return droppedKeys;
+	}
+	
+	private void addKey(Map<SeaLionServerNode, List<String>> keysByNode, SeaLionServerNode node, String key) {
+		List<String> nodeKeys = keysByNode.get(node);
+		if (nodeKeys == null) {
+			nodeKeys = new ArrayList<String>();
+			keysByNode.put(node, nodeKeys);
+		}
+		nodeKeys.add(key);
+	}
+	
+	/**
+	 * @param command
+	 * @param keys The keys of a single node.
+	 * @param keyValues Null unless MSET.
+	 * @param timeStamp
+	 * @return The multi-key request of the keys.
+	 * @author sunhe
+	 * @date 2015年6月24日 下午3:05:10
+	 */
+	private SeaLionRequest newMultiKeyRequest(String command, List<String> keys, 
+			Map<String, byte[]> keyValues, long timeStamp) {
+		ByteBuf data;
+		if (keyValues == null) {
+			data = MultiKeyFormat.encodeKeys(keys);
+		}
+		else {
+			List<byte[]> values = new ArrayList<byte[]>(keys.size());
+			for (String key : keys) {
+				values.add(keyValues.get(key));
+			}
+			data = MultiKeyFormat.encodeKeyValues(keys, values);
+		}
+		SeaLionRequest request = new SeaLionRequest();
+		request.setCommand(command);
+		request.setKey(MultiKeyFormat.KEY);
+		request.setDataLen(data.readableBytes());
+		request.setTimeStamp(timeStamp);
+		request.setData(data);
+		return request;
+	}
+	
 	/*
 	 * (non-Javadoc)
 	 * @see io.sunhe.sealion.client.SeaLionServerMonitorOperation#getMemPercentage()
@@ -762,20 +1855,13 @@ public class SeaLionClient implements SeaLionClientOperation, SeaLionServerMonit
 	public Double getMemPercentage() {
 		// The key doesn't have any meaning here.
 		String key = "N/A";
-		BlockingQueue<SeaLionResponse> responseQueue = ensureResponseQueue();
-		String opaque = OpaqueGenerator.generate();
-		opaqueToThreadId.put(opaque, Thread.currentThread().getId());
-		
 		SeaLionRequest request = new SeaLionRequest();
 		request.setCommand(Commands.MEM_PERCENTAGE);
 		request.setKey(key);
-		request.setOpaque(opaque);
 		request.setDataLen(0);
 		request.setIsSafeMode(true);
 		request.setData(Unpooled.EMPTY_BUFFER);
-		hashBalancer.getServerNodeByKey(key).getChannel().writeAndFlush(request);
-		
-		SeaLionResponse response = getResponse(responseQueue, opaque);
+		SeaLionResponse response = getResponse(sendAsync(request));
 		if (response == null) {
 			// May because connection is broken or current thread is interrupted.
 			return null;
@@ -800,20 +1886,13 @@ public class SeaLionClient implements SeaLionClientOperation, SeaLionServerMonit
 	public Long getMemUsage() {
 		// The key doesn't have any meaning here.
 		String key = "N/A";
-		BlockingQueue<SeaLionResponse> responseQueue = ensureResponseQueue();
-		String opaque = OpaqueGenerator.generate();
-		opaqueToThreadId.put(opaque, Thread.currentThread().getId());
-		
 		SeaLionRequest request = new SeaLionRequest();
 		request.setCommand(Commands.MEM_USAGE);
 		request.setKey(key);
-		request.setOpaque(opaque);
 		request.setDataLen(0);
 		request.setIsSafeMode(true);
 		request.setData(Unpooled.EMPTY_BUFFER);
-		hashBalancer.getServerNodeByKey(key).getChannel().writeAndFlush(request);
-		
-		SeaLionResponse response = getResponse(responseQueue, opaque);
+		SeaLionResponse response = getResponse(sendAsync(request));
 		if (response == null) {
 			// May because connection is broken or current thread is interrupted.
 			return null;
@@ -832,20 +1911,13 @@ public class SeaLionClient implements SeaLionClientOperation, SeaLionServerMonit
 	public Long getMemLimit() {
 		// The key doesn't have any meaning here.
 		String key = "N/A";
-		BlockingQueue<SeaLionResponse> responseQueue = ensureResponseQueue();
-		String opaque = OpaqueGenerator.generate();
-		opaqueToThreadId.put(opaque, Thread.currentThread().getId());
-		
 		SeaLionRequest request = new SeaLionRequest();
 		request.setCommand(Commands.MEM_LIMIT);
 		request.setKey(key);
-		request.setOpaque(opaque);
 		request.setDataLen(0);
 		request.setIsSafeMode(true);
 		request.setData(Unpooled.EMPTY_BUFFER);
-		hashBalancer.getServerNodeByKey(key).getChannel().writeAndFlush(request);
-		
-		SeaLionResponse response = getResponse(responseQueue, opaque);
+		SeaLionResponse response = getResponse(sendAsync(request));
 		if (response == null) {
 			// May because connection is broken or current thread is interrupted.
 			return null;
@@ -870,20 +1942,13 @@ public class SeaLionClient implements SeaLionClientOperation, SeaLionServerMonit
 	public Integer getTaskQueueSize() {
 		// The key doesn't have any meaning here.
 		String key = "N/A";
-		BlockingQueue<SeaLionResponse> responseQueue = ensureResponseQueue();
-		String opaque = OpaqueGenerator.generate();
-		opaqueToThreadId.put(opaque, Thread.currentThread().getId());
-		
 		SeaLionRequest request = new SeaLionRequest();
 		request.setCommand(Commands.TASK_QUEUE_SIZE);
 		request.setKey(key);
-		request.setOpaque(opaque);
 		request.setDataLen(0);
 		request.setIsSafeMode(true);
 		request.setData(Unpooled.EMPTY_BUFFER);
-		hashBalancer.getServerNodeByKey(key).getChannel().writeAndFlush(request);
-		
-		SeaLionResponse response = getResponse(responseQueue, opaque);
+		SeaLionResponse response = getResponse(sendAsync(request));
 		if (response == null) {
 			// May because connection is broken or current thread is interrupted.
 			return null;
@@ -908,20 +1973,13 @@ public class SeaLionClient implements SeaLionClientOperation, SeaLionServerMonit
 	public Integer getNumOfConn() {
 		// The key doesn't have any meaning here.
 		String key = "N/A";
-		BlockingQueue<SeaLionResponse> responseQueue = ensureResponseQueue();
-		String opaque = OpaqueGenerator.generate();
-		opaqueToThreadId.put(opaque, Thread.currentThread().getId());
-		
 		SeaLionRequest request = new SeaLionRequest();
 		request.setCommand(Commands.NUM_CONN);
 		request.setKey(key);
-		request.setOpaque(opaque);
 		request.setDataLen(0);
 		request.setIsSafeMode(true);
 		request.setData(Unpooled.EMPTY_BUFFER);
-		hashBalancer.getServerNodeByKey(key).getChannel().writeAndFlush(request);
-		
-		SeaLionResponse response = getResponse(responseQueue, opaque);
+		SeaLionResponse response = getResponse(sendAsync(request));
 		if (response == null) {
 			// May because connection is broken or current thread is interrupted.
 			return null;
@@ -3,6 +3,10 @@ package io.sunhe.sealion.client;
 import io.netty.channel.ChannelFuture;
 import io.sunhe.sealion.protocol.SeaLionResponse;
 
+import java.util.Collection;
+import java.util.Map;
+import java.util.Set;
+
 /**
  * @author sunhe
  * @date 2015年3月15日 上午11:16:25
@@ -249,4 +253,52 @@ public interface SeaLionClientOperation {
 	 */
 	public String getCas(String key);
 	
+	/**
+	 * Get the values of many keys at once.
+	 * The keys are grouped by server node, and a single MGET request is sent to 
+	 * every node in parallel.
+	 * 
+	 * @param keys
+	 * @return The values retrieved, the keys which don't exist in the server or whose 
+	 * 		nodes don't respond in time are absent.
+	 * @author sunhe
+	 * @date 2015年6月19日 下午4:02:11
+	 */
+	public Map<String, byte[]> getMultiBytes(Collection<String> keys);
+	
+	/**
+	 * The string version of getMultiBytes.
+	 * 
+	 * @param keys
+	 * @return
+	 * @author sunhe
+	 * @date 2015年6月19日 下午4:03:30
+	 */
+	public Map<String, String> getMultiStrings(Collection<String> keys);
+	
+	/**
+	 * Set many key-values at once.
+	 * The key-values are grouped by server node, and a single MSET request is sent to 
+	 * every node in parallel.
+	 * 
+	 * @param keyValues
+	 * @param timeStamp The expiration time stamp of all key-values. 0 signifies never expiring.
+	 * @return The keys set successfully.
+	 * @author sunhe
+	 * @date 2015年6月19日 下午4:05:02
+	 */
+	public Set<String> setMultiBytes(Map<String, byte[]> keyValues, long timeStamp);
+	
+	/**
+	 * Delete many keys at once.
+	 * The keys are grouped by server node, and a single MDELETE request is sent to 
+	 * every node in parallel.
+	 * 
+	 * @param keys
+	 * @return The keys deleted successfully.
+	 * @author sunhe
+	 * @date 2015年6月19日 下午4:06:20
+	 */
+	public Set<String> deleteMultiValues(Collection<String> keys);
+	
 }
@@ -0,0 +1,271 @@
+package io.sunhe.sealion.client;
+
+import io.sunhe.sealion.util.TimeStampFormatter;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The in-process cache of the values read or written by the client, bounded by
+ * bytes, with the least recently used values evicted first.
+ *
+ * A cached value is fresh for the TTL after it's fetched or revalidated, during
+ * which it's served without any round trip. After that it's stale, and it's served
+ * only if the CAS of the key on the server is still the same, which is checked with
+ * the CAS command, whose response carries no value. A value never outlives the
+ * expiration time stamp of its item, which is known if it's written by the client.
+ * The writes of the other clients are seen within the TTL.
+ *
+ * Thread-safe.
+ *
+ * @author sunhe
+ * @date 2015年6月24日 上午9:20:10
+ */
+public class SeaLionNearCache {
+
+	/**
+	 * The bytes of an entry besides its key and value.
+	 */
+	private static final int ENTRY_OVERHEAD = 64;
+
+	private long maxBytes;
+
+	/**
+	 * In millisecond unit.
+	 */
+	private long ttl;
+
+	private long bytes = 0;
+
+	/**
+	 * In access order, guarded by the lock of the cache.
+	 */
+	private LinkedHashMap<String, Entry> entries = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+
+	private volatile long numOfHits = 0;
+
+	private volatile long numOfRevalidations = 0;
+
+	private volatile long numOfMisses = 0;
+
+	private volatile long numOfEvictions = 0;
+
+	/**
+	 * @param maxBytes The maximum bytes of the keys and values cached.
+	 * @param ttl The time in millisecond unit a value is served without revalidation.
+	 * @author sunhe
+	 * @date 2015年6月24日 上午9:25:30
+	 */
+	public SeaLionNearCache(long maxBytes, long ttl) {
+		if (maxBytes <= 0) {
+			throw new IllegalArgumentException("Illegal near cache size: " + maxBytes);
+		}
+		if (ttl < 0) {
+			throw new IllegalArgumentException("Illegal near cache TTL: " + ttl);
+		}
+		this.maxBytes = maxBytes;
+		this.ttl = ttl;
+	}
+
+	/**
+	 * @param key
+	 * @return The entry of the key, which is stale if isFresh() is false, null if
+	 * 		the key isn't cached or its item has expired.
+	 * @author sunhe
+	 * @date 2015年6月24日 上午9:30:15
+	 */
+	public synchronized Entry get(String key) {
+		Entry entry = entries.get(key);
+		if (entry == null) {
+			numOfMisses++;
+			return null;
+		}
+		long now = TimeStampFormatter.getCurrentTimeStamp();
+		if (entry.timeStamp != 0 && entry.timeStamp <= now) {
+			remove(key);
+			numOfMisses++;
+			return null;
+		}
+		if (entry.isFresh()) {
+			numOfHits++;
+		}
+		return entry;
+	}
+
+	/**
+	 * Cache the value of the key.
+	 *
+	 * @param key
+	 * @param value Not copied, mustn't be changed afterwards.
+	 * @param cas The CAS of the key on the server.
+	 * @param timeStamp The expiration time stamp of the item, 0 if it never expires
+	 * 		or if it's unknown.
+	 * @author sunhe
+	 * @date 2015年6月24日 上午9:33:40
+	 */
+	public synchronized void put(String key, byte[] value, String cas, long timeStamp) {
+		remove(key);
+		Entry entry = new Entry(value, cas, timeStamp);
+		entry.validUntil = TimeStampFormatter.getCurrentTimeStamp() + ttl;
+		if (entry.size(key) > maxBytes) {
+			return;
+		}
+		entries.put(key, entry);
+		bytes += entry.size(key);
+		Iterator<Map.Entry<String, Entry>> iterator = entries.entrySet().iterator();
+		while (bytes > maxBytes && iterator.hasNext()) {
+			Map.Entry<String, Entry> eldest = iterator.next();
+			bytes -= eldest.getValue().size(eldest.getKey());
+			iterator.remove();
+			numOfEvictions++;
+		}
+	}
+
+	/**
+	 * Revalidate the stale entry with the CAS of the key on the server: the entry 
+	 * is fresh again if it's the same, or removed otherwise.
+	 *
+	 * @param key
+	 * @param entry
+	 * @param cas The CAS of the key on the server, null if the key doesn't exist.
+	 * @return True if the value of the entry can be served.
+	 * @author sunhe
+	 * @date 2015年6月24日 上午9:36:20
+	 */
+	public synchronized boolean revalidate(String key, Entry entry, String cas) {
+		if (cas != null && cas.equals(entry.cas)) {
+			if (entries.get(key) == entry) {
+				entry.validUntil = TimeStampFormatter.getCurrentTimeStamp() + ttl;
+			}
+			numOfRevalidations++;
+			return true;
+		}
+		if (entries.get(key) == entry) {
+			remove(key);
+		}
+		numOfMisses++;
+		return false;
+	}
+
+	/**
+	 * Remove the key, once it's written, deleted, or found to be changed.
+	 *
+	 * @param key
+	 * @author sunhe
+	 * @date 2015年6月24日 上午9:38:05
+	 */
+	public synchronized void invalidate(String key) {
+		remove(key);
+	}
+
+	/**
+	 * @author sunhe
+	 * @date 2015年6月24日 上午9:38:50
+	 */
+	public synchronized void clear() {
+		entries.clear();
+		bytes = 0;
+	}
+
+	private void remove(String key) {
+		Entry entry = entries.remove(key);
+		if (entry != null) {
+			bytes -= entry.size(key);
+		}
+	}
+
+	/**
+	 * @return The bytes of the keys and values cached.
+	 * @author sunhe
+	 * @date 2015年6月24日 上午9:40:10
+	 */
+	public synchronized long getBytes() {
+		return bytes;
+	}
+
+	/**
+	 * @return The number of reads served while the value was fresh.
+	 * @author sunhe
+	 * @date 2015年6月24日 上午9:40:45
+	 */
+	public long getNumOfHits() {
+		return numOfHits;
+	}
+
+	/**
+	 * @return The number of stale values found to be unchanged on the server.
+	 * @author sunhe
+	 * @date 2015年6月24日 上午9:41:20
+	 */
+	public long getNumOfRevalidations() {
+		return numOfRevalidations;
+	}
+
+	/**
+	 * @return The number of reads of the keys not cached, expired, or changed on the server.
+	 * @author sunhe
+	 * @date 2015年6月24日 上午9:41:50
+	 */
+	public long getNumOfMisses() {
+		return numOfMisses;
+	}
+
+	/**
+	 * @return The number of values evicted to make room.
+	 * @author sunhe
+	 * @date 2015年6月24日 上午9:42:25
+	 */
+	public long getNumOfEvictions() {
+		return numOfEvictions;
+	}
+
+	/**
+	 * A cached value with its CAS.
+	 *
+	 * @author sunhe
+	 * @date 2015年6月24日 上午9:44:00
+	 */
+	public static class Entry {
+
+		private byte[] value;
+
+		private String cas;
+
+		private long timeStamp;
+
+		/**
+		 * In millisecond unit, written under the lock of the cache.
+		 */
+		private volatile long validUntil;
+
+		private Entry(byte[] value, String cas, long timeStamp) {
+			this.value = value;
+			this.cas = cas;
+			this.timeStamp = timeStamp;
+		}
+
+		public byte[] getValue() {
+			return value;
+		}
+
+		public String getCas() {
+			return cas;
+		}
+
+		/**
+		 * @return False if the CAS must be revalidated before the value is served.
+		 * @author sunhe
+		 * @date 2015年6月24日 上午9:46:30
+		 */
+		public boolean isFresh() {
+			return TimeStampFormatter.getCurrentTimeStamp() < validUntil;
+		}
+
+		private long size(String key) {
+			return ENTRY_OVERHEAD + 2L * key.length() + value.length;
+		}
+
+	}
+
+}
@@ -0,0 +1,473 @@
+package io.sunhe.sealion.client;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.util.AttributeKey;
+import io.netty.util.Timeout;
+import io.netty.util.Timer;
+import io.netty.util.TimerTask;
+import io.netty.util.concurrent.Future;
+import io.netty.util.concurrent.GenericFutureListener;
+import io.sunhe.sealion.client.hash.HashBalancer;
+import io.sunhe.sealion.protocol.SeaLionResponse;
+import io.sunhe.sealion.protocol.Statuses;
+import io.sunhe.sealion.util.Logger;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keep the pool of connections of every server node full, and the node on the
+ * hash ring as long as it's reachable.
+ *
+ * Once a connection is broken, it's reconnected in the background with exponential
+ * backoff, from minDelay up to maxDelay. Once the last connection of a node is broken,
+ * the node is removed from the ring at once, and it's re-admitted only after its pool
+ * is full again and none of its connections is broken for the hold-down, so that a
+ * flapping node doesn't move its keys back and forth. The backoff is reset only
+ * once the node is re-admitted. A node removed from the ring is marked as holding
+ * stale replicas, see SeaLionServerNode.markReplicaStale(String).
+ *
+ * By default, a node is re-admitted whether it was restarted or not. A node that
+ * was only unreachable kept its memory, so it serves the values of its keys from
+ * before the outage, while the writes meanwhile went to the other nodes. That's
+ * fine for a cache whose values may be stale for a while, or expire soon. If it
+ * isn't, see setStartTimeProbe(SeaLionStartTimeProbe), which keeps such a node
+ * off the ring until it's restarted with empty memory, at the cost of its share
+ * of the capacity meanwhile.
+ *
+ * Thread-safe, the connections are changed under the lock of the reconnector.
+ *
+ * @author sunhe
+ * @date 2015年6月23日 下午2:10:15
+ */
+public class SeaLionReconnector {
+
+	/**
+	 * The attribute of the channel that holds its server node.
+	 */
+	public static final AttributeKey<SeaLionServerNode> NODE_KEY = AttributeKey.valueOf("serverNode");
+
+	/**
+	 * The default delay in millisecond unit before the first reconnection.
+	 */
+	public static final long DEFAULT_MIN_DELAY = 100;
+
+	/**
+	 * The default maximum delay in millisecond unit between reconnections.
+	 */
+	public static final long DEFAULT_MAX_DELAY = 30000;
+
+	/**
+	 * The default hold-down in millisecond unit before a node is re-admitted.
+	 */
+	public static final long DEFAULT_HOLD_DOWN = 10000;
+
+	private Bootstrap bootstrap;
+
+	private Timer timer;
+
+	private HashBalancer hashBalancer;
+
+	private int connectionsPerNode;
+
+	/**
+	 * All server nodes of the client, keyed by the socket addresses,
+	 * including those removed from the ring.
+	 */
+	private Map<String, SeaLionServerNode> nodes;
+
+	private Map<String, NodeState> states = new HashMap<String, NodeState>();
+
+	private long minDelay = DEFAULT_MIN_DELAY;
+
+	private long maxDelay = DEFAULT_MAX_DELAY;
+
+	private long holdDown = DEFAULT_HOLD_DOWN;
+
+	private Random random = new Random();
+
+	private boolean isClosed = false;
+
+	/**
+	 * Null if the nodes are re-admitted whether restarted or not.
+	 */
+	private SeaLionStartTimeProbe startTimeProbe;
+
+	/**
+	 * @param bootstrap Connects to a node with connect(SocketAddress).
+	 * @param timer Schedules the reconnections and the re-admissions.
+	 * @param hashBalancer
+	 * @param nodes All server nodes of the client, whether connected or not.
+	 * @param connectionsPerNode The size of the pool of every node.
+	 * @author sunhe
+	 * @date 2015年6月23日 下午2:15:40
+	 */
+	public SeaLionReconnector(Bootstrap bootstrap, Timer timer, HashBalancer hashBalancer,
+			Map<String, SeaLionServerNode> nodes, int connectionsPerNode) {
+		this.bootstrap = bootstrap;
+		this.timer = timer;
+		this.hashBalancer = hashBalancer;
+		this.nodes = new HashMap<String, SeaLionServerNode>(nodes);
+		this.connectionsPerNode = connectionsPerNode;
+	}
+
+	/**
+	 * @param minDelay The delay in millisecond unit before the first reconnection.
+	 * @param maxDelay The maximum delay in millisecond unit between reconnections.
+	 * @param holdDown The time in millisecond unit a node must stay connected
+	 * 		before it's re-admitted to the ring.
+	 * @author sunhe
+	 * @date 2015年6月23日 下午2:18:25
+	 */
+	public synchronized void setPolicy(long minDelay, long maxDelay, long holdDown) {
+		if (minDelay <= 0 || maxDelay < minDelay) {
+			throw new IllegalArgumentException("Illegal reconnection delays: " + minDelay + ", " + maxDelay);
+		}
+		if (holdDown < 0) {
+			throw new IllegalArgumentException("Illegal hold-down: " + holdDown);
+		}
+		this.minDelay = minDelay;
+		this.maxDelay = maxDelay;
+		this.holdDown = holdDown;
+	}
+
+	/**
+	 * Re-admit a node only if it was restarted while it was off the ring, i.e.,
+	 * its start time has changed, so that it doesn't serve the values it kept
+	 * from before the outage. A node that kept its memory stays off the ring,
+	 * though connected, until it's restarted. A node whose start time was never
+	 * learned, e.g., one that failed to connect when the client was constructed,
+	 * is re-admitted as usual.
+	 *
+	 * The start times of the nodes on the ring are learned here, which blocks
+	 * until they respond or time out, and again at every re-admission.
+	 *
+	 * @param startTimeProbe Null to re-admit the nodes whether restarted or not.
+	 * @author sunhe
+	 * @date 2015年6月29日 下午2:30:10
+	 */
+	public void setStartTimeProbe(SeaLionStartTimeProbe startTimeProbe) {
+		Map<SeaLionServerNode, Future<SeaLionResponse>> futures =
+				new HashMap<SeaLionServerNode, Future<SeaLionResponse>>();
+		synchronized (this) {
+			this.startTimeProbe = startTimeProbe;
+			if (startTimeProbe == null) {
+				return;
+			}
+			for (SeaLionServerNode node : nodes.values()) {
+				Channel[] channels = node.getChannels();
+				if (channels.length > 0 && getState(node).startTime == 0
+						&& hashBalancer.getServerNodes().containsKey(node.getStrSocketAddress())) {
+					futures.put(node, startTimeProbe.probe(channels[0]));
+				}
+			}
+		}
+		for (Map.Entry<SeaLionServerNode, Future<SeaLionResponse>> entry : futures.entrySet()) {
+			long startTime = getStartTime(entry.getValue().awaitUninterruptibly());
+			synchronized (this) {
+				NodeState state = getState(entry.getKey());
+				if (state.startTime == 0) {
+					state.startTime = startTime;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Start to reconnect the nodes whose pools aren't full, e.g., the nodes
+	 * failed to connect when the client was constructed.
+	 *
+	 * @author sunhe
+	 * @date 2015年6月23日 下午2:20:10
+	 */
+	public synchronized void start() {
+		for (SeaLionServerNode node : nodes.values()) {
+			for (Channel channel : node.getChannels()) {
+				channel.attr(NODE_KEY).set(node);
+				if (! channel.isActive()) {
+					node.removeChannel(channel);
+				}
+			}
+			if (node.getChannels().length == 0) {
+				hashBalancer.removeServerNode(node);
+				node.markReplicaStale("not connected");
+			}
+			if (node.getChannels().length < connectionsPerNode) {
+				scheduleReconnection(node);
+			}
+		}
+	}
+
+	/**
+	 * Called once a connection is broken.
+	 *
+	 * @param channel
+	 * @author sunhe
+	 * @date 2015年6月23日 下午2:22:35
+	 */
+	public synchronized void channelInactive(Channel channel) {
+		SeaLionServerNode node = channel.attr(NODE_KEY).get();
+		if (isClosed || node == null) {
+			return;
+		}
+		NodeState state = getState(node);
+		// broken during the hold-down, start it over once reconnected.
+		if (state.holdDownTimeout != null) {
+			state.holdDownTimeout.cancel();
+			state.holdDownTimeout = null;
+		}
+		if (node.removeChannel(channel) == 0 && hashBalancer.removeServerNode(node)) {
+			Logger.log(node.getStrSocketAddress(), "Removed from the hash ring");
+			// the writes aren't replicated to it until it's re-admitted.
+			node.markReplicaStale("off the hash ring");
+		}
+		scheduleReconnection(node);
+	}
+
+	/**
+	 * Stop reconnecting, and close all connections.
+	 *
+	 * @author sunhe
+	 * @date 2015年6月23日 下午2:25:30
+	 */
+	public synchronized void close() {
+		isClosed = true;
+		for (NodeState state : states.values()) {
+			if (state.reconnectionTimeout != null) {
+				state.reconnectionTimeout.cancel();
+			}
+			if (state.holdDownTimeout != null) {
+				state.holdDownTimeout.cancel();
+			}
+		}
+		for (SeaLionServerNode node : nodes.values()) {
+			for (Channel channel : node.getChannels()) {
+				if (channel.isOpen()) {
+					channel.close();
+				}
+			}
+		}
+	}
+
+	private NodeState getState(SeaLionServerNode node) {
+		NodeState state = states.get(node.getStrSocketAddress());
+		if (state == null) {
+			state = new NodeState();
+			states.put(node.getStrSocketAddress(), state);
+		}
+		return state;
+	}
+
+	/**
+	 * Schedule the reconnection of the node with the next delay of the backoff,
+	 * unless one is already scheduled or in progress.
+	 *
+	 * @param node
+	 * @author sunhe
+	 * @date 2015年6月23日 下午2:28:45
+	 */
+	private void scheduleReconnection(final SeaLionServerNode node) {
+		final NodeState state = getState(node);
+		if (state.reconnectionTimeout != null || state.numOfConnecting > 0) {
+			return;
+		}
+		state.delay = state.delay == 0 ? minDelay : Math.min(state.delay * 2, maxDelay);
+		// jitter, so that the clients don't reconnect to a restarted node all at once.
+		long delay = state.delay / 2 + (long) (random.nextDouble() * (state.delay / 2 + 1));
+		state.reconnectionTimeout = timer.newTimeout(new TimerTask() {
+
+			public void run(Timeout timeout) throws Exception {
+				reconnect(node);
+			}
+
+		}, delay, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Connect to the node until its pool is full.
+	 *
+	 * @param node
+	 * @author sunhe
+	 * @date 2015年6月23日 下午2:32:10
+	 */
+	private synchronized void reconnect(final SeaLionServerNode node) {
+		NodeState state = getState(node);
+		state.reconnectionTimeout = null;
+		if (isClosed) {
+			return;
+		}
+		int numOfMissing = connectionsPerNode - node.getChannels().length;
+		if (numOfMissing <= 0 && state.holdDownTimeout == null
+				&& ! hashBalancer.getServerNodes().containsKey(node.getStrSocketAddress())) {
+			scheduleAdmission(node);
+		}
+		for (int i = 0; i < numOfMissing; i++) {
+			state.numOfConnecting++;
+			bootstrap.connect(node.getSocketAddress()).addListener(new ChannelFutureListener() {
+
+				public void operationComplete(ChannelFuture future) throws Exception {
+					connected(node, future);
+				}
+
+			});
+		}
+	}
+
+	private synchronized void connected(SeaLionServerNode node, ChannelFuture future) {
+		NodeState state = getState(node);
+		state.numOfConnecting--;
+		if (isClosed) {
+			future.channel().close();
+			return;
+		}
+		if (! future.isSuccess() || ! future.channel().isActive()) {
+			future.channel().close();
+			if (state.numOfConnecting == 0) {
+				scheduleReconnection(node);
+			}
+			return;
+		}
+		future.channel().attr(NODE_KEY).set(node);
+		node.addChannel(future.channel());
+		Logger.log(node.getStrSocketAddress(), "Reconnected");
+		if (state.numOfConnecting > 0) {
+			return;
+		}
+		if (node.getChannels().length < connectionsPerNode) {
+			scheduleReconnection(node);
+		}
+		else if (hashBalancer.getServerNodes().containsKey(node.getStrSocketAddress())) {
+			state.delay = 0;
+		}
+		else if (state.holdDownTimeout == null) {
+			scheduleAdmission(node);
+		}
+	}
+
+	/**
+	 * Re-admit the node to the ring after the hold-down, if it was restarted
+	 * in case of the start time probe. The node is still held down until the
+	 * probe is responded.
+	 *
+	 * @param node
+	 * @author sunhe
+	 * @date 2015年6月23日 下午2:36:50
+	 */
+	private void scheduleAdmission(final SeaLionServerNode node) {
+		final NodeState state = getState(node);
+		state.holdDownTimeout = timer.newTimeout(new TimerTask() {
+
+			public void run(final Timeout timeout) throws Exception {
+				synchronized (SeaLionReconnector.this) {
+					if (state.holdDownTimeout != timeout || isClosed) {
+						return;
+					}
+					Channel[] channels = node.getChannels();
+					if (startTimeProbe == null || channels.length == 0) {
+						state.holdDownTimeout = null;
+						admit(node);
+						return;
+					}
+					startTimeProbe.probe(channels[0]).addListener(new GenericFutureListener<Future<SeaLionResponse>>() {
+
+						public void operationComplete(Future<SeaLionResponse> future) throws Exception {
+							admitIfRestarted(node, timeout, getStartTime(future));
+						}
+
+					});
+				}
+			}
+
+		}, holdDown, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * @param node
+	 * @param timeout The hold-down the probe was sent for.
+	 * @param startTime 0 if the probe failed.
+	 * @author sunhe
+	 * @date 2015年6月29日 下午2:40:35
+	 */
+	private synchronized void admitIfRestarted(SeaLionServerNode node, Timeout timeout, long startTime) {
+		NodeState state = getState(node);
+		// broken meanwhile, held down again once reconnected.
+		if (state.holdDownTimeout != timeout || isClosed) {
+			return;
+		}
+		state.holdDownTimeout = null;
+		if (startTime == 0) {
+			scheduleAdmission(node);
+		}
+		else if (startTime == state.startTime) {
+			Logger.log(node.getStrSocketAddress(), "Kept its memory, not re-admitted until restarted");
+		}
+		else {
+			// unless it's the first time the start time is learned.
+			if (state.startTime != 0) {
+				node.clearReplicaStale();
+			}
+			state.startTime = startTime;
+			admit(node);
+		}
+	}
+
+	private void admit(SeaLionServerNode node) {
+		if (node.getChannels().length > 0 && hashBalancer.addServerNode(node)) {
+			getState(node).delay = 0;
+			Logger.log(node.getStrSocketAddress(), "Re-admitted to the hash ring");
+		}
+	}
+
+	/**
+	 * @param future Done.
+	 * @return The start time responded, 0 if the probe failed.
+	 * @author sunhe
+	 * @date 2015年6月29日 下午2:44:20
+	 */
+	private static long getStartTime(Future<SeaLionResponse> future) {
+		if (! future.isSuccess()) {
+			return 0;
+		}
+		SeaLionResponse response = future.getNow();
+		if (! Statuses.SUCCESS.equals(response.getStatus()) || response.getData().readableBytes() < 8) {
+			return 0;
+		}
+		return response.getData().getLong(response.getData().readerIndex());
+	}
+
+	/**
+	 * The reconnection state of a node, guarded by the lock of the reconnector.
+	 *
+	 * @author sunhe
+	 * @date 2015年6月23日 下午2:40:05
+	 */
+	private static class NodeState {
+
+		/**
+		 * The current delay of the backoff in millisecond unit, 0 if reset.
+		 */
+		private long delay = 0;
+
+		private Timeout reconnectionTimeout;
+
+		/**
+		 * The number of connections in progress.
+		 */
+		private int numOfConnecting = 0;
+
+		private Timeout holdDownTimeout;
+
+		/**
+		 * The start time of the node in millisecond unit, 0 if unknown,
+		 * see setStartTimeProbe(SeaLionStartTimeProbe).
+		 */
+		private long startTime = 0;
+
+	}
+
+}
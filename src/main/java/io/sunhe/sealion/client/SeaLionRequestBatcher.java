@@ -0,0 +1,136 @@
+package io.sunhe.sealion.client;
+
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelOutboundHandlerAdapter;
+import io.netty.channel.ChannelPromise;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Coalesce the flushes of the requests written to a single channel, so that
+ * the requests of many threads go out with one syscall.
+ *
+ * Every request is written with writeAndFlush as usual, but the flush is deferred
+ * until either the batch is full or the batching window is over. With a window of
+ * 0, the flush is deferred only until the tasks already queued in the event loop,
+ * i.e., the requests of the other threads written in the meantime, are run, so
+ * no latency is added to a lone request.
+ *
+ * Not thread-safe, every channel has its own instance, which is accessed only in
+ * the event loop of the channel, except that the counters can be read by any thread.
+ *
+ * @author sunhe
+ * @date 2015年6月21日 上午10:20:14
+ */
+public class SeaLionRequestBatcher extends ChannelOutboundHandlerAdapter {
+
+	/**
+	 * In nanosecond unit.
+	 */
+	private long window;
+
+	private int maxBatchSize;
+
+	/**
+	 * The number of requests written since the last flush.
+	 */
+	private int pendingWrites = 0;
+
+	private boolean isFlushScheduled = false;
+
+	private ChannelHandlerContext ctx;
+
+	private volatile long numOfFlushes = 0;
+
+	private volatile long numOfFlushedRequests = 0;
+
+	private final Runnable flushTask = new Runnable() {
+
+		public void run() {
+			isFlushScheduled = false;
+			if (pendingWrites > 0) {
+				flushNow(ctx);
+			}
+		}
+
+	};
+
+	/**
+	 * @param window The batching window in microsecond unit, 0 signifies flushing
+	 * 		once the requests queued in the event loop are written.
+	 * @param maxBatchSize The batch is flushed at once if it's so large.
+	 * @author sunhe
+	 * @date 2015年6月21日 上午10:24:36
+	 */
+	public SeaLionRequestBatcher(long window, int maxBatchSize) {
+		if (window < 0) {
+			throw new IllegalArgumentException("Illegal batching window: " + window);
+		}
+		if (maxBatchSize < 1) {
+			throw new IllegalArgumentException("Illegal batch size: " + maxBatchSize);
+		}
+		this.window = TimeUnit.MICROSECONDS.toNanos(window);
+		this.maxBatchSize = maxBatchSize;
+	}
+
+	@Override
+	public void handlerAdded(ChannelHandlerContext ctx) throws Exception {
+		this.ctx = ctx;
+	}
+
+	@Override
+	public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) throws Exception {
+		pendingWrites++;
+		ctx.write(msg, promise);
+	}
+
+	@Override
+	public void flush(ChannelHandlerContext ctx) throws Exception {
+		if (pendingWrites >= maxBatchSize) {
+			flushNow(ctx);
+		}
+		else if (! isFlushScheduled) {
+			isFlushScheduled = true;
+			if (window == 0) {
+				ctx.channel().eventLoop().execute(flushTask);
+			}
+			else {
+				ctx.channel().eventLoop().schedule(flushTask, window, TimeUnit.NANOSECONDS);
+			}
+		}
+	}
+
+	@Override
+	public void close(ChannelHandlerContext ctx, ChannelPromise promise) throws Exception {
+		if (pendingWrites > 0) {
+			flushNow(ctx);
+		}
+		ctx.close(promise);
+	}
+
+	private void flushNow(ChannelHandlerContext ctx) {
+		numOfFlushes++;
+		numOfFlushedRequests += pendingWrites;
+		pendingWrites = 0;
+		ctx.flush();
+	}
+
+	/**
+	 * @return The number of flushes so far.
+	 * @author sunhe
+	 * @date 2015年6月21日 上午10:30:05
+	 */
+	public long getNumOfFlushes() {
+		return numOfFlushes;
+	}
+
+	/**
+	 * @return The number of requests flushed so far.
+	 * @author sunhe
+	 * @date 2015年6月21日 上午10:30:40
+	 */
+	public long getNumOfFlushedRequests() {
+		return numOfFlushedRequests;
+	}
+
+}
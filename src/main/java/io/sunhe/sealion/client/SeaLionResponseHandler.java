@@ -1,18 +1,17 @@
 package io.sunhe.sealion.client;
 
-import java.net.InetSocketAddress;
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.ConcurrentHashMap;
+import java.nio.channels.ClosedChannelException;
 
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.ChannelInboundHandlerAdapter;
 import io.netty.channel.ChannelHandler.Sharable;
-import io.sunhe.sealion.client.hash.HashBalancer;
 import io.sunhe.sealion.protocol.SeaLionResponse;
 import io.sunhe.sealion.util.Logger;
 
 /**
  * Process the SeaLion response POJO.
+ * The response completes the request of the same opaque in the in-flight table
+ * of the connection, and the broken connection is handed to the reconnector.
  * Thread-safe
  * 
  * @author sunhe
@@ -21,20 +20,10 @@ import io.sunhe.sealion.util.Logger;
 @Sharable
 public class SeaLionResponseHandler extends ChannelInboundHandlerAdapter {
 
-	private ConcurrentHashMap<String, Long> opaqueToThreadId;
+	private volatile SeaLionReconnector reconnector;
 	
-	private ConcurrentHashMap<Long, BlockingQueue<SeaLionResponse>> threadIdToResponseQueue;
-	
-	private volatile HashBalancer hashBalancer;
-	
-	public SeaLionResponseHandler(ConcurrentHashMap<String, Long> opaqueToThreadId, 
-			ConcurrentHashMap<Long, BlockingQueue<SeaLionResponse>> threadIdToResponseQueue) {
-		this.opaqueToThreadId = opaqueToThreadId;
-		this.threadIdToResponseQueue = threadIdToResponseQueue;
-	}
-	
-	public synchronized void setHashBalancer(HashBalancer hashBalancer) {
-		this.hashBalancer = hashBalancer;
+	public synchronized void setReconnector(SeaLionReconnector reconnector) {
+		this.reconnector = reconnector;
 	}
 	
 	@Override
@@ -45,18 +34,19 @@ public class SeaLionResponseHandler extends ChannelInboundHandlerAdapter {
 	@Override
 	public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
 		if (msg instanceof SeaLionResponse) {
+			SeaLionResponse response = (SeaLionResponse) msg;
+			InFlightTable inFlightTable = ctx.channel().attr(InFlightTable.KEY).get();
+			boolean isCompleted = false;
 			try {
-				SeaLionResponse response = (SeaLionResponse) msg;
-				String opaque = response.getOpaque();
-				Long threadId = opaqueToThreadId.get(opaque);
-				if (threadId == null) {
-					throw new IllegalStateException("Received a response that no thread'll process. Opaque: " + opaque);
-				}
-				BlockingQueue<SeaLionResponse> responseQueue = threadIdToResponseQueue.get(threadId);
-				responseQueue.offer(response);
+				isCompleted = inFlightTable.complete(Integer.parseInt(response.getOpaque()), response);
+			}
+			catch (NumberFormatException e) {
+				// not an opaque of this client.
 			}
-			catch (IllegalStateException e) {
-				e.printStackTrace();
+			if (! isCompleted) {
+				// The request may have timed out.
+				Logger.log(ctx.channel().remoteAddress().toString(), 
+						"Received a response that no request waits for. Opaque: " + response.getOpaque());
 			}
 		}
 	}
@@ -64,11 +54,11 @@ public class SeaLionResponseHandler extends ChannelInboundHandlerAdapter {
 	@Override
 	public void channelInactive(ChannelHandlerContext ctx) throws Exception {
 		Logger.log(ctx.channel().remoteAddress().toString(), "Connecton broken");
-		SeaLionServerNode node = new SeaLionServerNode(
-				(InetSocketAddress) ctx.channel().remoteAddress(), SeaLionServerNode.WEIGHT_NORMAL);
-		node = hashBalancer.getServerNodes().get(node.getStrSocketAddress());
-		if (node != null) {
-			hashBalancer.removeServerNode(node);
+		ctx.channel().attr(InFlightTable.KEY).get().failAll(new ClosedChannelException());
+		SeaLionReconnector reconnector = this.reconnector;
+		// the broken connections before the client is started are handled by SeaLionReconnector.start().
+		if (reconnector != null) {
+			reconnector.channelInactive(ctx.channel());
 		}
 		ctx.channel().close();
 	}
@@ -2,8 +2,13 @@ package io.sunhe.sealion.client;
 
 import io.netty.channel.Channel;
 import io.sunhe.sealion.server.SeaLionServer;
+import io.sunhe.sealion.util.Logger;
 
 import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.apache.commons.lang3.StringUtils;
 
@@ -33,9 +38,21 @@ public class SeaLionServerNode implements Comparable<SeaLionServerNode> {
 	private InetSocketAddress socketAddress;
 	
 	/**
-	 * The socket channel associated with the socket address.
+	 * The pool of socket channels associated with the socket address.
+	 * Copied on write, so it can be read without locking.
 	 */
-	private volatile Channel channel;
+	private volatile Channel[] channels = new Channel[0];
+	
+	/**
+	 * Whether a thread of the client event loops prefers the channel registered 
+	 * to itself, see getChannel().
+	 */
+	private volatile boolean isPinned;
+	
+	/**
+	 * Whether the replicas on the node may be outdated, see markReplicaStale(String).
+	 */
+	private final AtomicBoolean isReplicaStale = new AtomicBoolean();
 	
 	/**
 	 * Should be WEIGHT_LOW or WEIGHT_NORMAL or WEIGHT_HIGH.
@@ -146,23 +163,135 @@ public class SeaLionServerNode implements Comparable<SeaLionServerNode> {
 	}
 	
 	/**
+	 * Add a channel to the pool.
 	 * 
 	 * @param channel
 	 * @author sunhe
 	 * @date 2015年3月18日 下午10:15:31
 	 */
-	public synchronized void setChannel(Channel channel) {
-		this.channel = channel;
+	public synchronized void addChannel(Channel channel) {
+		Channel[] newChannels = Arrays.copyOf(channels, channels.length + 1);
+		newChannels[channels.length] = channel;
+		channels = newChannels;
 	}
 	
 	/**
+	 * Remove a channel from the pool, e.g., once it's broken.
 	 * 
-	 * @return
+	 * @param channel
+	 * @return The number of channels left in the pool.
+	 * @author sunhe
+	 * @date 2015年6月20日 下午4:12:30
+	 */
+	public synchronized int removeChannel(Channel channel) {
+		List<Channel> newChannels = new ArrayList<Channel>(Arrays.asList(channels));
+		newChannels.remove(channel);
+		channels = newChannels.toArray(new Channel[newChannels.size()]);
+		return channels.length;
+	}
+	
+	/**
+	 * @return A copy of the pool.
+	 * @author sunhe
+	 * @date 2015年6月20日 下午4:13:45
+	 */
+	public Channel[] getChannels() {
+		return channels.clone();
+	}
+	
+	/**
+	 * @param isPinned Whether a thread of the client event loops prefers 
+	 * 		the channel registered to itself.
+	 * @author sunhe
+	 * @date 2015年6月20日 下午4:14:20
+	 */
+	public void setPinned(boolean isPinned) {
+		this.isPinned = isPinned;
+	}
+	
+	/**
+	 * @return Whether the replicas on the node may be outdated, in which case 
+	 * 		the node only serves the reads of the keys it's the primary of.
+	 * @author sunhe
+	 * @date 2015年6月25日 下午2:10:30
+	 */
+	public boolean isReplicaStale() {
+		return isReplicaStale.get();
+	}
+	
+	/**
+	 * Mark the replicas on the node as outdated, once it has been off the hash ring, 
+	 * during which the writes weren't replicated to it, or once a replicated write 
+	 * to it fails and cann't be undone. The client cann't tell which keys are 
+	 * affected, so it's logged once, and it lasts as long as the client, unless 
+	 * the node is found restarted with empty memory, see clearReplicaStale().
+	 * 
+	 * @param reason Logged along with the mark.
+	 * @author sunhe
+	 * @date 2015年6月25日 下午2:12:15
+	 */
+	public void markReplicaStale(String reason) {
+		if (isReplicaStale.compareAndSet(false, true)) {
+			Logger.log(getStrSocketAddress(), "Replicas marked as stale, no longer read as a replica: " + reason);
+		}
+	}
+	
+	/**
+	 * Clear the mark once the node is known to have been restarted, since a node 
+	 * with empty memory only misses, and the reads of the misses fall back to the 
+	 * primary, see SeaLionReconnector.setStartTimeProbe(SeaLionStartTimeProbe).
+	 * 
+	 * @author sunhe
+	 * @date 2015年6月30日 上午11:05:20
+	 */
+	public void clearReplicaStale() {
+		if (isReplicaStale.compareAndSet(true, false)) {
+			Logger.log(getStrSocketAddress(), "Replicas no longer stale, restarted");
+		}
+	}
+	
+	/**
+	 * Select a channel of the pool to send a request through, the one with the 
+	 * fewest requests in flight. If pinned, a thread of the client event loops, 
+	 * e.g., a listener of an asynchronous request, selects the channel registered 
+	 * to itself, so the request is written without any hand-off between threads.
+	 * 
+	 * @return The selected channel, null if the pool is empty.
 	 * @author sunhe
 	 * @date 2015年3月18日 下午10:15:38
 	 */
 	public Channel getChannel() {
-		return channel;
+		Channel[] channels = this.channels;
+		if (channels.length == 1) {
+			return channels[0];
+		}
+		Channel selected = null;
+		int minInFlight = Integer.MAX_VALUE;
+		for (Channel channel : channels) {
+			if (isPinned && channel.eventLoop().inEventLoop()) {
+				return channel;
+			}
+			int inFlight = channel.attr(InFlightTable.KEY).get().size();
+			if (inFlight < minInFlight) {
+				selected = channel;
+				minInFlight = inFlight;
+			}
+		}
+		return selected;
+	}
+	
+	/**
+	 * @return The number of requests in flight on all channels of the pool, 
+	 * 		i.e., the load of the node from the point of view of the client.
+	 * @author sunhe
+	 * @date 2015年6月24日 下午2:35:20
+	 */
+	public int getNumOfInFlight() {
+		int numOfInFlight = 0;
+		for (Channel channel : channels) {
+			numOfInFlight += channel.attr(InFlightTable.KEY).get().size();
+		}
+		return numOfInFlight;
 	}
 	
 	/**
@@ -0,0 +1,28 @@
+package io.sunhe.sealion.client;
+
+import io.netty.channel.Channel;
+import io.netty.util.concurrent.Future;
+import io.sunhe.sealion.protocol.SeaLionResponse;
+
+/**
+ * Ask a server node when it was started, so that the reconnector can tell a
+ * restarted node from one that kept its memory through the outage, see
+ * SeaLionReconnector.setStartTimeProbe(SeaLionStartTimeProbe).
+ *
+ * @author sunhe
+ * @date 2015年6月29日 下午2:20:40
+ */
+public interface SeaLionStartTimeProbe {
+
+	/**
+	 * Send START_TIME over the connection without blocking.
+	 *
+	 * @param channel A connection of the node.
+	 * @return The future of the response, whose data is the start time in
+	 * 		millisecond unit as a long.
+	 * @author sunhe
+	 * @date 2015年6月29日 下午2:22:15
+	 */
+	public Future<SeaLionResponse> probe(Channel channel);
+
+}
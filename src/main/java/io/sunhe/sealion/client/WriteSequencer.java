@@ -0,0 +1,120 @@
+package io.sunhe.sealion.client;
+
+import io.netty.util.concurrent.Future;
+import io.netty.util.concurrent.GlobalEventExecutor;
+import io.netty.util.concurrent.Promise;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Order the replicated writes of every key, so that its successors apply them
+ * in the same order as its primary node does.
+ *
+ * The keys are hashed into stripes, and every stripe has a queue of the writes,
+ * of which only the tail is kept: a write is queued with the promise it completes
+ * once it's applied to the primary and the successors, and it starts only after
+ * the write queued before, of any key of the stripe, is done. The writes of the
+ * keys in different stripes don't wait for each other.
+ *
+ * Thread-safe, the writes are queued under the lock of the sequencer, so that
+ * a multi-key write is queued in all its stripes at once, and the queues never
+ * wait for each other in a cycle.
+ *
+ * @author sunhe
+ * @date 2015年6月30日 上午10:10:25
+ */
+public class WriteSequencer {
+
+	/**
+	 * The default number of stripes.
+	 */
+	public static final int DEFAULT_NUM_OF_STRIPES = 1024;
+
+	private static final Future<Void> DONE = GlobalEventExecutor.INSTANCE.newSucceededFuture(null);
+
+	/**
+	 * The last write queued in every stripe.
+	 */
+	private Future<Void>[] tails;
+
+	/**
+	 * @param numOfStripes A power of 2.
+	 * @author sunhe
+	 * @date 2015年6月30日 上午10:12:40
+	 */
+	public WriteSequencer(int numOfStripes) {
+		if (numOfStripes <= 0 || (numOfStripes & (numOfStripes - 1)) != 0) {
+			throw new IllegalArgumentException("Illegal number of stripes: " + numOfStripes);
+		}
+		tails = newArray(numOfStripes);
+		for (int i = 0; i < numOfStripes; i++) {
+			tails[i] = DONE;
+		}
+	}
+
+	/**
+	 * @return A promise to complete once a write is done, whose listeners are
+	 * 		notified by the global event executor, and which may be waited for
+	 * 		by any thread but that one.
+	 * @author sunhe
+	 * @date 2015年6月30日 上午10:14:05
+	 */
+	public Promise<Void> newPromise() {
+		return GlobalEventExecutor.INSTANCE.newPromise();
+	}
+
+	/**
+	 * Queue a write of the key.
+	 *
+	 * @param key
+	 * @param done Completed once the write is done, whether it succeeded or not.
+	 * @return The future of the write queued before in the stripe, which the
+	 * 		write must wait for.
+	 * @author sunhe
+	 * @date 2015年6月30日 上午10:15:30
+	 */
+	public synchronized Future<Void> enqueue(String key, Future<Void> done) {
+		int stripe = stripeOf(key);
+		Future<Void> previous = tails[stripe];
+		tails[stripe] = done;
+		return previous;
+	}
+
+	/**
+	 * Queue a write of many keys in all their stripes at once.
+	 *
+	 * @param keys
+	 * @param done Completed once the write is done, whether it succeeded or not.
+	 * @return The futures of the writes queued before in the stripes, which the
+	 * 		write must wait for.
+	 * @author sunhe
+	 * @date 2015年6月30日 上午10:17:50
+	 */
+	public synchronized Collection<Future<Void>> enqueue(Collection<String> keys, Future<Void> done) {
+		Map<Integer, Future<Void>> previous = new HashMap<Integer, Future<Void>>();
+		for (String key : keys) {
+			int stripe = stripeOf(key);
+			if (! previous.containsKey(stripe)) {
+				previous.put(stripe, tails[stripe]);
+				tails[stripe] = done;
+			}
+		}
+		return previous.values();
+	}
+
+	@SuppressWarnings("unchecked")
+	private static Future<Void>[] newArray(int length) {
+		return new Future[length];
+	}
+
+	private int stripeOf(String key) {
+		int h = key.hashCode();
+		// spread the higher bits, as HashMap does.
+		h ^= (h >>> 20) ^ (h >>> 12);
+		h ^= (h >>> 7) ^ (h >>> 4);
+		return h & (tails.length - 1);
+	}
+
+}
@@ -0,0 +1,130 @@
+package io.sunhe.sealion.client.hash;
+
+import io.sunhe.sealion.util.Charsets;
+
+/**
+ * Base of the non-cryptographic hash algorithms, which place the i-th virtual
+ * node of a server node at the hash of "host:port-i".
+ *
+ * @author sunhe
+ * @date 2015年6月22日 上午9:40:12
+ */
+public abstract class AbstractKeyHashAlgorithm implements KeyHashAlgorithm {
+
+	/**
+	 * The longer keys are encoded into new arrays, rather than keeping so large
+	 * a scratch buffer per thread.
+	 */
+	private static final int MAX_SCRATCH_SIZE = 4096;
+
+	private static final ThreadLocal<byte[]> SCRATCH = new ThreadLocal<byte[]>() {
+
+		@Override
+		protected byte[] initialValue() {
+			return new byte[256];
+		}
+
+	};
+
+	public int hash(byte[] key) {
+		return hash(key, key.length);
+	}
+
+	public int hash(String key) {
+		// at most 3 bytes per char in UTF-8, a surrogate pair takes 4 bytes for 2 chars.
+		int maxLength = key.length() * 3;
+		byte[] scratch = SCRATCH.get();
+		if (maxLength > scratch.length) {
+			if (maxLength > MAX_SCRATCH_SIZE) {
+				return hash(key.getBytes(Charsets.UTF_8));
+			}
+			scratch = new byte[maxLength];
+			SCRATCH.set(scratch);
+		}
+		return hash(scratch, encodeUtf8(key, scratch));
+	}
+
+	/**
+	 * @param key The key in UTF-8.
+	 * @param length The length of the key, from the start of the array.
+	 * @return The position of the key on the ring.
+	 * @author sunhe
+	 * @date 2015年6月29日 上午10:16:20
+	 */
+	protected abstract int hash(byte[] key, int length);
+
+	public void hashNode(String node, int[] points, int offset, int numOfPoints) {
+		for (int i = 0; i < numOfPoints; i++) {
+			points[offset + i] = hash((node + "-" + i).getBytes(Charsets.UTF_8));
+		}
+	}
+
+	/**
+	 * Encode the string in UTF-8 exactly as String.getBytes does, i.e., an unpaired
+	 * surrogate is replaced with '?'.
+	 *
+	 * @param str
+	 * @param bytes Large enough for 3 bytes per char.
+	 * @return The number of bytes written.
+	 * @author sunhe
+	 * @date 2015年6月29日 上午10:20:05
+	 */
+	static int encodeUtf8(String str, byte[] bytes) {
+		int length = str.length();
+		int j = 0;
+		for (int i = 0; i < length; i++) {
+			char c = str.charAt(i);
+			if (c < 0x80) {
+				bytes[j++] = (byte) c;
+			}
+			else if (c < 0x800) {
+				bytes[j++] = (byte) (0xC0 | (c >> 6));
+				bytes[j++] = (byte) (0x80 | (c & 0x3F));
+			}
+			else if (c < Character.MIN_SURROGATE || c > Character.MAX_SURROGATE) {
+				bytes[j++] = (byte) (0xE0 | (c >> 12));
+				bytes[j++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+				bytes[j++] = (byte) (0x80 | (c & 0x3F));
+			}
+			else if (Character.isHighSurrogate(c) && i + 1 < length
+					&& Character.isLowSurrogate(str.charAt(i + 1))) {
+				int codePoint = Character.toCodePoint(c, str.charAt(++i));
+				bytes[j++] = (byte) (0xF0 | (codePoint >> 18));
+				bytes[j++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+				bytes[j++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+				bytes[j++] = (byte) (0x80 | (codePoint & 0x3F));
+			}
+			else {
+				bytes[j++] = '?';
+			}
+		}
+		return j;
+	}
+
+	/**
+	 * @param bytes
+	 * @param index
+	 * @return The int at the index, in little-endian.
+	 * @author sunhe
+	 * @date 2015年6月22日 上午9:42:30
+	 */
+	protected static int getIntLE(byte[] bytes, int index) {
+		return (bytes[index] & 0xFF)
+				| ((bytes[index + 1] & 0xFF) << 8)
+				| ((bytes[index + 2] & 0xFF) << 16)
+				| ((bytes[index + 3] & 0xFF) << 24);
+	}
+
+	/**
+	 * @param bytes
+	 * @param index
+	 * @return The long at the index, in little-endian.
+	 * @author sunhe
+	 * @date 2015年6月22日 上午9:43:15
+	 */
+	protected static long getLongLE(byte[] bytes, int index) {
+		return (getIntLE(bytes, index) & 0xFFFFFFFFL)
+				| ((long) getIntLE(bytes, index + 4) << 32);
+	}
+
+}
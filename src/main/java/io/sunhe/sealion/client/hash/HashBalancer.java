@@ -2,39 +2,94 @@ package io.sunhe.sealion.client.hash;
 
 import io.sunhe.sealion.client.SeaLionServerNode;
 
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.Map;
-import java.util.Set;
-import java.util.SortedMap;
-import java.util.TreeMap;
 import java.util.concurrent.ConcurrentHashMap;
 
-import net.spy.memcached.DefaultHashAlgorithm;
-
 /**
  * Should be thread-safe.
- * Note that although the nodes and hashLoop are all synchronized by themselves, 
- * but the two fields' state must be changed simultaneously, so some extra synchronization may be needed.
+ * The nodes are changed under the lock of the balancer, and then the whole node 
+ * selector is rebuilt and swapped, so that getServerNodeByKey takes no lock.
+ * 
+ * The node of a key is selected by one of:
+ * 		ketama: the consistent-hash ring with 40 to 400 virtual nodes per server, the default.
+ * 		jump: jump consistent hash, which takes no table, see JumpNodeSelector.
+ * 		rendezvous: weighted rendezvous hashing, whose weights may be any positive 
+ * 		number, see RendezvousNodeSelector and setServerNodeWeight.
  * 
  * @author sunhe
  * @date 2015年3月19日 上午8:13:35
  */
 public class HashBalancer {
 	
+	public static final String SELECTOR_KETAMA = "ketama";
+	public static final String SELECTOR_JUMP = "jump";
+	public static final String SELECTOR_RENDEZVOUS = "rendezvous";
+	
+	public static final String DEFAULT_SELECTOR = SELECTOR_KETAMA;
+	
 	private static final int WEIGHT_NORMAL_FACTOR = 1;
 	private static final double WEIGHT_HIGH_FACTOR = 1.5;
 	private static final double WEIGHT_LOW_FACTOR = 0.5;
 
 	private int defaultNumOfCopyPerServer;
 	
+	private KeyHashAlgorithm hashAlgorithm;
+	
+	private String selectorName;
+	
 	private ConcurrentHashMap<String, SeaLionServerNode> nodes;
 	
 	/**
-	 * Should be thread-safe guarded by itself.
+	 * The weights of the rendezvous selector set explicitly, keyed by the socket 
+	 * addresses of the nodes.
 	 */
-	private SortedMap<Integer, SeaLionServerNode> hashLoop;
+	private ConcurrentHashMap<String, Double> weights = new ConcurrentHashMap<String, Double>();
 	
+	/**
+	 * Immutable, replaced as a whole once the nodes are changed.
+	 */
+	private volatile NodeSelector selector;
+	
+	/**
+	 * The keys are hashed with MD5, the ketama placement of all older clients.
+	 * 
+	 * @param nodes
+	 * @author sunhe
+	 * @date 2015年3月19日 上午8:13:35
+	 */
 	public HashBalancer(ConcurrentHashMap<String, SeaLionServerNode> nodes) {
+		this(nodes, new Md5HashAlgorithm());
+	}
+	
+	/**
+	 * @param nodes
+	 * @param hashAlgorithm Md5HashAlgorithm by default, which keeps the keys on the 
+	 * 		same nodes as those of the clients before the hash became pluggable. The 
+	 * 		others move the keys, so all clients of a cluster must switch together.
+	 * @author sunhe
+	 * @date 2015年6月22日 上午10:30:12
+	 */
+	public HashBalancer(ConcurrentHashMap<String, SeaLionServerNode> nodes, KeyHashAlgorithm hashAlgorithm) {
+		this(nodes, hashAlgorithm, DEFAULT_SELECTOR);
+	}
+	
+	/**
+	 * @param nodes
+	 * @param hashAlgorithm
+	 * @param selectorName May be ketama, jump or rendezvous.
+	 * @author sunhe
+	 * @date 2015年6月23日 上午10:05:40
+	 */
+	public HashBalancer(ConcurrentHashMap<String, SeaLionServerNode> nodes, KeyHashAlgorithm hashAlgorithm, 
+			String selectorName) {
+		if (! isValidSelector(selectorName)) {
+			throw new IllegalArgumentException("Invalid node selector: " + selectorName);
+		}
+		this.hashAlgorithm = hashAlgorithm;
+		this.selectorName = selectorName;
 		if (nodes.size() > 10) {
 			defaultNumOfCopyPerServer = 40;
 		}
@@ -45,47 +100,86 @@ public class HashBalancer {
 			throw new IllegalArgumentException("There must be at least 1 server node.");
 		}
 		this.nodes = nodes;
-		hashLoop = Collections.synchronizedSortedMap(new TreeMap<Integer, SeaLionServerNode>());
 		hashServerNodes();
 	}
 	
 	/**
-	 * Hash all server nodes to the hash loop.
+	 * @param selectorName
+	 * @return True if it's ketama, jump or rendezvous.
+	 * @author sunhe
+	 * @date 2015年6月23日 上午10:07:15
+	 */
+	public static boolean isValidSelector(String selectorName) {
+		return SELECTOR_KETAMA.equals(selectorName) || SELECTOR_JUMP.equals(selectorName) 
+				|| SELECTOR_RENDEZVOUS.equals(selectorName);
+	}
+	
+	/**
+	 * Hash all server nodes to a new node selector, and swap it in.
 	 * 
 	 * @author sunhe
 	 * @date 2015年3月19日 上午8:57:21
 	 */
 	private synchronized void hashServerNodes() {
-		hashLoop.clear();
-		Set<String> keySet = nodes.keySet();
-		for (String key : keySet) {
-			hashServerNode(nodes.get(key));
+		if (SELECTOR_JUMP.equals(selectorName)) {
+			SeaLionServerNode[] sortedNodes = nodes.values().toArray(new SeaLionServerNode[0]);
+			Arrays.sort(sortedNodes);
+			selector = new JumpNodeSelector(sortedNodes);
+		}
+		else if (SELECTOR_RENDEZVOUS.equals(selectorName)) {
+			SeaLionServerNode[] array = nodes.values().toArray(new SeaLionServerNode[0]);
+			double[] nodeWeights = new double[array.length];
+			for (int i = 0; i < array.length; i++) {
+				Double weight = weights.get(array[i].getStrSocketAddress());
+				nodeWeights[i] = weight != null ? weight : getFactorValue(array[i].getWeight());
+			}
+			selector = new RendezvousNodeSelector(array, nodeWeights, hashAlgorithm);
+		}
+		else {
+			selector = newHashRing();
 		}
 	}
 	
 	/**
-	 * Hash a server node to the hash loop.
-	 * 
+	 * @return The ketama ring of all server nodes.
+	 * @author sunhe
+	 * @date 2015年6月23日 上午10:10:25
+	 */
+	private HashRing newHashRing() {
+		int numOfPoints = 0;
+		for (SeaLionServerNode node : nodes.values()) {
+			numOfPoints += getNumOfCopyPerServer(node);
+		}
+		int[] points = new int[numOfPoints];
+		SeaLionServerNode[] owners = new SeaLionServerNode[numOfPoints];
+		int size = 0;
+		for (SeaLionServerNode node : nodes.values()) {
+			int numOfCopyPerServer = getNumOfCopyPerServer(node);
+			if (size + numOfCopyPerServer > numOfPoints) {
+				// a node added in the meantime, it'll be hashed next time.
+				break;
+			}
+			hashAlgorithm.hashNode(node.getStrSocketAddress(), points, size, numOfCopyPerServer);
+			for (int i = 0; i < numOfCopyPerServer; i++) {
+				owners[size++] = node;
+			}
+		}
+		return new HashRing(points, owners, size);
+	}
+	
+	/**
 	 * @param node
+	 * @return The number of points of the node on the hash ring.
 	 * @author sunhe
 	 * @date 2015年3月19日 上午9:00:51
 	 */
-	private synchronized void hashServerNode(SeaLionServerNode node) {
+	private int getNumOfCopyPerServer(SeaLionServerNode node) {
 		int numOfCopyPerServer = (int) (defaultNumOfCopyPerServer * getFactorValue(node.getWeight()));
 		if (numOfCopyPerServer % 4 != 0) {
 			throw new IllegalStateException(
 					"The value of the variable numOfCopyPerServer is in invariant state: " + numOfCopyPerServer);
 		}
-		for (int i = 0; i < numOfCopyPerServer / 4; i++) {
-			byte[] md5 = DefaultHashAlgorithm.computeMd5(node.getStrSocketAddress() + "-" + i);
-			for (int j = 0; j < 4; j++) {
-				int key = ((int) (md5[3+j*4] & 0xFF) << 24) 
-						| ((int) (md5[2+j*4] & 0xFF) << 16) 
-						| ((int) (md5[1+j*4] & 0xFF) << 8) 
-						| ((int) (md5[j*4] & 0xFF));
-				hashLoop.put(key, node);
-			}
-		}
+		return numOfCopyPerServer;
 	}
 	
 	/**
@@ -136,7 +230,7 @@ public class HashBalancer {
 	public synchronized boolean addServerNode(SeaLionServerNode node) {
 		if (! nodes.containsKey(node.getStrSocketAddress())) {
 			nodes.put(node.getStrSocketAddress(), node);
-			hashServerNode(node);
+			hashServerNodes();
 			return true;
 		}
 		else {
@@ -155,21 +249,7 @@ public class HashBalancer {
 	public synchronized boolean removeServerNode(SeaLionServerNode node) {
 		if (nodes.containsKey(node.getStrSocketAddress())) {
 			nodes.remove(node.getStrSocketAddress());
-			int numOfCopyPerServer = (int) (defaultNumOfCopyPerServer * getFactorValue(node.getWeight()));
-			if (numOfCopyPerServer % 4 != 0) {
-				throw new IllegalStateException(
-						"The value of the variable numOfCopyPerServer is in invariant state: " + numOfCopyPerServer);
-			}
-			for (int i = 0; i < numOfCopyPerServer / 4; i++) {
-				byte[] md5 = DefaultHashAlgorithm.computeMd5(node + "-" + i);
-				for (int j = 0; j < 4; j++) {
-					int key = ((int) (md5[3+j*4] & 0xFF) << 24) 
-							| ((int) (md5[2+j*4] & 0xFF) << 16) 
-							| ((int) (md5[1+j*4] & 0xFF) << 8) 
-							| ((int) (md5[j*4] & 0xFF));
-					hashLoop.remove(key);
-				}
-			}
+			hashServerNodes();
 			return true;
 		}
 		else {
@@ -177,6 +257,77 @@ public class HashBalancer {
 		}
 	}
 	
+	/**
+	 * Set the weight of a server node for the rendezvous selector, which overrides 
+	 * the weight of the node itself, i.e., 0.5, 1 or 1.5. Ignored by the other selectors.
+	 * 
+	 * @param node
+	 * @param weight Any positive number.
+	 * @author sunhe
+	 * @date 2015年6月23日 上午10:15:30
+	 */
+	public synchronized void setServerNodeWeight(SeaLionServerNode node, double weight) {
+		if (! (weight > 0) || Double.isInfinite(weight)) {
+			throw new IllegalArgumentException("Invalid weight: " + weight);
+		}
+		weights.put(node.getStrSocketAddress(), weight);
+		hashServerNodes();
+	}
+	
+	/**
+	 * Compute the share of the keys of every node with the sample keys "key:0", 
+	 * "key:1", and so on, to see the skew of the distribution.
+	 * 
+	 * @param numOfKeys The number of the sample keys.
+	 * @return The share of every node, in [0, 1], in the order of the socket addresses.
+	 * @author sunhe
+	 * @date 2015年6月23日 上午10:20:45
+	 */
+	public Map<SeaLionServerNode, Double> getKeyShares(int numOfKeys) {
+		SeaLionServerNode[] sortedNodes = nodes.values().toArray(new SeaLionServerNode[0]);
+		Arrays.sort(sortedNodes);
+		Map<SeaLionServerNode, Integer> counts = new LinkedHashMap<SeaLionServerNode, Integer>();
+		for (SeaLionServerNode node : sortedNodes) {
+			counts.put(node, 0);
+		}
+		for (int i = 0; i < numOfKeys; i++) {
+			SeaLionServerNode node = getServerNodeByKey("key:" + i);
+			Integer count = counts.get(node);
+			// a node added in the meantime isn't counted.
+			if (count != null) {
+				counts.put(node, count + 1);
+			}
+		}
+		Map<SeaLionServerNode, Double> shares = new LinkedHashMap<SeaLionServerNode, Double>();
+		for (Map.Entry<SeaLionServerNode, Integer> entry : counts.entrySet()) {
+			shares.put(entry.getKey(), numOfKeys > 0 ? (double) entry.getValue() / numOfKeys : 0);
+		}
+		return shares;
+	}
+	
+	/**
+	 * @param numOfKeys The number of the sample keys, see getKeyShares.
+	 * @return The report of the share of the keys of every node, and the ratio of 
+	 * 		the largest share to the average, one line per node.
+	 * @author sunhe
+	 * @date 2015年6月23日 上午10:25:10
+	 */
+	public String getSkewReport(int numOfKeys) {
+		Map<SeaLionServerNode, Double> shares = getKeyShares(numOfKeys);
+		StringBuilder report = new StringBuilder();
+		report.append("selector: ").append(selectorName)
+			.append(", hash: ").append(hashAlgorithm.getClass().getSimpleName())
+			.append(", keys: ").append(numOfKeys).append("\n");
+		double maxShare = 0;
+		for (Map.Entry<SeaLionServerNode, Double> entry : shares.entrySet()) {
+			maxShare = Math.max(maxShare, entry.getValue());
+			report.append(String.format("%-24s %6.2f%%\n", 
+					entry.getKey().getStrSocketAddress(), 100 * entry.getValue()));
+		}
+		report.append(String.format("max/avg: %.3f", shares.isEmpty() ? 0 : maxShare * shares.size()));
+		return report.toString();
+	}
+	
 	/**
 	 * Get the corresponding server node according to the given key.
 	 * 
@@ -185,22 +336,24 @@ public class HashBalancer {
 	 * @author sunhe
 	 * @date 2015年3月19日 下午2:22:41
 	 */
-	public synchronized SeaLionServerNode getServerNodeByKey(String key) {
-		byte[] md5 = DefaultHashAlgorithm.computeMd5(key);
-		int numKey = ((int) (md5[3] & 0xFF) << 24) 
-				| ((int) (md5[2] & 0xFF) << 16) 
-				| ((int) (md5[1] & 0xFF) << 8) 
-				| ((int) (md5[0] & 0xFF));
-		if (! hashLoop.containsKey(numKey)) {
-			SortedMap<Integer, SeaLionServerNode> tailMap = hashLoop.tailMap(numKey);
-			if (tailMap.isEmpty()) {
-				numKey = hashLoop.firstKey();
-			}
-			else {
-				numKey = tailMap.firstKey();
-			}
-		}
-		return hashLoop.get(numKey);
+	public SeaLionServerNode getServerNodeByKey(String key) {
+		return selector.select(hashAlgorithm.hash(key));
+	}
+	
+	/**
+	 * Get the server nodes to replicate the key to: the node of the key, i.e., 
+	 * the primary, first, and then its successors, which depend on the selector.
+	 * 
+	 * @param key
+	 * @param numOfReplicas The number of the successors.
+	 * @return The distinct nodes, fewer if there aren't so many nodes.
+	 * @author sunhe
+	 * @date 2015年6月24日 下午2:30:10
+	 */
+	public SeaLionServerNode[] getServerNodesByKey(String key, int numOfReplicas) {
+		SeaLionServerNode[] replicas = new SeaLionServerNode[numOfReplicas + 1];
+		int n = selector.select(hashAlgorithm.hash(key), replicas);
+		return n == replicas.length ? replicas : Arrays.copyOf(replicas, n);
 	}
 	
 }
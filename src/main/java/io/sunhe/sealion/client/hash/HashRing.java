@@ -0,0 +1,136 @@
+package io.sunhe.sealion.client.hash;
+
+import io.sunhe.sealion.client.SeaLionServerNode;
+
+import java.util.Arrays;
+
+/**
+ * An immutable consistent-hash ring, whose points are kept in a sorted primitive
+ * array, and the nodes owning them in a parallel array. The ring is looked up with
+ * binary search, which takes no lock and allocates nothing, and is rebuilt as a whole
+ * whenever a node is added or removed.
+ *
+ * The points are compared as signed integers, and if a point is hashed from several
+ * nodes, the one added last owns it, the same as the former TreeMap-based ring.
+ *
+ * Thread-safe.
+ *
+ * @author sunhe
+ * @date 2015年6月21日 下午2:10:25
+ */
+class HashRing implements NodeSelector {
+
+	private final int[] points;
+
+	private final SeaLionServerNode[] owners;
+
+	/**
+	 * @param points Not sorted, may contain duplicates.
+	 * @param owners The owner of every point, in the same order.
+	 * @param size The number of points.
+	 * @author sunhe
+	 * @date 2015年6月21日 下午2:15:40
+	 */
+	HashRing(int[] points, SeaLionServerNode[] owners, int size) {
+		// sort the points with their original indexes, so that the later of
+		// the duplicate points, which comes last after sorting, is kept.
+		long[] entries = new long[size];
+		for (int i = 0; i < size; i++) {
+			entries[i] = ((long) points[i] << 32) | i;
+		}
+		Arrays.sort(entries);
+		int[] sortedPoints = new int[size];
+		SeaLionServerNode[] sortedOwners = new SeaLionServerNode[size];
+		int n = 0;
+		for (int i = 0; i < size; i++) {
+			int point = (int) (entries[i] >> 32);
+			SeaLionServerNode owner = owners[(int) entries[i]];
+			if (n > 0 && sortedPoints[n - 1] == point) {
+				sortedOwners[n - 1] = owner;
+			}
+			else {
+				sortedPoints[n] = point;
+				sortedOwners[n] = owner;
+				n++;
+			}
+		}
+		this.points = Arrays.copyOf(sortedPoints, n);
+		this.owners = Arrays.copyOf(sortedOwners, n);
+	}
+
+	/**
+	 * @param hash
+	 * @return The node owning the first point not less than the hash, wrapping
+	 * 		around to the first point of the ring. Null if the ring is empty.
+	 * @author sunhe
+	 * @date 2015年6月21日 下午2:20:12
+	 */
+	public SeaLionServerNode select(int hash) {
+		if (points.length == 0) {
+			return null;
+		}
+		return owners[indexOf(hash)];
+	}
+	
+	/**
+	 * The successors are the owners of the following points clockwise.
+	 */
+	public int select(int hash, SeaLionServerNode[] replicas) {
+		if (points.length == 0) {
+			return 0;
+		}
+		int index = indexOf(hash);
+		int n = 0;
+		for (int i = 0; i < points.length && n < replicas.length; i++) {
+			n = addDistinct(replicas, n, owners[(index + i) % points.length]);
+		}
+		return n;
+	}
+	
+	/**
+	 * @param hash
+	 * @return The index of the first point not less than the hash, wrapping
+	 * 		around to the first point of the ring.
+	 * @author sunhe
+	 * @date 2015年6月24日 下午2:15:20
+	 */
+	private int indexOf(int hash) {
+		int index = Arrays.binarySearch(points, hash);
+		if (index < 0) {
+			// the insertion point.
+			index = -(index + 1);
+			if (index == points.length) {
+				index = 0;
+			}
+		}
+		return index;
+	}
+	
+	/**
+	 * @param nodes
+	 * @param n The number of nodes filled.
+	 * @param node
+	 * @return The number of nodes filled after the node is added, unless it's filled already.
+	 * @author sunhe
+	 * @date 2015年6月24日 下午2:16:40
+	 */
+	static int addDistinct(SeaLionServerNode[] nodes, int n, SeaLionServerNode node) {
+		for (int i = 0; i < n; i++) {
+			if (nodes[i] == node) {
+				return n;
+			}
+		}
+		nodes[n] = node;
+		return n + 1;
+	}
+
+	/**
+	 * @return The number of distinct points.
+	 * @author sunhe
+	 * @date 2015年6月21日 下午2:21:30
+	 */
+	int size() {
+		return points.length;
+	}
+
+}
@@ -0,0 +1,92 @@
+package io.sunhe.sealion.client.hash;
+
+import io.sunhe.sealion.client.SeaLionServerNode;
+
+/**
+ * Jump consistent hash (Lamping and Veach), which maps a key to one of n buckets
+ * in O(log n) time without any table, the buckets being just the nodes in the
+ * order of their socket addresses.
+ *
+ * The weights are honored by giving a node 1, 2 or 3 buckets for the low, normal
+ * and high weight, the same ratio as the virtual nodes of the ring.
+ *
+ * Only the keys of the removed node move if the last node, in the order of the 
+ * socket addresses, is removed, but removing any other one also moves the keys 
+ * among the nodes after it. So it suits a stable node list best.
+ *
+ * Thread-safe.
+ *
+ * @author sunhe
+ * @date 2015年6月23日 上午9:20:35
+ */
+class JumpNodeSelector implements NodeSelector {
+
+	private static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;
+
+	private final SeaLionServerNode[] buckets;
+
+	/**
+	 * @param nodes Sorted by the socket addresses.
+	 * @author sunhe
+	 * @date 2015年6月23日 上午9:24:10
+	 */
+	JumpNodeSelector(SeaLionServerNode[] nodes) {
+		int numOfBuckets = 0;
+		for (SeaLionServerNode node : nodes) {
+			numOfBuckets += getNumOfBuckets(node);
+		}
+		buckets = new SeaLionServerNode[numOfBuckets];
+		int n = 0;
+		for (SeaLionServerNode node : nodes) {
+			for (int i = getNumOfBuckets(node); i > 0; i--) {
+				buckets[n++] = node;
+			}
+		}
+	}
+
+	private static int getNumOfBuckets(SeaLionServerNode node) {
+		return node.getWeight() + 1;
+	}
+
+	public SeaLionServerNode select(int hash) {
+		if (buckets.length == 0) {
+			return null;
+		}
+		// spread the 32-bit hash over the 64-bit key of the generator.
+		return buckets[jump(hash * GOLDEN_GAMMA, buckets.length)];
+	}
+
+	/**
+	 * The successors are the nodes of the following buckets.
+	 */
+	public int select(int hash, SeaLionServerNode[] replicas) {
+		if (buckets.length == 0) {
+			return 0;
+		}
+		int index = jump(hash * GOLDEN_GAMMA, buckets.length);
+		int n = 0;
+		for (int i = 0; i < buckets.length && n < replicas.length; i++) {
+			n = HashRing.addDistinct(replicas, n, buckets[(index + i) % buckets.length]);
+		}
+		return n;
+	}
+
+	/**
+	 * @param key
+	 * @param numOfBuckets
+	 * @return The bucket of the key, in [0, numOfBuckets).
+	 * @author sunhe
+	 * @date 2015年6月23日 上午9:28:40
+	 */
+	static int jump(long key, int numOfBuckets) {
+		long b = -1;
+		long j = 0;
+		while (j < numOfBuckets) {
+			b = j;
+			key = key * 2862933555777941757L + 1;
+			j = (long) ((b + 1) * ((double) (1L << 31) / (double) ((key >>> 33) + 1)));
+		}
+		return (int) b;
+	}
+
+}
@@ -0,0 +1,46 @@
+package io.sunhe.sealion.client.hash;
+
+/**
+ * The hash function distributing the keys, and the server nodes,
+ * on the consistent-hash ring of HashBalancer.
+ *
+ * Implementations must be stateless and thread-safe.
+ *
+ * @author sunhe
+ * @date 2015年6月22日 上午9:20:15
+ */
+public interface KeyHashAlgorithm {
+
+	/**
+	 * @param key The key in UTF-8.
+	 * @return The position of the key on the ring.
+	 * @author sunhe
+	 * @date 2015年6月22日 上午9:22:40
+	 */
+	public int hash(byte[] key);
+
+	/**
+	 * The same as hash(key.getBytes(UTF_8)), but the key is encoded into a scratch
+	 * buffer of the calling thread instead of a new array, since it's called for
+	 * every request.
+	 *
+	 * @param key
+	 * @return The position of the key on the ring.
+	 * @author sunhe
+	 * @date 2015年6月29日 上午10:12:35
+	 */
+	public int hash(String key);
+
+	/**
+	 * Compute the positions of the virtual nodes of a server node on the ring.
+	 *
+	 * @param node The server node in string format, host:port.
+	 * @param points Filled with the positions.
+	 * @param offset The index of the first position to fill.
+	 * @param numOfPoints The number of virtual nodes, a multiple of 4.
+	 * @author sunhe
+	 * @date 2015年6月22日 上午9:24:18
+	 */
+	public void hashNode(String node, int[] points, int offset, int numOfPoints);
+
+}
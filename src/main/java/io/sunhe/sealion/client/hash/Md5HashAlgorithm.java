@@ -0,0 +1,89 @@
+package io.sunhe.sealion.client.hash;
+
+import io.sunhe.sealion.util.Charsets;
+
+import java.security.DigestException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * The ketama placement with MD5, which the balancer always used before the hash
+ * became pluggable, and still the default, so that the keys stay on the same
+ * nodes as those of the older clients. The much faster ones are opt-in, once all
+ * clients of a cluster can switch together.
+ *
+ * Every MD5 digest of a node yields 4 virtual nodes, and the key is placed by
+ * the first 4 bytes of its digest, all in little-endian.
+ *
+ * @author sunhe
+ * @date 2015年6月22日 上午9:30:46
+ */
+public class Md5HashAlgorithm extends AbstractKeyHashAlgorithm {
+
+	/**
+	 * The digest of the calling thread, and the array its result is put in.
+	 */
+	private static final ThreadLocal<Md5> MD5 = new ThreadLocal<Md5>() {
+
+		@Override
+		protected Md5 initialValue() {
+			return new Md5();
+		}
+
+	};
+
+	@Override
+	protected int hash(byte[] key, int length) {
+		return getIntLE(computeMd5(key, length), 0);
+	}
+
+	@Override
+	public void hashNode(String node, int[] points, int offset, int numOfPoints) {
+		for (int i = 0; i < numOfPoints / 4; i++) {
+			byte[] bytes = (node + "-" + i).getBytes(Charsets.UTF_8);
+			byte[] md5 = computeMd5(bytes, bytes.length);
+			for (int j = 0; j < 4; j++) {
+				points[offset++] = getIntLE(md5, j * 4);
+			}
+		}
+	}
+
+	/**
+	 * @param bytes
+	 * @param length
+	 * @return The digest, in the array of the calling thread, which is overwritten 
+	 * 		by its next call.
+	 * @author sunhe
+	 * @date 2015年6月29日 上午10:30:42
+	 */
+	private static byte[] computeMd5(byte[] bytes, int length) {
+		Md5 md5 = MD5.get();
+		md5.digest.update(bytes, 0, length);
+		try {
+			md5.digest.digest(md5.result, 0, md5.result.length);
+		}
+		catch (DigestException e) {
+			throw new IllegalStateException("MD5 failed", e);
+		}
+		return md5.result;
+	}
+
+	private static class Md5 {
+
+		private final MessageDigest digest;
+
+		private final byte[] result;
+
+		private Md5() {
+			try {
+				digest = MessageDigest.getInstance("MD5");
+			}
+			catch (NoSuchAlgorithmException e) {
+				throw new IllegalStateException("MD5 not supported", e);
+			}
+			result = new byte[digest.getDigestLength()];
+		}
+
+	}
+
+}
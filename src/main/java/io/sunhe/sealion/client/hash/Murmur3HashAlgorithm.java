@@ -0,0 +1,54 @@
+package io.sunhe.sealion.client.hash;
+
+/**
+ * MurmurHash3, the x86 32-bit variant, with seed 0.
+ *
+ * @author sunhe
+ * @date 2015年6月22日 上午9:50:33
+ */
+public class Murmur3HashAlgorithm extends AbstractKeyHashAlgorithm {
+
+	private static final int C1 = 0xcc9e2d51;
+
+	private static final int C2 = 0x1b873593;
+
+	// the tail bytes fall through on purpose.
+	@SuppressWarnings("fallthrough")
+	@Override
+	protected int hash(byte[] key, int length) {
+		int h = 0;
+		int blocks = length & ~3;
+		for (int i = 0; i < blocks; i += 4) {
+			h ^= mixK(getIntLE(key, i));
+			h = Integer.rotateLeft(h, 13);
+			h = h * 5 + 0xe6546b64;
+		}
+		int k = 0;
+		switch (length & 3) {
+		case 3:
+			k ^= (key[blocks + 2] & 0xFF) << 16;
+			// fall through
+		case 2:
+			k ^= (key[blocks + 1] & 0xFF) << 8;
+			// fall through
+		case 1:
+			k ^= key[blocks] & 0xFF;
+			h ^= mixK(k);
+		}
+		h ^= length;
+		// final avalanche.
+		h ^= h >>> 16;
+		h *= 0x85ebca6b;
+		h ^= h >>> 13;
+		h *= 0xc2b2ae35;
+		h ^= h >>> 16;
+		return h;
+	}
+
+	private static int mixK(int k) {
+		k *= C1;
+		k = Integer.rotateLeft(k, 15);
+		return k * C2;
+	}
+
+}
@@ -0,0 +1,37 @@
+package io.sunhe.sealion.client.hash;
+
+import io.sunhe.sealion.client.SeaLionServerNode;
+
+/**
+ * Select the server node of a hashed key. A selector is immutable, built from
+ * the whole node list, and replaced as a whole once the nodes are changed.
+ *
+ * Thread-safe.
+ *
+ * @author sunhe
+ * @date 2015年6月23日 上午9:10:20
+ */
+interface NodeSelector {
+
+	/**
+	 * @param hash The hash of the key.
+	 * @return The node of the key, null if there isn't any node.
+	 * @author sunhe
+	 * @date 2015年6月23日 上午9:12:05
+	 */
+	public SeaLionServerNode select(int hash);
+	
+	/**
+	 * Select the distinct nodes to replicate the key to, the node of the key first, 
+	 * and then its successors.
+	 * 
+	 * @param hash The hash of the key.
+	 * @param replicas Filled with the nodes, as many as its length at most.
+	 * @return The number of nodes filled, less than the length of the replicas 
+	 * 		if there aren't so many nodes.
+	 * @author sunhe
+	 * @date 2015年6月24日 下午2:10:30
+	 */
+	public int select(int hash, SeaLionServerNode[] replicas);
+
+}
@@ -0,0 +1,117 @@
+package io.sunhe.sealion.client.hash;
+
+import io.sunhe.sealion.client.SeaLionServerNode;
+import io.sunhe.sealion.util.Charsets;
+
+/**
+ * Weighted rendezvous (highest random weight) hashing: every node scores the key
+ * with -weight / ln(u), where u is uniform in (0, 1) and hashed from the node and 
+ * the key, and the highest score wins. So a node gets the share of the keys 
+ * proportional to its weight, which may be any positive number, and only the keys 
+ * of the removed node move, whichever it is.
+ *
+ * The lookup takes O(n) time without any table, which is fine for the tens of 
+ * nodes of a client.
+ *
+ * Thread-safe.
+ *
+ * @author sunhe
+ * @date 2015年6月23日 上午9:40:15
+ */
+class RendezvousNodeSelector implements NodeSelector {
+
+	private final SeaLionServerNode[] nodes;
+
+	private final double[] weights;
+
+	/**
+	 * The hashes of the socket addresses of the nodes.
+	 */
+	private final int[] seeds;
+
+	/**
+	 * @param nodes
+	 * @param weights The weight of every node, in the same order, must be positive.
+	 * @param hashAlgorithm Hash the socket addresses of the nodes.
+	 * @author sunhe
+	 * @date 2015年6月23日 上午9:44:30
+	 */
+	RendezvousNodeSelector(SeaLionServerNode[] nodes, double[] weights, KeyHashAlgorithm hashAlgorithm) {
+		this.nodes = nodes;
+		this.weights = weights;
+		seeds = new int[nodes.length];
+		for (int i = 0; i < nodes.length; i++) {
+			if (! (weights[i] > 0) || Double.isInfinite(weights[i])) {
+				throw new IllegalArgumentException("Invalid weight of " + nodes[i] + ": " + weights[i]);
+			}
+			seeds[i] = hashAlgorithm.hash(nodes[i].getStrSocketAddress().getBytes(Charsets.UTF_8));
+		}
+	}
+
+	public SeaLionServerNode select(int hash) {
+		SeaLionServerNode selected = null;
+		double maxScore = -1;
+		for (int i = 0; i < nodes.length; i++) {
+			double score = score(i, hash);
+			if (score > maxScore) {
+				maxScore = score;
+				selected = nodes[i];
+			}
+		}
+		return selected;
+	}
+	
+	/**
+	 * The successors are the nodes of the next highest scores.
+	 */
+	public int select(int hash, SeaLionServerNode[] replicas) {
+		double[] scores = new double[replicas.length];
+		int n = 0;
+		for (int i = 0; i < nodes.length; i++) {
+			double score = score(i, hash);
+			// insertion into the replicas sorted by the scores descendingly.
+			int j = n < replicas.length ? n++ : n;
+			while (j > 0 && scores[j - 1] < score) {
+				if (j < replicas.length) {
+					scores[j] = scores[j - 1];
+					replicas[j] = replicas[j - 1];
+				}
+				j--;
+			}
+			if (j < replicas.length) {
+				scores[j] = score;
+				replicas[j] = nodes[i];
+			}
+		}
+		return n;
+	}
+	
+	/**
+	 * @param i The index of the node.
+	 * @param hash The hash of the key.
+	 * @return The score of the node for the key.
+	 * @author sunhe
+	 * @date 2015年6月24日 下午2:20:45
+	 */
+	private double score(int i, int hash) {
+		long h = mix(((long) seeds[i] << 32) | (hash & 0xFFFFFFFFL));
+		// the top 53 bits as a double in (0, 1).
+		double u = ((h >>> 11) + 0.5) * 0x1.0p-53;
+		return -weights[i] / Math.log(u);
+	}
+
+	/**
+	 * The finalizer of SplitMix64, a bijection.
+	 *
+	 * @param h
+	 * @return
+	 * @author sunhe
+	 * @date 2015年6月23日 上午9:50:20
+	 */
+	private static long mix(long h) {
+		h = (h ^ (h >>> 30)) * 0xBF58476D1CE4E5B9L;
+		h = (h ^ (h >>> 27)) * 0x94D049BB133111EBL;
+		return h ^ (h >>> 31);
+	}
+
+}
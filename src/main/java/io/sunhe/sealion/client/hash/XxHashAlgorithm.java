@@ -0,0 +1,102 @@
+package io.sunhe.sealion.client.hash;
+
+/**
+ * xxHash64 with seed 0, folded into 32 bits.
+ *
+ * @author sunhe
+ * @date 2015年6月22日 上午10:05:21
+ */
+public class XxHashAlgorithm extends AbstractKeyHashAlgorithm {
+
+	private static final long P1 = 0x9E3779B185EBCA87L;
+
+	private static final long P2 = 0xC2B2AE3D27D4EB4FL;
+
+	private static final long P3 = 0x165667B19E3779F9L;
+
+	private static final long P4 = 0x85EBCA77C2B2AE63L;
+
+	private static final long P5 = 0x27D4EB2F165667C5L;
+
+	@Override
+	protected int hash(byte[] key, int length) {
+		long h = hash64(key, length);
+		return (int) (h ^ (h >>> 32));
+	}
+
+	/**
+	 * @param key
+	 * @return The 64-bit xxHash of the key.
+	 * @author sunhe
+	 * @date 2015年6月22日 上午10:08:40
+	 */
+	public static long hash64(byte[] key) {
+		return hash64(key, key.length);
+	}
+
+	/**
+	 * @param key
+	 * @param length The length of the key, from the start of the array.
+	 * @return The 64-bit xxHash of the key.
+	 * @author sunhe
+	 * @date 2015年6月29日 上午10:24:10
+	 */
+	public static long hash64(byte[] key, int length) {
+		int i = 0;
+		long h;
+		if (length >= 32) {
+			long v1 = P1 + P2;
+			long v2 = P2;
+			long v3 = 0;
+			long v4 = -P1;
+			for (; i <= length - 32; i += 32) {
+				v1 = round(v1, getLongLE(key, i));
+				v2 = round(v2, getLongLE(key, i + 8));
+				v3 = round(v3, getLongLE(key, i + 16));
+				v4 = round(v4, getLongLE(key, i + 24));
+			}
+			h = Long.rotateLeft(v1, 1) + Long.rotateLeft(v2, 7)
+					+ Long.rotateLeft(v3, 12) + Long.rotateLeft(v4, 18);
+			h = merge(h, v1);
+			h = merge(h, v2);
+			h = merge(h, v3);
+			h = merge(h, v4);
+		}
+		else {
+			h = P5;
+		}
+		h += length;
+		for (; i + 8 <= length; i += 8) {
+			h ^= round(0, getLongLE(key, i));
+			h = Long.rotateLeft(h, 27) * P1 + P4;
+		}
+		if (i + 4 <= length) {
+			h ^= (getIntLE(key, i) & 0xFFFFFFFFL) * P1;
+			h = Long.rotateLeft(h, 23) * P2 + P3;
+			i += 4;
+		}
+		for (; i < length; i++) {
+			h ^= (key[i] & 0xFF) * P5;
+			h = Long.rotateLeft(h, 11) * P1;
+		}
+		// final avalanche.
+		h ^= h >>> 33;
+		h *= P2;
+		h ^= h >>> 29;
+		h *= P3;
+		h ^= h >>> 32;
+		return h;
+	}
+
+	private static long round(long acc, long input) {
+		acc += input * P2;
+		acc = Long.rotateLeft(acc, 31);
+		return acc * P1;
+	}
+
+	private static long merge(long acc, long value) {
+		acc ^= round(0, value);
+		return acc * P1 + P4;
+	}
+
+}
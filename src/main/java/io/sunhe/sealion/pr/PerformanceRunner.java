@@ -48,7 +48,7 @@ public class PerformanceRunner {
 			serverAddr = properties.getProperty("servers", DEFAULT_SERVER_ADDR);
 		}
 		for (int i = 0; i < params.getConn(); i++) {
-			clientList.add(new SeaLionClient(serverAddr));
+			clientList.add(new SeaLionClient(serverAddr, params.getPool(), false));
 		}
 		buffer = new byte[params.getSize()];
 		startLatch = new CountDownLatch(1);
@@ -208,6 +208,7 @@ public class PerformanceRunner {
 		System.out.println("\t--mode         Operation mode. (safe or unsafe)");
 		System.out.println("\t--size         Single data size in byte unit. (postive integer)");
 		System.out.println("\t--conn         Number of connection. (postive integer)");
+		System.out.println("\t--pool         Number of connection to every server per client. (postive integer)");
 		System.out.println("\t--thread       Numer of thread per connection. (postive integer)");
 		System.out.println("\t-h --help      Print help info. (no value)");
 		System.out.println("\t-f --file      Configuration file. (file path)");
@@ -41,6 +41,11 @@ public class PerformanceRunnerParams {
 	 */
 	private int conn = 1;
 	
+	/**
+	 * --pool. Connection number to every server node per client.
+	 */
+	private int pool = 1;
+	
 	/**
 	 * --thread. Thread number per connection.
 	 */
@@ -125,6 +130,15 @@ public class PerformanceRunnerParams {
 					throwException();
 				}
 			}
+			else if ("--pool".equals(paramName)) {
+				// --pool
+				if (isNumeric(paramValue) && Integer.parseInt(paramValue) > 0) {
+					pool = Integer.parseInt(paramValue);
+				}
+				else {
+					throwException();
+				}
+			}
 			else if ("--thread".equals(paramName)) {
 				// --thread
 				if (isNumeric(paramValue)) {
@@ -213,6 +227,10 @@ public class PerformanceRunnerParams {
 		return conn;
 	}
 
+	public int getPool() {
+		return pool;
+	}
+
 	public int getThread() {
 		return thread;
 	}
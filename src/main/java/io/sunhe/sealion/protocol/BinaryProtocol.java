@@ -0,0 +1,156 @@
+package io.sunhe.sealion.protocol;
+
+/**
+ * Constants of the binary protocol, which is negotiated by the first byte
+ * of the connection: the magic byte of the binary request, which cann't be
+ * the first byte of a text line, or otherwise the text protocol.
+ *
+ * All numbers are in big-endian, and every frame is a fixed-length header
+ * followed by the key (request only) and the data, without any delimiter.
+ *
+ * The format of the request header (32 bytes):
+ * 		0	magic (0x80)
+ * 		1	opcode, see getCommand(byte)
+ * 		2	key length (unsigned short)
+ * 		4	flags, FLAG_SAFE_MODE and FLAG_CAS
+ * 		5	reserved (3 bytes)
+ * 		8	opaque (int)
+ * 		12	data length (int)
+ * 		16	CAS (long), valid only if FLAG_CAS is set
+ * 		24	expiration time stamp (long), 0 signifies never expiring
+ *
+ * The format of the response header (24 bytes):
+ * 		0	magic (0x81)
+ * 		1	status, see getStatus(byte)
+ * 		2	reserved (2 bytes)
+ * 		4	flags, FLAG_CAS
+ * 		5	reserved (3 bytes)
+ * 		8	opaque (int), the same as the request's
+ * 		12	data length (int)
+ * 		16	CAS (long), valid only if FLAG_CAS is set
+ *
+ * @author sunhe
+ * @date 2015年6月18日 上午9:30:12
+ */
+public class BinaryProtocol {
+
+	public static final byte MAGIC_REQUEST = (byte) 0x80;
+
+	public static final byte MAGIC_RESPONSE = (byte) 0x81;
+
+	public static final int REQUEST_HEADER_LENGTH = 32;
+
+	public static final int RESPONSE_HEADER_LENGTH = 24;
+
+	public static final int FLAG_SAFE_MODE = 0x01;
+
+	public static final int FLAG_CAS = 0x02;
+
+	/**
+	 * The maximum length in byte of the key.
+	 */
+	public static final int MAX_KEY_LENGTH = 0xFFFF;
+
+	/**
+	 * The status code of SERVER_ERROR.
+	 */
+	private static final int SERVER_ERROR_CODE = 3;
+
+	/**
+	 * Indexed by the opcode.
+	 */
+	private static final String[] COMMANDS = {
+		null,
+		Commands.GET,
+		Commands.SET,
+		Commands.DELETE,
+		Commands.CAS,
+		Commands.MEM_PERCENTAGE,
+		Commands.MEM_USAGE,
+		Commands.MEM_LIMIT,
+		Commands.TASK_QUEUE_SIZE,
+		Commands.NUM_CONN,
+		Commands.MGET,
+		Commands.MSET,
+		Commands.MDELETE,
+		Commands.START_TIME
+	};
+
+	/**
+	 * Indexed by the status code.
+	 */
+	private static final String[] STATUSES = {
+		Statuses.SUCCESS,
+		Statuses.FAILURE,
+		Statuses.BAD_REQUEST,
+		Statuses.SERVER_ERROR,
+		Statuses.SERVER_OUT_OF_MEMORY,
+		Statuses.KEY_NONEXISTS,
+		Statuses.CAS_FAILURE
+	};
+
+	/**
+	 * @param opcode
+	 * @return The command, null if the opcode is unknown.
+	 * @author sunhe
+	 * @date 2015年6月18日 上午9:35:40
+	 */
+	public static String getCommand(byte opcode) {
+		int index = opcode & 0xFF;
+		return index < COMMANDS.length ? COMMANDS[index] : null;
+	}
+
+	/**
+	 * @param command
+	 * @return The opcode, 0 if the command is unknown.
+	 * @author sunhe
+	 * @date 2015年6月18日 上午9:36:52
+	 */
+	public static byte getOpcode(String command) {
+		return (byte) indexOf(COMMANDS, command, 0);
+	}
+
+	/**
+	 * @param code
+	 * @return The status, SERVER_ERROR if the code is unknown.
+	 * @author sunhe
+	 * @date 2015年6月18日 上午9:38:15
+	 */
+	public static String getStatus(byte code) {
+		int index = code & 0xFF;
+		return index < STATUSES.length ? STATUSES[index] : Statuses.SERVER_ERROR;
+	}
+
+	/**
+	 * @param status
+	 * @return The status code, the one of SERVER_ERROR if the status is unknown.
+	 * @author sunhe
+	 * @date 2015年6月18日 上午9:39:30
+	 */
+	public static byte getStatusCode(String status) {
+		return (byte) indexOf(STATUSES, status, SERVER_ERROR_CODE);
+	}
+
+	/**
+	 * The constants are compared by reference first, so it's cheap.
+	 *
+	 * @param array
+	 * @param value
+	 * @param defaultIndex
+	 * @return
+	 * @author sunhe
+	 * @date 2015年6月18日 上午9:41:02
+	 */
+	private static int indexOf(String[] array, String value, int defaultIndex) {
+		if (value == null) {
+			return defaultIndex;
+		}
+		for (int i = 0; i < array.length; i++) {
+			if (value.equals(array[i])) {
+				return i;
+			}
+		}
+		return defaultIndex;
+	}
+
+}
@@ -23,6 +23,26 @@ public class Commands {
 	 */
 	public static final String CAS = "CAS";
 	
+	/**
+	 * Following is those multi-key commands, the keys (and the values) are 
+	 * carried by the data field, see MultiKeyFormat.
+	 */
+	
+	/**
+	 * GET many keys at once.
+	 */
+	public static final String MGET = "MGET";
+	
+	/**
+	 * SET many key-values at once, all of which share the same expiration time stamp.
+	 */
+	public static final String MSET = "MSET";
+	
+	/**
+	 * DELETE many keys at once.
+	 */
+	public static final String MDELETE = "MDELETE";
+	
 	/**
 	 * Following is those commands used to monitor the state of SeaLion server.
 	 */
@@ -41,6 +61,12 @@ public class Commands {
 	
 	public static final String NUM_CONN = "NUM_CONN";
 	
+	/**
+	 * The time in millisecond unit the server was started at, 
+	 * which tells a restarted server from one that kept its memory.
+	 */
+	public static final String START_TIME = "START_TIME";
+	
 	public static Set<String> monitorCommandSet = new HashSet<String>();
 	
 	static {
@@ -49,10 +75,42 @@ public class Commands {
 		monitorCommandSet.add(MEM_LIMIT);
 		monitorCommandSet.add(TASK_QUEUE_SIZE);
 		monitorCommandSet.add(NUM_CONN);
+		monitorCommandSet.add(START_TIME);
 	}
 	
 	public static boolean isMonitorCommand(String command) {
 		return monitorCommandSet.contains(command);
 	}
 	
+	/**
+	 * @param command
+	 * @return True if it's MGET, MSET or MDELETE.
+	 * @author sunhe
+	 * @date 2015年6月19日 下午2:10:33
+	 */
+	public static boolean isMultiKeyCommand(String command) {
+		return MGET.equals(command) || MSET.equals(command) || MDELETE.equals(command);
+	}
+	
+	/**
+	 * @param command A multi-key command.
+	 * @return The single-key command every key of it is processed with, null if it isn't a multi-key command.
+	 * @author sunhe
+	 * @date 2015年6月19日 下午2:12:05
+	 */
+	public static String getSingleKeyCommand(String command) {
+		if (MGET.equals(command)) {
+			return GET;
+		}
+		else if (MSET.equals(command)) {
+			return SET;
+		}
+		else if (MDELETE.equals(command)) {
+			return DELETE;
+		}
+		else {
+			return null;
+		}
+	}
+	
 }
@@ -0,0 +1,204 @@
+package io.sunhe.sealion.protocol;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.CompositeByteBuf;
+import io.netty.buffer.Unpooled;
+import io.sunhe.sealion.util.Charsets;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The format of the data field of the multi-key commands (MGET, MSET and MDELETE),
+ * which is the same in both the text and the binary protocol. The key field of
+ * a multi-key request doesn't have any meaning, see KEY.
+ *
+ * All numbers are in big-endian.
+ *
+ * The data of MGET and MDELETE request:
+ * 		(number of keys, int)
+ * 		{(key length, int)(key)} for every key
+ *
+ * The data of MSET request, the expiration time stamp of the request applies to all values:
+ * 		(number of keys, int)
+ * 		{(key length, int)(key)(value length, int)(value)} for every key
+ *
+ * The data of the response, one result for every key, in the same order as the request:
+ * 		(number of keys, int)
+ * 		{(status, byte)(flags, byte)(CAS, long)(value length, int)(value)} for every key
+ * The status is the status code of the binary protocol, and the CAS is valid only if
+ * the flags has BinaryProtocol.FLAG_CAS. The value is empty except for MGET hits.
+ *
+ * @author sunhe
+ * @date 2015年6月19日 下午2:20:16
+ */
+public class MultiKeyFormat {
+
+	/**
+	 * The key of every multi-key request.
+	 */
+	public static final String KEY = "*";
+
+	/**
+	 * The length of the fields of a result before its value.
+	 */
+	private static final int RESULT_HEADER_LENGTH = 14;
+
+	/**
+	 * @param keys
+	 * @return The data of MGET or MDELETE request.
+	 * @author sunhe
+	 * @date 2015年6月19日 下午2:25:40
+	 */
+	public static ByteBuf encodeKeys(List<String> keys) {
+		ByteBuf data = Unpooled.buffer();
+		data.writeInt(keys.size());
+		for (String key : keys) {
+			byte[] bytes = key.getBytes(Charsets.UTF_8);
+			data.writeInt(bytes.length);
+			data.writeBytes(bytes);
+		}
+		return data;
+	}
+
+	/**
+	 * @param keys
+	 * @param values One for every key.
+	 * @return The data of MSET request.
+	 * @author sunhe
+	 * @date 2015年6月19日 下午2:27:02
+	 */
+	public static ByteBuf encodeKeyValues(List<String> keys, List<byte[]> values) {
+		ByteBuf data = Unpooled.buffer();
+		data.writeInt(keys.size());
+		for (int i = 0; i < keys.size(); i++) {
+			byte[] bytes = keys.get(i).getBytes(Charsets.UTF_8);
+			data.writeInt(bytes.length);
+			data.writeBytes(bytes);
+			data.writeInt(values.get(i).length);
+			data.writeBytes(values.get(i));
+		}
+		return data;
+	}
+
+	/**
+	 * Decode the data of a multi-key request. The indexes of the data are left untouched.
+	 *
+	 * @param data
+	 * @param hasValues True for MSET.
+	 * @param keys Filled with the keys.
+	 * @param values Filled with the values, which are slices of the data. Ignored if hasValues is false.
+	 * @throws IllegalArgumentException If the data is malformed.
+	 * @author sunhe
+	 * @date 2015年6月19日 下午2:30:48
+	 */
+	public static void decodeRequest(ByteBuf data, boolean hasValues, List<byte[]> keys, List<ByteBuf> values) {
+		ByteBuf in = data.duplicate();
+		int numOfKeys = readLength(in, 4);
+		for (int i = 0; i < numOfKeys; i++) {
+			byte[] key = new byte[readLength(in, 1)];
+			in.readBytes(key);
+			keys.add(key);
+			if (hasValues) {
+				values.add(in.readSlice(readLength(in, 1)));
+			}
+		}
+		if (in.isReadable()) {
+			throw new IllegalArgumentException("Trailing bytes of the multi-key request: " + in.readableBytes());
+		}
+	}
+
+	/**
+	 * Read a length, which must be followed by at least so many units.
+	 *
+	 * @param in
+	 * @param unit In byte.
+	 * @return
+	 * @author sunhe
+	 * @date 2015年6月19日 下午2:33:15
+	 */
+	private static int readLength(ByteBuf in, int unit) {
+		if (in.readableBytes() < 4) {
+			throw new IllegalArgumentException("Truncated multi-key data");
+		}
+		int length = in.readInt();
+		if (length < 0 || length > in.readableBytes() / unit) {
+			throw new IllegalArgumentException("Invalid length in the multi-key data: " + length);
+		}
+		return length;
+	}
+
+	/**
+	 * Encode the results into the data of the response.
+	 * The references to the data of the results are passed on to the returned buffer,
+	 * large values aren't copied but composed, see SeaLionResponseEncoder.ZERO_COPY_THRESHOLD.
+	 *
+	 * @param results One for every key.
+	 * @return
+	 * @author sunhe
+	 * @date 2015年6月19日 下午2:36:20
+	 */
+	public static ByteBuf encodeResults(SeaLionResponse[] results) {
+		CompositeByteBuf composite = Unpooled.compositeBuffer(2 * results.length + 1);
+		int length = 0;
+		ByteBuf buf = Unpooled.buffer();
+		buf.writeInt(results.length);
+		for (SeaLionResponse result : results) {
+			ByteBuf value = result.getData();
+			buf.writeByte(BinaryProtocol.getStatusCode(result.getStatus()));
+			buf.writeByte(result.hasCas() ? BinaryProtocol.FLAG_CAS : 0);
+			buf.writeLong(result.hasCas() ? result.getCasValue() : 0);
+			buf.writeInt(value.readableBytes());
+			if (value.readableBytes() < SeaLionResponseEncoder.ZERO_COPY_THRESHOLD) {
+				buf.writeBytes(value, value.readerIndex(), value.readableBytes());
+				value.release();
+			}
+			else {
+				length += buf.readableBytes() + value.readableBytes();
+				composite.addComponent(buf);
+				composite.addComponent(value.slice());
+				buf = Unpooled.buffer();
+			}
+		}
+		length += buf.readableBytes();
+		composite.addComponent(buf);
+		composite.writerIndex(length);
+		return composite;
+	}
+
+	/**
+	 * Decode the data of the response. The indexes of the data are left untouched.
+	 *
+	 * @param data
+	 * @return One result for every key, whose data is a slice of the given data.
+	 * @throws IllegalArgumentException If the data is malformed.
+	 * @author sunhe
+	 * @date 2015年6月19日 下午2:40:02
+	 */
+	public static List<SeaLionResponse> decodeResults(ByteBuf data) {
+		ByteBuf in = data.duplicate();
+		int numOfKeys = readLength(in, RESULT_HEADER_LENGTH);
+		List<SeaLionResponse> results = new ArrayList<SeaLionResponse>(numOfKeys);
+		for (int i = 0; i < numOfKeys; i++) {
+			if (in.readableBytes() < RESULT_HEADER_LENGTH) {
+				throw new IllegalArgumentException("Truncated multi-key response");
+			}
+			SeaLionResponse result = new SeaLionResponse();
+			result.setStatus(BinaryProtocol.getStatus(in.readByte()));
+			boolean hasCas = (in.readByte() & BinaryProtocol.FLAG_CAS) != 0;
+			long cas = in.readLong();
+			if (hasCas) {
+				result.setCas(cas);
+			}
+			int length = in.readInt();
+			if (length < 0 || length > in.readableBytes()) {
+				throw new IllegalArgumentException("Invalid length in the multi-key response: " + length);
+			}
+			result.setDataLen(length);
+			result.setData(in.readSlice(length));
+			results.add(result);
+		}
+		return results;
+	}
+
+}
@@ -0,0 +1,138 @@
+package io.sunhe.sealion.protocol;
+
+import java.util.List;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.ByteToMessageDecoder;
+import io.sunhe.sealion.server.mem.MapContainer;
+import io.sunhe.sealion.server.mem.ShardedMapContainer;
+import io.sunhe.sealion.util.Logger;
+
+/**
+ * SeaLion request decoder of the binary protocol, see BinaryProtocol.
+ * Not thread-safe.
+ * 
+ * Since every frame is length-prefixed, a request is decoded only after the whole 
+ * frame has arrived, and then the data is copied into the shard exactly once.
+ * A frame whose data could never be stored is rejected as soon as its header 
+ * arrives, and the rest of it is discarded on the fly instead of being buffered.
+ * 
+ * @author sunhe
+ * @date 2015年6月18日 上午10:31:20
+ */
+public class SeaLionBinaryRequestDecoder extends ByteToMessageDecoder {
+	
+	private ShardedMapContainer mapContainer;
+	
+	/**
+	 * The bytes of the rejected frame which haven't yet been discarded.
+	 */
+	private long bytesToDiscard = 0;
+	
+	public SeaLionBinaryRequestDecoder(ShardedMapContainer mapContainer) {
+		this.mapContainer = mapContainer;
+	}
+
+	/*
+	 * 
+	 * (non-Javadoc)
+	 * @see io.netty.handler.codec.ByteToMessageDecoder#decode(io.netty.channel.ChannelHandlerContext, io.netty.buffer.ByteBuf, java.util.List)
+	 * @author sunhe
+	 * @date 2015年6月18日 上午10:33:05
+	 */
+	@Override
+	protected void decode(ChannelHandlerContext ctx, ByteBuf in, List<Object> out) throws Exception {
+		if (bytesToDiscard > 0) {
+			int discarded = (int) Math.min(bytesToDiscard, in.readableBytes());
+			in.skipBytes(discarded);
+			bytesToDiscard -= discarded;
+			return;
+		}
+		if (in.readableBytes() < BinaryProtocol.REQUEST_HEADER_LENGTH) {
+			return;
+		}
+		int start = in.readerIndex();
+		int keyLen = in.getUnsignedShort(start + 2);
+		int dataLen = in.getInt(start + 12);
+		if (in.getByte(start) != BinaryProtocol.MAGIC_REQUEST || dataLen < 0) {
+			// The frames cann't be delimited any more, give up the connection.
+			in.skipBytes(in.readableBytes());
+			ctx.close();
+			return;
+		}
+		if (! mapContainer.canHold(keyLen, dataLen)) {
+			// too large to be stored at all, don't wait for the rest of the frame.
+			int opaque = in.getInt(start + 8);
+			in.skipBytes(BinaryProtocol.REQUEST_HEADER_LENGTH);
+			bytesToDiscard = (long) keyLen + dataLen;
+			reply(ctx, Statuses.BAD_REQUEST, opaque);
+			return;
+		}
+		// compared without adding dataLen, which may overflow for a hostile frame.
+		if (in.readableBytes() - BinaryProtocol.REQUEST_HEADER_LENGTH - keyLen < dataLen) {
+			// the frame hasn't yet been read completely
+			return;
+		}
+		String command = BinaryProtocol.getCommand(in.getByte(start + 1));
+		int flags = in.getByte(start + 4);
+		int opaque = in.getInt(start + 8);
+		long cas = in.getLong(start + 16);
+		long timeStamp = in.getLong(start + 24);
+		in.skipBytes(BinaryProtocol.REQUEST_HEADER_LENGTH);
+		byte[] key = new byte[keyLen];
+		in.readBytes(key);
+		if (command == null) {
+			in.skipBytes(dataLen);
+			reply(ctx, Statuses.BAD_REQUEST, opaque);
+			return;
+		}
+		// The data is allocated from the shard which the key belongs to.
+		MapContainer shard = mapContainer.getShard(key);
+		ByteBuf data = shard.allocate(dataLen);
+		if (data == null) {
+			// Server out of memory, discard the data.
+			in.skipBytes(dataLen);
+			reply(ctx, Statuses.SERVER_OUT_OF_MEMORY, opaque);
+			return;
+		}
+		in.readBytes(data);
+		SeaLionRequest request = new SeaLionRequest();
+		request.setCommand(command);
+		request.setKeyBytes(key);
+		request.setBinaryOpaque(opaque);
+		request.setDataLen(dataLen);
+		request.setIsSafeMode((flags & BinaryProtocol.FLAG_SAFE_MODE) != 0);
+		if ((flags & BinaryProtocol.FLAG_CAS) != 0) {
+			request.setCas(cas);
+		}
+		request.setTimeStamp(timeStamp);
+		request.setData(data);
+		if (Logger.isEnabled()) {
+			Logger.log(ctx.channel().remoteAddress().toString() + " Decoded request", request.toString());
+		}
+		out.add(request);
+	}
+	
+	/**
+	 * Reply a request which won't be processed.
+	 * Note that the response is written from the tail of the pipeline, 
+	 * so that it passes through the response encoder.
+	 * 
+	 * @param ctx
+	 * @param status
+	 * @param opaque
+	 * @author sunhe
+	 * @date 2015年6月18日 上午10:40:12
+	 */
+	private void reply(ChannelHandlerContext ctx, String status, int opaque) {
+		SeaLionResponse response = new SeaLionResponse();
+		response.setStatus(status);
+		response.setBinaryOpaque(opaque);
+		response.setDataLen(0);
+		response.setData(Unpooled.EMPTY_BUFFER);
+		ctx.channel().writeAndFlush(response);
+	}
+
+}
@@ -0,0 +1,63 @@
+package io.sunhe.sealion.protocol;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandler.Sharable;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.MessageToByteEncoder;
+import io.sunhe.sealion.util.Logger;
+
+/**
+ * SeaLion request encoder of the binary protocol, see BinaryProtocol.
+ * Thread-safe.
+ * 
+ * The opaque of the request is the binary one, see SeaLionRequest.getBinaryOpaque().
+ * 
+ * @author sunhe
+ * @date 2015年6月18日 上午10:52:47
+ */
+@Sharable
+public class SeaLionBinaryRequestEncoder extends MessageToByteEncoder<SeaLionRequest> {
+	
+	@Override
+	protected ByteBuf allocateBuffer(ChannelHandlerContext ctx, SeaLionRequest msg, boolean preferDirect) 
+			throws Exception {
+		byte[] key = msg.getKeyBytes();
+		int size = BinaryProtocol.REQUEST_HEADER_LENGTH + (key == null ? 0 : key.length) 
+				+ msg.getData().readableBytes();
+		return preferDirect ? ctx.alloc().ioBuffer(size) : ctx.alloc().heapBuffer(size);
+	}
+
+	@Override
+	protected void encode(ChannelHandlerContext ctx, SeaLionRequest msg, ByteBuf out) throws Exception {
+		byte opcode = BinaryProtocol.getOpcode(msg.getCommand());
+		if (opcode == 0) {
+			throw new IllegalArgumentException("Unknown command: " + msg.getCommand());
+		}
+		byte[] key = msg.getKeyBytes();
+		if (key == null) {
+			key = new byte[0];
+		}
+		if (key.length > BinaryProtocol.MAX_KEY_LENGTH) {
+			throw new IllegalArgumentException("Key too long: " + key.length);
+		}
+		ByteBuf data = msg.getData();
+		int flags = (msg.getIsSafeMode() ? BinaryProtocol.FLAG_SAFE_MODE : 0) 
+				| (msg.hasCas() ? BinaryProtocol.FLAG_CAS : 0);
+		out.writeByte(BinaryProtocol.MAGIC_REQUEST);
+		out.writeByte(opcode);
+		out.writeShort(key.length);
+		out.writeByte(flags);
+		out.writeMedium(0);
+		out.writeInt(msg.getBinaryOpaque());
+		out.writeInt(data.readableBytes());
+		out.writeLong(msg.hasCas() ? msg.getCasValue() : 0);
+		out.writeLong(msg.getTimeStamp());
+		out.writeBytes(key);
+		// Leave the indexes of the data untouched, since it may be shared.
+		out.writeBytes(data, data.readerIndex(), data.readableBytes());
+		if (Logger.isEnabled()) {
+			Logger.log(ctx.channel().remoteAddress().toString() + " Encoded request", msg.toString());
+		}
+	}
+
+}
@@ -0,0 +1,61 @@
+package io.sunhe.sealion.protocol;
+
+import java.util.List;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.ByteToMessageDecoder;
+import io.netty.handler.codec.CorruptedFrameException;
+import io.sunhe.sealion.util.Logger;
+
+/**
+ * SeaLion response decoder of the binary protocol, see BinaryProtocol.
+ * Not thread-safe.
+ * 
+ * @author sunhe
+ * @date 2015年6月18日 上午11:02:16
+ */
+public class SeaLionBinaryResponseDecoder extends ByteToMessageDecoder {
+
+	/*
+	 * 
+	 * (non-Javadoc)
+	 * @see io.netty.handler.codec.ByteToMessageDecoder#decode(io.netty.channel.ChannelHandlerContext, io.netty.buffer.ByteBuf, java.util.List)
+	 * @author sunhe
+	 * @date 2015年6月18日 上午11:03:40
+	 */
+	@Override
+	protected void decode(ChannelHandlerContext ctx, ByteBuf in, List<Object> out) throws Exception {
+		if (in.readableBytes() < BinaryProtocol.RESPONSE_HEADER_LENGTH) {
+			return;
+		}
+		int start = in.readerIndex();
+		int dataLen = in.getInt(start + 12);
+		if (in.getByte(start) != BinaryProtocol.MAGIC_RESPONSE || dataLen < 0) {
+			in.skipBytes(in.readableBytes());
+			throw new CorruptedFrameException("Not a binary response");
+		}
+		// compared without adding dataLen, which may overflow.
+		if (in.readableBytes() - BinaryProtocol.RESPONSE_HEADER_LENGTH < dataLen) {
+			// the frame hasn't yet been read completely
+			return;
+		}
+		SeaLionResponse response = new SeaLionResponse();
+		response.setStatus(BinaryProtocol.getStatus(in.getByte(start + 1)));
+		if ((in.getByte(start + 4) & BinaryProtocol.FLAG_CAS) != 0) {
+			response.setCas(in.getLong(start + 16));
+		}
+		response.setBinaryOpaque(in.getInt(start + 8));
+		response.setDataLen(dataLen);
+		in.skipBytes(BinaryProtocol.RESPONSE_HEADER_LENGTH);
+		ByteBuf data = Unpooled.buffer(dataLen, dataLen);
+		in.readBytes(data);
+		response.setData(data);
+		if (Logger.isEnabled()) {
+			Logger.log(ctx.channel().remoteAddress().toString() + " Decoded response", response.toString());
+		}
+		out.add(response);
+	}
+
+}
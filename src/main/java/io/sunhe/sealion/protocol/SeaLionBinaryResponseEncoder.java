@@ -0,0 +1,57 @@
+package io.sunhe.sealion.protocol;
+
+import java.util.List;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.CompositeByteBuf;
+import io.netty.channel.ChannelHandler.Sharable;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.MessageToMessageEncoder;
+import io.sunhe.sealion.util.Logger;
+
+/**
+ * SeaLion response encoder of the binary protocol, see BinaryProtocol.
+ * Thread-safe.
+ * 
+ * Just like SeaLionResponseEncoder, the encoder takes over the reference to the data 
+ * of the response, and large data isn't copied but composed with the header.
+ * 
+ * @author sunhe
+ * @date 2015年6月18日 上午10:45:33
+ */
+@Sharable
+public class SeaLionBinaryResponseEncoder extends MessageToMessageEncoder<SeaLionResponse> {
+
+	@Override
+	protected void encode(ChannelHandlerContext ctx, SeaLionResponse msg, List<Object> out) throws Exception {
+		ByteBuf data = msg.getData();
+		boolean isZeroCopy = data.readableBytes() >= SeaLionResponseEncoder.ZERO_COPY_THRESHOLD;
+		ByteBuf header = ctx.alloc().ioBuffer(BinaryProtocol.RESPONSE_HEADER_LENGTH 
+				+ (isZeroCopy ? 0 : data.readableBytes()));
+		header.writeByte(BinaryProtocol.MAGIC_RESPONSE);
+		header.writeByte(BinaryProtocol.getStatusCode(msg.getStatus()));
+		header.writeShort(0);
+		header.writeByte(msg.hasCas() ? BinaryProtocol.FLAG_CAS : 0);
+		header.writeMedium(0);
+		header.writeInt(msg.getBinaryOpaque());
+		header.writeInt(data.readableBytes());
+		header.writeLong(msg.hasCas() ? msg.getCasValue() : 0);
+		if (isZeroCopy) {
+			// The reference to the data is passed on to the composite.
+			CompositeByteBuf composite = ctx.alloc().compositeBuffer(2);
+			composite.addComponent(header);
+			composite.addComponent(data.slice());
+			composite.writerIndex(header.readableBytes() + data.readableBytes());
+			out.add(composite);
+		}
+		else {
+			header.writeBytes(data, data.readerIndex(), data.readableBytes());
+			data.release();
+			out.add(header);
+		}
+		if (Logger.isEnabled()) {
+			Logger.log(ctx.channel().remoteAddress().toString() + " Encoded response", msg.toString());
+		}
+	}
+	
+}
@@ -0,0 +1,63 @@
+package io.sunhe.sealion.protocol;
+
+import java.util.List;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelPipeline;
+import io.netty.handler.codec.ByteToMessageDecoder;
+import io.sunhe.sealion.server.mem.ShardedMapContainer;
+
+/**
+ * Detect the protocol of the connection by its first byte, and then replace 
+ * itself with the request decoder of that protocol, see BinaryProtocol.
+ * For the binary protocol, the text response encoder is replaced too.
+ * 
+ * The bytes already received are handed to the new decoder once this is removed.
+ * 
+ * Not thread-safe.
+ * 
+ * @author sunhe
+ * @date 2015年6月18日 上午11:12:30
+ */
+public class SeaLionProtocolDetector extends ByteToMessageDecoder {
+	
+	private ShardedMapContainer mapContainer;
+	
+	private SeaLionBinaryResponseEncoder binaryResponseEncoder;
+	
+	/**
+	 * @param mapContainer
+	 * @param binaryResponseEncoder Shared by all connections.
+	 * @author sunhe
+	 * @date 2015年6月18日 上午11:13:52
+	 */
+	public SeaLionProtocolDetector(ShardedMapContainer mapContainer, SeaLionBinaryResponseEncoder binaryResponseEncoder) {
+		this.mapContainer = mapContainer;
+		this.binaryResponseEncoder = binaryResponseEncoder;
+	}
+
+	/*
+	 * 
+	 * (non-Javadoc)
+	 * @see io.netty.handler.codec.ByteToMessageDecoder#decode(io.netty.channel.ChannelHandlerContext, io.netty.buffer.ByteBuf, java.util.List)
+	 * @author sunhe
+	 * @date 2015年6月18日 上午11:15:07
+	 */
+	@Override
+	protected void decode(ChannelHandlerContext ctx, ByteBuf in, List<Object> out) throws Exception {
+		if (! in.isReadable()) {
+			return;
+		}
+		ChannelPipeline pipeline = ctx.pipeline();
+		if (in.getByte(in.readerIndex()) == BinaryProtocol.MAGIC_REQUEST) {
+			// The encoder goes first, since the decoder may reply right away.
+			pipeline.replace(SeaLionResponseEncoder.class, "binaryResponseEncoder", binaryResponseEncoder);
+			pipeline.replace(this, "binaryRequestDecoder", new SeaLionBinaryRequestDecoder(mapContainer));
+		}
+		else {
+			pipeline.replace(this, "requestDecoder", new SeaLionRequestDecoder(mapContainer));
+		}
+	}
+
+}
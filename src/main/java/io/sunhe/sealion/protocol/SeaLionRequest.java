@@ -1,6 +1,7 @@
 package io.sunhe.sealion.protocol;
 
 import io.netty.buffer.ByteBuf;
+import io.sunhe.sealion.util.Charsets;
 import io.sunhe.sealion.util.TimeStampFormatter;
 
 /**
@@ -26,12 +27,23 @@ public class SeaLionRequest {
 	 */
 	private String key;
 	
+	/**
+	 * The UTF-8 bytes of the key.
+	 * Either the key or its bytes is set, and the other one is converted lazily.
+	 */
+	private byte[] keyBytes;
+	
 	/**
 	 * Server will return this field without any modification.
 	 * So the field is usually used to map a response to a request.
 	 */
 	private String opaque;
 	
+	/**
+	 * The opaque of the binary protocol, which is an int instead.
+	 */
+	private int binaryOpaque;
+	
 	/**
 	 * The length of unstructured data field in request.
 	 */
@@ -48,6 +60,14 @@ public class SeaLionRequest {
 	 */
 	private String cas;
 	
+	/**
+	 * The CAS as a number, as the binary protocol carries it.
+	 * Valid only if hasCasValue is true, in which case the CAS string is converted lazily.
+	 */
+	private long casValue;
+	
+	private boolean hasCasValue;
+	
 	/**
 	 * The expiration time stamp.
 	 * Note that 0 represents that there's not expiration time.
@@ -91,11 +111,37 @@ public class SeaLionRequest {
 	}
 
 	public String getKey() {
+		if (key == null && keyBytes != null) {
+			key = new String(keyBytes, Charsets.UTF_8);
+		}
 		return key;
 	}
 
 	public void setKey(String key) {
 		this.key = key;
+		keyBytes = null;
+	}
+	
+	/**
+	 * @return The UTF-8 bytes of the key, null if there isn't any key.
+	 * @author sunhe
+	 * @date 2015年6月18日 上午10:02:16
+	 */
+	public byte[] getKeyBytes() {
+		if (keyBytes == null && key != null) {
+			keyBytes = key.getBytes(Charsets.UTF_8);
+		}
+		return keyBytes;
+	}
+	
+	/**
+	 * @param keyBytes The UTF-8 bytes of the key.
+	 * @author sunhe
+	 * @date 2015年6月18日 上午10:02:58
+	 */
+	public void setKeyBytes(byte[] keyBytes) {
+		this.keyBytes = keyBytes;
+		key = null;
 	}
 	
 	public String getOpaque() {
@@ -105,6 +151,14 @@ public class SeaLionRequest {
 	public void setOpaque(String opaque) {
 		this.opaque = opaque;
 	}
+	
+	public int getBinaryOpaque() {
+		return binaryOpaque;
+	}
+	
+	public void setBinaryOpaque(int binaryOpaque) {
+		this.binaryOpaque = binaryOpaque;
+	}
 
 	public int getDataLen() {
 		return dataLen;
@@ -123,11 +177,49 @@ public class SeaLionRequest {
 	}
 	
 	public String getCas() {
+		if (cas == null && hasCasValue) {
+			cas = String.valueOf(casValue);
+		}
 		return cas;
 	}
 	
 	public void setCas(String cas) {
 		this.cas = cas;
+		hasCasValue = false;
+	}
+	
+	/**
+	 * @param cas
+	 * @author sunhe
+	 * @date 2015年6月18日 上午10:05:37
+	 */
+	public void setCas(long cas) {
+		casValue = cas;
+		hasCasValue = true;
+		this.cas = null;
+	}
+	
+	/**
+	 * @return True if the request has a CAS check.
+	 * @author sunhe
+	 * @date 2015年6月18日 上午10:06:12
+	 */
+	public boolean hasCas() {
+		return hasCasValue || cas != null;
+	}
+	
+	/**
+	 * @return The CAS as a number, parsed from the CAS string if needed.
+	 * @throws NumberFormatException If the CAS string isn't a decimal number.
+	 * @author sunhe
+	 * @date 2015年6月18日 上午10:07:45
+	 */
+	public long getCasValue() {
+		if (! hasCasValue) {
+			casValue = Long.parseLong(cas);
+			hasCasValue = true;
+		}
+		return casValue;
 	}
 	
 	public long getTimeStamp() {
@@ -155,8 +247,8 @@ public class SeaLionRequest {
 	 * @date 2015年3月15日 上午9:02:23
 	 */
 	public String toString() {
-		return command + " " + key + " " + opaque + " " + dataLen + (isSafeMode ? " 1" : " 0")
-				+ (cas == null ? "" : " " + cas) 
+		return command + " " + getKey() + " " + (opaque == null ? binaryOpaque : opaque) + " " + dataLen 
+				+ (isSafeMode ? " 1" : " 0") + (hasCas() ? " " + getCas() : "") 
 				+ " [" + (timeStamp == 0 ? 0 : TimeStampFormatter.fromTimeStampToStrDateTime(timeStamp)) + "]";
 	}
 	
@@ -7,6 +7,7 @@ import io.netty.buffer.Unpooled;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.handler.codec.ByteToMessageDecoder;
 import io.sunhe.sealion.server.mem.MapContainer;
+import io.sunhe.sealion.server.mem.ShardedMapContainer;
 import io.sunhe.sealion.util.Charsets;
 import io.sunhe.sealion.util.Logger;
 
@@ -14,6 +15,15 @@ import io.sunhe.sealion.util.Logger;
  * SeaLion request decoder.
  * Not thread-safe.
  * 
+ * The text line is tokenized in place on the buffer, no string is built from it
+ * except the opaque, which has to be echoed back. The command is matched against
+ * the known ones byte by byte, and the numbers are parsed directly from the bytes.
+ * Note that the key bytes are still copied once per request, since the request is 
+ * handed to the worker thread, outliving the buffer.
+ * 
+ * A data field which could never be stored is rejected as soon as the text line 
+ * is parsed, and then discarded on the fly instead of being buffered.
+ * 
  * @author sunhe
  * @date 2015年3月14日 下午7:50:49
  */
@@ -23,8 +33,45 @@ public class SeaLionRequestDecoder extends ByteToMessageDecoder {
 	private static final int TEXT_LINE = 0;
 	// Decoding data field(unstructured data)
 	private static final int DATA_FIELD = 1;
+	// Discarding the data field of a rejected request
+	private static final int DISCARDING = 2;
+	
+	private static final byte CR = '\r';
+	
+	private static final byte LF = '\n';
+	
+	/**
+	 * For now, the text line must have either 5 or 6 words.
+	 */
+	private static final int MIN_WORDS = 5;
+	
+	private static final int MAX_WORDS = 6;
 	
-	private MapContainer mapContainer;
+	private static final String[] COMMANDS = {
+		Commands.GET,
+		Commands.SET,
+		Commands.DELETE,
+		Commands.CAS,
+		Commands.MGET,
+		Commands.MSET,
+		Commands.MDELETE,
+		Commands.MEM_PERCENTAGE,
+		Commands.MEM_USAGE,
+		Commands.MEM_LIMIT,
+		Commands.TASK_QUEUE_SIZE,
+		Commands.NUM_CONN,
+		Commands.START_TIME
+	};
+	
+	private static final byte[][] COMMAND_BYTES = new byte[COMMANDS.length][];
+	
+	static {
+		for (int i = 0; i < COMMANDS.length; i++) {
+			COMMAND_BYTES[i] = COMMANDS[i].getBytes(Charsets.UTF_8);
+		}
+	}
+	
+	private ShardedMapContainer mapContainer;
 	
 	private int state = TEXT_LINE;
 	
@@ -35,10 +82,28 @@ public class SeaLionRequestDecoder extends ByteToMessageDecoder {
 	
 	private boolean isBadRequest = false;
 	
-	public SeaLionRequestDecoder(MapContainer mapContainer) {
+	/**
+	 * The bytes of the rejected data field which haven't yet been discarded.
+	 */
+	private long bytesToDiscard = 0;
+	
+	/**
+	 * How many bytes of the incomplete text line have been searched for LF,
+	 * so that they won't be searched again.
+	 */
+	private int searchedLength = 0;
+	
+	/**
+	 * The start (inclusive) and end (exclusive) index of every word of the text line.
+	 */
+	private int[] wordStarts = new int[MAX_WORDS];
+	
+	private int[] wordEnds = new int[MAX_WORDS];
+	
+	public SeaLionRequestDecoder(ShardedMapContainer mapContainer) {
 		this.mapContainer = mapContainer;
 	}
-
+	
 	/*
 	 * 
 	 * (non-Javadoc)
@@ -49,82 +114,206 @@ public class SeaLionRequestDecoder extends ByteToMessageDecoder {
 	@Override
 	protected void decode(ChannelHandlerContext ctx, ByteBuf in, List<Object> out) throws Exception {
 		if (state == TEXT_LINE) {
-			if (request == null) {
-				request = new SeaLionRequest();
-			}
-			int betweenR = in.bytesBefore("\r".getBytes(Charsets.UTF_8)[0]);
-			int betweenN = in.bytesBefore("\n".getBytes(Charsets.UTF_8)[0]);
-			if (betweenR == -1 || betweenN == -1 || betweenR+1 != betweenN) {
+			int lineStart = in.readerIndex();
+			int lf = in.indexOf(lineStart + searchedLength, in.writerIndex(), LF);
+			if (lf == -1) {
 				// the text line hasn't yet been read completely
+				searchedLength = in.readableBytes();
 				return;
 			}
-			String textLine = in.toString(in.readerIndex(), betweenR+1, Charsets.UTF_8);
-			String[] words = textLine.split("\\s+");
-			in.readerIndex(in.readerIndex() + betweenR + 2);
-			// For now, the text line must have either 5 or 6 words.
-			if (words.length < 5 || words.length > 6) {
-				isBadRequest = true;
-				request.setOpaque(words[2]);
+			searchedLength = 0;
+			int lineEnd = lf > lineStart && in.getByte(lf - 1) == CR ? lf - 1 : lf;
+			in.readerIndex(lf + 1);
+			request = new SeaLionRequest();
+			parseTextLine(in, lineStart, lineEnd);
+			if (! isBadRequest && ! mapContainer.canHold(request.getKeyBytes().length, request.getDataLen())) {
+				// too large to be stored at all, don't wait for the data field.
+				// Note that '+ 2' is the length of '\r\n'.
+				bytesToDiscard = (long) SeaLionRequest.LENGTH_OF_TIME_STAMP + request.getDataLen() + 2;
+				reply(ctx, Statuses.BAD_REQUEST);
+				resetState();
+				state = DISCARDING;
 			}
 			else {
-				try {
-					String command = words[0];
-					String key = words[1];
-					String opaque = words[2];
-					int dataLen = Integer.parseInt(words[3]);
-					boolean isSafeMode = words[4].equals("0") ? false : true;
-					String cas = words.length == 6 ? words[5] : null;
-					request.setCommand(command);
-					request.setKey(key);
-					request.setOpaque(opaque);
-					request.setDataLen(dataLen);
-					request.setIsSafeMode(isSafeMode);
-					request.setCas(cas);
-				}
-				catch (NumberFormatException e) {
-					isBadRequest = true;
-				}
+				state = DATA_FIELD;
+			}
+		}
+		else if (state == DISCARDING) {
+			int discarded = (int) Math.min(bytesToDiscard, in.readableBytes());
+			in.skipBytes(discarded);
+			bytesToDiscard -= discarded;
+			if (bytesToDiscard == 0) {
+				state = TEXT_LINE;
 			}
-			state = DATA_FIELD;
 		}
 		else {
 			// decode the data field
-			// Note that '+ 2' is the length of '\r\n'.
-			if (in.readableBytes() >= request.getDataLen() + SeaLionRequest.LENGTH_OF_TIME_STAMP + 2) {
+			// Note that '+ 2' is the length of '\r\n', compared in long, which never overflows.
+			if (in.readableBytes() >= (long) request.getDataLen() + SeaLionRequest.LENGTH_OF_TIME_STAMP + 2) {
 				request.setTimeStamp(in.readLong());
-				ByteBuf data = mapContainer.allocate(request.getDataLen());
+				// The data is allocated from the shard which the key belongs to.
+				MapContainer shard = mapContainer.getShard(request.getKeyBytes());
+				ByteBuf data = shard.allocate(request.getDataLen());
 				if (data == null) {
-					// Server out of memory.
-					SeaLionResponse response = new SeaLionResponse();
-					response.setStatus(Statuses.SERVER_OUT_OF_MEMORY);
-					response.setOpaque(request.getOpaque());
-					response.setDataLen(0);
-					response.setData(Unpooled.EMPTY_BUFFER);
-					ctx.writeAndFlush(response);
+					// Server out of memory, discard the data field.
+					in.skipBytes(request.getDataLen() + 2);
+					reply(ctx, Statuses.SERVER_OUT_OF_MEMORY);
 				}
 				else {
 					in.readBytes(data);
-					in.readerIndex(in.readerIndex() + 2);
+					in.skipBytes(2);
 					if (isBadRequest) {
-						mapContainer.release(data);
-						SeaLionResponse response = new SeaLionResponse();
-						response.setStatus(Statuses.BAD_REQUEST);
-						response.setOpaque(request.getOpaque());
-						response.setDataLen(0);
-						response.setData(Unpooled.EMPTY_BUFFER);
-						ctx.writeAndFlush(response);
+						shard.release(data);
+						reply(ctx, Statuses.BAD_REQUEST);
 					}
 					else {
 						request.setData(data);
-						Logger.log(ctx.channel().remoteAddress().toString() + " Decoded request", request.toString());
+						if (Logger.isEnabled()) {
+							Logger.log(ctx.channel().remoteAddress().toString() + " Decoded request", request.toString());
+						}
 						out.add(request);
 					}
-					resetState();
 				}
+				resetState();
 			}
 		}
 	}
 	
+	/**
+	 * Tokenize the text line, and fill the request with the words.
+	 * 
+	 * @param in
+	 * @param start The index of the first byte of the line.
+	 * @param end The index of the line terminator.
+	 * @author sunhe
+	 * @date 2015年6月18日 下午2:20:41
+	 */
+	private void parseTextLine(ByteBuf in, int start, int end) {
+		int numOfWords = 0;
+		int i = start;
+		while (true) {
+			while (i < end && isWhitespace(in.getByte(i))) {
+				i++;
+			}
+			if (i == end) {
+				break;
+			}
+			if (numOfWords == MAX_WORDS) {
+				// too many words.
+				numOfWords++;
+				break;
+			}
+			wordStarts[numOfWords] = i;
+			while (i < end && ! isWhitespace(in.getByte(i))) {
+				i++;
+			}
+			wordEnds[numOfWords++] = i;
+		}
+		if (numOfWords > 2) {
+			request.setOpaque(toString(in, 2));
+		}
+		if (numOfWords < MIN_WORDS || numOfWords > MAX_WORDS) {
+			isBadRequest = true;
+			return;
+		}
+		int dataLen = (int) parseNumber(in, 3, Integer.MAX_VALUE);
+		if (dataLen < 0) {
+			isBadRequest = true;
+			return;
+		}
+		request.setCommand(parseCommand(in));
+		byte[] key = new byte[wordEnds[1] - wordStarts[1]];
+		in.getBytes(wordStarts[1], key);
+		request.setKeyBytes(key);
+		request.setDataLen(dataLen);
+		request.setIsSafeMode(wordEnds[4] - wordStarts[4] != 1 || in.getByte(wordStarts[4]) != '0');
+		if (numOfWords == MAX_WORDS) {
+			long cas = parseNumber(in, 5, Long.MAX_VALUE);
+			if (cas >= 0) {
+				request.setCas(cas);
+			}
+			else {
+				// may be issued by an old client, it just fails the CAS check.
+				request.setCas(toString(in, 5));
+			}
+		}
+	}
+	
+	/**
+	 * @param in
+	 * @return One of the constants in Commands, or a new string if the command is unknown.
+	 * @author sunhe
+	 * @date 2015年6月18日 下午2:25:13
+	 */
+	private String parseCommand(ByteBuf in) {
+		int start = wordStarts[0];
+		int length = wordEnds[0] - start;
+		for (int i = 0; i < COMMAND_BYTES.length; i++) {
+			byte[] command = COMMAND_BYTES[i];
+			if (command.length != length) {
+				continue;
+			}
+			int j = 0;
+			while (j < length && in.getByte(start + j) == command[j]) {
+				j++;
+			}
+			if (j == length) {
+				return COMMANDS[i];
+			}
+		}
+		// will be replied with BAD_REQUEST by the worker.
+		return toString(in, 0);
+	}
+	
+	/**
+	 * Parse the word as a non-negative decimal number.
+	 * 
+	 * @param in
+	 * @param word The index of the word.
+	 * @param max
+	 * @return -1 if the word isn't a decimal number or exceeds the max.
+	 * @author sunhe
+	 * @date 2015年6月18日 下午2:28:36
+	 */
+	private long parseNumber(ByteBuf in, int word, long max) {
+		long number = 0;
+		for (int i = wordStarts[word]; i < wordEnds[word]; i++) {
+			int digit = in.getByte(i) - '0';
+			if (digit < 0 || digit > 9 || number > (max - digit) / 10) {
+				return -1;
+			}
+			number = number * 10 + digit;
+		}
+		return number;
+	}
+	
+	private String toString(ByteBuf in, int word) {
+		return in.toString(wordStarts[word], wordEnds[word] - wordStarts[word], Charsets.UTF_8);
+	}
+	
+	private static boolean isWhitespace(byte b) {
+		return b == ' ' || b == '\t';
+	}
+	
+	/**
+	 * Reply the request which won't be processed.
+	 * Note that the response is written from the tail of the pipeline,
+	 * so that it passes through the response encoder.
+	 * 
+	 * @param ctx
+	 * @param status
+	 * @author sunhe
+	 * @date 2015年6月18日 下午2:31:50
+	 */
+	private void reply(ChannelHandlerContext ctx, String status) {
+		SeaLionResponse response = new SeaLionResponse();
+		response.setStatus(status);
+		response.setOpaque(request.getOpaque());
+		response.setDataLen(0);
+		response.setData(Unpooled.EMPTY_BUFFER);
+		ctx.channel().writeAndFlush(response);
+	}
+	
 	/**
 	 * Reset the decoding state.
 	 * 
@@ -58,7 +58,9 @@ public class SeaLionRequestEncoder extends MessageToByteEncoder<SeaLionRequest>
 		// It's imperative to invoke duplicate method.
 		out.writeBytes(msg.getData().duplicate());
 		out.writeBytes("\r\n".getBytes(Charsets.UTF_8));
-		Logger.log(ctx.channel().remoteAddress().toString() + " Encoded request", msg.toString());
+		if (Logger.isEnabled()) {
+			Logger.log(ctx.channel().remoteAddress().toString() + " Encoded request", msg.toString());
+		}
 	}
 
 }
@@ -21,6 +21,11 @@ public class SeaLionResponse {
 	 */
 	private String opaque;
 	
+	/**
+	 * The opaque of the binary protocol, which is an int instead.
+	 */
+	private int binaryOpaque;
+	
 	/**
 	 * The length of unstructured data field in request.
 	 */
@@ -32,6 +37,14 @@ public class SeaLionResponse {
 	 */
 	private String cas;
 	
+	/**
+	 * The CAS as a number, as the binary protocol carries it.
+	 * Valid only if hasCasValue is true, in which case the CAS string is converted lazily.
+	 */
+	private long casValue;
+	
+	private boolean hasCasValue;
+	
 	private ByteBuf data;
 	
 	/**
@@ -65,6 +78,14 @@ public class SeaLionResponse {
 	public void setOpaque(String opaque) {
 		this.opaque = opaque;
 	}
+	
+	public int getBinaryOpaque() {
+		return binaryOpaque;
+	}
+	
+	public void setBinaryOpaque(int binaryOpaque) {
+		this.binaryOpaque = binaryOpaque;
+	}
 
 	public int getDataLen() {
 		return dataLen;
@@ -75,11 +96,49 @@ public class SeaLionResponse {
 	}
 	
 	public String getCas() {
+		if (cas == null && hasCasValue) {
+			cas = String.valueOf(casValue);
+		}
 		return cas;
 	}
 	
 	public void setCas(String cas) {
 		this.cas = cas;
+		hasCasValue = false;
+	}
+	
+	/**
+	 * @param cas
+	 * @author sunhe
+	 * @date 2015年6月18日 上午10:12:20
+	 */
+	public void setCas(long cas) {
+		casValue = cas;
+		hasCasValue = true;
+		this.cas = null;
+	}
+	
+	/**
+	 * @return True if the response contains CAS value.
+	 * @author sunhe
+	 * @date 2015年6月18日 上午10:12:51
+	 */
+	public boolean hasCas() {
+		return hasCasValue || cas != null;
+	}
+	
+	/**
+	 * @return The CAS as a number, parsed from the CAS string if needed.
+	 * @throws NumberFormatException If the CAS string isn't a decimal number.
+	 * @author sunhe
+	 * @date 2015年6月18日 上午10:13:30
+	 */
+	public long getCasValue() {
+		if (! hasCasValue) {
+			casValue = Long.parseLong(cas);
+			hasCasValue = true;
+		}
+		return casValue;
 	}
 
 	public ByteBuf getData() {
@@ -99,7 +158,8 @@ public class SeaLionResponse {
 	 * @date 2015年3月15日 上午9:03:46
 	 */
 	public String toString() {
-		return status + " " + opaque + " " + dataLen + (cas == null ? "" : " " + cas);
+		return status + " " + (opaque == null ? binaryOpaque : opaque) + " " + dataLen 
+				+ (hasCas() ? " " + getCas() : "");
 	}
 	
 }
@@ -71,7 +71,9 @@ public class SeaLionResponseDecoder extends ByteToMessageDecoder {
 				in.readBytes(data);
 				in.readerIndex(in.readerIndex() + 2);
 				response.setData(data);
-				Logger.log(ctx.channel().remoteAddress().toString() + " Decoded response", response.toString());
+				if (Logger.isEnabled()) {
+					Logger.log(ctx.channel().remoteAddress().toString() + " Decoded response", response.toString());
+				}
 				out.add(response);
 				resetState();
 			}
@@ -1,9 +1,13 @@
 package io.sunhe.sealion.protocol;
 
+import java.util.List;
+
 import io.netty.buffer.ByteBuf;
+import io.netty.buffer.CompositeByteBuf;
+import io.netty.buffer.Unpooled;
 import io.netty.channel.ChannelHandler.Sharable;
 import io.netty.channel.ChannelHandlerContext;
-import io.netty.handler.codec.MessageToByteEncoder;
+import io.netty.handler.codec.MessageToMessageEncoder;
 import io.sunhe.sealion.util.Charsets;
 import io.sunhe.sealion.util.Logger;
 
@@ -15,26 +19,62 @@ import io.sunhe.sealion.util.Logger;
  * 		(status) (opaque) (dataLen)[ (CAS)]\r\n
  * 		(data in binary)\r\n
  * 
+ * The encoder takes over the reference to the data of the response, and releases it 
+ * once the data has been written. So whoever puts a shared buffer, like the data of 
+ * an item, into a response must retain it first, otherwise the buffer may be released 
+ * by the worker before it's written.
+ * 
+ * Data no smaller than ZERO_COPY_THRESHOLD isn't copied, the header, the data and the 
+ * trailing \r\n are composed into a single buffer instead.
+ * 
  * @author sunhe
  * @date 2015年4月8日 下午2:30:08
  */
 @Sharable
-public class SeaLionResponseEncoder extends MessageToByteEncoder<SeaLionResponse> {
+public class SeaLionResponseEncoder extends MessageToMessageEncoder<SeaLionResponse> {
+	
+	/**
+	 * In byte.
+	 * Smaller data is copied, since it's cheaper than composing buffers.
+	 */
+	public static final int ZERO_COPY_THRESHOLD = 1024;
+	
+	private static final byte[] CRLF = "\r\n".getBytes(Charsets.UTF_8);
+	
+	private static final ByteBuf CRLF_BUF = Unpooled.unreleasableBuffer(
+			Unpooled.directBuffer(CRLF.length, CRLF.length).writeBytes(CRLF));
 
 	@Override
-	protected void encode(ChannelHandlerContext ctx, SeaLionResponse msg, ByteBuf out) throws Exception {
-		out.writeBytes((msg.getStatus() + " ").getBytes(Charsets.UTF_8));
-		out.writeBytes((msg.getOpaque() + " ").getBytes(Charsets.UTF_8));
-		out.writeBytes(Integer.toString(msg.getDataLen()).getBytes(Charsets.UTF_8));
+	protected void encode(ChannelHandlerContext ctx, SeaLionResponse msg, List<Object> out) throws Exception {
+		ByteBuf data = msg.getData();
+		boolean isZeroCopy = data.readableBytes() >= ZERO_COPY_THRESHOLD;
+		ByteBuf header = isZeroCopy ? ctx.alloc().ioBuffer() : ctx.alloc().ioBuffer(64 + data.readableBytes());
+		header.writeBytes((msg.getStatus() + " ").getBytes(Charsets.UTF_8));
+		header.writeBytes((msg.getOpaque() + " ").getBytes(Charsets.UTF_8));
+		header.writeBytes(Integer.toString(msg.getDataLen()).getBytes(Charsets.UTF_8));
 		if (msg.getCas() != null) {
 			// Has CAS value.
-			out.writeBytes((" " + msg.getCas()).getBytes(Charsets.UTF_8));
+			header.writeBytes((" " + msg.getCas()).getBytes(Charsets.UTF_8));
+		}
+		header.writeBytes(CRLF);
+		if (isZeroCopy) {
+			// The reference to the data is passed on to the composite.
+			CompositeByteBuf composite = ctx.alloc().compositeBuffer(3);
+			composite.addComponent(header);
+			composite.addComponent(data.slice());
+			composite.addComponent(CRLF_BUF.duplicate());
+			composite.writerIndex(header.readableBytes() + data.readableBytes() + CRLF.length);
+			out.add(composite);
+		}
+		else {
+			header.writeBytes(data, data.readerIndex(), data.readableBytes());
+			header.writeBytes(CRLF);
+			data.release();
+			out.add(header);
+		}
+		if (Logger.isEnabled()) {
+			Logger.log(ctx.channel().remoteAddress().toString() + " Encoded response", msg.toString());
 		}
-		out.writeBytes("\r\n".getBytes(Charsets.UTF_8));
-		// It's imperative to invoke duplicate method.
-		out.writeBytes(msg.getData().duplicate());
-		out.writeBytes("\r\n".getBytes(Charsets.UTF_8));
-		Logger.log(ctx.channel().remoteAddress().toString() + " Encoded response", msg.toString());
 	}
 	
 }
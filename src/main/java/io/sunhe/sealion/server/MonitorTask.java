@@ -60,12 +60,15 @@ public class MonitorTask implements Runnable {
 	public void processTask(Task task) {
 		SeaLionRequest request = task.getSeaLionRequest();
 		Channel channel = task.getChannel();
-		Logger.log(channel.remoteAddress().toString() + " Processing request", request.toString());
+		if (Logger.isEnabled()) {
+			Logger.log(channel.remoteAddress().toString() + " Processing request", request.toString());
+		}
 		
 		String command = request.getCommand();
 		boolean isSafeMode = request.getIsSafeMode();
 		SeaLionResponse response = new SeaLionResponse();
 		response.setOpaque(request.getOpaque());
+		response.setBinaryOpaque(request.getBinaryOpaque());
 		
 		if (Commands.MEM_PERCENTAGE.equals(command)) {
 			// MEM_PERCENTAGE command.
@@ -97,6 +100,12 @@ public class MonitorTask implements Runnable {
 			response.setDataLen(4);
 			response.setData(Unpooled.copyInt(serverMonitor.getNumOfConn()));
 		}
+		else if (Commands.START_TIME.equals(command)) {
+			// START_TIME command.
+			response.setStatus(Statuses.SUCCESS);
+			response.setDataLen(8);
+			response.setData(Unpooled.copyLong(serverMonitor.getStartTime()));
+		}
 		else {
 			response.setStatus(Statuses.BAD_REQUEST);
 			response.setDataLen(0);
@@ -0,0 +1,79 @@
+package io.sunhe.sealion.server;
+
+import io.sunhe.sealion.protocol.MultiKeyFormat;
+import io.sunhe.sealion.protocol.SeaLionRequest;
+import io.sunhe.sealion.protocol.SeaLionResponse;
+import io.sunhe.sealion.protocol.Statuses;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Collect the results of the keys of a multi-key request, which are processed 
+ * by the workers of their own shards, into a single response.
+ * 
+ * Thread-safe. Every result is collected exactly once, and the one collecting 
+ * the last result builds the response.
+ * 
+ * @author sunhe
+ * @date 2015年6月19日 下午3:02:45
+ */
+public class MultiKeyCollector {
+	
+	/**
+	 * The multi-key request.
+	 */
+	private SeaLionRequest request;
+	
+	private SeaLionResponse[] results;
+	
+	/**
+	 * The number of results not collected yet.
+	 */
+	private AtomicInteger remaining;
+	
+	/**
+	 * @param request The multi-key request.
+	 * @param numOfKeys
+	 * @author sunhe
+	 * @date 2015年6月19日 下午3:04:10
+	 */
+	public MultiKeyCollector(SeaLionRequest request, int numOfKeys) {
+		this.request = request;
+		results = new SeaLionResponse[numOfKeys];
+		remaining = new AtomicInteger(numOfKeys);
+	}
+	
+	public SeaLionRequest getRequest() {
+		return request;
+	}
+	
+	/**
+	 * @param index The index of the key in the request.
+	 * @param result The response to the key, whose data is taken over.
+	 * @return True if it's the last result, in which case the caller should build the response.
+	 * @author sunhe
+	 * @date 2015年6月19日 下午3:06:32
+	 */
+	public boolean collect(int index, SeaLionResponse result) {
+		results[index] = result;
+		return remaining.decrementAndGet() == 0;
+	}
+	
+	/**
+	 * Should be called only after all results have been collected.
+	 * 
+	 * @return The response to the multi-key request.
+	 * @author sunhe
+	 * @date 2015年6月19日 下午3:08:15
+	 */
+	public SeaLionResponse buildResponse() {
+		SeaLionResponse response = new SeaLionResponse();
+		response.setStatus(Statuses.SUCCESS);
+		response.setOpaque(request.getOpaque());
+		response.setBinaryOpaque(request.getBinaryOpaque());
+		response.setData(MultiKeyFormat.encodeResults(results));
+		response.setDataLen(response.getData().readableBytes());
+		return response;
+	}
+
+}
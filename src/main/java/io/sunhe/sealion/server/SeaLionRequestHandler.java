@@ -1,12 +1,21 @@
 package io.sunhe.sealion.server;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.BlockingQueue;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.ChannelInboundHandlerAdapter;
 import io.netty.channel.ChannelHandler.Sharable;
 import io.netty.channel.group.ChannelGroup;
 import io.sunhe.sealion.protocol.Commands;
+import io.sunhe.sealion.protocol.MultiKeyFormat;
 import io.sunhe.sealion.protocol.SeaLionRequest;
+import io.sunhe.sealion.protocol.SeaLionResponse;
+import io.sunhe.sealion.protocol.Statuses;
+import io.sunhe.sealion.server.mem.ShardedMapContainer;
 import io.sunhe.sealion.util.Logger;
 
 /**
@@ -20,9 +29,14 @@ import io.sunhe.sealion.util.Logger;
 public class SeaLionRequestHandler extends ChannelInboundHandlerAdapter {
 	
 	/**
-	 * Worker task queue
+	 * Workers, one per shard.
 	 */
-	private BlockingQueue<Task> workerTaskQueue;
+	private List<WorkerTask> workers;
+	
+	/**
+	 * Used to determine which shard a request belongs to.
+	 */
+	private ShardedMapContainer mapContainer;
 	
 	/**
 	 * Monitor task queue
@@ -35,9 +49,10 @@ public class SeaLionRequestHandler extends ChannelInboundHandlerAdapter {
 	 */
 	private ChannelGroup channelGroup;
 	
-	public SeaLionRequestHandler(BlockingQueue<Task> taskQueue, BlockingQueue<Task> monitorTaskQueue, 
-			ChannelGroup channelGroup) {
-		this.workerTaskQueue = taskQueue;
+	public SeaLionRequestHandler(ShardedMapContainer mapContainer, List<WorkerTask> workers, 
+			BlockingQueue<Task> monitorTaskQueue, ChannelGroup channelGroup) {
+		this.mapContainer = mapContainer;
+		this.workers = workers;
 		this.monitorTaskQueue = monitorTaskQueue;
 		this.channelGroup = channelGroup;
 	}
@@ -55,10 +70,98 @@ public class SeaLionRequestHandler extends ChannelInboundHandlerAdapter {
 			if (Commands.isMonitorCommand(request.getCommand())) {
 				monitorTaskQueue.offer(new Task(request, ctx.channel()));
 			}
+			else if (Commands.isMultiKeyCommand(request.getCommand())) {
+				splitMultiKeyRequest(request, ctx.channel());
+			}
 			else {
-				workerTaskQueue.offer(new Task(request, ctx.channel()));
+				int shardIndex = mapContainer.getShardIndex(request.getKeyBytes());
+				workers.get(shardIndex).submit(new Task(request, ctx.channel()));
+			}
+		}
+	}
+	
+	/**
+	 * Split the multi-key request into single-key ones, and submit them to the 
+	 * workers of their own shards, which collect the results into a single response.
+	 * For MSET, every value is copied into a buffer allocated from its own shard, 
+	 * so that it can be released independently.
+	 * 
+	 * @param request
+	 * @param channel
+	 * @author sunhe
+	 * @date 2015年6月19日 下午3:20:18
+	 */
+	private void splitMultiKeyRequest(SeaLionRequest request, Channel channel) {
+		String command = Commands.getSingleKeyCommand(request.getCommand());
+		boolean hasValues = Commands.SET.equals(command);
+		List<byte[]> keys = new ArrayList<byte[]>();
+		List<ByteBuf> values = new ArrayList<ByteBuf>();
+		try {
+			MultiKeyFormat.decodeRequest(request.getData(), hasValues, keys, values);
+		}
+		catch (IllegalArgumentException e) {
+			mapContainer.getShard(request.getKeyBytes()).release(request.getData());
+			if (request.getIsSafeMode()) {
+				SeaLionResponse response = new SeaLionResponse();
+				response.setStatus(Statuses.BAD_REQUEST);
+				response.setOpaque(request.getOpaque());
+				response.setBinaryOpaque(request.getBinaryOpaque());
+				response.setDataLen(0);
+				response.setData(Unpooled.EMPTY_BUFFER);
+				channel.writeAndFlush(response);
 			}
+			return;
 		}
+		MultiKeyCollector collector = new MultiKeyCollector(request, keys.size());
+		List<Task> tasks = new ArrayList<Task>(keys.size());
+		for (int i = 0; i < keys.size(); i++) {
+			byte[] key = keys.get(i);
+			SeaLionRequest single = new SeaLionRequest();
+			single.setCommand(command);
+			single.setKeyBytes(key);
+			single.setOpaque(request.getOpaque());
+			single.setBinaryOpaque(request.getBinaryOpaque());
+			// the result is always needed by the collector.
+			single.setIsSafeMode(true);
+			single.setTimeStamp(request.getTimeStamp());
+			ByteBuf data = Unpooled.EMPTY_BUFFER;
+			if (hasValues) {
+				ByteBuf value = values.get(i);
+				data = mapContainer.getShard(key).allocate(value.readableBytes());
+				if (data == null) {
+					SeaLionResponse result = new SeaLionResponse();
+					result.setStatus(Statuses.SERVER_OUT_OF_MEMORY);
+					result.setData(Unpooled.EMPTY_BUFFER);
+					// Not the last one, since no task has been submitted yet.
+					collector.collect(i, result);
+					continue;
+				}
+				data.writeBytes(value);
+			}
+			single.setDataLen(data.readableBytes());
+			single.setData(data);
+			tasks.add(new Task(single, channel, collector, i));
+		}
+		mapContainer.getShard(request.getKeyBytes()).release(request.getData());
+		if (tasks.isEmpty()) {
+			// no key at all, or all out of memory.
+			if (request.getIsSafeMode()) {
+				channel.writeAndFlush(collector.buildResponse());
+			}
+			return;
+		}
+		for (Task task : tasks) {
+			int shardIndex = mapContainer.getShardIndex(task.getSeaLionRequest().getKeyBytes());
+			workers.get(shardIndex).submit(task);
+		}
+	}
+	
+	/**
+	 * Flush the responses written inline while reading, once per read.
+	 */
+	@Override
+	public void channelReadComplete(ChannelHandlerContext ctx) throws Exception {
+		ctx.flush();
 	}
 	
 	@Override
@@ -9,8 +9,10 @@ import io.netty.channel.group.ChannelGroup;
 import io.netty.channel.group.DefaultChannelGroup;
 import io.netty.channel.nio.NioEventLoopGroup;
 import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.util.concurrent.EventExecutor;
 import io.netty.util.concurrent.GlobalEventExecutor;
-import io.sunhe.sealion.protocol.SeaLionRequestDecoder;
+import io.sunhe.sealion.protocol.SeaLionBinaryResponseEncoder;
+import io.sunhe.sealion.protocol.SeaLionProtocolDetector;
 import io.sunhe.sealion.protocol.SeaLionResponseEncoder;
 import io.sunhe.sealion.server.dashboard.BlockingTimeAccumulator;
 import io.sunhe.sealion.server.dashboard.ChannelRegisterHandler;
@@ -18,13 +20,15 @@ import io.sunhe.sealion.server.dashboard.DashboardChannelInitializer;
 import io.sunhe.sealion.server.dashboard.DashboardTask;
 import io.sunhe.sealion.server.dashboard.HitRatioCollector;
 import io.sunhe.sealion.server.dashboard.SeaLionServerMonitor;
-import io.sunhe.sealion.server.mem.Item;
 import io.sunhe.sealion.server.mem.MapContainer;
+import io.sunhe.sealion.server.mem.ShardedMapContainer;
 import io.sunhe.sealion.server.traffic.SeaLionInboundTrafficStat;
 import io.sunhe.sealion.server.traffic.SeaLionOutboundTrafficStat;
 
 import java.io.FileNotFoundException;
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
@@ -44,6 +48,25 @@ public class SeaLionServer {
 	 */
 	public static final int DEFAULT_PORT = 1113;
 	
+	/**
+	 * By default, all keys are stored in a single shard, 
+	 * served by a single worker thread.
+	 */
+	public static final int DEFAULT_NUM_OF_SHARDS = 1;
+	
+	/**
+	 * Queue mode, every shard has its own worker thread, 
+	 * and requests are handed off to it through a task queue.
+	 */
+	public static final String MODE_QUEUE = "queue";
+	
+	/**
+	 * Event loop mode, every shard is owned by a child event loop, 
+	 * and requests are processed inline in the pipeline whenever 
+	 * the connection's event loop owns the key.
+	 */
+	public static final String MODE_EVENT_LOOP = "loop";
+	
 	private int port;
 	
 	/**
@@ -54,11 +77,6 @@ public class SeaLionServer {
 	 */
 	private int dashboardPort;
 	
-	/**
-	 * Worker thread task queue.
-	 */
-	private BlockingQueue<Task> workerTaskQueue;
-	
 	/**
 	 * Monitor thread task queue.
 	 */
@@ -68,6 +86,8 @@ public class SeaLionServer {
 	
 	private SeaLionResponseEncoder responseEncoder;
 	
+	private SeaLionBinaryResponseEncoder binaryResponseEncoder;
+	
 	private ChannelRegisterHandler channelRegisterHanlder;
 	
 	private SeaLionInboundTrafficStat inboundTrafficStat;
@@ -93,6 +113,37 @@ public class SeaLionServer {
 	 */
 	private long maxMemSize;
 	
+	/**
+	 * Every shard is served by its own worker thread.
+	 * Cann't be changed during uptime.
+	 */
+	private int numOfShards;
+	
+	/**
+	 * Either MODE_QUEUE or MODE_EVENT_LOOP.
+	 * Cann't be changed during uptime.
+	 */
+	private String mode;
+	
+	private double lowWatermark = MapContainer.DEFAULT_LOW_WATERMARK;
+	
+	private double highWatermark = MapContainer.DEFAULT_HIGH_WATERMARK;
+	
+	/**
+	 * In nanosecond.
+	 */
+	private long evictionBudget = MapContainer.DEFAULT_EVICTION_BUDGET;
+	
+	/**
+	 * Either MapContainer.LRU_MODE_STRICT or MapContainer.LRU_MODE_CLOCK.
+	 */
+	private String LRUMode = MapContainer.DEFAULT_LRU_MODE;
+	
+	/**
+	 * Either MapContainer.EVICTION_POLICY_LRU or MapContainer.EVICTION_POLICY_TINYLFU.
+	 */
+	private String evictionPolicy = MapContainer.DEFAULT_EVICTION_POLICY;
+	
 	public SeaLionServer() {
 		this (DEFAULT_PORT, MapContainer.DEFAULT_MAX_MEM_SIZE);
 	}
@@ -106,20 +157,115 @@ public class SeaLionServer {
 	}
 	
 	public SeaLionServer(int port, long maxMemSize) {
+		this (port, maxMemSize, DEFAULT_NUM_OF_SHARDS);
+	}
+	
+	/**
+	 * @param port
+	 * @param maxMemSize In byte, shared equally by all shards.
+	 * @param numOfShards The number of shards (and worker threads).
+	 * @author sunhe
+	 * @date 2015年6月8日 上午11:15:20
+	 */
+	public SeaLionServer(int port, long maxMemSize, int numOfShards) {
+		this (port, maxMemSize, numOfShards, MODE_QUEUE);
+	}
+	
+	/**
+	 * @param port
+	 * @param maxMemSize In byte, shared equally by all shards.
+	 * @param numOfShards 
+	 * 			The number of shards, which is also the number of worker threads 
+	 * 			in queue mode, or the number of child event loops in event loop mode.
+	 * @param mode Either MODE_QUEUE or MODE_EVENT_LOOP.
+	 * @author sunhe
+	 * @date 2015年6月9日 下午4:02:56
+	 */
+	public SeaLionServer(int port, long maxMemSize, int numOfShards, String mode) {
+		if (numOfShards <= 0) {
+			throw new IllegalArgumentException("Invalid number of shards: " + numOfShards);
+		}
+		if (! MODE_QUEUE.equals(mode) && ! MODE_EVENT_LOOP.equals(mode)) {
+			throw new IllegalArgumentException("Invalid mode: " + mode);
+		}
 		this.port = port;
 		dashboardPort = port + 1;
 		this.maxMemSize = maxMemSize;
+		this.numOfShards = numOfShards;
+		this.mode = mode;
 		channelGroup = new DefaultChannelGroup(GlobalEventExecutor.INSTANCE);
 		dbChannelGroup = new DefaultChannelGroup(GlobalEventExecutor.INSTANCE);
-		workerTaskQueue = new LinkedBlockingQueue<Task>();
 		monitorTaskQueue = new LinkedBlockingQueue<Task>();
-		requestHandler = new SeaLionRequestHandler(workerTaskQueue, monitorTaskQueue, channelGroup);
 		responseEncoder = new SeaLionResponseEncoder();
+		binaryResponseEncoder = new SeaLionBinaryResponseEncoder();
 		channelRegisterHanlder = new ChannelRegisterHandler(dbChannelGroup);
 		inboundTrafficStat = new SeaLionInboundTrafficStat();
 		outboundTrafficStat = new SeaLionOutboundTrafficStat();
 	}
 	
+	/**
+	 * Set the watermarks of the eviction.
+	 * Should be called before serving.
+	 * 
+	 * @param lowWatermark
+	 * @param highWatermark
+	 * @author sunhe
+	 * @date 2015年6月12日 下午2:21:05
+	 */
+	public void setWatermarks(double lowWatermark, double highWatermark) {
+		if (lowWatermark <= 0 || highWatermark > 1 || lowWatermark >= highWatermark) {
+			throw new IllegalArgumentException("Invalid watermarks: " + lowWatermark + ", " + highWatermark);
+		}
+		this.lowWatermark = lowWatermark;
+		this.highWatermark = highWatermark;
+	}
+	
+	/**
+	 * Set the time budget of a single eviction step.
+	 * Should be called before serving.
+	 * 
+	 * @param evictionBudget In nanosecond.
+	 * @author sunhe
+	 * @date 2015年6月12日 下午2:23:40
+	 */
+	public void setEvictionBudget(long evictionBudget) {
+		if (evictionBudget <= 0) {
+			throw new IllegalArgumentException("Invalid eviction budget: " + evictionBudget);
+		}
+		this.evictionBudget = evictionBudget;
+	}
+	
+	/**
+	 * Set the LRU mode, see MapContainer.LRU_MODE_STRICT and MapContainer.LRU_MODE_CLOCK.
+	 * Should be called before serving.
+	 * 
+	 * @param LRUMode
+	 * @author sunhe
+	 * @date 2015年6月17日 上午9:28:46
+	 */
+	public void setLRUMode(String LRUMode) {
+		if (! MapContainer.LRU_MODE_STRICT.equals(LRUMode) && ! MapContainer.LRU_MODE_CLOCK.equals(LRUMode)) {
+			throw new IllegalArgumentException("Invalid LRU mode: " + LRUMode);
+		}
+		this.LRUMode = LRUMode;
+	}
+	
+	/**
+	 * Set the eviction policy, see MapContainer.EVICTION_POLICY_LRU and MapContainer.EVICTION_POLICY_TINYLFU.
+	 * Should be called before serving.
+	 * 
+	 * @param evictionPolicy
+	 * @author sunhe
+	 * @date 2015年6月17日 下午3:12:50
+	 */
+	public void setEvictionPolicy(String evictionPolicy) {
+		if (! MapContainer.EVICTION_POLICY_LRU.equals(evictionPolicy) 
+				&& ! MapContainer.EVICTION_POLICY_TINYLFU.equals(evictionPolicy)) {
+			throw new IllegalArgumentException("Invalid eviction policy: " + evictionPolicy);
+		}
+		this.evictionPolicy = evictionPolicy;
+	}
+	
 	/**
 	 * Make the server start to serve.
 	 * 
@@ -128,18 +274,40 @@ public class SeaLionServer {
 	 */
 	public void serve() {
 		EventLoopGroup group = new NioEventLoopGroup();
-		EventLoopGroup childGroup = new NioEventLoopGroup();
+		// In event loop mode, every child event loop owns exactly one shard.
+		EventLoopGroup childGroup = MODE_EVENT_LOOP.equals(mode) 
+				? new NioEventLoopGroup(numOfShards) : new NioEventLoopGroup();
 		BlockingTimeAccumulator blockingTimeAccumulator = new BlockingTimeAccumulator();
-		final MapContainer mapContainer = new MapContainer(new HashMap<String, Item>(), 
+		final ShardedMapContainer mapContainer = new ShardedMapContainer(numOfShards, 
 				blockingTimeAccumulator, maxMemSize);
+		mapContainer.setWatermarks(lowWatermark, highWatermark);
+		mapContainer.setEvictionBudget(evictionBudget);
+		mapContainer.setLRUMode(LRUMode);
+		mapContainer.setEvictionPolicy(evictionPolicy);
 		HitRatioCollector hitRatioCollector = new HitRatioCollector();
-		serverMonitor = new SeaLionServerMonitor(workerTaskQueue, mapContainer, channelGroup, 
-				inboundTrafficStat, outboundTrafficStat, hitRatioCollector, blockingTimeAccumulator);
+		List<WorkerTask> workers = new ArrayList<WorkerTask>(numOfShards);
 		
 		try {
-			// bootstrap the worker thread here.
-			ExecutorService workerExecutor = Executors.newSingleThreadExecutor();
-			Future<?> workerFuture = workerExecutor.submit(new WorkerTask(workerTaskQueue, mapContainer, hitRatioCollector));
+			if (MODE_EVENT_LOOP.equals(mode)) {
+				// assign the shards to the child event loops here.
+				Iterator<EventExecutor> iterator = childGroup.iterator();
+				for (int i = 0; i < numOfShards; i++) {
+					workers.add(new WorkerTask(iterator.next(), mapContainer.getShard(i), hitRatioCollector));
+				}
+			}
+			else {
+				// bootstrap the worker threads here, one per shard.
+				ExecutorService workerExecutor = Executors.newFixedThreadPool(numOfShards);
+				for (int i = 0; i < numOfShards; i++) {
+					WorkerTask worker = new WorkerTask(new LinkedBlockingQueue<Task>(), 
+							mapContainer.getShard(i), hitRatioCollector);
+					workers.add(worker);
+					workerExecutor.submit(worker);
+				}
+			}
+			requestHandler = new SeaLionRequestHandler(mapContainer, workers, monitorTaskQueue, channelGroup);
+			serverMonitor = new SeaLionServerMonitor(workers, mapContainer, channelGroup, 
+					inboundTrafficStat, outboundTrafficStat, hitRatioCollector, blockingTimeAccumulator);
 			
 			// bootstrap the monitor thread here.
 			ExecutorService monitorExecutor = Executors.newSingleThreadExecutor();
@@ -162,7 +330,7 @@ public class SeaLionServer {
 						protected void initChannel(Channel ch) throws Exception {
 							ch.pipeline().addLast(inboundTrafficStat)
 									.addLast(outboundTrafficStat)
-									.addLast(new SeaLionRequestDecoder(mapContainer))
+									.addLast(new SeaLionProtocolDetector(mapContainer, binaryResponseEncoder))
 									.addLast(requestHandler)
 									.addLast(responseEncoder);
 						}
@@ -204,14 +372,48 @@ public class SeaLionServer {
 		SeaLionServerParams params = new SeaLionServerParams(args);
 		int port = DEFAULT_PORT;
 		long maxMemSize = MapContainer.DEFAULT_MAX_MEM_SIZE;
+		int numOfShards = DEFAULT_NUM_OF_SHARDS;
+		String mode = MODE_QUEUE;
 		if (params.getP() != null) {
 			port = Integer.parseInt(params.getP());
 		}
 		if (params.getM() != null) {
 			maxMemSize = Long.valueOf(params.getM()) * 1024L * 1024L;
 		}
+		if (params.getS() != null) {
+			numOfShards = Integer.parseInt(params.getS());
+			if (numOfShards == 0) {
+				// one shard per core.
+				numOfShards = Runtime.getRuntime().availableProcessors();
+			}
+		}
+		if (params.getE() != null) {
+			mode = params.getE();
+		}
+		SeaLionServer server = new SeaLionServer(port, maxMemSize, numOfShards, mode);
+		if (params.getL() != null || params.getH() != null) {
+			double lowWatermark = MapContainer.DEFAULT_LOW_WATERMARK;
+			double highWatermark = MapContainer.DEFAULT_HIGH_WATERMARK;
+			if (params.getL() != null) {
+				lowWatermark = Integer.parseInt(params.getL()) / 100.0;
+			}
+			if (params.getH() != null) {
+				highWatermark = Integer.parseInt(params.getH()) / 100.0;
+			}
+			server.setWatermarks(lowWatermark, highWatermark);
+		}
+		if (params.getB() != null) {
+			// from microsecond to nanosecond
+			server.setEvictionBudget(Long.valueOf(params.getB()) * 1000L);
+		}
+		if (params.getR() != null) {
+			server.setLRUMode(params.getR());
+		}
+		if (params.getV() != null) {
+			server.setEvictionPolicy(params.getV());
+		}
 		// start server
-		new SeaLionServer(port, maxMemSize).serve();
+		server.serve();
 	}
 	
 }
@@ -1,5 +1,7 @@
 package io.sunhe.sealion.server;
 
+import io.sunhe.sealion.server.mem.MapContainer;
+
 import org.apache.commons.lang3.StringUtils;
 
 /**
@@ -26,6 +28,41 @@ public class SeaLionServerParams {
 	 */
 	private String m;
 	
+	/**
+	 * -s number of shards (worker threads), 0 signifies one shard per core.
+	 */
+	private String s;
+	
+	/**
+	 * -e execution mode, either "queue" or "loop".
+	 */
+	private String e;
+	
+	/**
+	 * -l low watermark of the eviction, in percentage.
+	 */
+	private String l;
+	
+	/**
+	 * -h high watermark of the eviction, in percentage.
+	 */
+	private String h;
+	
+	/**
+	 * -b time budget in microsecond of a single eviction step.
+	 */
+	private String b;
+	
+	/**
+	 * -r LRU mode, either "strict" or "clock".
+	 */
+	private String r;
+	
+	/**
+	 * -v eviction policy, either "lru" or "tinylfu".
+	 */
+	private String v;
+	
 	/**
 	 * @param args The console arguments.
 	 * @author sunhe
@@ -46,6 +83,43 @@ public class SeaLionServerParams {
 				checkPostiveNumeric(paramValue);
 				m = paramValue;
 			}
+			else if ("-s".equals(paramName)) {
+				checkPostiveNumeric(paramValue);
+				s = paramValue;
+			}
+			else if ("-e".equals(paramName)) {
+				if (! SeaLionServer.MODE_QUEUE.equals(paramValue) 
+						&& ! SeaLionServer.MODE_EVENT_LOOP.equals(paramValue)) {
+					throwException();
+				}
+				e = paramValue;
+			}
+			else if ("-l".equals(paramName)) {
+				checkPercentage(paramValue);
+				l = paramValue;
+			}
+			else if ("-h".equals(paramName)) {
+				checkPercentage(paramValue);
+				h = paramValue;
+			}
+			else if ("-b".equals(paramName)) {
+				checkPostiveNumeric(paramValue);
+				b = paramValue;
+			}
+			else if ("-r".equals(paramName)) {
+				if (! MapContainer.LRU_MODE_STRICT.equals(paramValue) 
+						&& ! MapContainer.LRU_MODE_CLOCK.equals(paramValue)) {
+					throwException();
+				}
+				r = paramValue;
+			}
+			else if ("-v".equals(paramName)) {
+				if (! MapContainer.EVICTION_POLICY_LRU.equals(paramValue) 
+						&& ! MapContainer.EVICTION_POLICY_TINYLFU.equals(paramValue)) {
+					throwException();
+				}
+				v = paramValue;
+			}
 			else {
 				throwException();
 			}
@@ -76,6 +150,22 @@ public class SeaLionServerParams {
 		}
 	}
 
+	/**
+	 * Check if the parameter value is a percentage between 1 and 100, 
+	 * if so do nothing, otherwise throw exception
+	 * 
+	 * @param paramValue
+	 * @author sunhe
+	 * @date 2015年6月12日 下午2:10:34
+	 */
+	private void checkPercentage(String paramValue) {
+		checkPostiveNumeric(paramValue);
+		int percentage = Integer.parseInt(paramValue);
+		if (percentage < 1 || percentage > 100) {
+			throwException();
+		}
+	}
+
 	public String getP() {
 		return p;
 	}
@@ -84,4 +174,32 @@ public class SeaLionServerParams {
 		return m;
 	}
 	
+	public String getS() {
+		return s;
+	}
+	
+	public String getE() {
+		return e;
+	}
+	
+	public String getL() {
+		return l;
+	}
+	
+	public String getH() {
+		return h;
+	}
+	
+	public String getB() {
+		return b;
+	}
+	
+	public String getR() {
+		return r;
+	}
+	
+	public String getV() {
+		return v;
+	}
+	
 }
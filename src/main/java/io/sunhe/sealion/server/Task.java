@@ -19,11 +19,35 @@ public class Task {
 	 */
 	private Channel channel;
 	
+	/**
+	 * Not null if the request is one of the keys of a multi-key request.
+	 */
+	private MultiKeyCollector collector;
+	
+	/**
+	 * The index of the key in the multi-key request.
+	 */
+	private int index;
+	
 	public Task(SeaLionRequest request, Channel channel) {
 		this.request = request;
 		this.channel = channel;
 	}
 	
+	/**
+	 * @param request The request of a single key of the multi-key request.
+	 * @param channel
+	 * @param collector
+	 * @param index The index of the key in the multi-key request.
+	 * @author sunhe
+	 * @date 2015年6月19日 下午3:12:40
+	 */
+	public Task(SeaLionRequest request, Channel channel, MultiKeyCollector collector, int index) {
+		this(request, channel);
+		this.collector = collector;
+		this.index = index;
+	}
+	
 	public SeaLionRequest getSeaLionRequest() {
 		return request;
 	}
@@ -32,4 +56,12 @@ public class Task {
 		return channel;
 	}
 	
+	public MultiKeyCollector getCollector() {
+		return collector;
+	}
+	
+	public int getIndex() {
+		return index;
+	}
+	
 }
@@ -3,63 +3,178 @@ package io.sunhe.sealion.server;
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.Unpooled;
 import io.netty.channel.Channel;
+import io.netty.util.concurrent.EventExecutor;
+import io.netty.util.concurrent.SingleThreadEventExecutor;
 import io.sunhe.sealion.protocol.Commands;
 import io.sunhe.sealion.protocol.SeaLionRequest;
 import io.sunhe.sealion.protocol.SeaLionResponse;
 import io.sunhe.sealion.protocol.Statuses;
 import io.sunhe.sealion.server.dashboard.HitRatioCollector;
-import io.sunhe.sealion.server.mem.Item;
+import io.sunhe.sealion.server.mem.ItemIndex;
+import io.sunhe.sealion.server.mem.ItemStore;
 import io.sunhe.sealion.server.mem.MapContainer;
-import io.sunhe.sealion.server.mem.SimpleItem;
 import io.sunhe.sealion.util.Logger;
 import io.sunhe.sealion.util.TimeStampFormatter;
 
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
 
 /**
  * The task worker thread execute.
- * Note that worker thread should be a single-thread pool, 
+ * Note that every shard has exactly one worker thread, 
  * so worker thread must not be blocked.
  * 
- * Not thread-safe. It's okay because only the thread to bootstrap the SeaLion server 
- * passes this Runnable-implementation class to the worker executor, which is a single 
- * thread executor.
+ * A worker task works in one of the two following modes:
+ * 		* Queue mode: tasks are offered to the task queue, and taken by the worker 
+ * 		  thread of the worker executor, which runs this Runnable.
+ * 		* Event loop mode: the shard is owned by a child event loop, so tasks are 
+ * 		  processed inline if they are submitted by the owner event loop itself 
+ * 		  (no queueing at all), otherwise they are handed off to it.
+ * 
+ * In both modes, memory is reclaimed incrementally after every task, and for 
+ * every idle tick when there isn't any task.
+ * 
+ * Responses are never flushed one by one. The ones written inline by the owner 
+ * event loop are flushed by the request handler once the read completes. The others 
+ * are grouped by channel, and handed to the event loop of the channel in a single 
+ * write-and-flush, once the drained batch of tasks (queue mode) or the current 
+ * cycle of the owner event loop (event loop mode) is done. So a client pipelining 
+ * lots of requests gets its responses with a few flushes only.
+ * 
+ * Not thread-safe. It's okay because every instance only serves the map container 
+ * of a single shard, and tasks are always processed by exactly one thread 
+ * (the worker thread or the owner event loop).
  * 
  * @author sunhe
  * @date 2015年3月15日 上午8:41:57
  */
 public class WorkerTask implements Runnable {
+	
+	private static final byte[] EMPTY_KEY = new byte[0];
+	
+	/**
+	 * When there isn't any task, the worker reclaims memory 
+	 * incrementally for every tick.
+	 */
+	public static final long IDLE_TICK_MILLIS = 10;
+	
+	/**
+	 * The maximum number of tasks drained from the task queue at once.
+	 */
+	public static final int MAX_BATCH_SIZE = 64;
 
 	/**
 	 * task queue
+	 * Null in event loop mode.
 	 */
 	private BlockingQueue<Task> taskQueue;
 	
+	/**
+	 * The event loop owning the shard.
+	 * Null in queue mode.
+	 */
+	private EventExecutor executor;
+	
 	private MapContainer mapContainer;
 	
-	private Map<String, Item> map;
+	private ItemIndex map;
 	
-	private ConcurrentSkipListMap<String, String> timeStampListMap;
+	private ItemStore items;
 	
 	private HitRatioCollector hitRatioCollector;
 	
+	/**
+	 * The tasks drained from the task queue.
+	 * Used in queue mode only.
+	 */
+	private List<Task> batch = new ArrayList<Task>(MAX_BATCH_SIZE);
+	
+	/**
+	 * The responses not yet handed to the event loops of their channels, grouped by channel.
+	 */
+	private Map<Channel, List<SeaLionResponse>> pendingResponses = new LinkedHashMap<Channel, List<SeaLionResponse>>();
+	
+	/**
+	 * Whether flushing the pending responses has been scheduled to the owner event loop.
+	 * Used in event loop mode only.
+	 */
+	private boolean isFlushScheduled = false;
+	
+	private Runnable flushTask = new Runnable() {
+		
+		public void run() {
+			isFlushScheduled = false;
+			flushResponses();
+		}
+		
+	};
+	
+	/**
+	 * Construct a worker task in queue mode.
+	 * 
+	 * @param taskQueue
+	 * @param mapContainer
+	 * @param hitRatioCollector
+	 * @author sunhe
+	 * @date 2015年3月15日 上午8:41:57
+	 */
 	public WorkerTask(BlockingQueue<Task> taskQueue, MapContainer mapContainer, HitRatioCollector hitRatioCollector) {
 		this.taskQueue = taskQueue;
 		this.mapContainer = mapContainer;
 		map = mapContainer.getMap();
-		timeStampListMap = mapContainer.getTimeStampListMap();
+		items = mapContainer.getItemStore();
 		this.hitRatioCollector = hitRatioCollector;
 	}
+	
+	/**
+	 * Construct a worker task in event loop mode, in which case this Runnable 
+	 * should never be executed.
+	 * 
+	 * @param executor The event loop owning the shard.
+	 * @param mapContainer
+	 * @param hitRatioCollector
+	 * @author sunhe
+	 * @date 2015年6月9日 下午3:20:11
+	 */
+	public WorkerTask(EventExecutor executor, MapContainer mapContainer, HitRatioCollector hitRatioCollector) {
+		this.executor = executor;
+		this.mapContainer = mapContainer;
+		map = mapContainer.getMap();
+		items = mapContainer.getItemStore();
+		this.hitRatioCollector = hitRatioCollector;
+		executor.scheduleAtFixedRate(new Runnable() {
+			
+			public void run() {
+				WorkerTask.this.mapContainer.ensureMemory();
+			}
+			
+		}, IDLE_TICK_MILLIS, IDLE_TICK_MILLIS, TimeUnit.MILLISECONDS);
+	}
 
 	public void run() {
+		if (taskQueue == null) {
+			throw new IllegalStateException("A worker task in event loop mode cann't be run");
+		}
 		try {
 			while (true) {
-				Task task = taskQueue.take();
-				processTask(task);
-				// May stop the world.
-				mapContainer.ensureMemory();
+				Task task = taskQueue.poll(IDLE_TICK_MILLIS, TimeUnit.MILLISECONDS);
+				if (task == null) {
+					// idle tick
+					mapContainer.ensureMemory();
+				}
+				else {
+					batch.add(task);
+					taskQueue.drainTo(batch, MAX_BATCH_SIZE - 1);
+					for (int i = 0; i < batch.size(); i++) {
+						execute(batch.get(i));
+					}
+					batch.clear();
+					flushResponses();
+				}
 			}
 		}
 		catch (InterruptedException e) {
@@ -67,37 +182,103 @@ public class WorkerTask implements Runnable {
 		}
 	}
 	
+	/**
+	 * Submit a task to this worker.
+	 * Can be called by any thread.
+	 * 
+	 * @param task
+	 * @author sunhe
+	 * @date 2015年6月9日 下午3:27:40
+	 */
+	public void submit(final Task task) {
+		if (taskQueue != null) {
+			taskQueue.offer(task);
+		}
+		else if (executor.inEventLoop()) {
+			// The owner event loop itself, no hand-off needed.
+			execute(task);
+		}
+		else {
+			executor.execute(new Runnable() {
+				
+				public void run() {
+					execute(task);
+					scheduleFlush();
+				}
+				
+			});
+		}
+	}
+	
+	/**
+	 * Get the number of tasks waiting to be processed.
+	 * In event loop mode, it's the number of pending tasks of the owner event loop.
+	 * 
+	 * @return
+	 * @author sunhe
+	 * @date 2015年6月9日 下午3:35:02
+	 */
+	public int getTaskQueueSize() {
+		if (taskQueue != null) {
+			return taskQueue.size();
+		}
+		else if (executor instanceof SingleThreadEventExecutor) {
+			return ((SingleThreadEventExecutor) executor).pendingTasks();
+		}
+		else {
+			return 0;
+		}
+	}
+	
+	/**
+	 * Note that ONLY the worker thread or the owner event loop can call this method.
+	 * 
+	 * @param task
+	 * @author sunhe
+	 * @date 2015年6月9日 下午3:31:18
+	 */
+	private void execute(Task task) {
+		processTask(task);
+		// May stop the world.
+		mapContainer.ensureMemory();
+	}
+	
 	public void processTask(Task task) {
 		SeaLionRequest request = task.getSeaLionRequest();
 		Channel channel = task.getChannel();
-		Logger.log(channel.remoteAddress().toString() + " Processing request", request.toString());
+		if (Logger.isEnabled()) {
+			Logger.log(channel.remoteAddress().toString() + " Processing request", request.toString());
+		}
 		
 		String command = request.getCommand();
-		String key = request.getKey();
+		byte[] key = request.getKeyBytes() == null ? EMPTY_KEY : request.getKeyBytes();
 		boolean isSafeMode = request.getIsSafeMode();
-		String casInReq = request.getCas();
+		boolean hasCas = request.hasCas();
 		long timeStamp = request.getTimeStamp();
 		ByteBuf data = request.getData();
 		SeaLionResponse response = new SeaLionResponse();
 		response.setOpaque(request.getOpaque());
+		response.setBinaryOpaque(request.getBinaryOpaque());
 		
 		if (Commands.GET.equals(command)) {
 			// GET command
 			// If the GET command has CAS check and the key doesn't exist 
 			// in the server(may expired or deleted by other client or thread), then take 
 			// this situation as KEY_NONEXISTS, not CAS_FAILURE.
-			if (map.containsKey(key) && !checkExpiration(key)) {
+			int item = map.get(key);
+			if (item != ItemStore.NULL && !checkExpiration(item)) {
 				// hit.
 				hitRatioCollector.hit();
-				SimpleItem item = (SimpleItem) map.get(key);
-				String casInItem = item.getCas();
+				long casInItem = items.getCas(item);
 				// maintain LRU list
 				mapContainer.moveItem(item);
-				if (casInReq == null || casInItem.equals(casInReq)) {
+				if (! hasCas || matchCas(casInItem, request)) {
 					// Passed CAS check.
-					data = item.getData();
+					// The chunk of the item may be reused before the response is written, 
+					// so the data is copied out, and released by the encoder.
+					data = mapContainer.copyData(item);
 					response.setStatus(Statuses.SUCCESS);
-					response.setDataLen(data.capacity());
+					response.setDataLen(data.readableBytes());
 					response.setCas(casInItem);
 					response.setData(data);
 				}
@@ -119,45 +300,35 @@ public class WorkerTask implements Runnable {
 		}
 		else if (Commands.SET.equals(command)) {
 			// SET command.
-			SimpleItem item = (SimpleItem) map.get(key);
-			String casInItem = item == null ? null : item.getCas();
-			if ((casInReq == null) || (item != null && casInItem.equals(casInReq))) {
+			int item = map.get(key);
+			if ((! hasCas) || (item != ItemStore.NULL && matchCas(items.getCas(item), request))) {
 				// Passed CAS check.
-				if (map.containsKey(key)) {
+				if (item != ItemStore.NULL) {
 					// Note that the old item to the given key, if exists, will be abandoned.
-					String strTimeStamp = map.get(key).getStrTimeStamp();
-					if (! strTimeStamp.equals("0")) {
-						// maintain time stamp list
-						timeStampListMap.remove(strTimeStamp);			
-					}
-					// release pooled buffer
-					mapContainer.releaseBufByKey(key);
-					// maintain LRU list
-					mapContainer.removeItemByKey(key);
+					mapContainer.unlinkItem(item);
 				}
-				item = new SimpleItem();
-				item.setKey(key);
-				item.setData(data);
-				item.setTimeStamp(timeStamp);
-				// Generate a CAS value.
-				casInItem = item.refreshCas();
-				map.put(key, item);
-				// maintain LRU list
-				mapContainer.insertItem(item);
-				// maintain time stamp list
-				if (timeStamp != 0) {
-					timeStampListMap.put(item.getStrTimeStamp(), key);
+				// The data is copied into the slabs, and a new CAS is generated.
+				item = mapContainer.storeItem(key, data, timeStamp);
+				mapContainer.release(data);
+				if (item != ItemStore.NULL) {
+					response.setStatus(Statuses.SUCCESS);
+					response.setCas(items.getCas(item));
+				}
+				else {
+					response.setStatus(Statuses.SERVER_OUT_OF_MEMORY);
 				}
-				response.setStatus(Statuses.SUCCESS);
 				response.setDataLen(0);
-				response.setCas(casInItem);
 				response.setData(Unpooled.EMPTY_BUFFER);
 			}
 			else {
 				// Not passes CAS check.
+				// The data of the request won't be stored.
+				mapContainer.release(data);
 				response.setStatus(Statuses.CAS_FAILURE);
 				response.setDataLen(0);
-				response.setCas(casInItem);
+				if (item != ItemStore.NULL) {
+					response.setCas(items.getCas(item));
+				}
 				response.setData(Unpooled.EMPTY_BUFFER);
 			}
 		}
@@ -166,22 +337,14 @@ public class WorkerTask implements Runnable {
 			// If the DELETE command has CAS check and the key doesn't exist 
 			// in the server(may expired or deleted by other client or thread), then take 
 			// this situation as KEY_NONEXISTS, not CAS_FAILURE.
-			if (map.containsKey(key) && !checkExpiration(key)) {
+			int item = map.get(key);
+			if (item != ItemStore.NULL && !checkExpiration(item)) {
 				// hit.
 				hitRatioCollector.hit();
-				String casInItem = map.get(key).getCas();
-				if (casInReq == null || casInItem.equals(casInReq)) {
+				long casInItem = items.getCas(item);
+				if (! hasCas || matchCas(casInItem, request)) {
 					// Passed CAS check.
-					// release pooled buffer
-					mapContainer.releaseBufByKey(key);
-					// maintain LRU list
-					mapContainer.removeItemByKey(key);
-					String strTimeStamp = map.get(key).getStrTimeStamp();
-					if (! strTimeStamp.equals("0")) {
-						// maintain time stamp list
-						timeStampListMap.remove(strTimeStamp);
-					}
-					map.remove(key);
+					mapContainer.unlinkItem(item);
 					response.setStatus(Statuses.SUCCESS);
 					response.setDataLen(0);
 					response.setData(Unpooled.EMPTY_BUFFER);
@@ -206,16 +369,15 @@ public class WorkerTask implements Runnable {
 			// CAS command
 			// Note that if the CAS command also has the CAS check value 
 			// in its request POJO, then ignore it.
-			if (map.containsKey(key) && !checkExpiration(key)) {
+			int item = map.get(key);
+			if (item != ItemStore.NULL && !checkExpiration(item)) {
 				// hit.
 				hitRatioCollector.hit();
-				SimpleItem item = (SimpleItem) map.get(key);
 				// maintain LRU list
 				mapContainer.moveItem(item);
-				String casInItem = item.getCas();
 				response.setStatus(Statuses.SUCCESS);
 				response.setDataLen(0);
-				response.setCas(casInItem);
+				response.setCas(items.getCas(item));
 				response.setData(Unpooled.EMPTY_BUFFER);
 			}
 			else {
@@ -231,35 +393,120 @@ public class WorkerTask implements Runnable {
 			response.setDataLen(0);
 			response.setData(Unpooled.EMPTY_BUFFER);
 		}
+		MultiKeyCollector collector = task.getCollector();
+		if (collector != null) {
+			if (! collector.collect(task.getIndex(), response)) {
+				return;
+			}
+			// the last key of the multi-key request.
+			response = collector.buildResponse();
+			isSafeMode = collector.getRequest().getIsSafeMode();
+		}
 		if (isSafeMode) {
-			channel.writeAndFlush(response);
+			respond(channel, response);
+		}
+		else {
+			response.getData().release();
 		}
 	}
 	
 	/**
-	 * Determine the item mapped by the given key expired or not.
-	 * If so, the key-item tuple and the strTimeStamp-key tuple will be deleted.
-	 * Note that the parameter key is supposed to be contained in the map.
+	 * Write the response without flushing it.
 	 * 
-	 * @param key 
-	 * @return True if the mapped item expired, otherwise false.
+	 * @param channel
+	 * @param response
+	 * @author sunhe
+	 * @date 2015年6月19日 上午9:42:15
+	 */
+	private void respond(Channel channel, SeaLionResponse response) {
+		if (channel.eventLoop().inEventLoop()) {
+			// Processed inline, flushed by the request handler once the read completes.
+			channel.write(response);
+			return;
+		}
+		List<SeaLionResponse> responses = pendingResponses.get(channel);
+		if (responses == null) {
+			responses = new ArrayList<SeaLionResponse>();
+			pendingResponses.put(channel, responses);
+		}
+		responses.add(response);
+	}
+	
+	/**
+	 * Schedule flushing the pending responses to the owner event loop, so that 
+	 * they are flushed after the tasks already handed off to it.
+	 * 
+	 * @author sunhe
+	 * @date 2015年6月19日 上午9:45:30
+	 */
+	private void scheduleFlush() {
+		if (! isFlushScheduled && ! pendingResponses.isEmpty()) {
+			isFlushScheduled = true;
+			executor.execute(flushTask);
+		}
+	}
+	
+	/**
+	 * Hand the pending responses to the event loops of their channels, 
+	 * one write-and-flush per channel.
+	 * 
+	 * @author sunhe
+	 * @date 2015年6月19日 上午9:48:02
+	 */
+	private void flushResponses() {
+		for (Map.Entry<Channel, List<SeaLionResponse>> entry : pendingResponses.entrySet()) {
+			final Channel channel = entry.getKey();
+			final List<SeaLionResponse> responses = entry.getValue();
+			channel.eventLoop().execute(new Runnable() {
+				
+				public void run() {
+					for (int i = 0; i < responses.size(); i++) {
+						channel.write(responses.get(i));
+					}
+					channel.flush();
+				}
+				
+			});
+		}
+		pendingResponses.clear();
+	}
+	
+	/**
+	 * Compare the CAS of the item with the one in the request, which is 
+	 * supposed to be a decimal number.
+	 * 
+	 * @param casInItem
+	 * @param request The request with CAS check.
+	 * @return
+	 * @author sunhe
+	 * @date 2015年6月15日 上午10:52:36
+	 */
+	private static boolean matchCas(long casInItem, SeaLionRequest request) {
+		try {
+			return casInItem == request.getCasValue();
+		}
+		catch (NumberFormatException e) {
+			// may be issued by an old server.
+			return false;
+		}
+	}
+	
+	/**
+	 * Determine the given item expired or not.
+	 * If so, the item will be removed from the map, the LRU list and the expiry wheel.
+	 * 
+	 * @param item The item, which is supposed to be contained in the map.
+	 * @return True if the item expired, otherwise false.
 	 * @author sunhe
 	 * @date 2015年3月27日 上午11:47:10
 	 */
-	private boolean checkExpiration(String key) {
-		SimpleItem item = (SimpleItem) map.get(key);
-		long timeStamp = item.getTimeStamp();
+	private boolean checkExpiration(int item) {
+		long timeStamp = items.getTimeStamp(item);
 		if (timeStamp == 0) {
 			return false;
 		}
 		else if (timeStamp <= TimeStampFormatter.getCurrentTimeStamp()) {
-			// release pooled buffer
-			mapContainer.release(item.getData());
-			// maintain LRU list
-			mapContainer.removeItem(item);
-			// maintain time stamp list
-			timeStampListMap.remove(item.getStrTimeStamp());
-			map.remove(key);
+			mapContainer.unlinkItem(item);
 			return true;
 		}
 		else {
@@ -268,6 +515,3 @@ public class WorkerTask implements Runnable {
 	}
 	
 }
-
-
-
@@ -1,11 +1,14 @@
 package io.sunhe.sealion.server.dashboard;
 
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
 /**
  * Blocking time accumulator.
- * Blocking time: the span time when worker thread operates 
- * LRU and TTL data flush.
+ * Blocking time: the time worker threads actually spend on 
+ * LRU eviction and TTL data flush.
  * 
- * Thread-safe.
+ * Thread-safe, lock-free.
  * 
  * @author sunhe
  * @date 2015年4月16日 下午9:45:25
@@ -13,35 +16,47 @@ package io.sunhe.sealion.server.dashboard;
 public class BlockingTimeAccumulator {
 	
 	/**
-	 * In second unit.
+	 * In nanosecond unit.
 	 */
-	private int blockingTime;
+	private LongAdder blockingTime = new LongAdder();
 	
 	/**
-	 * Increment blocking time by 1.
+	 * Increment blocking time by the given time span.
 	 * 
+	 * @param nanos In nanosecond unit.
 	 * @author sunhe
 	 * @date 2015年4月16日 下午9:48:52
 	 */
-	public synchronized void accumulate() {
-		blockingTime++;
+	public void accumulate(long nanos) {
+		blockingTime.add(nanos);
 	}
 	
 	/**
-	 * @return
+	 * @return In millisecond unit.
 	 * @author sunhe
 	 * @date 2015年4月16日 下午9:50:46
 	 */
-	public synchronized int getBlockingTime() {
-		return blockingTime;
+	public int getBlockingTime() {
+		return (int) TimeUnit.NANOSECONDS.toMillis(blockingTime.sum());
 	}
 	
 	/**
 	 * @author sunhe
 	 * @date 2015年4月16日 下午9:51:19
 	 */
-	public synchronized void clear() {
-		blockingTime = 0;
+	public void clear() {
+		blockingTime.reset();
+	}
+	
+	/**
+	 * Get the blocking time accumulated since last time and then clear it.
+	 * 
+	 * @return In millisecond unit.
+	 * @author sunhe
+	 * @date 2015年6月12日 上午11:02:19
+	 */
+	public int getAndClearBlockingTime() {
+		return (int) TimeUnit.NANOSECONDS.toMillis(blockingTime.sumThenReset());
 	}
 	
 }
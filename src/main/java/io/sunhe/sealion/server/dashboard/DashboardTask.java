@@ -92,10 +92,11 @@ public class DashboardTask implements Runnable {
 		data.setNetworkIn(serverMonitor.getAndClearInboundTrafficStat() / intervalSecond);
 		// unit - %
 		data.setHitRatio(UnitConverter.fromFloatToPercentage(serverMonitor.getAndClearHitRatio()));
-		// unit - s
-		data.setBlockingTime(serverMonitor.getBlockingTime());
+		// unit - ms/s
+		data.setBlockingTime(serverMonitor.getAndClearBlockingTime() / intervalSecond);
 		// unit - %
 		data.setCpuUsage(serverMonitor.getCpuUsage());
+		data.setSlabClassStats(serverMonitor.getSlabClassStats());
 		writeToChannelGroup(data);
 	}
 	
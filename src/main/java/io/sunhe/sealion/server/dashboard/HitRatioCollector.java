@@ -1,40 +1,60 @@
 package io.sunhe.sealion.server.dashboard;
 
+import java.util.concurrent.atomic.LongAdder;
+
 /**
  * Hit ratio collector.
  * Take CAS_FAILURE as hit.
  * 
- * Thread-safe.
+ * Thread-safe. The counters are striped, so that the worker threads of 
+ * different shards don't contend with each other (or with the dashboard).
  * 
  * @author sunhe
  * @date 2015年4月16日 下午7:28:02
  */
 public class HitRatioCollector {
 
-	private int hitTimes;
+	private LongAdder hitTimes = new LongAdder();
+	
+	private LongAdder missTimes = new LongAdder();
 	
-	private int totalTimes;
+	public void hit() {
+		hitTimes.increment();
+	}
+	
+	public void miss() {
+		missTimes.increment();
+	}
 	
-	public synchronized void hit() {
-		hitTimes++;
-		totalTimes++;
+	public double getHitRatio() {
+		return getHitRatio(hitTimes.sum(), missTimes.sum());
 	}
 	
-	public synchronized void miss() {
-		totalTimes++;
+	public void clearRecords() {
+		hitTimes.reset();
+		missTimes.reset();
 	}
 	
-	public synchronized double getHitRatio() {
-		if (totalTimes == 0) {
+	/**
+	 * Get the hit ratio and then clear the records.
+	 * Note that the hits and misses recorded concurrently may 
+	 * be counted in either this period or the next one.
+	 * 
+	 * @return
+	 * @author sunhe
+	 * @date 2015年6月11日 上午10:05:47
+	 */
+	public double getAndClearHitRatio() {
+		return getHitRatio(hitTimes.sumThenReset(), missTimes.sumThenReset());
+	}
+	
+	private double getHitRatio(long hits, long misses) {
+		if (hits + misses == 0) {
 			return 1.0;
 		}
 		else {
-			return (double) hitTimes / (double) totalTimes;
+			return (double) hits / (double) (hits + misses);
 		}
 	}
 	
-	public synchronized void clearRecords() {
-		hitTimes = totalTimes = 0;
-	}
-	
 }
@@ -1,8 +1,9 @@
 package io.sunhe.sealion.server.dashboard;
 
 import io.netty.channel.group.ChannelGroup;
-import io.sunhe.sealion.server.Task;
-import io.sunhe.sealion.server.mem.MapContainer;
+import io.sunhe.sealion.server.WorkerTask;
+import io.sunhe.sealion.server.mem.ShardedMapContainer;
+import io.sunhe.sealion.server.mem.SlabClassStat;
 import io.sunhe.sealion.server.traffic.SeaLionInboundTrafficStat;
 import io.sunhe.sealion.server.traffic.SeaLionOutboundTrafficStat;
 
@@ -10,7 +11,7 @@ import java.lang.management.ManagementFactory;
 
 import com.sun.management.OperatingSystemMXBean;
 
-import java.util.concurrent.BlockingQueue;
+import java.util.List;
 
 /**
  * SeaLion server instance monitor.
@@ -20,6 +21,8 @@ import java.util.concurrent.BlockingQueue;
  * ONE SeaLion server monitor.
  * 
  * Should be thread-safe.
+ * None of the status reading takes any lock which is also 
+ * needed by the worker threads or the I/O threads.
  * 
  * @author sunhe
  * @date 2015年4月14日 上午11:54:28
@@ -27,9 +30,12 @@ import java.util.concurrent.BlockingQueue;
 @SuppressWarnings("restriction")
 public class SeaLionServerMonitor {
 	
-	private BlockingQueue<Task> workerTaskQueue;
+	/**
+	 * One worker per shard.
+	 */
+	private List<WorkerTask> workers;
 	
-	private MapContainer mapContainer;
+	private ShardedMapContainer mapContainer;
 	
 	private ChannelGroup channelGroup;
 	
@@ -43,11 +49,13 @@ public class SeaLionServerMonitor {
 	
 	private OperatingSystemMXBean osMXBean;
 	
-	public SeaLionServerMonitor(BlockingQueue<Task> workerTaskQueue, MapContainer mapContainer, 
+	private final long startTime = System.currentTimeMillis();
+	
+	public SeaLionServerMonitor(List<WorkerTask> workers, ShardedMapContainer mapContainer, 
 			ChannelGroup channelGroup, SeaLionInboundTrafficStat inboundTrafficStat, 
 			SeaLionOutboundTrafficStat outboundTrafficStat, HitRatioCollector hitRatioCollector, 
 			BlockingTimeAccumulator blockingTimeAccumulator) {
-		this.workerTaskQueue = workerTaskQueue;
+		this.workers = workers;
 		this.mapContainer = mapContainer;
 		this.channelGroup = channelGroup;
 		this.inboundTrafficStat = inboundTrafficStat;
@@ -69,14 +77,64 @@ public class SeaLionServerMonitor {
 		return mapContainer.getMaxMemSize();
 	}
 	
+	/**
+	 * Get the status of every slab class of all shards in total, 
+	 * the last one is the class of the huge items.
+	 * 
+	 * @return
+	 * @author sunhe
+	 * @date 2015年6月16日 下午2:45:02
+	 */
+	public List<SlabClassStat> getSlabClassStats() {
+		return mapContainer.getSlabClassStats();
+	}
+	
+	/**
+	 * @param shardIndex
+	 * @return The memory usage of a single shard in byte unit.
+	 * @author sunhe
+	 * @date 2015年6月11日 上午10:20:14
+	 */
+	public long getMemUsage(int shardIndex) {
+		return mapContainer.getShard(shardIndex).getCurMemSize();
+	}
+	
+	/**
+	 * @return The sum of all shards' task queue size.
+	 * @author sunhe
+	 * @date 2015年6月8日 上午11:02:37
+	 */
 	public int getTaskQueueSize() {
-		return workerTaskQueue.size();
+		int taskQueueSize = 0;
+		for (WorkerTask worker : workers) {
+			taskQueueSize += worker.getTaskQueueSize();
+		}
+		return taskQueueSize;
+	}
+	
+	/**
+	 * @return
+	 * @author sunhe
+	 * @date 2015年6月8日 上午11:03:45
+	 */
+	public int getNumOfShards() {
+		return mapContainer.getNumOfShards();
 	}
 	
 	public int getNumOfConn() {
 		return channelGroup.size();
 	}
 	
+	/**
+	 * @return The time in millisecond unit the server was started at, 
+	 * 		i.e., the monitor was created.
+	 * @author sunhe
+	 * @date 2015年6月29日 下午2:10:25
+	 */
+	public long getStartTime() {
+		return startTime;
+	}
+	
 	/**
 	 * Note that only support dashboard, not including monitor interface.
 	 * Get the inbound traffic throughput and then clear it.
@@ -85,10 +143,8 @@ public class SeaLionServerMonitor {
 	 * @author sunhe
 	 * @date 2015年4月16日 下午7:06:06
 	 */
-	public synchronized int getAndClearInboundTrafficStat() {
-		int trafficStat = inboundTrafficStat.getTrafficStat();
-		inboundTrafficStat.clearTrafficStat();
-		return trafficStat;
+	public int getAndClearInboundTrafficStat() {
+		return inboundTrafficStat.getAndClearTrafficStat();
 	}
 	
 	/**
@@ -99,10 +155,8 @@ public class SeaLionServerMonitor {
 	 * @author sunhe
 	 * @date 2015年4月16日 下午4:23:32
 	 */
-	public synchronized int getAndClearOutboundTrafficStat() {
-		int trafficStat = outboundTrafficStat.getTrafficStat();
-		outboundTrafficStat.clearTrafficStat();
-		return trafficStat;
+	public int getAndClearOutboundTrafficStat() {
+		return outboundTrafficStat.getAndClearTrafficStat();
 	}
 	
 	/**
@@ -112,19 +166,20 @@ public class SeaLionServerMonitor {
 	 * @author sunhe
 	 * @date 2015年4月16日 下午7:45:55
 	 */
-	public synchronized double getAndClearHitRatio() {
-		double hitRatio = hitRatioCollector.getHitRatio();
-		hitRatioCollector.clearRecords();
-		return hitRatio;
+	public double getAndClearHitRatio() {
+		return hitRatioCollector.getAndClearHitRatio();
 	}
 	
 	/**
-	 * @return In second unit.
+	 * Get the time all worker threads spent on reclaiming memory 
+	 * since last time, and then clear it.
+	 * 
+	 * @return In millisecond unit.
 	 * @author sunhe
 	 * @date 2015年4月16日 下午10:26:16
 	 */
-	public int getBlockingTime() {
-		return blockingTimeAccumulator.getBlockingTime();
+	public int getAndClearBlockingTime() {
+		return blockingTimeAccumulator.getAndClearBlockingTime();
 	}
 	
 	/**
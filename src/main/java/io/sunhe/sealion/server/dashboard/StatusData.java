@@ -1,5 +1,9 @@
 package io.sunhe.sealion.server.dashboard;
 
+import io.sunhe.sealion.server.mem.SlabClassStat;
+
+import java.util.List;
+
 /**
  * A frame of status data broadcasted to browser 
  * through WebSocket.
@@ -54,7 +58,7 @@ public class StatusData {
 	 * to remove expired (TTL) or old data (LRU). During this period 
 	 * of time, the worker thread can't do any data manipulation task.
 	 * 
-	 * In second unit.
+	 * In millisecond per second unit.
 	 */
 	private int blockingTime;
 	
@@ -63,6 +67,12 @@ public class StatusData {
 	 */
 	private int cpuUsage;
 	
+	/**
+	 * The status of every slab class of all shards in total, 
+	 * the last one is the class of the huge items.
+	 */
+	private List<SlabClassStat> slabClassStats;
+	
 	public long getTimeStamp() {
 		return timeStamp;
 	}
@@ -151,4 +161,12 @@ public class StatusData {
 		this.cpuUsage = cpuUsage;
 	}
 	
+	public List<SlabClassStat> getSlabClassStats() {
+		return slabClassStats;
+	}
+
+	public void setSlabClassStats(List<SlabClassStat> slabClassStats) {
+		this.slabClassStats = slabClassStats;
+	}
+	
 }
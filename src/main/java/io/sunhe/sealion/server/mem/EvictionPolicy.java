@@ -0,0 +1,64 @@
+package io.sunhe.sealion.server.mem;
+
+/**
+ * The policy deciding which items of a slab class to evict.
+ * Every slab class of a shard has its own policy instance.
+ * The items are given by their references, see ItemStore.
+ *
+ * Implementation can be not thread-safe, only the worker thread owning
+ * the shard can access it, except that the size can be read by any thread.
+ *
+ * @author sunhe
+ * @date 2015年6月17日 下午1:40:12
+ */
+public interface EvictionPolicy {
+
+	/**
+	 * Track a newly stored item.
+	 *
+	 * @param item
+	 * @author sunhe
+	 * @date 2015年6月17日 下午1:41:30
+	 */
+	public void insert(int item);
+
+	/**
+	 * Record a hit of the item.
+	 *
+	 * @param item
+	 * @author sunhe
+	 * @date 2015年6月17日 下午1:42:05
+	 */
+	public void access(int item);
+
+	/**
+	 * Stop tracking the item, which is deleted, replaced, expired or evicted.
+	 *
+	 * @param item
+	 * @author sunhe
+	 * @date 2015年6月17日 下午1:42:48
+	 */
+	public void remove(int item);
+
+	/**
+	 * @return The number of items tracked.
+	 * @author sunhe
+	 * @date 2015年6月17日 下午1:43:20
+	 */
+	public long size();
+
+	/**
+	 * Pass the items to be evicted to the operator, in the order they should be evicted,
+	 * until the operator returns false or the given number of items have been visited.
+	 * Note that the items the policy decides to keep (a second chance for instance) are
+	 * not passed to the operator, but they're visited all the same.
+	 *
+	 * @param maxVisits
+	 * @param operator Supposed to evict the item, see LRUListItemOperator.
+	 * @return The number of items visited.
+	 * @author sunhe
+	 * @date 2015年6月17日 下午1:45:36
+	 */
+	public int evict(int maxVisits, LRUListItemOperator operator);
+
+}
@@ -0,0 +1,23 @@
+package io.sunhe.sealion.server.mem;
+
+/**
+ * Interface definition of operation
+ * to manipulate the expired item when the expiry wheel advances.
+ *
+ * @author sunhe
+ * @date 2015年6月13日 上午9:51:20
+ */
+public interface ExpiredItemOperator {
+
+	/**
+	 * The item has already been removed from the expiry wheel,
+	 * and note that you should also remove it from the LRU list and
+	 * the MapContainer.map and free its chunk, see MapContainer.unlinkItem(int).
+	 *
+	 * @param item
+	 * @author sunhe
+	 * @date 2015年6月13日 上午9:52:46
+	 */
+	public void operate(int item);
+
+}
@@ -0,0 +1,256 @@
+package io.sunhe.sealion.server.mem;
+
+import java.util.Arrays;
+
+/**
+ * Hierarchical timing wheel, indexing the items by their expiration time stamps.
+ *
+ * There are NUM_OF_LEVELS levels, each of which has WHEEL_SIZE buckets. A bucket
+ * of level 0 spans a single tick, and a bucket of level n spans WHEEL_SIZE times
+ * the span of level n - 1. An item is put into the bucket of the lowest level
+ * which can hold its expiration time, so adding and removing are O(1), and every
+ * time level 0 goes round, the current bucket of the upper level is cascaded down.
+ * The buckets are intrusive double linked lists through the items themselves,
+ * which are linked by their references (see ItemStore), so there isn't any
+ * allocation at all.
+ *
+ * Every item's expiration time stamp is re-checked before expiring it, the items
+ * whose expiration time stamps are beyond the span of the whole wheel are just
+ * put back when their buckets come round.
+ *
+ * Not thread-safe, only the worker thread owning the shard can access it.
+ *
+ * @author sunhe
+ * @date 2015年6月13日 上午10:03:18
+ */
+public class ExpiryWheel {
+
+	/**
+	 * 10 milliseconds.
+	 */
+	public static final long DEFAULT_TICK_MILLIS = 10;
+
+	private static final int WHEEL_BITS = 6;
+
+	private static final int WHEEL_SIZE = 1 << WHEEL_BITS;
+
+	private static final int WHEEL_MASK = WHEEL_SIZE - 1;
+
+	/**
+	 * With the default tick, the wheel spans about 46 hours.
+	 */
+	private static final int NUM_OF_LEVELS = 4;
+
+	/**
+	 * In tick unit.
+	 */
+	private static final long MAX_SPAN = 1L << (WHEEL_BITS * NUM_OF_LEVELS);
+
+	/**
+	 * In millisecond.
+	 */
+	private long tickMillis;
+
+	private ItemStore items;
+
+	/**
+	 * Heads of the buckets, the index is (level * WHEEL_SIZE + slot).
+	 */
+	private int[] buckets = new int[WHEEL_SIZE * NUM_OF_LEVELS];
+
+	/**
+	 * The last tick processed, in tick unit since the epoch.
+	 */
+	private long currentTick;
+
+	private long size;
+
+	public ExpiryWheel(ItemStore items, long currentTimeStamp) {
+		this (items, DEFAULT_TICK_MILLIS, currentTimeStamp);
+	}
+
+	/**
+	 * @param items
+	 * @param tickMillis The span of a single tick, in millisecond.
+	 * @param currentTimeStamp
+	 * @author sunhe
+	 * @date 2015年6月13日 上午10:12:40
+	 */
+	public ExpiryWheel(ItemStore items, long tickMillis, long currentTimeStamp) {
+		if (tickMillis <= 0) {
+			throw new IllegalArgumentException("Invalid tick: " + tickMillis);
+		}
+		this.items = items;
+		this.tickMillis = tickMillis;
+		currentTick = currentTimeStamp / tickMillis;
+		Arrays.fill(buckets, ItemStore.NULL);
+	}
+
+	/**
+	 * @return The number of items in the wheel.
+	 * @author sunhe
+	 * @date 2015年6月13日 上午10:14:05
+	 */
+	public long size() {
+		return size;
+	}
+
+	/**
+	 * Add an item, whose time stamp must not be 0 (never expire).
+	 *
+	 * @param item
+	 * @author sunhe
+	 * @date 2015年6月13日 上午10:15:31
+	 */
+	public void add(int item) {
+		if (items.getTimeStamp(item) == 0) {
+			throw new IllegalArgumentException("The item never expires: " + items.getKey(item));
+		}
+		// the current tick has already been processed.
+		place(item, currentTick + 1);
+		size++;
+	}
+
+	/**
+	 * Remove an item, do nothing if it isn't in the wheel.
+	 *
+	 * @param item
+	 * @author sunhe
+	 * @date 2015年6月13日 上午10:17:09
+	 */
+	public void remove(int item) {
+		if (items.getExpiryBucket(item) < 0) {
+			return;
+		}
+		unlink(item);
+		size--;
+	}
+
+	/**
+	 * Advance the wheel to the given time stamp, handing all items expired
+	 * on the way to the operator.
+	 *
+	 * @param currentTimeStamp
+	 * @param operator
+	 * @param maxItems The maximum number of items to be expired.
+	 * @param deadline In nanosecond, compared with System.nanoTime().
+	 * @return The number of items expired.
+	 * @author sunhe
+	 * @date 2015年6月13日 上午10:25:56
+	 */
+	public int advance(long currentTimeStamp, ExpiredItemOperator operator, int maxItems, long deadline) {
+		long targetTick = currentTimeStamp / tickMillis;
+		if (size == 0) {
+			// nothing to cascade or expire on the way.
+			currentTick = Math.max(currentTick, targetTick);
+			return 0;
+		}
+		int count = 0;
+		while (currentTick < targetTick) {
+			long tick = currentTick + 1;
+			cascade(tick);
+			int index = (int) (tick & WHEEL_MASK);
+			int item;
+			while ((item = buckets[index]) != ItemStore.NULL) {
+				if (count >= maxItems || System.nanoTime() >= deadline) {
+					// the rest of this tick will be processed next time.
+					return count;
+				}
+				unlink(item);
+				if (items.getTimeStamp(item) <= currentTimeStamp) {
+					size--;
+					operator.operate(item);
+					count++;
+				}
+				else {
+					// not yet, or beyond the span of the wheel.
+					place(item, tick + 1);
+				}
+			}
+			currentTick = tick;
+		}
+		return count;
+	}
+
+	/**
+	 * Cascade the upper levels down when level 0 goes round.
+	 *
+	 * @param tick The tick about to be processed.
+	 * @author sunhe
+	 * @date 2015年6月13日 上午10:31:44
+	 */
+	private void cascade(long tick) {
+		for (int level = 1; level < NUM_OF_LEVELS; level++) {
+			if (((tick >>> (WHEEL_BITS * (level - 1))) & WHEEL_MASK) != 0) {
+				return;
+			}
+			int index = level * WHEEL_SIZE + (int) ((tick >>> (WHEEL_BITS * level)) & WHEEL_MASK);
+			int item = buckets[index];
+			buckets[index] = ItemStore.NULL;
+			int next;
+			while (item != ItemStore.NULL) {
+				next = items.getExpiryNext(item);
+				items.setExpiryPrior(item, ItemStore.NULL);
+				items.setExpiryNext(item, ItemStore.NULL);
+				place(item, tick);
+				item = next;
+			}
+		}
+	}
+
+	/**
+	 * Put the item into the bucket of the lowest level which can hold it.
+	 *
+	 * @param item
+	 * @param minTick The earliest tick the item can be put at, which must not have been processed.
+	 * @author sunhe
+	 * @date 2015年6月13日 上午10:36:02
+	 */
+	private void place(int item, long minTick) {
+		long tick = Math.max(items.getTimeStamp(item) / tickMillis, minTick);
+		long delta = tick - minTick;
+		if (delta >= MAX_SPAN) {
+			// will be re-checked when its bucket comes round.
+			tick = minTick + MAX_SPAN - 1;
+			delta = MAX_SPAN - 1;
+		}
+		int level = 0;
+		while (delta >= (1L << (WHEEL_BITS * (level + 1)))) {
+			level++;
+		}
+		int index = level * WHEEL_SIZE + (int) ((tick >>> (WHEEL_BITS * level)) & WHEEL_MASK);
+		int head = buckets[index];
+		items.setExpiryPrior(item, ItemStore.NULL);
+		items.setExpiryNext(item, head);
+		if (head != ItemStore.NULL) {
+			items.setExpiryPrior(head, item);
+		}
+		buckets[index] = item;
+		items.setExpiryBucket(item, index);
+	}
+
+	/**
+	 * Remove the item from its bucket.
+	 *
+	 * @param item
+	 * @author sunhe
+	 * @date 2015年6月13日 上午10:39:27
+	 */
+	private void unlink(int item) {
+		int prior = items.getExpiryPrior(item);
+		int next = items.getExpiryNext(item);
+		if (prior == ItemStore.NULL) {
+			buckets[items.getExpiryBucket(item)] = next;
+		}
+		else {
+			items.setExpiryNext(prior, next);
+		}
+		if (next != ItemStore.NULL) {
+			items.setExpiryPrior(next, prior);
+		}
+		items.setExpiryPrior(item, ItemStore.NULL);
+		items.setExpiryNext(item, ItemStore.NULL);
+		items.setExpiryBucket(item, -1);
+	}
+
+}
@@ -0,0 +1,142 @@
+package io.sunhe.sealion.server.mem;
+
+/**
+ * Count-min sketch estimating the access frequencies of the keys, by which
+ * TinyLFU decides whether a new item is worth evicting an old one.
+ *
+ * Every counter has 4 bits, so 16 of them are packed into a single long, and
+ * a key is counted by 4 counters of the same long, picked by 4 different hash
+ * functions, the estimation is the minimum of them. Once the number of the
+ * increments reaches the sample size, all counters are halved, so that the
+ * frequencies of the keys which aren't accessed any more fade away.
+ *
+ * Not thread-safe, only the worker thread owning the shard can access it.
+ *
+ * @author sunhe
+ * @date 2015年6月17日 下午2:02:18
+ */
+public class FrequencySketch {
+
+	/**
+	 * A counter never exceeds it.
+	 */
+	public static final int MAX_FREQUENCY = 15;
+
+	private static final long[] SEEDS = {
+		0xC3A5C85C97CB3127L, 0xB492B66FBE98F273L, 0x9AE16A3B2F90404FL, 0xCBF29CE484222325L
+	};
+
+	private static final long RESET_MASK = 0x7777777777777777L;
+
+	private static final long ONE_MASK = 0x1111111111111111L;
+
+	private long[] table;
+
+	private int tableMask;
+
+	/**
+	 * The number of increments after which the counters are halved.
+	 */
+	private int sampleSize;
+
+	/**
+	 * The number of increments since last halving.
+	 */
+	private int size;
+
+	/**
+	 * @param expectedItems The expected number of items, which decides the size of the sketch.
+	 * @author sunhe
+	 * @date 2015年6月17日 下午2:05:33
+	 */
+	public FrequencySketch(long expectedItems) {
+		if (expectedItems <= 0) {
+			throw new IllegalArgumentException("Invalid number of items: " + expectedItems);
+		}
+		int capacity = (int) Math.min(expectedItems, 1 << 30);
+		int length = Integer.highestOneBit(capacity);
+		table = new long[length < capacity ? length << 1 : length];
+		tableMask = table.length - 1;
+		sampleSize = capacity > Integer.MAX_VALUE / 10 ? Integer.MAX_VALUE : capacity * 10;
+	}
+
+	/**
+	 * @param hash The hash code of the key, see ItemIndex.hash(byte[]).
+	 * @return The estimated frequency, from 0 to MAX_FREQUENCY.
+	 * @author sunhe
+	 * @date 2015年6月17日 下午2:08:10
+	 */
+	public int frequency(int hash) {
+		int start = (hash & 3) << 2;
+		int frequency = MAX_FREQUENCY;
+		for (int i = 0; i < 4; i++) {
+			int count = (int) ((table[indexOf(hash, i)] >>> ((start + i) << 2)) & 0xFL);
+			frequency = Math.min(frequency, count);
+		}
+		return frequency;
+	}
+
+	/**
+	 * Count an access of the key.
+	 *
+	 * @param hash The hash code of the key, see ItemIndex.hash(byte[]).
+	 * @author sunhe
+	 * @date 2015年6月17日 下午2:10:41
+	 */
+	public void increment(int hash) {
+		int start = (hash & 3) << 2;
+		boolean added = false;
+		for (int i = 0; i < 4; i++) {
+			added |= incrementAt(indexOf(hash, i), start + i);
+		}
+		if (added && ++size >= sampleSize) {
+			reset();
+		}
+	}
+
+	/**
+	 * @param index The index of the long in the table.
+	 * @param counter The index of the counter in the long.
+	 * @return False if the counter is already saturated.
+	 * @author sunhe
+	 * @date 2015年6月17日 下午2:12:05
+	 */
+	private boolean incrementAt(int index, int counter) {
+		int offset = counter << 2;
+		long mask = 0xFL << offset;
+		if ((table[index] & mask) != mask) {
+			table[index] += 1L << offset;
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * @param hash
+	 * @param i The index of the hash function.
+	 * @return
+	 * @author sunhe
+	 * @date 2015年6月17日 下午2:13:18
+	 */
+	private int indexOf(int hash, int i) {
+		long h = (hash + SEEDS[i]) * SEEDS[i];
+		h += h >>> 32;
+		return ((int) h) & tableMask;
+	}
+
+	/**
+	 * Halve all counters.
+	 *
+	 * @author sunhe
+	 * @date 2015年6月17日 下午2:14:47
+	 */
+	private void reset() {
+		int odd = 0;
+		for (int i = 0; i < table.length; i++) {
+			odd += Long.bitCount(table[i] & ONE_MASK);
+			table[i] = (table[i] >>> 1) & RESET_MASK;
+		}
+		size = (size >>> 1) - (odd >>> 2);
+	}
+
+}
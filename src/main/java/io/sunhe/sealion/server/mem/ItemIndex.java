@@ -0,0 +1,281 @@
+package io.sunhe.sealion.server.mem;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+
+import java.util.Arrays;
+
+/**
+ * Open-addressing hash index mapping the key bytes to the items.
+ *
+ * The slots are kept in direct memory, each of which is a long: the hash code
+ * of the item in the higher 32 bits, and the reference to the item in the lower
+ * 32 bits, see ItemStore. So there isn't any object per entry, and probing compares
+ * the hash codes first, only touching the key bytes of the items whose hash codes match.
+ * Linear probing is used, and removal shifts the following entries backward
+ * instead of leaving tombstones, so lookups never degrade after churn.
+ *
+ * The table isn't accounted in the memory budget of the shard, it takes 8 bytes
+ * per slot, and is doubled once it's 3/4 full.
+ *
+ * Not thread-safe, only the worker thread owning the shard can access it.
+ *
+ * @author sunhe
+ * @date 2015年6月15日 上午9:12:44
+ */
+public class ItemIndex {
+
+	public static final int DEFAULT_INITIAL_CAPACITY = 1024;
+
+	/**
+	 * The table cann't be larger than 2 GBytes.
+	 */
+	public static final int MAX_CAPACITY = 1 << 28;
+
+	/**
+	 * The index is doubled once it's 3/4 full.
+	 */
+	private static final int LOAD_FACTOR_SHIFT = 2;
+
+	private static final int SLOT_SHIFT = 3;
+
+	private ItemStore items;
+
+	private ByteBufAllocator allocator;
+
+	/**
+	 * 0 signifies an empty slot, since the hash code is never 0.
+	 */
+	private ByteBuf slots;
+
+	private int mask;
+
+	private int size;
+
+	private int threshold;
+
+	public ItemIndex(ItemStore items, ByteBufAllocator allocator) {
+		this (items, allocator, DEFAULT_INITIAL_CAPACITY);
+	}
+
+	/**
+	 * @param items
+	 * @param allocator The allocator of the table.
+	 * @param initialCapacity Rounded up to a power of 2.
+	 * @author sunhe
+	 * @date 2015年6月15日 上午9:18:26
+	 */
+	public ItemIndex(ItemStore items, ByteBufAllocator allocator, int initialCapacity) {
+		if (initialCapacity <= 0 || initialCapacity > MAX_CAPACITY) {
+			throw new IllegalArgumentException("Invalid initial capacity: " + initialCapacity);
+		}
+		this.items = items;
+		this.allocator = allocator;
+		int capacity = Integer.highestOneBit(initialCapacity);
+		if (capacity < initialCapacity) {
+			capacity <<= 1;
+		}
+		init(capacity);
+	}
+
+	/**
+	 * @param capacity Must be a power of 2.
+	 * @author sunhe
+	 * @date 2015年6月15日 上午9:20:03
+	 */
+	private void init(int capacity) {
+		int length = capacity << SLOT_SHIFT;
+		slots = allocator.directBuffer(length, length);
+		slots.setZero(0, length);
+		mask = capacity - 1;
+		threshold = capacity - (capacity >>> LOAD_FACTOR_SHIFT);
+	}
+
+	/**
+	 * @return The number of items in the index.
+	 * @author sunhe
+	 * @date 2015年6月15日 上午9:21:37
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * @param key
+	 * @return NULL if not found.
+	 * @author sunhe
+	 * @date 2015年6月15日 上午9:23:15
+	 */
+	public int get(byte[] key) {
+		int index = indexOf(key, hash(key));
+		return index < 0 ? ItemStore.NULL : itemAt(index);
+	}
+
+	/**
+	 * @param key
+	 * @return
+	 * @author sunhe
+	 * @date 2015年6月15日 上午9:24:02
+	 */
+	public boolean containsKey(byte[] key) {
+		return indexOf(key, hash(key)) >= 0;
+	}
+
+	/**
+	 * Put the item by its key bytes, replacing the old one if exists.
+	 *
+	 * @param item
+	 * @return The old item, NULL if not exists.
+	 * @author sunhe
+	 * @date 2015年6月15日 上午9:26:40
+	 */
+	public int put(int item) {
+		int hash = items.getHash(item);
+		int index = hash & mask;
+		long slot;
+		while ((slot = slotAt(index)) != 0) {
+			if ((int) (slot >>> 32) == hash && items.keyEquals((int) slot, item)) {
+				setSlot(index, hash, item);
+				return (int) slot;
+			}
+			index = (index + 1) & mask;
+		}
+		setSlot(index, hash, item);
+		if (++size > threshold) {
+			resize();
+		}
+		return ItemStore.NULL;
+	}
+
+	/**
+	 * @param key
+	 * @return The removed item, NULL if not exists.
+	 * @author sunhe
+	 * @date 2015年6月15日 上午9:30:18
+	 */
+	public int remove(byte[] key) {
+		int index = indexOf(key, hash(key));
+		if (index < 0) {
+			return ItemStore.NULL;
+		}
+		int item = itemAt(index);
+		delete(index);
+		return item;
+	}
+
+	/**
+	 * Remove the given item (rather than another item with the same key).
+	 *
+	 * @param item
+	 * @return True if removed.
+	 * @author sunhe
+	 * @date 2015年6月15日 上午9:32:51
+	 */
+	public boolean remove(int item) {
+		int index = items.getHash(item) & mask;
+		long slot;
+		while ((slot = slotAt(index)) != 0) {
+			if ((int) slot == item) {
+				delete(index);
+				return true;
+			}
+			index = (index + 1) & mask;
+		}
+		return false;
+	}
+
+	/**
+	 * @param key
+	 * @param hash
+	 * @return -1 if not found.
+	 * @author sunhe
+	 * @date 2015年6月15日 上午9:35:27
+	 */
+	private int indexOf(byte[] key, int hash) {
+		int index = hash & mask;
+		long slot;
+		while ((slot = slotAt(index)) != 0) {
+			if ((int) (slot >>> 32) == hash && items.keyEquals((int) slot, key)) {
+				return index;
+			}
+			index = (index + 1) & mask;
+		}
+		return -1;
+	}
+
+	private long slotAt(int index) {
+		return slots.getLong(index << SLOT_SHIFT);
+	}
+
+	private int itemAt(int index) {
+		return (int) slotAt(index);
+	}
+
+	private void setSlot(int index, int hash, int item) {
+		slots.setLong(index << SLOT_SHIFT, ((long) hash << 32) | (item & 0xFFFFFFFFL));
+	}
+
+	/**
+	 * Empty the slot, and shift the following entries of the same
+	 * cluster backward, so that no tombstone is needed.
+	 *
+	 * @param index
+	 * @author sunhe
+	 * @date 2015年6月15日 上午9:40:06
+	 */
+	private void delete(int index) {
+		int next = (index + 1) & mask;
+		long slot;
+		while ((slot = slotAt(next)) != 0) {
+			int home = (int) (slot >>> 32) & mask;
+			// move the entry to the hole if the hole is between its home and itself.
+			if (((next - home) & mask) >= ((next - index) & mask)) {
+				slots.setLong(index << SLOT_SHIFT, slot);
+				index = next;
+			}
+			next = (next + 1) & mask;
+		}
+		slots.setLong(index << SLOT_SHIFT, 0);
+		size--;
+	}
+
+	/**
+	 * @author sunhe
+	 * @date 2015年6月15日 上午9:44:38
+	 */
+	private void resize() {
+		ByteBuf oldSlots = slots;
+		int oldCapacity = mask + 1;
+		if (oldCapacity == MAX_CAPACITY) {
+			throw new IllegalStateException("The index cann't grow any more");
+		}
+		init(oldCapacity << 1);
+		for (int i = 0; i < oldCapacity; i++) {
+			long slot = oldSlots.getLong(i << SLOT_SHIFT);
+			if (slot != 0) {
+				int index = (int) (slot >>> 32) & mask;
+				while (slotAt(index) != 0) {
+					index = (index + 1) & mask;
+				}
+				slots.setLong(index << SLOT_SHIFT, slot);
+			}
+		}
+		oldSlots.release();
+	}
+
+	/**
+	 * @param key
+	 * @return Never 0, which signifies an empty slot.
+	 * @author sunhe
+	 * @date 2015年6月15日 上午9:47:12
+	 */
+	static int hash(byte[] key) {
+		int hash = Arrays.hashCode(key);
+		// spread the higher bits, since the slot is decided by the lower bits.
+		hash ^= (hash >>> 16);
+		hash *= 0x85EBCA6B;
+		hash ^= (hash >>> 13);
+		return hash == 0 ? 1 : hash;
+	}
+
+}
@@ -0,0 +1,406 @@
+package io.sunhe.sealion.server.mem;
+
+import io.netty.buffer.ByteBuf;
+import io.sunhe.sealion.util.Charsets;
+
+/**
+ * The items of a shard, each of which is stored in a single chunk of the slabs,
+ * and addressed by the reference to its chunk.
+ *
+ * All fields of an item are primitives kept in its chunk, beside the key bytes and
+ * the value, so there isn't any object per item: the index, the LRU queues and the
+ * expiry wheel link the items by their references. The layout of an item, from the
+ * offset of its chunk, is:
+ * 		* hash code of the key (int)
+ * 		* LRU prior and next (int, int)
+ * 		* expiry prior and next (int, int), and the bucket of the expiry wheel (int)
+ * 		* expiration time stamp (long)
+ * 		* CAS (long)
+ * 		* data size (int)
+ * 		* key length (int)
+ * 		* reference bit and the queue of the eviction policy (byte, byte)
+ * 		* key bytes, followed by the data bytes
+ *
+ * Not thread-safe, only the worker thread owning the shard can access it.
+ *
+ * @author sunhe
+ * @date 2015年6月22日 上午11:02:15
+ */
+public class ItemStore {
+
+	/**
+	 * The reference to no item.
+	 */
+	public static final int NULL = SlabAllocator.NULL;
+
+	private static final int HASH = 0;
+
+	private static final int PRIOR = 4;
+
+	private static final int NEXT = 8;
+
+	private static final int EXPIRY_PRIOR = 12;
+
+	private static final int EXPIRY_NEXT = 16;
+
+	private static final int EXPIRY_BUCKET = 20;
+
+	private static final int TIME_STAMP = 24;
+
+	private static final int CAS = 32;
+
+	private static final int DATA_SIZE = 40;
+
+	private static final int KEY_LENGTH = 44;
+
+	private static final int REFERENCED = 48;
+
+	private static final int POLICY_QUEUE = 49;
+
+	/**
+	 * The size in byte of the fields before the key bytes.
+	 */
+	public static final int HEADER_SIZE = 50;
+
+	private SlabAllocator slabAllocator;
+
+	public ItemStore(SlabAllocator slabAllocator) {
+		this.slabAllocator = slabAllocator;
+	}
+
+	/**
+	 * @param keyLength
+	 * @param dataSize
+	 * @return The size in byte of the chunk needed by the item.
+	 * @author sunhe
+	 * @date 2015年6月22日 上午11:06:30
+	 */
+	public static long sizeOf(int keyLength, int dataSize) {
+		return (long) SlabAllocator.CHUNK_OVERHEAD + HEADER_SIZE + keyLength + dataSize;
+	}
+
+	/**
+	 * Allocate an item with the given key, whose other fields are cleared, and
+	 * whose data is left to be written by writeData(int, ByteBuf).
+	 * Note that the item MUST be freed by free(int).
+	 *
+	 * @param key UTF-8
+	 * @param dataSize
+	 * @return NULL if there isn't any room for it.
+	 * @author sunhe
+	 * @date 2015年6月22日 上午11:10:45
+	 */
+	public int allocate(byte[] key, int dataSize) {
+		long size = sizeOf(key.length, dataSize);
+		if (! slabAllocator.canHold(size)) {
+			return NULL;
+		}
+		int item = slabAllocator.allocate((int) size);
+		if (item == NULL) {
+			return NULL;
+		}
+		ByteBuf page = slabAllocator.getPage(item);
+		int offset = slabAllocator.getOffset(item);
+		page.setInt(offset + HASH, ItemIndex.hash(key));
+		page.setInt(offset + PRIOR, NULL);
+		page.setInt(offset + NEXT, NULL);
+		page.setInt(offset + EXPIRY_PRIOR, NULL);
+		page.setInt(offset + EXPIRY_NEXT, NULL);
+		page.setInt(offset + EXPIRY_BUCKET, -1);
+		page.setLong(offset + TIME_STAMP, 0);
+		page.setLong(offset + CAS, 0);
+		page.setInt(offset + DATA_SIZE, dataSize);
+		page.setInt(offset + KEY_LENGTH, key.length);
+		page.setByte(offset + REFERENCED, 0);
+		page.setByte(offset + POLICY_QUEUE, 0);
+		page.setBytes(offset + HEADER_SIZE, key);
+		return item;
+	}
+
+	/**
+	 * Free the chunk of the item, which must have been removed from
+	 * the index, the eviction policy and the expiry wheel.
+	 *
+	 * @param item
+	 * @author sunhe
+	 * @date 2015年6月22日 上午11:12:20
+	 */
+	public void free(int item) {
+		slabAllocator.free(item);
+	}
+
+	/**
+	 * @param item
+	 * @return The index of the slab class which the item belongs to.
+	 * @author sunhe
+	 * @date 2015年6月22日 上午11:13:02
+	 */
+	public int getSlabClass(int item) {
+		return slabAllocator.classOfChunk(item);
+	}
+
+	private int getInt(int item, int field) {
+		return slabAllocator.getPage(item).getInt(slabAllocator.getOffset(item) + field);
+	}
+
+	private void setInt(int item, int field, int value) {
+		slabAllocator.getPage(item).setInt(slabAllocator.getOffset(item) + field, value);
+	}
+
+	private long getLong(int item, int field) {
+		return slabAllocator.getPage(item).getLong(slabAllocator.getOffset(item) + field);
+	}
+
+	private void setLong(int item, int field, long value) {
+		slabAllocator.getPage(item).setLong(slabAllocator.getOffset(item) + field, value);
+	}
+
+	/**
+	 * @param item
+	 * @return The hash code of the key, see ItemIndex.hash(byte[]).
+	 * @author sunhe
+	 * @date 2015年6月22日 上午11:15:31
+	 */
+	public int getHash(int item) {
+		return getInt(item, HASH);
+	}
+
+	/**
+	 * Decoded from the key bytes, so it's not supposed to be called on the hot path.
+	 *
+	 * @param item
+	 * @return
+	 * @author sunhe
+	 * @date 2015年6月22日 上午11:16:10
+	 */
+	public String getKey(int item) {
+		return slabAllocator.getPage(item).toString(slabAllocator.getOffset(item) + HEADER_SIZE,
+				getKeyLength(item), Charsets.UTF_8);
+	}
+
+	/**
+	 * @param item
+	 * @return A copy of the key bytes (UTF-8).
+	 * @author sunhe
+	 * @date 2015年6月22日 上午11:16:52
+	 */
+	public byte[] getKeyBytes(int item) {
+		byte[] key = new byte[getKeyLength(item)];
+		slabAllocator.getPage(item).getBytes(slabAllocator.getOffset(item) + HEADER_SIZE, key);
+		return key;
+	}
+
+	public int getKeyLength(int item) {
+		return getInt(item, KEY_LENGTH);
+	}
+
+	/**
+	 * @param item
+	 * @param key UTF-8
+	 * @return Whether the key of the item equals to the given one.
+	 * @author sunhe
+	 * @date 2015年6月22日 上午11:18:27
+	 */
+	public boolean keyEquals(int item, byte[] key) {
+		ByteBuf page = slabAllocator.getPage(item);
+		int offset = slabAllocator.getOffset(item);
+		if (page.getInt(offset + KEY_LENGTH) != key.length) {
+			return false;
+		}
+		offset += HEADER_SIZE;
+		for (int i = 0; i < key.length; i++) {
+			if (page.getByte(offset + i) != key[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @param item
+	 * @param other
+	 * @return Whether the two items have the same key.
+	 * @author sunhe
+	 * @date 2015年6月22日 上午11:19:02
+	 */
+	public boolean keyEquals(int item, int other) {
+		if (item == other) {
+			return true;
+		}
+		ByteBuf page = slabAllocator.getPage(item);
+		int offset = slabAllocator.getOffset(item);
+		ByteBuf otherPage = slabAllocator.getPage(other);
+		int otherOffset = slabAllocator.getOffset(other);
+		int length = page.getInt(offset + KEY_LENGTH);
+		if (otherPage.getInt(otherOffset + KEY_LENGTH) != length) {
+			return false;
+		}
+		offset += HEADER_SIZE;
+		otherOffset += HEADER_SIZE;
+		for (int i = 0; i < length; i++) {
+			if (page.getByte(offset + i) != otherPage.getByte(otherOffset + i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @param item
+	 * @return The size in byte of the data.
+	 * @author sunhe
+	 * @date 2015年6月22日 上午11:19:40
+	 */
+	public int getDataSize(int item) {
+		return getInt(item, DATA_SIZE);
+	}
+
+	/**
+	 * Copy the readable bytes of the source into the data of the item,
+	 * whose size must be the data size of the item.
+	 *
+	 * @param item
+	 * @param src
+	 * @author sunhe
+	 * @date 2015年6月22日 上午11:21:05
+	 */
+	public void writeData(int item, ByteBuf src) {
+		slabAllocator.getPage(item).setBytes(slabAllocator.getOffset(item) + HEADER_SIZE + getKeyLength(item),
+				src, src.readerIndex(), getDataSize(item));
+	}
+
+	/**
+	 * Copy the data of the item to the writer index of the destination.
+	 *
+	 * @param item
+	 * @param dst
+	 * @author sunhe
+	 * @date 2015年6月22日 上午11:22:18
+	 */
+	public void readData(int item, ByteBuf dst) {
+		dst.writeBytes(slabAllocator.getPage(item), slabAllocator.getOffset(item) + HEADER_SIZE + getKeyLength(item),
+				getDataSize(item));
+	}
+
+	/**
+	 * @param item
+	 * @return The expiration time stamp, 0 if it never expires.
+	 * @author sunhe
+	 * @date 2015年6月22日 上午11:23:01
+	 */
+	public long getTimeStamp(int item) {
+		return getLong(item, TIME_STAMP);
+	}
+
+	public void setTimeStamp(int item, long timeStamp) {
+		setLong(item, TIME_STAMP, timeStamp);
+	}
+
+	public long getCas(int item) {
+		return getLong(item, CAS);
+	}
+
+	public void setCas(int item, long cas) {
+		setLong(item, CAS, cas);
+	}
+
+	/**
+	 * The double linked list of the LRU queue.
+	 *
+	 * @param item
+	 * @return
+	 * @author sunhe
+	 * @date 2015年6月22日 上午11:24:12
+	 */
+	public int getPrior(int item) {
+		return getInt(item, PRIOR);
+	}
+
+	public void setPrior(int item, int prior) {
+		setInt(item, PRIOR, prior);
+	}
+
+	public int getNext(int item) {
+		return getInt(item, NEXT);
+	}
+
+	public void setNext(int item, int next) {
+		setInt(item, NEXT, next);
+	}
+
+	/**
+	 * The reference bit of the CLOCK mode, which is set when the item is accessed
+	 * instead of moving it to the head of the LRU list, see MapContainer.moveItem(int).
+	 *
+	 * @param item
+	 * @return
+	 * @author sunhe
+	 * @date 2015年6月22日 上午11:25:30
+	 */
+	public boolean isReferenced(int item) {
+		return slabAllocator.getPage(item).getByte(slabAllocator.getOffset(item) + REFERENCED) != 0;
+	}
+
+	public void setReferenced(int item, boolean referenced) {
+		slabAllocator.getPage(item).setByte(slabAllocator.getOffset(item) + REFERENCED, referenced ? 1 : 0);
+	}
+
+	/**
+	 * The queue of the eviction policy where the item is,
+	 * e.g. the window or the main queue of TinyLFUPolicy.
+	 *
+	 * @param item
+	 * @return
+	 * @author sunhe
+	 * @date 2015年6月22日 上午11:26:12
+	 */
+	public int getPolicyQueue(int item) {
+		return slabAllocator.getPage(item).getByte(slabAllocator.getOffset(item) + POLICY_QUEUE);
+	}
+
+	public void setPolicyQueue(int item, int policyQueue) {
+		slabAllocator.getPage(item).setByte(slabAllocator.getOffset(item) + POLICY_QUEUE, policyQueue);
+	}
+
+	/**
+	 * The double linked list of the bucket of the expiry wheel where the item is.
+	 *
+	 * @param item
+	 * @return
+	 * @author sunhe
+	 * @date 2015年6月22日 上午11:27:05
+	 */
+	public int getExpiryPrior(int item) {
+		return getInt(item, EXPIRY_PRIOR);
+	}
+
+	public void setExpiryPrior(int item, int expiryPrior) {
+		setInt(item, EXPIRY_PRIOR, expiryPrior);
+	}
+
+	public int getExpiryNext(int item) {
+		return getInt(item, EXPIRY_NEXT);
+	}
+
+	public void setExpiryNext(int item, int expiryNext) {
+		setInt(item, EXPIRY_NEXT, expiryNext);
+	}
+
+	/**
+	 * The bucket of the expiry wheel where the item is,
+	 * see ExpiryWheel for details.
+	 *
+	 * @param item
+	 * @return -1 if the item isn't in the expiry wheel.
+	 * @author sunhe
+	 * @date 2015年6月22日 上午11:28:20
+	 */
+	public int getExpiryBucket(int item) {
+		return getInt(item, EXPIRY_BUCKET);
+	}
+
+	public void setExpiryBucket(int item, int expiryBucket) {
+		setInt(item, EXPIRY_BUCKET, expiryBucket);
+	}
+
+}
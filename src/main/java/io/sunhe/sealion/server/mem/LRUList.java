@@ -0,0 +1,175 @@
+package io.sunhe.sealion.server.mem;
+
+/**
+ * The LRU list, a double linked list through the items themselves,
+ * which are linked by their references, see ItemStore.
+ * The head is the most recently used item, and the tail is the least one.
+ *
+ * Not thread-safe, only the worker thread owning the shard can access it,
+ * except that the size can be read by any thread.
+ *
+ * @author sunhe
+ * @date 2015年6月16日 上午9:20:14
+ */
+public class LRUList {
+
+	private ItemStore items;
+
+	private int head = ItemStore.NULL;
+
+	private int tail = ItemStore.NULL;
+
+	private volatile long size;
+
+	public LRUList(ItemStore items) {
+		this.items = items;
+	}
+
+	/**
+	 * Get the size of LRU list.
+	 *
+	 * @return
+	 * @author sunhe
+	 * @date 2015年3月30日 上午11:09:02
+	 */
+	public long size() {
+		return size;
+	}
+
+	/**
+	 * Insert a new item in the head position of the LRU list
+	 *
+	 * @param item
+	 * @author sunhe
+	 * @date 2015年3月26日 下午9:05:49
+	 */
+	public void insert(int item) {
+		items.setPrior(item, ItemStore.NULL);
+		if (size == 0) {
+			items.setNext(item, ItemStore.NULL);
+			head = tail = item;
+		}
+		else {
+			items.setNext(item, head);
+			items.setPrior(head, item);
+			head = item;
+		}
+		size++;
+	}
+
+	/**
+	 * Insert a new item in the tail position of the LRU list, so that 
+	 * it's the first one to be evicted.
+	 *
+	 * @param item
+	 * @author sunhe
+	 * @date 2015年6月17日 下午4:12:30
+	 */
+	public void append(int item) {
+		items.setNext(item, ItemStore.NULL);
+		if (size == 0) {
+			items.setPrior(item, ItemStore.NULL);
+			head = tail = item;
+		}
+		else {
+			items.setPrior(item, tail);
+			items.setNext(tail, item);
+			tail = item;
+		}
+		size++;
+	}
+
+	/**
+	 * Move an item in the LRU list to its head position.
+	 *
+	 * @param item
+	 * @author sunhe
+	 * @date 2015年3月26日 下午9:17:10
+	 */
+	public void move(int item) {
+		int prior = items.getPrior(item);
+		if (size == 1 || prior == ItemStore.NULL) {
+			return;
+		}
+		int next = items.getNext(item);
+		if (next == ItemStore.NULL) {
+			tail = prior;
+		}
+		items.setNext(prior, next);
+		if (next != ItemStore.NULL) {
+			items.setPrior(next, prior);
+		}
+		items.setPrior(item, ItemStore.NULL);
+		items.setNext(item, head);
+		items.setPrior(head, item);
+		head = item;
+	}
+
+	/**
+	 * Remove an item from LRU list.
+	 *
+	 * @param item
+	 * @author sunhe
+	 * @date 2015年3月26日 下午9:31:49
+	 */
+	public void remove(int item) {
+		int prior = items.getPrior(item);
+		int next = items.getNext(item);
+		if (size == 1) {
+			head = tail = ItemStore.NULL;
+		}
+		else if (prior == ItemStore.NULL) {
+			items.setPrior(next, ItemStore.NULL);
+			head = next;
+		}
+		else if (next == ItemStore.NULL) {
+			items.setNext(prior, ItemStore.NULL);
+			tail = prior;
+		}
+		else {
+			items.setNext(prior, next);
+			items.setPrior(next, prior);
+		}
+		items.setPrior(item, ItemStore.NULL);
+		items.setNext(item, ItemStore.NULL);
+		size--;
+	}
+
+	/**
+	 * @return The least recently used item, NULL if the list is empty.
+	 * @author sunhe
+	 * @date 2015年6月16日 上午9:31:27
+	 */
+	public int getTail() {
+		return tail;
+	}
+
+	/**
+	 * @author sunhe
+	 * @date 2015年3月26日 下午9:49:29
+	 */
+	public void traverse(LRUListItemOperator operator) {
+		int ref = head, nextRef;
+		boolean shouldContinue = true;
+		while (ref != ItemStore.NULL && shouldContinue) {
+			nextRef = items.getNext(ref);
+			shouldContinue = operator.operate(ref);
+			ref = nextRef;
+		}
+	}
+
+	/**
+	 * @author sunhe
+	 * @date 2015年3月26日 下午9:52:11
+	 */
+	public void traverseReversely(LRUListItemOperator operator) {
+		int ref = tail, priorRef;
+		boolean shouldContinue = true;
+		while (ref != ItemStore.NULL && shouldContinue) {
+			priorRef = items.getPrior(ref);
+			shouldContinue = operator.operate(ref);
+			ref = priorRef;
+		}
+	}
+
+}
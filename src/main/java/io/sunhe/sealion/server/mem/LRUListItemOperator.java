@@ -11,9 +11,9 @@ public interface LRUListItemOperator {
 	
 	/**
 	 * You are allowed to remove this item from the 
-	 * LRU list by MapContainer.removeItem(Item), and note that you 
+	 * LRU list by MapContainer.removeItem(int), and note that you 
 	 * should also remove the key-value from the MapContainer.map and 
-	 * release the buffer's pooled memory.
+	 * free its chunk, see MapContainer.unlinkItem(int).
 	 * 
 	 * You should NOT to change the structure of the LRU list by the parameter 
 	 * item's prior and next reference.
@@ -23,6 +23,6 @@ public interface LRUListItemOperator {
 	 * @author sunhe
 	 * @date 2015年3月31日 上午10:06:23
 	 */
-	public boolean operate(Item item);
+	public boolean operate(int item);
 
 }
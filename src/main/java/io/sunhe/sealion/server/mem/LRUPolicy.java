@@ -0,0 +1,80 @@
+package io.sunhe.sealion.server.mem;
+
+/**
+ * Plain LRU, the least recently used item is evicted first.
+ *
+ * In CLOCK mode, a hit only sets the reference bit of the item, and the list is
+ * reordered lazily by the evictor, which gives every referenced item a second
+ * chance by moving it to the head instead of evicting it. Otherwise, every hit
+ * moves the item to the head right away.
+ *
+ * Not thread-safe, except that the size can be read by any thread.
+ *
+ * @author sunhe
+ * @date 2015年6月17日 下午1:50:27
+ */
+public class LRUPolicy implements EvictionPolicy {
+
+	private ItemStore items;
+
+	private LRUList list;
+
+	private boolean isClockMode;
+
+	/**
+	 * @param items
+	 * @param isClockMode
+	 * @author sunhe
+	 * @date 2015年6月17日 下午1:51:40
+	 */
+	public LRUPolicy(ItemStore items, boolean isClockMode) {
+		this.items = items;
+		list = new LRUList(items);
+		this.isClockMode = isClockMode;
+	}
+
+	public void insert(int item) {
+		list.insert(item);
+	}
+
+	public void access(int item) {
+		if (isClockMode) {
+			items.setReferenced(item, true);
+		}
+		else {
+			list.move(item);
+		}
+	}
+
+	public void remove(int item) {
+		list.remove(item);
+	}
+
+	public long size() {
+		return list.size();
+	}
+
+	public int evict(final int maxVisits, final LRUListItemOperator operator) {
+		final int[] visits = new int[1];
+		list.traverseReversely(new LRUListItemOperator() {
+
+			public boolean operate(int item) {
+				if (visits[0] >= maxVisits) {
+					return false;
+				}
+				visits[0]++;
+				if (items.isReferenced(item)) {
+					// second chance, note that the traversal has already
+					// taken the prior one, so it's safe to move the item.
+					items.setReferenced(item, false);
+					list.move(item);
+					return true;
+				}
+				return operator.operate(item);
+			}
+
+		});
+		return visits[0];
+	}
+
+}
@@ -2,28 +2,28 @@ package io.sunhe.sealion.server.mem;
 
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.buffer.Unpooled;
 import io.netty.util.ReferenceCountUtil;
 import io.sunhe.sealion.server.dashboard.BlockingTimeAccumulator;
 import io.sunhe.sealion.util.TimeStampFormatter;
 
-import java.util.Comparator;
-import java.util.Iterator;
-import java.util.LinkedList;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
-import java.util.Set;
-import java.util.concurrent.Callable;
-import java.util.concurrent.ConcurrentSkipListMap;
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.TimeUnit;
 
 /**
  * Should be thread-safe.
  * 
+ * Every item is stored in a single chunk of the slabs, with its key bytes, value 
+ * and all the metadata, see ItemStore. The map, the eviction policies and the 
+ * expiry wheel link the items by the references to their chunks, so the heap 
+ * usage doesn't grow with the number of items. Every slab class has its own 
+ * eviction policy, so that evicting items of a class makes room for exactly 
+ * the items of that class. 
+ * All of them are owned by the worker thread of the shard (or the owner event loop), 
+ * which is the only thread allowed to access them, so they don't need any lock. 
+ * Other threads can only allocate the buffers of the values in flight, see 
+ * allocate(int), and read the statistics.
+ * 
  * @author sunhe
  * @date 2015年3月15日 上午8:52:50
  */
@@ -39,7 +39,58 @@ public class MapContainer {
 	 */
 	public static final long MIN_MEM_SIZE = 16777216;
 	
-	private Integer memoryLock = 1113;
+	public static final double DEFAULT_HIGH_WATERMARK = 0.9;
+	
+	public static final double DEFAULT_LOW_WATERMARK = 0.75;
+	
+	public static final int DEFAULT_EVICTION_BATCH_SIZE = 256;
+	
+	/**
+	 * 1 millisecond.
+	 */
+	public static final long DEFAULT_EVICTION_BUDGET = 1000000;
+	
+	/**
+	 * The slabs are rebalanced at most once per second.
+	 */
+	public static final long REBALANCE_INTERVAL_MILLIS = 1000;
+	
+	/**
+	 * Strict LRU mode, every hit moves the item to the head of its LRU list.
+	 */
+	public static final String LRU_MODE_STRICT = "strict";
+	
+	/**
+	 * CLOCK mode, a hit only sets the reference bit of the item, and the list 
+	 * is reordered lazily by the evictor, which gives every referenced item 
+	 * a second chance by moving it to the head instead of evicting it.
+	 */
+	public static final String LRU_MODE_CLOCK = "clock";
+	
+	public static final String DEFAULT_LRU_MODE = LRU_MODE_CLOCK;
+	
+	/**
+	 * Plain LRU, see LRUPolicy.
+	 */
+	public static final String EVICTION_POLICY_LRU = "lru";
+	
+	/**
+	 * LRU with TinyLFU admission filter, see TinyLFUPolicy.
+	 */
+	public static final String EVICTION_POLICY_TINYLFU = "tinylfu";
+	
+	public static final String DEFAULT_EVICTION_POLICY = EVICTION_POLICY_LRU;
+	
+	/**
+	 * The frequency sketch of TinyLFU is sized for one item per KByte.
+	 */
+	private static final long SKETCH_ITEM_SIZE = 1024;
+	
+	/**
+	 * When the slab class of a new item is full, at most this many items of 
+	 * the class are visited to make room for it, as memcached does.
+	 */
+	private static final int MAX_ALLOCATION_VISITS = 5;
 	
 	/**
 	 * In byte.
@@ -48,271 +99,395 @@ public class MapContainer {
 	private long maxMemSize;
 	
 	/**
-	 * In byte.
+	 * Only the worker thread can allocate and free, the statistics can be read by any thread.
+	 */
+	private SlabAllocator slabAllocator;
+	
+	/**
+	 * Only the worker thread can access it.
+	 */
+	private ItemStore items;
+	
+	/**
+	 * Thread-safe, allocating the slabs, the index, and the buffers of the values in flight.
+	 */
+	private PooledByteBufAllocator allocator;
+	
+	/**
+	 * One per slab class.
+	 * Note that only the worker thread can access the policies, 
+	 * 'cause they're not thread-safe.
+	 * Except that the sizes can be read by any thread.
 	 */
-	private long curMemSize;
+	private EvictionPolicy[] policies;
 	
 	/**
-	 * Note that only one thread at a time can access the LRU list, 
-	 * 'cause it's not thread-safe.
+	 * Either EVICTION_POLICY_LRU or EVICTION_POLICY_TINYLFU.
 	 */
-	private Item LRUListHead;
-	private Item LRUListTail;
-	private long LRUListSize;
+	private String evictionPolicy = DEFAULT_EVICTION_POLICY;
 	
 	/**
-	 * Map strTimeStamp to key.
+	 * Index of the items which will expire.
+	 * Only the worker thread can access it.
 	 */
-	private ConcurrentSkipListMap<String, String> timeStampListMap;
+	private ExpiryWheel expiryWheel;
+	
+	/**
+	 * Operator to reclaim the items expired in the expiry wheel.
+	 */
+	private ExpiredItemOperator expiredItemOperator;
 
 	/**
 	 * Note that although this class is supposed to be thread-safe, 
-	 * this field is not thread-safe, because it's a HashMap.
+	 * this field is not thread-safe.
 	 * Consequently only the worker thread can access this field, which is a single thread pool.
 	 */
-	private Map<String, Item> map;
+	private ItemIndex map;
 	
 	/**
-	 * Only one thread will access this field.
+	 * The last CAS generated, only the worker thread can access it.
+	 * Starts from the boot time, so that CAS values aren't reused after restart.
 	 */
-	private PooledByteBufAllocator allocator;
+	private long lastCas = System.currentTimeMillis() << 20;
+	
+	private BlockingTimeAccumulator blockingTimeAccumulator;
 	
 	/**
-	 * The buffer list to be released
-	 * Not thread-safe.
+	 * Above this memory occupation percentage, the eviction starts.
 	 */
-	private List<ByteBuf> bufList;
+	private double highWatermark = DEFAULT_HIGH_WATERMARK;
 	
 	/**
-	 * The single thread executor to allocate and release pooled memory(byte buffer).
+	 * Once started, the eviction goes on until the memory occupation 
+	 * percentage drops down to this one.
 	 */
-	private volatile ExecutorService memExecutor;
+	private double lowWatermark = DEFAULT_LOW_WATERMARK;
 	
 	/**
-	 * Memory collector thread's future.
-	 * Only worker thread will access this field. 
+	 * The maximum number of items evicted by a single call of ensureMemory.
 	 */
-	private Future<?> memCollectorFuture;
+	private int evictionBatchSize = DEFAULT_EVICTION_BATCH_SIZE;
 	
 	/**
-	 * The runnable task that release(collect) the unused buffer to the pool.
-	 * Thread safe.
+	 * The maximum time in nanosecond a single call of ensureMemory 
+	 * can spend on reclaiming memory.
 	 */
-	private Runnable collectorRunnable;
-	
-	private BlockingTimeAccumulator blockingTimeAccumulator;
+	private long evictionBudget = DEFAULT_EVICTION_BUDGET;
 	
 	/**
-	 * Runnable task to accumulate the blocking time.
+	 * True in LRU_MODE_CLOCK, false in LRU_MODE_STRICT.
 	 */
-	private Runnable accumulatorRunnable;
+	private boolean isClockMode = true;
 	
 	/**
-	 * Runnable task to clear the blocking time.
+	 * Whether the fullness of the slab class has crossed the high watermark 
+	 * but not yet dropped down to the low watermark.
+	 * Only accessed by the worker thread.
 	 */
-	private Runnable clearRunnable;
+	private boolean[] evicting;
 	
 	/**
-	 * The executor to schedule the accumulatorRunnable.
+	 * The time stamp of the last rebalancing.
+	 * Only accessed by the worker thread.
 	 */
-	private ScheduledExecutorService scheduledExecutor;
-	
-	private Future<?> accumulatorFuture;
+	private long lastRebalanceTime;
 	
-	public MapContainer(Map<String, Item> map, BlockingTimeAccumulator blockingTimeAccumulator) {
-		this (map, blockingTimeAccumulator, DEFAULT_MAX_MEM_SIZE);
+	public MapContainer(BlockingTimeAccumulator blockingTimeAccumulator) {
+		this (blockingTimeAccumulator, DEFAULT_MAX_MEM_SIZE);
 	}
 	
-	public MapContainer(Map<String, Item> map, BlockingTimeAccumulator blockingTimeAccumulator, 
-			long maxMemSize) {
+	public MapContainer(BlockingTimeAccumulator blockingTimeAccumulator, long maxMemSize) {
+		this (blockingTimeAccumulator, maxMemSize, new PooledByteBufAllocator(true));
 		if (maxMemSize < MIN_MEM_SIZE) {
 			throw new IllegalArgumentException("SeaLion must have at least 16 MB memory space: " + maxMemSize);
 		}
-		this.map = map;
+	}
+	
+	/**
+	 * Used by the sharded map container, in which case the memory budget of 
+	 * a single shard may be less than MIN_MEM_SIZE, and all shards share 
+	 * the same allocator. 
+	 * Note that every shard has its own slabs upon the shared allocator, 
+	 * which is thread-safe, every thread allocates from its own thread-local 
+	 * cache and arena.
+	 * 
+	 * @param blockingTimeAccumulator
+	 * @param maxMemSize
+	 * @param allocator
+	 * @author sunhe
+	 * @date 2015年6月8日 上午10:48:16
+	 */
+	public MapContainer(BlockingTimeAccumulator blockingTimeAccumulator, 
+			long maxMemSize, PooledByteBufAllocator allocator) {
+		if (maxMemSize <= 0) {
+			throw new IllegalArgumentException("Invalid memory space: " + maxMemSize);
+		}
 		this.maxMemSize = maxMemSize;
-		allocator = new PooledByteBufAllocator(true);
-		timeStampListMap = new ConcurrentSkipListMap<String, String>(new Comparator<String>() {
-
-			public int compare(String key1, String key2) {
-				key1 = key1.substring(0, key1.length() - 4);
-				key2 = key2.substring(0, key2.length() - 4);
-				long timeStamp1 = Long.valueOf(key1);
-				long timeStamp2 = Long.valueOf(key2);
-				return (int) (timeStamp1 - timeStamp2);
-			}
-			
-		});
-		bufList = new LinkedList<ByteBuf>();
-		memExecutor = Executors.newSingleThreadExecutor();
-		collectorRunnable = new Runnable() {
+		this.allocator = allocator;
+		slabAllocator = new SlabAllocator(maxMemSize, allocator);
+		items = new ItemStore(slabAllocator);
+		map = new ItemIndex(items, allocator);
+		initPolicies();
+		evicting = new boolean[slabAllocator.getNumOfClasses()];
+		expiryWheel = new ExpiryWheel(items, TimeStampFormatter.getCurrentTimeStamp());
+		expiredItemOperator = new ExpiredItemOperator() {
 			
-			public void run() {
-				// Ensure the visibility cross threads.
-				synchronized (bufList) {
-					Iterator<ByteBuf> iterator = bufList.iterator();
-					ByteBuf buf;
-					while (iterator.hasNext()) {
-						buf = iterator.next();
-						decreCurMemSize(buf.capacity());
-						ReferenceCountUtil.release(buf);
-						iterator.remove();
-					}
-				}
+			public void operate(int item) {
+				// maintain LRU list
+				removeItem(item);
+				// remove the item from map
+				MapContainer.this.map.remove(item);
+				items.free(item);
 			}
 			
 		};
 		this.blockingTimeAccumulator = blockingTimeAccumulator;
-		accumulatorRunnable = new Runnable() {
-			
-			/*
-			 * Will be scheduled to be executed for every 1 sec.
-			 * 
-			 * (non-Javadoc)
-			 * @see java.lang.Runnable#run()
-			 * @author sunhe
-			 * @date 2015年4月16日 下午10:00:15
-			 */
-			public void run() {
-				MapContainer.this.blockingTimeAccumulator.accumulate();
-			}
-			
-		};
-		clearRunnable = new Runnable() {
-			
-			/*
-			 * Will be scheduled to be executed for 1 sec delay.
-			 * 
-			 * (non-Javadoc)
-			 * @see java.lang.Runnable#run()
-			 * @author sunhe
-			 * @date 2015年4月16日 下午10:16:39
-			 */
-			public void run() {
-				MapContainer.this.blockingTimeAccumulator.clear();
-			}
-			
-		};
-		scheduledExecutor = Executors.newScheduledThreadPool(1);
 	}
 	
 	/**
+	 * Set the watermarks of the eviction.
+	 * 
+	 * @param lowWatermark
+	 * @param highWatermark
+	 * @author sunhe
+	 * @date 2015年6月12日 上午10:02:37
+	 */
+	public void setWatermarks(double lowWatermark, double highWatermark) {
+		if (lowWatermark <= 0 || highWatermark > 1 || lowWatermark >= highWatermark) {
+			throw new IllegalArgumentException("Invalid watermarks: " + lowWatermark + ", " + highWatermark);
+		}
+		this.lowWatermark = lowWatermark;
+		this.highWatermark = highWatermark;
+	}
+	
+	/**
+	 * @param evictionBatchSize
+	 * @author sunhe
+	 * @date 2015年6月12日 上午10:05:11
+	 */
+	public void setEvictionBatchSize(int evictionBatchSize) {
+		if (evictionBatchSize <= 0) {
+			throw new IllegalArgumentException("Invalid eviction batch size: " + evictionBatchSize);
+		}
+		this.evictionBatchSize = evictionBatchSize;
+	}
+	
+	/**
+	 * @param evictionBudget In nanosecond.
+	 * @author sunhe
+	 * @date 2015年6月12日 上午10:06:48
+	 */
+	public void setEvictionBudget(long evictionBudget) {
+		if (evictionBudget <= 0) {
+			throw new IllegalArgumentException("Invalid eviction budget: " + evictionBudget);
+		}
+		this.evictionBudget = evictionBudget;
+	}
+	
+	/**
+	 * Should be called before any item is stored.
+	 * 
+	 * @param LRUMode Either LRU_MODE_STRICT or LRU_MODE_CLOCK.
+	 * @author sunhe
+	 * @date 2015年6月17日 上午9:20:31
+	 */
+	public void setLRUMode(String LRUMode) {
+		if (! LRU_MODE_STRICT.equals(LRUMode) && ! LRU_MODE_CLOCK.equals(LRUMode)) {
+			throw new IllegalArgumentException("Invalid LRU mode: " + LRUMode);
+		}
+		isClockMode = LRU_MODE_CLOCK.equals(LRUMode);
+		initPolicies();
+	}
+	
+	/**
+	 * Should be called before any item is stored.
+	 * 
+	 * @param evictionPolicy Either EVICTION_POLICY_LRU or EVICTION_POLICY_TINYLFU.
 	 * @author sunhe
-	 * @date 2015年4月17日 上午9:32:45
+	 * @date 2015年6月17日 下午3:02:15
 	 */
-	private void startAccumulator() {
-		accumulatorFuture = scheduledExecutor.scheduleAtFixedRate(accumulatorRunnable, 
-					1, 1, TimeUnit.SECONDS);
+	public void setEvictionPolicy(String evictionPolicy) {
+		if (! EVICTION_POLICY_LRU.equals(evictionPolicy) && ! EVICTION_POLICY_TINYLFU.equals(evictionPolicy)) {
+			throw new IllegalArgumentException("Invalid eviction policy: " + evictionPolicy);
+		}
+		this.evictionPolicy = evictionPolicy;
+		initPolicies();
 	}
 	
 	/**
+	 * Create the eviction policy of every slab class.
+	 * 
 	 * @author sunhe
-	 * @date 2015年4月17日 上午9:16:03
+	 * @date 2015年6月17日 下午3:05:40
 	 */
-	private void stopAccumulator() {
-		accumulatorFuture.cancel(false);
-		scheduledExecutor.schedule(clearRunnable, 1, TimeUnit.SECONDS);
+	private void initPolicies() {
+		if (policies != null && getLRUListSize() > 0) {
+			throw new IllegalStateException("The eviction policy cann't be changed after items stored");
+		}
+		int numOfClasses = slabAllocator.getNumOfClasses();
+		FrequencySketch sketch = EVICTION_POLICY_TINYLFU.equals(evictionPolicy) 
+				? new FrequencySketch(Math.max(maxMemSize / SKETCH_ITEM_SIZE, 1)) : null;
+		policies = new EvictionPolicy[numOfClasses];
+		for (int i = 0; i < numOfClasses; i++) {
+			policies[i] = sketch == null ? new LRUPolicy(items, isClockMode) 
+					: new TinyLFUPolicy(items, sketch, isClockMode);
+		}
 	}
 	
 	/**
+	 * Reclaim memory incrementally.
+	 * Expired items are swept continuously as the expiry wheel advances. 
+	 * Once all pages are assigned, the slab classes cann't grow any more, and as soon as 
+	 * the fullness of a class crosses the high watermark, its least recently used items 
+	 * are evicted until it drops down to the low watermark. The huge class is never swept this way, 
+	 * whose pages are never partially used, its items are evicted only when a huge item cann't be 
+	 * stored (see storeItem(byte[], ByteBuf, long)), or it's chosen by rebalancing. Besides, pages are moved 
+	 * periodically to the classes which failed to allocate from the others, and the items still 
+	 * in a page being moved are evicted before anything else.
+	 * However, a single call never reclaims more than the batch size of items, nor spends 
+	 * more than the time budget, so the cost of a sweep is spread over the following tasks 
+	 * (and idle ticks) instead of stopping the world.
+	 * 
 	 * Note that ONLY worker thread should call this method.
 	 * 
 	 * @author sunhe
 	 * @date 2015年3月31日 下午8:48:58
 	 */
 	public void ensureMemory() {
-		if (getMemPercentage() <= 0.6
-				|| (memCollectorFuture != null && !memCollectorFuture.isDone())) {
-			return;
+		long startTime = System.nanoTime();
+		long deadline = startTime + evictionBudget;
+		long curTimeStamp = TimeStampFormatter.getCurrentTimeStamp();
+		int budget = evictionBatchSize - expiryWheel.advance(curTimeStamp, 
+				expiredItemOperator, evictionBatchSize, deadline);
+		if (slabAllocator.isDraining() && budget > 0) {
+			budget -= drain(budget, deadline);
 		}
-		// Start to accumulate the blocking time.
-		startAccumulator();
-		Set<Map.Entry<String, String>> entrySet = timeStampListMap.entrySet();
-		Iterator<Map.Entry<String, String>> iterator = entrySet.iterator();
-		Map.Entry<String, String> entry;
-		String strTimeStamp, key;
-		SimpleItem item;
-		long timeStamp, curTimeStamp = TimeStampFormatter.getCurrentTimeStamp();
-		// ensure the visibility cross threads.
-		synchronized (bufList) {
-			while (iterator.hasNext()) {
-				entry = iterator.next();
-				strTimeStamp = entry.getKey();
-				key = entry.getValue();
-				timeStamp = Long.valueOf(strTimeStamp.substring(0, strTimeStamp.length() - 4));
-				if (timeStamp <= curTimeStamp) {
-					// expired
-					// remove the strTimeStamp-key from time-stamp list.
-					iterator.remove();
-					// maintain LRU list
-					removeItemByKey(key);
-					// remove the item from map
-					item = (SimpleItem) map.remove(key);
-					bufList.add(item.getData());
-				}
-				else {
-					break;
-				}
+		boolean reclaimed = budget < evictionBatchSize;
+		for (int i = 0; i < policies.length && budget > 0; i++) {
+			if (slabAllocator.isHugeClass(i) || slabAllocator.getFreePages() > 0) {
+				// The class can still grow, or it's the huge class.
+				evicting[i] = false;
+				continue;
+			}
+			if (! evicting[i]) {
+				evicting[i] = slabAllocator.getFullness(i) > highWatermark;
 			}
+			if (evicting[i]) {
+				budget -= evict(i, lowWatermark, budget, deadline);
+				evicting[i] = slabAllocator.getFullness(i) > lowWatermark;
+				reclaimed = true;
+			}
+		}
+		if (curTimeStamp - lastRebalanceTime >= REBALANCE_INTERVAL_MILLIS && budget > 0) {
+			lastRebalanceTime = curTimeStamp;
+			reclaimed |= rebalance(budget, deadline);
 		}
-		memCollectorFuture = memExecutor.submit(collectorRunnable);
-		if (getMemPercentage() <= 0.95) {
-			// Stop accumulating the blocking time.
-			stopAccumulator();
-			return;
+		if (reclaimed) {
+			blockingTimeAccumulator.accumulate(System.nanoTime() - startTime);
 		}
-		// Going to exceed the threshold, so be about to stop the world.
-		// Ensure that this GC will reduce the memory occupation rate down to 75%.
-		// Will block all attempt to apply for more memory, in other words, 
-		// all newly-received requests will have to suspend.
-		synchronized (memoryLock) {
-			try {
-				memCollectorFuture.get();
-			} catch (InterruptedException e) {
-				Thread.currentThread().interrupt();
-				e.printStackTrace();
-			} catch (ExecutionException e) {
-				e.printStackTrace();
+	}
+	
+	/**
+	 * Move a page to the slab class which failed to allocate most since last time, 
+	 * from another class which has a wholly free page. If there isn't such a class, 
+	 * drain a page of the class having the most pages, whose items are evicted 
+	 * no matter how recently they're used, until the page is wholly free and moved, 
+	 * see SlabAllocator.startDraining(int). As for the huge class, its least recently 
+	 * used item is evicted instead, whose pages are returned immediately.
+	 * 
+	 * @param batchSize The maximum number of items to be visited.
+	 * @param deadline In nanosecond, compared with System.nanoTime().
+	 * @return True if any item visited.
+	 * @author sunhe
+	 * @date 2015年6月16日 下午2:05:13
+	 */
+	private boolean rebalance(int batchSize, long deadline) {
+		int needy = -1;
+		long maxFailures = 0;
+		for (int i = 0; i < policies.length; i++) {
+			long failures = slabAllocator.getAndClearRecentFailures(i);
+			if (failures > maxFailures) {
+				maxFailures = failures;
+				needy = i;
 			}
-			if (getMemPercentage() <= 0.75) {
-				return;
+		}
+		if (needy < 0 || (! slabAllocator.isHugeClass(needy) && slabAllocator.getFreePages() > 0)
+				|| slabAllocator.isDraining()) {
+			return false;
+		}
+		for (int i = 0; i < policies.length; i++) {
+			if (i != needy && slabAllocator.movePage(i)) {
+				return false;
 			}
-			final long targetSize = (long) (getMaxMemSize() * (getMemPercentage() - 0.75));
-			synchronized (bufList) {
-				traverseLRUListReversely(new LRUListItemOperator() {
-					
-					private long curSize = 0;
-					
-					public boolean operate(Item item) {
-						if (curSize >= targetSize) {
-							return false;
-						}
-						else {
-							// maintain the LRU list.
-							removeItem(item);
-							// remove the strTimeStamp-key from time-stamp list.
-							timeStampListMap.remove(item.getStrTimeStamp());
-							// remove the item from map
-							map.remove(item.getKey());
-							bufList.add(((SimpleItem) item).getData());
-							curSize += item.getDataSize();
-							return true;
-						}
-					}
-					
-				});
+		}
+		int victim = -1;
+		int maxPages = 0;
+		for (int i = 0; i < policies.length; i++) {
+			if (i != needy && slabAllocator.getPages(i) > maxPages) {
+				maxPages = slabAllocator.getPages(i);
+				victim = i;
 			}
-			memCollectorFuture = memExecutor.submit(collectorRunnable);
-			try {
-				memCollectorFuture.get();
-			} catch (InterruptedException e) {
-				Thread.currentThread().interrupt();
-				e.printStackTrace();
-			} catch (ExecutionException e) {
-				e.printStackTrace();
+		}
+		if (victim < 0) {
+			return false;
+		}
+		if (slabAllocator.isHugeClass(victim)) {
+			return evict(victim, 0, 1, deadline) > 0;
+		}
+		slabAllocator.startDraining(victim);
+		return drain(batchSize, deadline) > 0;
+	}
+	
+	/**
+	 * Evict the items still in the page being drained.
+	 * 
+	 * @param batchSize The maximum number of items to be evicted.
+	 * @param deadline In nanosecond, compared with System.nanoTime().
+	 * @return The number of items evicted.
+	 * @author sunhe
+	 * @date 2015年6月22日 下午3:10:26
+	 */
+	private int drain(int batchSize, long deadline) {
+		int slabClass = slabAllocator.getDrainingClass();
+		int count = 0;
+		int item;
+		while (count < batchSize && (item = slabAllocator.nextDrainingChunk()) != ItemStore.NULL) {
+			unlinkItem(item);
+			slabAllocator.recordEviction(slabClass);
+			count++;
+			if (System.nanoTime() >= deadline) {
+				break;
 			}
 		}
-		// Stop accumulating the blocking time.
-		stopAccumulator();
+		return count;
+	}
+	
+	/**
+	 * Evict the items of the slab class chosen by its eviction policy, until the 
+	 * fullness of the class drops down to the given one.
+	 * 
+	 * @param slabClass
+	 * @param targetFullness 0 signifies evicting the whole batch.
+	 * @param batchSize The maximum number of items to be visited.
+	 * @param deadline In nanosecond, compared with System.nanoTime().
+	 * @return The number of items visited, see EvictionPolicy.evict(int, LRUListItemOperator).
+	 * @author sunhe
+	 * @date 2015年6月12日 上午10:26:05
+	 */
+	private int evict(final int slabClass, final double targetFullness, 
+			final int batchSize, final long deadline) {
+		return policies[slabClass].evict(batchSize, new LRUListItemOperator() {
+			
+			public boolean operate(int item) {
+				if (targetFullness > 0 && slabAllocator.getFullness(slabClass) <= targetFullness) {
+					return false;
+				}
+				unlinkItem(item);
+				slabAllocator.recordEviction(slabClass);
+				return System.nanoTime() < deadline;
+			}
+			
+		});
 	}
 	
 	/**
@@ -323,18 +498,41 @@ public class MapContainer {
 	 * @author sunhe
 	 * @date 2015年3月22日 下午10:51:26
 	 */
-	public Map<String, Item> getMap() {
+	public ItemIndex getMap() {
 		return map;
 	}
 	
 	/**
+	 * Note that this method can ONLY be called by the worker thread.
 	 * 
 	 * @return
 	 * @author sunhe
+	 * @date 2015年6月22日 下午3:20:05
+	 */
+	public ItemStore getItemStore() {
+		return items;
+	}
+	
+	/**
+	 * Generate a new CAS, which is monotonically increasing within the shard.
+	 * Note that this method can ONLY be called by the worker thread.
+	 * 
+	 * @return
+	 * @author sunhe
+	 * @date 2015年6月15日 上午10:31:09
+	 */
+	public long nextCas() {
+		return ++lastCas;
+	}
+	
+	/**
+	 * 
+	 * @return The size in byte of all chunks used.
+	 * @author sunhe
 	 * @date 2015年3月22日 下午10:43:06
 	 */
-	public synchronized long getCurMemSize() {
-		return curMemSize;
+	public long getCurMemSize() {
+		return slabAllocator.getUsedBytes();
 	}
 	
 	/**
@@ -348,89 +546,142 @@ public class MapContainer {
 	}
 	
 	/**
+	 * Store a new item, whose CAS is generated, into the map, its eviction policy 
+	 * and the expiry wheel. The key must not be in the map. 
+	 * If the slab class of the item is full, its items chosen by the eviction 
+	 * policy are evicted right away to make room for it.
+	 * Note that ONLY the worker thread should call this method.
 	 * 
+	 * @param key UTF-8
+	 * @param data Copied into the item, and left to be released by the caller.
+	 * @param timeStamp The expiration time stamp, 0 if it never expires.
+	 * @return The new item, NULL if the server is out of memory.
 	 * @author sunhe
-	 * @date 2015年3月22日 下午10:42:17
-	 */
-	private synchronized void increCurMemSize(long increment) {
-		curMemSize += increment;
+	 * @date 2015年6月22日 下午3:25:40
+	 */
+	public int storeItem(byte[] key, ByteBuf data, long timeStamp) {
+		int dataSize = data.readableBytes();
+		int item = items.allocate(key, dataSize);
+		long size = ItemStore.sizeOf(key.length, dataSize);
+		if (item == ItemStore.NULL && slabAllocator.canHold(size)) {
+			int slabClass = slabAllocator.classOf((int) size);
+			long deadline = System.nanoTime() + evictionBudget;
+			for (int i = 0; i < MAX_ALLOCATION_VISITS && item == ItemStore.NULL; i++) {
+				if (evict(slabClass, 0, 1, deadline) == 0) {
+					// nothing to evict.
+					break;
+				}
+				item = items.allocate(key, dataSize);
+			}
+		}
+		if (item == ItemStore.NULL) {
+			return ItemStore.NULL;
+		}
+		items.writeData(item, data);
+		items.setTimeStamp(item, timeStamp);
+		items.setCas(item, nextCas());
+		map.put(item);
+		insertItem(item);
+		if (timeStamp != 0) {
+			expiryWheel.add(item);
+		}
+		return item;
+	}
+	
+	/**
+	 * Remove the item from the map, its eviction policy and the expiry wheel, 
+	 * and then free its chunk.
+	 * Note that ONLY the worker thread should call this method.
+	 * 
+	 * @param item
+	 * @author sunhe
+	 * @date 2015年6月22日 下午3:30:12
+	 */
+	public void unlinkItem(int item) {
+		// maintain the eviction policy.
+		removeItem(item);
+		// maintain the expiry wheel
+		expiryWheel.remove(item);
+		// remove the item from map
+		map.remove(item);
+		items.free(item);
 	}
 	
 	/**
+	 * Copy the data of the item into a new pooled buffer, which is released by the 
+	 * response encoder. The chunk of the item may be reused as soon as the item is 
+	 * removed, so it cann't be written to the channels directly.
+	 * Note that ONLY the worker thread should call this method.
 	 * 
-	 * @param decrement
+	 * @param item
+	 * @return
 	 * @author sunhe
-	 * @date 2015年3月22日 下午10:46:24
+	 * @date 2015年6月22日 下午3:33:48
 	 */
-	private synchronized void decreCurMemSize(long decrement) {
-		if (curMemSize >= decrement) {
-			curMemSize -= decrement;
-		}
-		else {
-			curMemSize = 0;
+	public ByteBuf copyData(int item) {
+		int dataSize = items.getDataSize(item);
+		if (dataSize == 0) {
+			return Unpooled.EMPTY_BUFFER;
 		}
+		ByteBuf data = allocator.ioBuffer(dataSize, dataSize);
+		items.readData(item, data);
+		return data;
 	}
 	
 	/**
 	 * Release the buffer, decrementing the reference count by 1.
+	 * Can be called by any thread.
 	 * 
 	 * @param buf
 	 * @author sunhe
 	 * @date 2015年3月22日 下午10:26:13
 	 */
-	public void release(final ByteBuf buf) {
-		decreCurMemSize(buf.capacity());
-		memExecutor.submit(new Runnable() {
-			
-			public void run() {
-				ReferenceCountUtil.release(buf);
-			}
-			
-		});
+	public void release(ByteBuf buf) {
+		ReferenceCountUtil.release(buf);
 	}
 	
 	/**
-	 * Release the pooled byte buffer in a item by the item's corresponding key.
+	 * Whether an item of the given sizes could ever be stored, no matter how much 
+	 * memory is used right now. Can be called by any thread.
 	 * 
-	 * @param key
+	 * @param keyLength
+	 * @param dataSize In byte, in long so that the callers needn't check it before.
+	 * @return
 	 * @author sunhe
-	 * @date 2015年3月25日 下午9:48:54
+	 * @date 2015年6月24日 上午9:40:12
 	 */
-	public synchronized void releaseBufByKey(String key) {
-		if (map.containsKey(key)) {
-			ByteBuf buf = ((SimpleItem) map.get(key)).getData();
-			release(buf);
-		}
+	public boolean canHold(int keyLength, long dataSize) {
+		return dataSize >= 0 && slabAllocator.canHold(ItemStore.sizeOf(keyLength, 0) + dataSize);
 	}
 	
 	/**
-	 * Allocate a byte buffer of specified size, which is suitable for I/O operation. 
-	 * Note the returned byte buffer is pooled, so you MUST release them when you don't use them any more.
+	 * Allocate a byte buffer of specified size for the value of a request, which is suitable 
+	 * for I/O operation. Note the returned byte buffer is pooled, so you MUST release it when 
+	 * you don't use it any more.
+	 * 
+	 * The allocation runs directly on the calling thread, neither lock nor thread hand-off 
+	 * is involved. The buffer isn't accounted in the memory budget, since the value is copied 
+	 * into the slabs by the worker thread, which releases the buffer right away.
 	 * 
 	 * @param capacity The size in byte of the byte buffer to be allocated.
-	 * @return The allocated byte buffer. Null if operation failed.
+	 * @return The allocated byte buffer. Null if the value is too large to be stored at all, 
+	 *         or the direct memory of the JVM is used up.
 	 * @author sunhe
 	 * @date 2015年4月1日 下午2:58:06
 	 */
-	public ByteBuf allocate(final int capacity) {
-		synchronized (memoryLock) {
-			increCurMemSize(capacity);
-			ByteBuf buf = null;
-			try {
-				buf = memExecutor.submit(new Callable<ByteBuf>() {
-	
-					public ByteBuf call() throws Exception {
-						return allocator.ioBuffer(capacity, capacity);
-					}
-					
-				}).get();
-			} catch (InterruptedException e) {
-				e.printStackTrace();
-				Thread.currentThread().interrupt();
-			} catch (ExecutionException e) {
-				e.printStackTrace();
-			}
-			return buf;
+	public ByteBuf allocate(int capacity) {
+		if (! canHold(0, capacity)) {
+			return null;
+		}
+		if (capacity == 0) {
+			// releasing the shared empty buffer does nothing.
+			return Unpooled.EMPTY_BUFFER;
+		}
+		try {
+			return allocator.ioBuffer(capacity, capacity);
+		}
+		catch (OutOfMemoryError e) {
+			return null;
 		}
 	}
 	
@@ -441,137 +692,86 @@ public class MapContainer {
 	 * @author sunhe
 	 * @date 2015年3月23日 下午3:02:43
 	 */
-	public synchronized double getMemPercentage() {
-		return (double) curMemSize / (double) maxMemSize;
+	public double getMemPercentage() {
+		return (double) getCurMemSize() / (double) maxMemSize;
 	}
 	
 	/**
-	 * Get the size of LRU list.
+	 * Get the status of every slab class.
+	 * Can be called by any thread.
 	 * 
 	 * @return
 	 * @author sunhe
-	 * @date 2015年3月30日 上午11:09:02
+	 * @date 2015年6月16日 下午2:30:41
 	 */
-	public synchronized long getLRUListSize() {
-		return LRUListSize;
+	public List<SlabClassStat> getSlabClassStats() {
+		List<SlabClassStat> stats = new ArrayList<SlabClassStat>(policies.length);
+		for (int i = 0; i < policies.length; i++) {
+			stats.add(slabAllocator.getStat(i, policies[i].size()));
+		}
+		return stats;
 	}
 	
 	/**
-	 * Insert a new item in the head position of the LRU list
+	 * Get the number of items tracked by the eviction policies of all slab classes in total.
 	 * 
-	 * @param item
+	 * @return
 	 * @author sunhe
-	 * @date 2015年3月26日 下午9:05:49
+	 * @date 2015年3月30日 上午11:09:02
 	 */
-	public synchronized void insertItem(Item item) {
-		if (LRUListSize == 0) {
-			LRUListHead = LRUListTail = item;
-		}
-		else {
-			item.setNext(LRUListHead);
-			LRUListHead.setPrior(item);
-			LRUListHead = item;
+	public long getLRUListSize() {
+		long size = 0;
+		for (EvictionPolicy policy : policies) {
+			size += policy.size();
 		}
-		LRUListSize++;
+		return size;
 	}
 	
 	/**
-	 * Move an item in the LRU list to its head position.
+	 * Get the eviction policy of the slab class which the item belongs to.
 	 * 
 	 * @param item
+	 * @return
 	 * @author sunhe
-	 * @date 2015年3月26日 下午9:17:10
+	 * @date 2015年6月16日 下午2:12:37
 	 */
-	public synchronized void moveItem(Item item) {
-		if (LRUListSize == 1 || item.getPrior() == null) {
-			return;
-		}
-		if (item.getNext() == null) {
-			LRUListTail = item.getPrior();
-		}
-		item.getPrior().setNext(item.getNext());
-		if (item.getNext() != null) {
-			item.getNext().setPrior(item.getPrior());
-		}
-		item.setPrior(null);
-		item.setNext(LRUListHead);
-		LRUListHead.setPrior(item);
-		LRUListHead = item;
+	private EvictionPolicy getPolicy(int item) {
+		return policies[items.getSlabClass(item)];
 	}
 	
 	/**
-	 * Remove an item from LRU list.
+	 * Insert a new item in the head position of its LRU list
 	 * 
 	 * @param item
 	 * @author sunhe
-	 * @date 2015年3月26日 下午9:31:49
+	 * @date 2015年3月26日 下午9:05:49
 	 */
-	public synchronized void removeItem(Item item) {
-		if (LRUListSize == 1) {
-			LRUListHead = LRUListTail = null;
-			LRUListSize--;
-			return;
-		}
-		if (item.getPrior() == null) {
-			item.getNext().setPrior(null);
-			LRUListHead = item.getNext();
-		}
-		else if (item.getNext() == null) {
-			item.getPrior().setNext(null);
-			LRUListTail = item.getPrior();
-		}
-		else {
-			item.getPrior().setNext(item.getNext());
-			item.getNext().setPrior(item.getPrior());
-		}
-		LRUListSize--;
+	public void insertItem(int item) {
+		getPolicy(item).insert(item);
 	}
 	
 	/**
-	 * Remove an item from LRU list by item's corresponding key.
+	 * Record a hit of the item, which moves it to the head position of its LRU list.
+	 * In CLOCK mode, only the reference bit of the item is set, and the 
+	 * item is moved lazily when the evictor reaches it.
 	 * 
-	 * @param key
-	 * @return True if the key exists in the map container, otherwise false.
+	 * @param item
 	 * @author sunhe
-	 * @date 2015年3月26日 下午10:30:07
+	 * @date 2015年3月26日 下午9:17:10
 	 */
-	public synchronized boolean removeItemByKey(String key) {
-		Item item = map.get(key);
-		if (item == null) {
-			return false;
-		}
-		else {
-			removeItem(item);
-			return true;
-		}
-	}
-	
-	/**
-	 * @author sunhe
-	 * @date 2015年3月26日 下午9:49:29
-	 */
-	public synchronized void traverseLRUList(LRUListItemOperator operator) {
-		Item ref = LRUListHead, nextRef;
-		boolean shouldContinue = true;
-		while (ref != null && shouldContinue) {
-			nextRef = ref.getNext();
-			shouldContinue = operator.operate(ref);
-			ref = nextRef;
-		}
+	public void moveItem(int item) {
+		getPolicy(item).access(item);
 	}
 	
 	/**
+	 * Remove an item from its LRU list.
+	 * 
+	 * @param item
 	 * @author sunhe
-	 * @date 2015年3月26日 下午9:52:11
-	 */
-	public synchronized void traverseLRUListReversely(LRUListItemOperator operator) {
-		Item ref = LRUListTail, priorRef;
-		boolean shouldContinue = true;
-		while (ref != null && shouldContinue) {
-			priorRef = ref.getPrior();
-			shouldContinue = operator.operate(ref);
-			ref = priorRef;
-		}
+	 * @date 2015年3月26日 下午9:31:49
+	 */
+	public void removeItem(int item) {
+		getPolicy(item).remove(item);
 	}
 	
 	/**
@@ -582,8 +782,8 @@ public class MapContainer {
 	 * @author sunhe
 	 * @date 2015年3月27日 上午10:47:24
 	 */
-	public ConcurrentSkipListMap<String, String> getTimeStampListMap() {
-		return timeStampListMap;
+	public ExpiryWheel getExpiryWheel() {
+		return expiryWheel;
 	}
 	
 }
@@ -0,0 +1,256 @@
+package io.sunhe.sealion.server.mem;
+
+import io.netty.buffer.PooledByteBufAllocator;
+import io.sunhe.sealion.server.dashboard.BlockingTimeAccumulator;
+import io.sunhe.sealion.util.Charsets;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A group of independent map containers (shards).
+ * Every key is hashed to exactly one shard, and each shard has its own
+ * map, LRU list, expiry wheel and an equal share of the memory budget,
+ * so that shards can be served by different worker threads without
+ * sharing any state.
+ *
+ * Thread-safe. The shard array cann't be changed during uptime.
+ *
+ * @author sunhe
+ * @date 2015年6月8日 上午10:12:31
+ */
+public class ShardedMapContainer {
+
+	private MapContainer[] shards;
+
+	/**
+	 * In byte.
+	 * Cann't be changed during uptime.
+	 */
+	private long maxMemSize;
+
+	/**
+	 * @param numOfShards The number of shards, must be positive.
+	 * @param blockingTimeAccumulator Shared by all shards.
+	 * @param maxMemSize The memory budget of all shards in total, in byte.
+	 * @author sunhe
+	 * @date 2015年6月8日 上午10:20:07
+	 */
+	public ShardedMapContainer(int numOfShards, BlockingTimeAccumulator blockingTimeAccumulator,
+			long maxMemSize) {
+		if (numOfShards <= 0) {
+			throw new IllegalArgumentException("Invalid number of shards: " + numOfShards);
+		}
+		if (maxMemSize < MapContainer.MIN_MEM_SIZE) {
+			throw new IllegalArgumentException("SeaLion must have at least 16 MB memory space: " + maxMemSize);
+		}
+		this.maxMemSize = maxMemSize;
+		// All shards share the same pool, otherwise every shard would reserve its own arenas.
+		PooledByteBufAllocator allocator = new PooledByteBufAllocator(true);
+		shards = new MapContainer[numOfShards];
+		for (int i = 0; i < numOfShards; i++) {
+			shards[i] = new MapContainer(blockingTimeAccumulator, maxMemSize / numOfShards, allocator);
+		}
+	}
+
+	/**
+	 * Set the watermarks of the eviction of all shards.
+	 *
+	 * @param lowWatermark
+	 * @param highWatermark
+	 * @author sunhe
+	 * @date 2015年6月12日 上午11:20:36
+	 */
+	public void setWatermarks(double lowWatermark, double highWatermark) {
+		for (MapContainer shard : shards) {
+			shard.setWatermarks(lowWatermark, highWatermark);
+		}
+	}
+
+	/**
+	 * @param evictionBatchSize
+	 * @author sunhe
+	 * @date 2015年6月12日 上午11:21:50
+	 */
+	public void setEvictionBatchSize(int evictionBatchSize) {
+		for (MapContainer shard : shards) {
+			shard.setEvictionBatchSize(evictionBatchSize);
+		}
+	}
+
+	/**
+	 * @param evictionBudget In nanosecond.
+	 * @author sunhe
+	 * @date 2015年6月12日 上午11:22:17
+	 */
+	public void setEvictionBudget(long evictionBudget) {
+		for (MapContainer shard : shards) {
+			shard.setEvictionBudget(evictionBudget);
+		}
+	}
+
+	/**
+	 * @param LRUMode Either MapContainer.LRU_MODE_STRICT or MapContainer.LRU_MODE_CLOCK.
+	 * @author sunhe
+	 * @date 2015年6月17日 上午9:25:12
+	 */
+	public void setLRUMode(String LRUMode) {
+		for (MapContainer shard : shards) {
+			shard.setLRUMode(LRUMode);
+		}
+	}
+
+	/**
+	 * @param evictionPolicy Either MapContainer.EVICTION_POLICY_LRU or MapContainer.EVICTION_POLICY_TINYLFU.
+	 * @author sunhe
+	 * @date 2015年6月17日 下午3:10:22
+	 */
+	public void setEvictionPolicy(String evictionPolicy) {
+		for (MapContainer shard : shards) {
+			shard.setEvictionPolicy(evictionPolicy);
+		}
+	}
+
+	/**
+	 * @return
+	 * @author sunhe
+	 * @date 2015年6月8日 上午10:25:44
+	 */
+	public int getNumOfShards() {
+		return shards.length;
+	}
+
+	/**
+	 * Get the index of the shard which the given key belongs to.
+	 *
+	 * @param key Null is taken as belonging to the first shard.
+	 * @return
+	 * @author sunhe
+	 * @date 2015年6月8日 上午10:27:10
+	 */
+	public int getShardIndex(String key) {
+		return getShardIndex(key == null ? null : key.getBytes(Charsets.UTF_8));
+	}
+
+	/**
+	 * Get the index of the shard which the given key belongs to.
+	 * The same key always belongs to the same shard, no matter it's
+	 * given as a string or the UTF-8 bytes.
+	 *
+	 * @param key Null is taken as belonging to the first shard.
+	 * @return
+	 * @author sunhe
+	 * @date 2015年6月18日 上午10:20:36
+	 */
+	public int getShardIndex(byte[] key) {
+		if (key == null || shards.length == 1) {
+			return 0;
+		}
+		int hash = Arrays.hashCode(key);
+		// spread the higher bits, just like what HashMap does.
+		hash ^= (hash >>> 20) ^ (hash >>> 12);
+		hash ^= (hash >>> 7) ^ (hash >>> 4);
+		return (hash & 0x7FFFFFFF) % shards.length;
+	}
+
+	/**
+	 * Get the shard which the given key belongs to.
+	 *
+	 * @param key
+	 * @return
+	 * @author sunhe
+	 * @date 2015年6月8日 上午10:31:52
+	 */
+	public MapContainer getShard(String key) {
+		return shards[getShardIndex(key)];
+	}
+
+	/**
+	 * Get the shard which the given key belongs to.
+	 *
+	 * @param key The UTF-8 bytes of the key.
+	 * @return
+	 * @author sunhe
+	 * @date 2015年6月18日 上午10:22:03
+	 */
+	public MapContainer getShard(byte[] key) {
+		return shards[getShardIndex(key)];
+	}
+
+	/**
+	 * @param index
+	 * @return
+	 * @author sunhe
+	 * @date 2015年6月8日 上午10:32:40
+	 */
+	public MapContainer getShard(int index) {
+		return shards[index];
+	}
+
+	/**
+	 * Whether an item of the given sizes could ever be stored in its shard,
+	 * all shards having the same budget. Can be called by any thread.
+	 *
+	 * @param keyLength
+	 * @param dataSize In byte.
+	 * @return
+	 * @author sunhe
+	 * @date 2015年6月24日 上午9:42:30
+	 */
+	public boolean canHold(int keyLength, long dataSize) {
+		return shards[0].canHold(keyLength, dataSize);
+	}
+
+	/**
+	 * @return The memory budget of all shards in total.
+	 * @author sunhe
+	 * @date 2015年6月8日 上午10:33:18
+	 */
+	public long getMaxMemSize() {
+		return maxMemSize;
+	}
+
+	/**
+	 * @return The used memory of all shards in total.
+	 * @author sunhe
+	 * @date 2015年6月8日 上午10:34:02
+	 */
+	public long getCurMemSize() {
+		long curMemSize = 0;
+		for (MapContainer shard : shards) {
+			curMemSize += shard.getCurMemSize();
+		}
+		return curMemSize;
+	}
+
+	/**
+	 * Get the status of every slab class of all shards in total.
+	 * Note that all shards have the same slab classes, since they have the same memory budget.
+	 *
+	 * @return
+	 * @author sunhe
+	 * @date 2015年6月16日 下午2:40:18
+	 */
+	public List<SlabClassStat> getSlabClassStats() {
+		List<SlabClassStat> stats = shards[0].getSlabClassStats();
+		for (int i = 1; i < shards.length; i++) {
+			List<SlabClassStat> shardStats = shards[i].getSlabClassStats();
+			for (int j = 0; j < stats.size(); j++) {
+				stats.get(j).add(shardStats.get(j));
+			}
+		}
+		return stats;
+	}
+
+	/**
+	 * Get current memory occupation percentage of all shards in total.
+	 *
+	 * @return
+	 * @author sunhe
+	 * @date 2015年6月8日 上午10:35:21
+	 */
+	public double getMemPercentage() {
+		return (double) getCurMemSize() / (double) maxMemSize;
+	}
+
+}
@@ -0,0 +1,815 @@
+package io.sunhe.sealion.server.mem;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Memcached-style slab allocator.
+ *
+ * The memory budget is divided into pages of direct memory, and every page is assigned
+ * to one of the slab classes on demand, where it's divided into equal-size chunks. The chunk
+ * sizes of the classes grow by the growth factor, and every allocation takes a single chunk of
+ * the smallest class which can hold it. The allocations larger than a page belong to the huge
+ * class, each of which is a buffer of its own, occupying whole pages of the budget.
+ * Once all pages are assigned, a class can only reuse its own chunks, unless a page
+ * is moved to another class by rebalancing.
+ *
+ * A chunk is addressed by a reference, which is its offset in the slabs divided by
+ * the alignment, so an int is enough for 16 GBytes. The first CHUNK_OVERHEAD bytes of
+ * every chunk belong to the allocator: the requested size, -1 if the chunk is free,
+ * and the reference to the next free chunk of the class, the free chunks being linked
+ * through themselves. So the heap usage of the allocator only grows with the number
+ * of pages, never with the number of allocations.
+ *
+ * The pages are allocated from the pooled allocator when they're assigned to a class,
+ * and released once they're wholly free and moved out of it. A page can be drained
+ * before being moved: its free chunks are withdrawn from the class, and the chunks
+ * freed afterwards aren't reused, so that it gets wholly free as soon as the chunks
+ * still in use are freed by the owner.
+ *
+ * Not thread-safe. Only the worker thread owning the shard can allocate and free,
+ * while the statistics can be read by any thread.
+ *
+ * @author sunhe
+ * @date 2015年6月16日 上午10:20:37
+ */
+public class SlabAllocator {
+
+	/**
+	 * The reference to no chunk.
+	 */
+	public static final int NULL = -1;
+
+	public static final double DEFAULT_GROWTH_FACTOR = 1.25;
+
+	/**
+	 * 64 Bytes.
+	 */
+	public static final int MIN_CHUNK_SIZE = 64;
+
+	/**
+	 * 1 MBytes.
+	 */
+	public static final int MAX_PAGE_SIZE = 1048576;
+
+	/**
+	 * 4 KBytes.
+	 */
+	public static final int MIN_PAGE_SIZE = 4096;
+
+	/**
+	 * The bytes at the start of every chunk which belong to the allocator,
+	 * see getOffset(int).
+	 */
+	public static final int CHUNK_OVERHEAD = 8;
+
+	/**
+	 * The page is shrunk if the budget doesn't have this many pages of MAX_PAGE_SIZE,
+	 * otherwise most of the classes wouldn't get any page at all.
+	 */
+	private static final int MIN_NUM_OF_PAGES = 64;
+
+	/**
+	 * Chunks are aligned to 8 bytes.
+	 */
+	private static final int ALIGNMENT_SHIFT = 3;
+
+	private static final int ALIGNMENT = 1 << ALIGNMENT_SHIFT;
+
+	/**
+	 * The offset of the requested size in a chunk.
+	 */
+	private static final int SIZE = 0;
+
+	/**
+	 * The offset of the reference to the next free chunk in a free chunk.
+	 */
+	private static final int NEXT_FREE = 4;
+
+	/**
+	 * The counters are only updated by the worker thread, and can be read by any thread.
+	 */
+	private static class SlabClass {
+
+		/**
+		 * In byte.
+		 */
+		private final int chunkSize;
+
+		private final int chunksPerPage;
+
+		private final boolean isHuge;
+
+		private volatile int pages;
+
+		private volatile long usedChunks;
+
+		private volatile long requestedBytes;
+
+		private volatile long failures;
+
+		/**
+		 * Failures since last rebalancing.
+		 */
+		private volatile long recentFailures;
+
+		private volatile long evictions;
+
+		/**
+		 * The first free chunk.
+		 */
+		private int freeHead = NULL;
+
+		private SlabClass(int chunkSize, int pageSize, boolean isHuge) {
+			this.chunkSize = chunkSize;
+			chunksPerPage = pageSize / chunkSize;
+			this.isHuge = isHuge;
+		}
+
+	}
+
+	/**
+	 * In byte, a power of 2.
+	 */
+	private int pageSize;
+
+	private int pageShift;
+
+	private int totalPages;
+
+	/**
+	 * The pages of the budget not yet assigned to any class.
+	 */
+	private volatile int freePages;
+
+	/**
+	 * The buffers of the pages, indexed by the slot, null if the slot is empty.
+	 * A huge allocation has a buffer of its own in a single slot, which is larger than a page.
+	 * Since every slot takes at least a page of the budget, the slots never run out.
+	 */
+	private ByteBuf[] pages;
+
+	/**
+	 * The class of the page in every slot, -1 if the slot is empty.
+	 */
+	private int[] pageClasses;
+
+	/**
+	 * The number of used chunks of the page in every slot.
+	 */
+	private int[] pageUsedChunks;
+
+	/**
+	 * The stack of the empty slots.
+	 */
+	private int[] freeSlots;
+
+	private int numOfFreeSlots;
+
+	/**
+	 * The slot of the page being drained, -1 if none.
+	 */
+	private int drainingSlot = -1;
+
+	/**
+	 * The index of the next chunk of the draining page to be handed out,
+	 * see nextDrainingChunk().
+	 */
+	private int drainingCursor;
+
+	/**
+	 * The last one is the huge class.
+	 */
+	private SlabClass[] classes;
+
+	/**
+	 * The chunk sizes of the classes except the huge class, in ascending order.
+	 */
+	private int[] chunkSizes;
+
+	private PooledByteBufAllocator allocator;
+
+	public SlabAllocator(long maxMemSize, PooledByteBufAllocator allocator) {
+		this (maxMemSize, DEFAULT_GROWTH_FACTOR, allocator);
+	}
+
+	/**
+	 * @param maxMemSize In byte, up to 16 GBytes.
+	 * @param growthFactor The ratio of the chunk size of a class to the previous one.
+	 * @param allocator
+	 * @author sunhe
+	 * @date 2015年6月16日 上午10:31:50
+	 */
+	public SlabAllocator(long maxMemSize, double growthFactor, PooledByteBufAllocator allocator) {
+		if (maxMemSize < MIN_PAGE_SIZE) {
+			throw new IllegalArgumentException("Invalid memory space: " + maxMemSize);
+		}
+		if (growthFactor <= 1) {
+			throw new IllegalArgumentException("Invalid growth factor: " + growthFactor);
+		}
+		this.allocator = allocator;
+		pageSize = MAX_PAGE_SIZE;
+		if (maxMemSize / pageSize < MIN_NUM_OF_PAGES) {
+			pageSize = (int) Math.max(Long.highestOneBit(maxMemSize / MIN_NUM_OF_PAGES), MIN_PAGE_SIZE);
+		}
+		pageShift = Integer.numberOfTrailingZeros(pageSize);
+		long numOfPages = maxMemSize / pageSize;
+		if (numOfPages > ((long) Integer.MAX_VALUE + 1) >>> (pageShift - ALIGNMENT_SHIFT)) {
+			throw new IllegalArgumentException("Too large memory space: " + maxMemSize);
+		}
+		totalPages = (int) numOfPages;
+		freePages = totalPages;
+		pages = new ByteBuf[totalPages];
+		pageClasses = new int[totalPages];
+		Arrays.fill(pageClasses, -1);
+		pageUsedChunks = new int[totalPages];
+		freeSlots = new int[totalPages];
+		for (int i = 0; i < totalPages; i++) {
+			// the lower slots are taken first.
+			freeSlots[i] = totalPages - 1 - i;
+		}
+		numOfFreeSlots = totalPages;
+		List<Integer> sizes = new ArrayList<Integer>();
+		int size = MIN_CHUNK_SIZE;
+		while (size <= pageSize / 2) {
+			sizes.add(size);
+			size = Math.max(size + ALIGNMENT, align((int) (size * growthFactor)));
+		}
+		// a single chunk per page.
+		sizes.add(pageSize);
+		chunkSizes = new int[sizes.size()];
+		classes = new SlabClass[sizes.size() + 1];
+		for (int i = 0; i < chunkSizes.length; i++) {
+			chunkSizes[i] = sizes.get(i);
+			classes[i] = new SlabClass(chunkSizes[i], pageSize, false);
+		}
+		classes[chunkSizes.length] = new SlabClass(pageSize, pageSize, true);
+	}
+
+	private static int align(int size) {
+		return (size + ALIGNMENT - 1) & ~(ALIGNMENT - 1);
+	}
+
+	/**
+	 * @return The number of the classes, including the huge class.
+	 * @author sunhe
+	 * @date 2015年6月16日 上午10:40:12
+	 */
+	public int getNumOfClasses() {
+		return classes.length;
+	}
+
+	/**
+	 * @return In byte.
+	 * @author sunhe
+	 * @date 2015年6月16日 上午10:40:51
+	 */
+	public int getPageSize() {
+		return pageSize;
+	}
+
+	/**
+	 * @return The number of pages not yet assigned to any class.
+	 * @author sunhe
+	 * @date 2015年6月16日 上午10:41:22
+	 */
+	public int getFreePages() {
+		return freePages;
+	}
+
+	/**
+	 * @param index
+	 * @return
+	 * @author sunhe
+	 * @date 2015年6月16日 上午10:41:55
+	 */
+	public boolean isHugeClass(int index) {
+		return classes[index].isHuge;
+	}
+
+	/**
+	 * Get the index of the class which the chunk of the given size belongs to.
+	 *
+	 * @param size In byte, including CHUNK_OVERHEAD.
+	 * @return
+	 * @author sunhe
+	 * @date 2015年6月16日 上午10:43:30
+	 */
+	public int classOf(int size) {
+		if (size > pageSize) {
+			return chunkSizes.length;
+		}
+		int low = 0, high = chunkSizes.length - 1;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (chunkSizes[mid] < size) {
+				low = mid + 1;
+			}
+			else {
+				high = mid;
+			}
+		}
+		return low;
+	}
+
+	/**
+	 * @param ref
+	 * @return The index of the class which the chunk belongs to.
+	 * @author sunhe
+	 * @date 2015年6月22日 上午10:12:35
+	 */
+	public int classOfChunk(int ref) {
+		return pageClasses[slotOf(ref)];
+	}
+
+	/**
+	 * @param size In byte, including CHUNK_OVERHEAD.
+	 * @return The number of pages a huge allocation of the given size occupies.
+	 * @author sunhe
+	 * @date 2015年6月16日 上午10:45:02
+	 */
+	private int pagesOf(int size) {
+		// in long, size + pageSize overflows for the sizes close to Integer.MAX_VALUE.
+		return (int) (((long) size + pageSize - 1) / pageSize);
+	}
+
+	/**
+	 * Allocate a chunk, taking a free page if the class doesn't have any free chunk.
+	 * Note that the chunk MUST be freed by free(int).
+	 *
+	 * @param size In byte, including CHUNK_OVERHEAD.
+	 * @return The reference to the chunk, NULL if there isn't any room for it in its class, 
+	 *         or it's larger than the whole memory space, see canHold(long).
+	 * @author sunhe
+	 * @date 2015年6月16日 上午10:48:36
+	 */
+	public int allocate(int size) {
+		if (size < CHUNK_OVERHEAD) {
+			throw new IllegalArgumentException("Invalid size: " + size);
+		}
+		if (! canHold(size)) {
+			// not a failure of the class, no page could ever be moved to it.
+			return NULL;
+		}
+		int index = classOf(size);
+		SlabClass slabClass = classes[index];
+		int ref = slabClass.isHuge ? allocateHuge(index, size) : allocateChunk(index);
+		if (ref == NULL) {
+			slabClass.failures++;
+			slabClass.recentFailures++;
+			return NULL;
+		}
+		int slot = slotOf(ref);
+		pageUsedChunks[slot]++;
+		pages[slot].setInt(offsetOf(ref) + SIZE, size);
+		slabClass.requestedBytes += size;
+		return ref;
+	}
+
+	/**
+	 * @param index
+	 * @return NULL if the class is full, and there isn't any free page.
+	 * @author sunhe
+	 * @date 2015年6月22日 上午10:20:41
+	 */
+	private int allocateChunk(int index) {
+		SlabClass slabClass = classes[index];
+		if (slabClass.freeHead == NULL && ! takePage(index)) {
+			return NULL;
+		}
+		int ref = slabClass.freeHead;
+		slabClass.freeHead = getNextFree(ref);
+		slabClass.usedChunks++;
+		return ref;
+	}
+
+	/**
+	 * Assign a free page to the class, and link its chunks to the free ones of the class.
+	 *
+	 * @param index
+	 * @return
+	 * @author sunhe
+	 * @date 2015年6月22日 上午10:23:16
+	 */
+	private boolean takePage(int index) {
+		if (freePages == 0) {
+			return false;
+		}
+		int slot = takeSlot(index, pageSize);
+		if (slot < 0) {
+			return false;
+		}
+		SlabClass slabClass = classes[index];
+		freePages--;
+		slabClass.pages++;
+		ByteBuf page = pages[slot];
+		// linked backward, so that the lower chunks are taken first.
+		for (int offset = (slabClass.chunksPerPage - 1) * slabClass.chunkSize; offset >= 0; offset -= slabClass.chunkSize) {
+			page.setInt(offset + SIZE, -1);
+			page.setInt(offset + NEXT_FREE, slabClass.freeHead);
+			slabClass.freeHead = refOf(slot, offset);
+		}
+		return true;
+	}
+
+	/**
+	 * @param index
+	 * @param size In byte.
+	 * @return NULL if there aren't enough free pages.
+	 * @author sunhe
+	 * @date 2015年6月22日 上午10:26:48
+	 */
+	private int allocateHuge(int index, int size) {
+		int num = pagesOf(size);
+		if (freePages < num) {
+			return NULL;
+		}
+		int slot = takeSlot(index, size);
+		if (slot < 0) {
+			return NULL;
+		}
+		SlabClass slabClass = classes[index];
+		freePages -= num;
+		slabClass.pages += num;
+		slabClass.usedChunks += num;
+		return refOf(slot, 0);
+	}
+
+	/**
+	 * Take an empty slot, and allocate its buffer.
+	 *
+	 * @param index The class which the buffer is assigned to.
+	 * @param capacity In byte.
+	 * @return -1 if the direct memory of the JVM is used up.
+	 * @author sunhe
+	 * @date 2015年6月22日 上午10:30:05
+	 */
+	private int takeSlot(int index, int capacity) {
+		int slot = freeSlots[numOfFreeSlots - 1];
+		try {
+			pages[slot] = allocator.directBuffer(capacity, capacity);
+		}
+		catch (OutOfMemoryError e) {
+			return -1;
+		}
+		numOfFreeSlots--;
+		pageClasses[slot] = index;
+		pageUsedChunks[slot] = 0;
+		return slot;
+	}
+
+	/**
+	 * Release the buffer of the slot, and empty the slot.
+	 *
+	 * @param slot
+	 * @author sunhe
+	 * @date 2015年6月22日 上午10:32:40
+	 */
+	private void releaseSlot(int slot) {
+		pages[slot].release();
+		pages[slot] = null;
+		pageClasses[slot] = -1;
+		freeSlots[numOfFreeSlots++] = slot;
+	}
+
+	/**
+	 * Free the chunk allocated by this allocator.
+	 * The chunk of a huge allocation returns its pages immediately,
+	 * otherwise it's reused by the class, unless its page is being drained.
+	 *
+	 * @param ref
+	 * @author sunhe
+	 * @date 2015年6月16日 上午10:50:17
+	 */
+	public void free(int ref) {
+		int slot = slotOf(ref);
+		int offset = offsetOf(ref);
+		ByteBuf page = pages[slot];
+		int size = page.getInt(offset + SIZE);
+		if (size < 0) {
+			throw new IllegalStateException("The chunk has already been freed: " + ref);
+		}
+		SlabClass slabClass = classes[pageClasses[slot]];
+		slabClass.requestedBytes -= size;
+		pageUsedChunks[slot]--;
+		if (slabClass.isHuge) {
+			int num = pagesOf(size);
+			slabClass.usedChunks -= num;
+			slabClass.pages -= num;
+			releaseSlot(slot);
+			freePages += num;
+			return;
+		}
+		slabClass.usedChunks--;
+		page.setInt(offset + SIZE, -1);
+		if (slot == drainingSlot) {
+			// not reused, so that the page gets wholly free.
+			if (pageUsedChunks[slot] == 0) {
+				releasePage(slot);
+				drainingSlot = -1;
+			}
+			return;
+		}
+		page.setInt(offset + NEXT_FREE, slabClass.freeHead);
+		slabClass.freeHead = ref;
+	}
+
+	/**
+	 * Move the wholly free page out of its class, back to the free pages.
+	 *
+	 * @param slot
+	 * @author sunhe
+	 * @date 2015年6月22日 上午10:36:21
+	 */
+	private void releasePage(int slot) {
+		classes[pageClasses[slot]].pages--;
+		releaseSlot(slot);
+		freePages++;
+	}
+
+	/**
+	 * Unlink the free chunks of the page from the free ones of its class.
+	 *
+	 * @param slot
+	 * @author sunhe
+	 * @date 2015年6月22日 上午10:38:50
+	 */
+	private void withdrawFreeChunks(int slot) {
+		SlabClass slabClass = classes[pageClasses[slot]];
+		int prior = NULL;
+		int ref = slabClass.freeHead;
+		while (ref != NULL) {
+			int next = getNextFree(ref);
+			if (slotOf(ref) != slot) {
+				prior = ref;
+			}
+			else if (prior == NULL) {
+				slabClass.freeHead = next;
+			}
+			else {
+				pages[slotOf(prior)].setInt(offsetOf(prior) + NEXT_FREE, next);
+			}
+			ref = next;
+		}
+	}
+
+	/**
+	 * Move a page which is wholly free out of the given class, back to the free pages,
+	 * so that it can be taken by another class.
+	 *
+	 * @param index
+	 * @return False if the class doesn't have a wholly free page.
+	 * @author sunhe
+	 * @date 2015年6月16日 上午11:02:45
+	 */
+	public boolean movePage(int index) {
+		if (classes[index].isHuge) {
+			return false;
+		}
+		for (int slot = 0; slot < totalPages; slot++) {
+			if (pageClasses[slot] == index && pageUsedChunks[slot] == 0 && slot != drainingSlot) {
+				withdrawFreeChunks(slot);
+				releasePage(slot);
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Start draining the page of the given class which has the fewest used chunks,
+	 * the chunks still in use are handed out by nextDrainingChunk().
+	 * The page is moved out of the class as soon as it's wholly free.
+	 *
+	 * @param index
+	 * @return False if another page is being drained, or the class doesn't have any page.
+	 * @author sunhe
+	 * @date 2015年6月22日 上午10:42:17
+	 */
+	public boolean startDraining(int index) {
+		if (drainingSlot >= 0 || classes[index].isHuge) {
+			return false;
+		}
+		int emptiest = -1;
+		for (int slot = 0; slot < totalPages; slot++) {
+			if (pageClasses[slot] == index
+					&& (emptiest < 0 || pageUsedChunks[slot] < pageUsedChunks[emptiest])) {
+				emptiest = slot;
+			}
+		}
+		if (emptiest < 0) {
+			return false;
+		}
+		withdrawFreeChunks(emptiest);
+		if (pageUsedChunks[emptiest] == 0) {
+			releasePage(emptiest);
+		}
+		else {
+			drainingSlot = emptiest;
+			drainingCursor = 0;
+		}
+		return true;
+	}
+
+	/**
+	 * @return Whether a page is being drained.
+	 * @author sunhe
+	 * @date 2015年6月22日 上午10:45:02
+	 */
+	public boolean isDraining() {
+		return drainingSlot >= 0;
+	}
+
+	/**
+	 * @return The index of the class whose page is being drained, -1 if none.
+	 * @author sunhe
+	 * @date 2015年6月22日 上午10:45:40
+	 */
+	public int getDrainingClass() {
+		return drainingSlot < 0 ? -1 : pageClasses[drainingSlot];
+	}
+
+	/**
+	 * Hand out the next chunk still in use of the draining page, which is
+	 * supposed to be freed by the caller.
+	 *
+	 * @return NULL if there isn't any more.
+	 * @author sunhe
+	 * @date 2015年6月22日 上午10:47:26
+	 */
+	public int nextDrainingChunk() {
+		while (drainingSlot >= 0) {
+			SlabClass slabClass = classes[pageClasses[drainingSlot]];
+			if (drainingCursor >= slabClass.chunksPerPage) {
+				return NULL;
+			}
+			int offset = drainingCursor++ * slabClass.chunkSize;
+			if (pages[drainingSlot].getInt(offset + SIZE) >= 0) {
+				return refOf(drainingSlot, offset);
+			}
+		}
+		return NULL;
+	}
+
+	/**
+	 * @param ref
+	 * @return The buffer of the page where the chunk is.
+	 * @author sunhe
+	 * @date 2015年6月22日 上午10:50:12
+	 */
+	public ByteBuf getPage(int ref) {
+		return pages[slotOf(ref)];
+	}
+
+	/**
+	 * @param ref
+	 * @return The offset in its page of the chunk, right after CHUNK_OVERHEAD,
+	 *         from which the requested size minus CHUNK_OVERHEAD bytes belong to the owner.
+	 * @author sunhe
+	 * @date 2015年6月22日 上午10:51:30
+	 */
+	public int getOffset(int ref) {
+		return offsetOf(ref) + CHUNK_OVERHEAD;
+	}
+
+	private int refOf(int slot, int offset) {
+		return (int) ((((long) slot << pageShift) | offset) >>> ALIGNMENT_SHIFT);
+	}
+
+	private int slotOf(int ref) {
+		return ref >>> (pageShift - ALIGNMENT_SHIFT);
+	}
+
+	private int offsetOf(int ref) {
+		return (ref << ALIGNMENT_SHIFT) & (pageSize - 1);
+	}
+
+	private int getNextFree(int ref) {
+		return pages[slotOf(ref)].getInt(offsetOf(ref) + NEXT_FREE);
+	}
+
+	/**
+	 * @param size In byte, including CHUNK_OVERHEAD.
+	 * @return Whether an allocation of the given size could ever succeed, 
+	 *         it must fit in both the whole memory space and an int.
+	 * @author sunhe
+	 * @date 2015年6月22日 上午10:55:18
+	 */
+	public boolean canHold(long size) {
+		return size >= CHUNK_OVERHEAD && size <= Math.min((long) totalPages * pageSize, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * @param index
+	 * @return The number of the free chunks of the class.
+	 * @author sunhe
+	 * @date 2015年6月16日 上午11:05:20
+	 */
+	public long getFreeChunks(int index) {
+		SlabClass slabClass = classes[index];
+		if (slabClass.isHuge) {
+			return 0;
+		}
+		return (long) slabClass.pages * slabClass.chunksPerPage - slabClass.usedChunks;
+	}
+
+	/**
+	 * @param index
+	 * @return The number of chunks of a page in the class.
+	 * @author sunhe
+	 * @date 2015年6月16日 上午11:06:02
+	 */
+	public int getChunksPerPage(int index) {
+		return classes[index].chunksPerPage;
+	}
+
+	/**
+	 * @param index
+	 * @return
+	 * @author sunhe
+	 * @date 2015年6月16日 上午11:06:40
+	 */
+	public int getPages(int index) {
+		return classes[index].pages;
+	}
+
+	/**
+	 * @param index
+	 * @return The percentage of the used chunks of the class, 0 if it doesn't have any page.
+	 *         As for the huge class, its own share of all pages, since its pages are 
+	 *         returned as soon as they're freed, it's never partially used.
+	 * @author sunhe
+	 * @date 2015年6月16日 上午11:07:21
+	 */
+	public double getFullness(int index) {
+		SlabClass slabClass = classes[index];
+		if (slabClass.isHuge) {
+			return (double) slabClass.pages / (double) totalPages;
+		}
+		long capacity = (long) slabClass.pages * slabClass.chunksPerPage;
+		return capacity == 0 ? 0 : (double) slabClass.usedChunks / (double) capacity;
+	}
+
+	/**
+	 * Record an eviction of the class.
+	 *
+	 * @param index
+	 * @author sunhe
+	 * @date 2015年6月16日 上午11:08:33
+	 */
+	public void recordEviction(int index) {
+		classes[index].evictions++;
+	}
+
+	/**
+	 * Get the failures of the class since last time, and then clear it.
+	 *
+	 * @param index
+	 * @return
+	 * @author sunhe
+	 * @date 2015年6月16日 上午11:09:15
+	 */
+	public long getAndClearRecentFailures(int index) {
+		long failures = classes[index].recentFailures;
+		classes[index].recentFailures = 0;
+		return failures;
+	}
+
+	/**
+	 * @return The size in byte of all chunks used.
+	 * @author sunhe
+	 * @date 2015年6月16日 上午11:10:02
+	 */
+	public long getUsedBytes() {
+		long usedBytes = 0;
+		for (SlabClass slabClass : classes) {
+			usedBytes += slabClass.usedChunks * slabClass.chunkSize;
+		}
+		return usedBytes;
+	}
+
+	/**
+	 * @param index
+	 * @param items The number of items of the class.
+	 * @return A snapshot of the status of the class.
+	 * @author sunhe
+	 * @date 2015年6月16日 上午11:11:37
+	 */
+	public SlabClassStat getStat(int index, long items) {
+		SlabClass slabClass = classes[index];
+		SlabClassStat stat = new SlabClassStat();
+		stat.setChunkSize(slabClass.isHuge ? 0 : slabClass.chunkSize);
+		stat.setPages(slabClass.pages);
+		stat.setUsedChunks(slabClass.usedChunks);
+		stat.setRequestedBytes(slabClass.requestedBytes);
+		stat.setItems(items);
+		stat.setEvictions(slabClass.evictions);
+		stat.setFailures(slabClass.failures);
+		return stat;
+	}
+
+}
@@ -0,0 +1,109 @@
+package io.sunhe.sealion.server.mem;
+
+/**
+ * The status of a single slab class, just a snapshot.
+ * Not thread-safe.
+ *
+ * @author sunhe
+ * @date 2015年6月16日 上午10:02:33
+ */
+public class SlabClassStat {
+
+	/**
+	 * In byte, 0 signifies the class of the huge items,
+	 * each of which occupies whole pages.
+	 */
+	private int chunkSize;
+
+	private long pages;
+
+	private long usedChunks;
+
+	/**
+	 * The size in byte actually requested by the items,
+	 * the difference to the chunks signifies the internal fragmentation.
+	 */
+	private long requestedBytes;
+
+	private long items;
+
+	private long evictions;
+
+	/**
+	 * The number of allocations failed due to lack of memory.
+	 */
+	private long failures;
+
+	/**
+	 * Add the status of the same class in another shard to this one.
+	 *
+	 * @param stat
+	 * @author sunhe
+	 * @date 2015年6月16日 上午10:08:12
+	 */
+	public void add(SlabClassStat stat) {
+		pages += stat.pages;
+		usedChunks += stat.usedChunks;
+		requestedBytes += stat.requestedBytes;
+		items += stat.items;
+		evictions += stat.evictions;
+		failures += stat.failures;
+	}
+
+	public int getChunkSize() {
+		return chunkSize;
+	}
+
+	public void setChunkSize(int chunkSize) {
+		this.chunkSize = chunkSize;
+	}
+
+	public long getPages() {
+		return pages;
+	}
+
+	public void setPages(long pages) {
+		this.pages = pages;
+	}
+
+	public long getUsedChunks() {
+		return usedChunks;
+	}
+
+	public void setUsedChunks(long usedChunks) {
+		this.usedChunks = usedChunks;
+	}
+
+	public long getRequestedBytes() {
+		return requestedBytes;
+	}
+
+	public void setRequestedBytes(long requestedBytes) {
+		this.requestedBytes = requestedBytes;
+	}
+
+	public long getItems() {
+		return items;
+	}
+
+	public void setItems(long items) {
+		this.items = items;
+	}
+
+	public long getEvictions() {
+		return evictions;
+	}
+
+	public void setEvictions(long evictions) {
+		this.evictions = evictions;
+	}
+
+	public long getFailures() {
+		return failures;
+	}
+
+	public void setFailures(long failures) {
+		this.failures = failures;
+	}
+
+}
@@ -0,0 +1,139 @@
+package io.sunhe.sealion.server.mem;
+
+/**
+ * LRU with a TinyLFU admission filter, resisting the scans which would
+ * otherwise flush the hot items out of the cache.
+ *
+ * New items are put into the window queue, which always holds 1% of all items,
+ * and the rest are kept in the main queue. On every insert, the item overflowing
+ * the window has to compete with the least recently used item of the main queue:
+ * the candidate is admitted to the head of the main queue only if it's accessed
+ * more frequently according to the frequency sketch, otherwise it's put at the
+ * tail, in front of the victim, so that it's the first one to be evicted. The items
+ * are always evicted from the tail of the main queue, so one-shot items never push
+ * out the hot ones.
+ *
+ * The accesses of all slab classes of the shard are counted by the same sketch.
+ * The main queue gives the referenced items a second chance in CLOCK mode, as
+ * LRUPolicy does.
+ *
+ * Not thread-safe, except that the size can be read by any thread.
+ *
+ * @author sunhe
+ * @date 2015年6月17日 下午2:30:45
+ */
+public class TinyLFUPolicy implements EvictionPolicy {
+
+	private static final int WINDOW = 0;
+
+	private static final int MAIN = 1;
+
+	/**
+	 * The window holds 1% of all items.
+	 */
+	private static final int WINDOW_RATIO = 100;
+
+	private ItemStore items;
+
+	private LRUList window;
+
+	private LRUList main;
+
+	private FrequencySketch sketch;
+
+	private boolean isClockMode;
+
+	/**
+	 * @param items
+	 * @param sketch Shared by all slab classes of the shard.
+	 * @param isClockMode
+	 * @author sunhe
+	 * @date 2015年6月17日 下午2:33:12
+	 */
+	public TinyLFUPolicy(ItemStore items, FrequencySketch sketch, boolean isClockMode) {
+		this.items = items;
+		window = new LRUList(items);
+		main = new LRUList(items);
+		this.sketch = sketch;
+		this.isClockMode = isClockMode;
+	}
+
+	public void insert(int item) {
+		sketch.increment(items.getHash(item));
+		items.setPolicyQueue(item, WINDOW);
+		window.insert(item);
+		while (window.size() > Math.max(1, size() / WINDOW_RATIO)) {
+			int candidate = window.getTail();
+			int victim = main.getTail();
+			window.remove(candidate);
+			items.setPolicyQueue(candidate, MAIN);
+			if (victim == ItemStore.NULL 
+					|| sketch.frequency(items.getHash(candidate)) > sketch.frequency(items.getHash(victim))) {
+				main.insert(candidate);
+			}
+			else {
+				main.append(candidate);
+			}
+		}
+	}
+
+	public void access(int item) {
+		sketch.increment(items.getHash(item));
+		if (isClockMode) {
+			items.setReferenced(item, true);
+		}
+		else {
+			getQueue(item).move(item);
+		}
+	}
+
+	public void remove(int item) {
+		getQueue(item).remove(item);
+	}
+
+	public long size() {
+		return window.size() + main.size();
+	}
+
+	public int evict(int maxVisits, LRUListItemOperator operator) {
+		int visits = 0;
+		boolean shouldContinue = true;
+		while (shouldContinue && visits < maxVisits) {
+			// the window is evicted only if the main queue is empty.
+			int victim = main.size() > 0 ? main.getTail() : window.getTail();
+			if (victim == ItemStore.NULL) {
+				break;
+			}
+			visits++;
+			if (items.isReferenced(victim)) {
+				// second chance.
+				items.setReferenced(victim, false);
+				getQueue(victim).move(victim);
+			}
+			else {
+				shouldContinue = operator.operate(victim);
+			}
+		}
+		return visits;
+	}
+
+	/**
+	 * @return The number of items in the window queue.
+	 * @author sunhe
+	 * @date 2015年6月17日 下午4:20:15
+	 */
+	long getWindowSize() {
+		return window.size();
+	}
+
+	/**
+	 * @param item
+	 * @return The queue where the item is.
+	 * @author sunhe
+	 * @date 2015年6月17日 下午2:41:08
+	 */
+	private LRUList getQueue(int item) {
+		return items.getPolicyQueue(item) == WINDOW ? window : main;
+	}
+
+}
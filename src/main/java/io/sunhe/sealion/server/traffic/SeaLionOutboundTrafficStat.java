@@ -1,5 +1,7 @@
 package io.sunhe.sealion.server.traffic;
 
+import java.util.concurrent.atomic.LongAdder;
+
 import io.netty.buffer.ByteBuf;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.ChannelOutboundHandlerAdapter;
@@ -9,7 +11,8 @@ import io.netty.channel.ChannelHandler.Sharable;
 /**
  * Sample the outbound traffic stat.
  * 
- * Thread-safe.
+ * Thread-safe. The counter is striped, so that the I/O threads 
+ * don't contend with each other.
  * 
  * @author sunhe
  * @date 2015年4月16日 下午4:05:16
@@ -20,7 +23,7 @@ public class SeaLionOutboundTrafficStat extends ChannelOutboundHandlerAdapter {
 	/**
 	 * The traffic data size in byte
 	 */
-	private int trafficStat;
+	private LongAdder trafficStat = new LongAdder();
 	
 	/**
 	 * Increment the traffic stat.
@@ -29,8 +32,8 @@ public class SeaLionOutboundTrafficStat extends ChannelOutboundHandlerAdapter {
 	 * @author sunhe
 	 * @date 2015年4月16日 下午4:04:50
 	 */
-	private synchronized void increTrafficStat(int increment) {
-		trafficStat += increment;
+	private void increTrafficStat(int increment) {
+		trafficStat.add(increment);
 	}
 	
 	/**
@@ -40,8 +43,8 @@ public class SeaLionOutboundTrafficStat extends ChannelOutboundHandlerAdapter {
 	 * @author sunhe
 	 * @date 2015年4月16日 下午4:05:10
 	 */
-	public synchronized int getTrafficStat() {
-		return trafficStat;
+	public int getTrafficStat() {
+		return (int) trafficStat.sum();
 	}
 	
 	/**
@@ -50,8 +53,19 @@ public class SeaLionOutboundTrafficStat extends ChannelOutboundHandlerAdapter {
 	 * @author sunhe
 	 * @date 2015年4月16日 下午4:05:59
 	 */
-	public synchronized void clearTrafficStat() {
-		trafficStat = 0;
+	public void clearTrafficStat() {
+		trafficStat.reset();
+	}
+	
+	/**
+	 * Get the traffic stat and then clear it.
+	 * 
+	 * @return
+	 * @author sunhe
+	 * @date 2015年6月11日 上午10:12:30
+	 */
+	public int getAndClearTrafficStat() {
+		return (int) trafficStat.sumThenReset();
 	}
 	
 	@Override
@@ -8,6 +8,29 @@ package io.sunhe.sealion.util;
  * @date 2015年3月14日 下午4:42:46
  */
 public class Logger {
+	
+	private static volatile boolean isEnabled = true;
+	
+	/**
+	 * Hot paths should check it before building the log entry, 
+	 * so that nothing is allocated when logging is disabled.
+	 * 
+	 * @return
+	 * @author sunhe
+	 * @date 2015年6月18日 下午3:10:25
+	 */
+	public static boolean isEnabled() {
+		return isEnabled;
+	}
+	
+	/**
+	 * @param isEnabled
+	 * @author sunhe
+	 * @date 2015年6月18日 下午3:11:02
+	 */
+	public static void setEnabled(boolean isEnabled) {
+		Logger.isEnabled = isEnabled;
+	}
 
 	/**
 	 * 
@@ -17,6 +40,9 @@ public class Logger {
 	 * @date 2015年3月14日 下午4:52:09
 	 */
 	public static void log(String label, String detail) {
+		if (! isEnabled) {
+			return;
+		}
 		System.out.println("[" + label + "] " + detail);
 	}
 	
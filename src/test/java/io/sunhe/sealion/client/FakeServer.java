@@ -0,0 +1,169 @@
+package io.sunhe.sealion.client;
+
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.group.ChannelGroup;
+import io.netty.channel.group.DefaultChannelGroup;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.util.concurrent.GlobalEventExecutor;
+import io.sunhe.sealion.client.hash.HashBalancer;
+import io.sunhe.sealion.protocol.Commands;
+import io.sunhe.sealion.protocol.SeaLionBinaryResponseEncoder;
+import io.sunhe.sealion.protocol.SeaLionProtocolDetector;
+import io.sunhe.sealion.protocol.SeaLionRequest;
+import io.sunhe.sealion.protocol.SeaLionResponse;
+import io.sunhe.sealion.protocol.SeaLionResponseEncoder;
+import io.sunhe.sealion.protocol.Statuses;
+import io.sunhe.sealion.server.MonitorTask;
+import io.sunhe.sealion.server.SeaLionRequestHandler;
+import io.sunhe.sealion.server.Task;
+import io.sunhe.sealion.server.WorkerTask;
+import io.sunhe.sealion.server.dashboard.BlockingTimeAccumulator;
+import io.sunhe.sealion.server.dashboard.HitRatioCollector;
+import io.sunhe.sealion.server.dashboard.SeaLionServerMonitor;
+import io.sunhe.sealion.server.mem.ShardedMapContainer;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * A server with a single shard owned by an event loop, which may reject the
+ * SETs, and which never responds to the GETs of the keys starting with "held".
+ * It may be restarted on the same port by closing it and constructing another.
+ *
+ * @author sunhe
+ * @date 2015年6月25日 下午3:20:45
+ */
+class FakeServer {
+
+	int port;
+
+	volatile boolean isRejectingSets = false;
+
+	private BlockingQueue<Channel> children = new LinkedBlockingQueue<Channel>();
+
+	private Channel server;
+
+	private Thread monitorThread;
+
+	FakeServer(EventLoopGroup group) throws InterruptedException {
+		this(group, 0);
+	}
+
+	/**
+	 * @param group
+	 * @param port 0 for any free port.
+	 */
+	FakeServer(EventLoopGroup group, int port) throws InterruptedException {
+		final ShardedMapContainer mapContainer = new ShardedMapContainer(1,
+				new BlockingTimeAccumulator(), 16 * 1024 * 1024);
+		List<WorkerTask> workers = new ArrayList<WorkerTask>();
+		HitRatioCollector hitRatioCollector = new HitRatioCollector();
+		workers.add(new WorkerTask(group.next(), mapContainer.getShard(0), hitRatioCollector));
+		ChannelGroup channelGroup = new DefaultChannelGroup(GlobalEventExecutor.INSTANCE);
+		BlockingQueue<Task> monitorTaskQueue = new LinkedBlockingQueue<Task>();
+		final SeaLionRequestHandler requestHandler = new SeaLionRequestHandler(mapContainer, workers,
+				monitorTaskQueue, channelGroup);
+		SeaLionServerMonitor serverMonitor = new SeaLionServerMonitor(workers, mapContainer, channelGroup,
+				null, null, hitRatioCollector, new BlockingTimeAccumulator());
+		monitorThread = new Thread(new MonitorTask(serverMonitor, monitorTaskQueue));
+		monitorThread.setDaemon(true);
+		monitorThread.start();
+		final SeaLionBinaryResponseEncoder binaryResponseEncoder = new SeaLionBinaryResponseEncoder();
+		final SeaLionResponseEncoder responseEncoder = new SeaLionResponseEncoder();
+		ServerBootstrap serverBootstrap = new ServerBootstrap();
+		serverBootstrap.group(group)
+				.channel(NioServerSocketChannel.class)
+				.option(ChannelOption.SO_REUSEADDR, true)
+				.childHandler(new ChannelInitializer<Channel>() {
+
+					@Override
+					protected void initChannel(Channel ch) throws Exception {
+						children.add(ch);
+						ch.pipeline().addLast(new SeaLionProtocolDetector(mapContainer, binaryResponseEncoder))
+								.addLast(new RequestFilter())
+								.addLast(requestHandler)
+								.addLast(responseEncoder);
+					}
+
+				});
+		server = serverBootstrap.bind("127.0.0.1", port).sync().channel();
+		this.port = ((InetSocketAddress) server.localAddress()).getPort();
+	}
+
+	/**
+	 * @param balancer
+	 * @return A key held by this server, which is its primary node.
+	 */
+	String getHeldKey(HashBalancer balancer) {
+		String strSocketAddress = new SeaLionServerNode("127.0.0.1", port).getStrSocketAddress();
+		for (int i = 0; ; i++) {
+			String key = "held" + i;
+			if (balancer.getServerNodeByKey(key).getStrSocketAddress().equals(strSocketAddress)) {
+				return key;
+			}
+		}
+	}
+
+	void closeChildren() {
+		for (Channel child : children) {
+			child.close();
+		}
+	}
+
+	boolean isConnected() {
+		for (Channel child : children) {
+			if (child.isActive()) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Close the server and all its connections, as if it's shut down.
+	 */
+	void close() {
+		server.close().syncUninterruptibly();
+		for (Channel child : children) {
+			child.close().syncUninterruptibly();
+		}
+		monitorThread.interrupt();
+	}
+
+	private class RequestFilter extends ChannelInboundHandlerAdapter {
+
+		@Override
+		public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+			SeaLionRequest request = (SeaLionRequest) msg;
+			if (Commands.GET.equals(request.getCommand()) && request.getKey().startsWith("held")) {
+				request.getData().release();
+				return;
+			}
+			if (isRejectingSets && (Commands.SET.equals(request.getCommand())
+					|| Commands.MSET.equals(request.getCommand()))) {
+				request.getData().release();
+				SeaLionResponse response = new SeaLionResponse();
+				response.setOpaque(request.getOpaque());
+				response.setStatus(Statuses.SERVER_ERROR);
+				response.setDataLen(0);
+				response.setData(Unpooled.EMPTY_BUFFER);
+				// through the response encoder at the tail.
+				ctx.channel().writeAndFlush(response);
+				return;
+			}
+			ctx.fireChannelRead(msg);
+		}
+
+	}
+
+}
@@ -0,0 +1,81 @@
+package io.sunhe.sealion.client;
+
+import static org.junit.Assert.*;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.util.HashedWheelTimer;
+import io.sunhe.sealion.protocol.SeaLionResponse;
+import io.sunhe.sealion.protocol.Statuses;
+
+import java.nio.channels.ClosedChannelException;
+import java.util.concurrent.TimeoutException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * 
+ * @author sunhe
+ * @date 2015年6月20日 下午3:10:26
+ */
+public class InFlightTableTest {
+	
+	private HashedWheelTimer timer;
+	
+	private EmbeddedChannel channel;
+	
+	@Before
+	public void setUp() {
+		timer = new HashedWheelTimer();
+		// netty 4.0 refuses an embedded channel without any handler.
+		channel = new EmbeddedChannel(new ChannelInboundHandlerAdapter());
+	}
+	
+	@After
+	public void tearDown() {
+		if (timer != null) {
+			timer.stop();
+		}
+		if (channel != null) {
+			channel.finish();
+		}
+	}
+	
+	@Test
+	public void testComplete() {
+		InFlightTable table = new InFlightTable(channel, timer, 5);
+		InFlightTable.InFlightRequest first = table.register();
+		InFlightTable.InFlightRequest second = table.register();
+		assertTrue(second.getOpaque() > first.getOpaque());
+		assertEquals(2, table.size());
+		
+		SeaLionResponse response = new SeaLionResponse();
+		response.setStatus(Statuses.SUCCESS);
+		// out of order.
+		assertTrue(table.complete(second.getOpaque(), response));
+		assertSame(response, second.getPromise().getNow());
+		assertFalse(first.getPromise().isDone());
+		// completed only once.
+		assertFalse(table.complete(second.getOpaque(), response));
+		
+		table.failAll(new ClosedChannelException());
+		assertTrue(first.getPromise().cause() instanceof ClosedChannelException);
+		assertEquals(0, table.size());
+	}
+	
+	@Test
+	public void testTimeout() throws InterruptedException {
+		InFlightTable table = new InFlightTable(channel, timer, 1);
+		InFlightTable.InFlightRequest request = table.register();
+		// the embedded event loop always claims to be the current thread, so await() is refused.
+		while (! request.getPromise().isDone()) {
+			Thread.sleep(100);
+		}
+		assertTrue(request.getPromise().cause() instanceof TimeoutException);
+		assertEquals(0, table.size());
+		// the late response is dropped.
+		assertFalse(table.complete(request.getOpaque(), new SeaLionResponse()));
+	}
+
+}
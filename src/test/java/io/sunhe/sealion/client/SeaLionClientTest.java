@@ -1,8 +1,26 @@
 package io.sunhe.sealion.client;
 
 import static org.junit.Assert.*;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.util.concurrent.Future;
+import io.sunhe.sealion.protocol.SeaLionResponse;
+import io.sunhe.sealion.protocol.Statuses;
 import io.sunhe.sealion.util.Charsets;
 
+import java.net.InetSocketAddress;
+import java.nio.channels.ClosedChannelException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
 import org.junit.Ignore;
 import org.junit.Test;
 
@@ -27,5 +45,93 @@ public class SeaLionClientTest {
 		Thread.sleep(1000 * 60);
 		assertNull(client.getBytes(str1));
 	}
+	
+	/**
+	 * Many requests in flight from a single thread, against an in-process server.
+	 */
+	@Test
+	public void testAsync() throws InterruptedException {
+		EventLoopGroup group = new NioEventLoopGroup(1);
+		SeaLionClient client = null;
+		try {
+			FakeServer server = new FakeServer(group);
+			client = new SeaLionClient("127.0.0.1", server.port);
+			List<Future<SeaLionResponse>> futures = new ArrayList<Future<SeaLionResponse>>();
+			for (int i = 0; i < 10000; i++) {
+				futures.add(client.setAsync("async" + i, ("value" + i).getBytes(Charsets.UTF_8), 0));
+			}
+			for (Future<SeaLionResponse> future : futures) {
+				assertEquals(Statuses.SUCCESS, future.sync().getNow().getStatus());
+			}
+			SeaLionResponse response = client.getAsync("async1").sync().getNow();
+			assertEquals("value1", response.getData().toString(Charsets.UTF_8));
+			String cas = client.casAsync("async1").sync().getNow().getCas();
+			assertNotNull(cas);
+			assertEquals(Statuses.SUCCESS, client.getAsync("async1", cas).sync().getNow().getStatus());
+			assertEquals(Statuses.SUCCESS, client.deleteAsync("async1").sync().getNow().getStatus());
+			assertEquals(Statuses.KEY_NONEXISTS, client.casAsync("async1").sync().getNow().getStatus());
+		}
+		finally {
+			if (client != null) {
+				client.close();
+			}
+			// never waited for, see SeaLionReconnectorTest.
+			group.shutdownGracefully();
+		}
+	}
+
+	/**
+	 * Once the only connection is broken, the node is removed from the ring, and 
+	 * the requests fail with ClosedChannelException instead of throwing.
+	 */
+	@Test
+	public void testWithoutConnection() throws Exception {
+		EventLoopGroup group = new NioEventLoopGroup(1);
+		final BlockingQueue<Channel> accepted = new LinkedBlockingQueue<Channel>();
+		SeaLionClient client = null;
+		try {
+			ServerBootstrap serverBootstrap = new ServerBootstrap();
+			serverBootstrap.group(group)
+					.channel(NioServerSocketChannel.class)
+					.childHandler(new ChannelInitializer<Channel>() {
+
+						@Override
+						protected void initChannel(Channel ch) throws Exception {
+							accepted.add(ch);
+						}
+						
+					});
+			Channel server = serverBootstrap.bind("127.0.0.1", 0).sync().channel();
+			int port = ((InetSocketAddress) server.localAddress()).getPort();
+			client = new SeaLionClient("127.0.0.1", port);
+			client.setReconnectPolicy(60000, 60000, 60000);
+			accepted.poll(5, TimeUnit.SECONDS).close();
+			String strSocketAddress = new SeaLionServerNode("127.0.0.1", port).getStrSocketAddress();
+			long deadline = System.currentTimeMillis() + 5000;
+			while (client.setServerNodeWeight(strSocketAddress, 1)) {
+				assertTrue(System.currentTimeMillis() < deadline);
+				Thread.sleep(10);
+			}
+			
+			Future<SeaLionResponse> future = client.getAsync("key");
+			assertTrue(future.isDone());
+			assertTrue(future.cause() instanceof ClosedChannelException);
+			assertNull(client.getString("key"));
+			// the replicas of the key are looked up on an empty ring.
+			client.setNumOfReplicas(1);
+			assertNull(client.getString("key"));
+			assertFalse(client.setString("key", "value", 0));
+			ChannelFuture writeFuture = client.setStringUnsafe("key", "value", 0);
+			assertTrue(writeFuture.isDone());
+			assertTrue(writeFuture.cause() instanceof ClosedChannelException);
+			assertTrue(client.deleteValueUnsafe("key").cause() instanceof ClosedChannelException);
+		}
+		finally {
+			if (client != null) {
+				client.close();
+			}
+			group.shutdownGracefully();
+		}
+	}
 
 }
@@ -0,0 +1,84 @@
+package io.sunhe.sealion.client;
+
+import static org.junit.Assert.*;
+import io.sunhe.sealion.util.TimeStampFormatter;
+
+import org.junit.Test;
+
+/**
+ * 
+ * @author sunhe
+ * @date 2015年6月24日 上午10:40:15
+ */
+public class SeaLionNearCacheTest {
+
+	@Test
+	public void testFresh() {
+		SeaLionNearCache cache = new SeaLionNearCache(1024, 60000);
+		assertNull(cache.get("key"));
+		cache.put("key", new byte[] {1, 2, 3}, "7", 0);
+		SeaLionNearCache.Entry entry = cache.get("key");
+		assertTrue(entry.isFresh());
+		assertArrayEquals(new byte[] {1, 2, 3}, entry.getValue());
+		assertEquals(1, cache.getNumOfHits());
+		assertEquals(1, cache.getNumOfMisses());
+		
+		cache.invalidate("key");
+		assertNull(cache.get("key"));
+		assertEquals(0, cache.getBytes());
+	}
+	
+	/**
+	 * A stale value is served only if its CAS is the same.
+	 */
+	@Test
+	public void testRevalidate() {
+		SeaLionNearCache cache = new SeaLionNearCache(1024, 0);
+		cache.put("key", new byte[] {1}, "7", 0);
+		SeaLionNearCache.Entry entry = cache.get("key");
+		assertFalse(entry.isFresh());
+		assertTrue(cache.revalidate("key", entry, "7"));
+		assertEquals(1, cache.getNumOfRevalidations());
+		
+		assertFalse(cache.revalidate("key", cache.get("key"), "8"));
+		assertNull(cache.get("key"));
+		cache.put("key", new byte[] {1}, "7", 0);
+		assertFalse(cache.revalidate("key", cache.get("key"), null));
+		assertNull(cache.get("key"));
+		assertEquals(0, cache.getNumOfHits());
+	}
+	
+	@Test
+	public void testExpiration() {
+		SeaLionNearCache cache = new SeaLionNearCache(1024, 60000);
+		cache.put("expired", new byte[] {1}, "7", TimeStampFormatter.getCurrentTimeStamp() - 1);
+		assertNull(cache.get("expired"));
+		cache.put("key", new byte[] {1}, "7", TimeStampFormatter.getCurrentTimeStamp() + 60000);
+		assertNotNull(cache.get("key"));
+	}
+	
+	/**
+	 * The least recently used values are evicted once the cache is full.
+	 */
+	@Test
+	public void testEviction() {
+		SeaLionNearCache cache = new SeaLionNearCache(3 * (64 + 2 + 100), 60000);
+		cache.put("a", new byte[100], "1", 0);
+		cache.put("b", new byte[100], "2", 0);
+		cache.put("c", new byte[100], "3", 0);
+		assertEquals(3 * (64 + 2 + 100), cache.getBytes());
+		cache.get("a");
+		cache.put("d", new byte[100], "4", 0);
+		assertEquals(1, cache.getNumOfEvictions());
+		assertNull(cache.get("b"));
+		assertNotNull(cache.get("a"));
+		assertNotNull(cache.get("c"));
+		assertNotNull(cache.get("d"));
+		
+		// too large to be cached at all.
+		cache.put("e", new byte[1000], "5", 0);
+		assertNull(cache.get("e"));
+		assertEquals(3 * (64 + 2 + 100), cache.getBytes());
+	}
+
+}
@@ -0,0 +1,117 @@
+package io.sunhe.sealion.client;
+
+import static org.junit.Assert.*;
+import io.netty.bootstrap.Bootstrap;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import io.netty.util.HashedWheelTimer;
+import io.sunhe.sealion.client.hash.HashBalancer;
+
+import java.net.InetSocketAddress;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+/**
+ * 
+ * @author sunhe
+ * @date 2015年6月23日 下午3:30:20
+ */
+public class SeaLionReconnectorTest {
+	
+	private static final long TIMEOUT = 5000;
+	
+	private volatile SeaLionReconnector reconnector;
+
+	/**
+	 * A node whose connection is broken by the server is removed from the ring, 
+	 * reconnected, and re-admitted after the hold-down.
+	 */
+	@Test
+	public void testReconnect() throws Exception {
+		EventLoopGroup group = new NioEventLoopGroup(1);
+		HashedWheelTimer timer = new HashedWheelTimer(10, TimeUnit.MILLISECONDS);
+		final BlockingQueue<Channel> accepted = new LinkedBlockingQueue<Channel>();
+		try {
+			ServerBootstrap serverBootstrap = new ServerBootstrap();
+			serverBootstrap.group(group)
+					.channel(NioServerSocketChannel.class)
+					.childHandler(new ChannelInitializer<Channel>() {
+
+						@Override
+						protected void initChannel(Channel ch) throws Exception {
+							accepted.add(ch);
+						}
+						
+					});
+			Channel server = serverBootstrap.bind("127.0.0.1", 0).sync().channel();
+			int port = ((InetSocketAddress) server.localAddress()).getPort();
+			
+			Bootstrap bootstrap = new Bootstrap();
+			bootstrap.group(group)
+					.channel(NioSocketChannel.class)
+					.handler(new ChannelInboundHandlerAdapter() {
+						
+						@Override
+						public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+							reconnector.channelInactive(ctx.channel());
+						}
+						
+						@Override
+						public boolean isSharable() {
+							return true;
+						}
+						
+					});
+			SeaLionServerNode node = new SeaLionServerNode("127.0.0.1", port);
+			node.addChannel(bootstrap.connect(node.getSocketAddress()).sync().channel());
+			ConcurrentHashMap<String, SeaLionServerNode> nodes = new ConcurrentHashMap<String, SeaLionServerNode>();
+			nodes.put(node.getStrSocketAddress(), node);
+			HashBalancer balancer = new HashBalancer(nodes);
+			reconnector = new SeaLionReconnector(bootstrap, timer, balancer, nodes, 1);
+			reconnector.setPolicy(10, 100, 500);
+			reconnector.start();
+			
+			accepted.poll(TIMEOUT, TimeUnit.MILLISECONDS).close();
+			long deadline = System.currentTimeMillis() + TIMEOUT;
+			while (! balancer.getServerNodes().isEmpty() && System.currentTimeMillis() < deadline) {
+				Thread.sleep(10);
+			}
+			assertTrue(balancer.getServerNodes().isEmpty());
+			
+			assertNotNull(accepted.poll(TIMEOUT, TimeUnit.MILLISECONDS));
+			while (node.getChannels().length == 0 && System.currentTimeMillis() < deadline) {
+				Thread.sleep(10);
+			}
+			assertEquals(1, node.getChannels().length);
+			// held down.
+			assertTrue(balancer.getServerNodes().isEmpty());
+			
+			deadline = System.currentTimeMillis() + TIMEOUT;
+			// the node is put into the map before the selector is rebuilt, so wait for the latter.
+			while (balancer.getServerNodeByKey("key") == null && System.currentTimeMillis() < deadline) {
+				Thread.sleep(10);
+			}
+			assertSame(node, balancer.getServerNodeByKey("key"));
+			
+			reconnector.close();
+			server.close().sync();
+		} finally {
+			// not waited for, netty 4.0 may lose the termination of the group, 
+			// which is notified through the global event executor.
+			group.shutdownGracefully();
+			timer.stop();
+		}
+	}
+
+}
@@ -0,0 +1,285 @@
+package io.sunhe.sealion.client;
+
+import static org.junit.Assert.*;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.util.concurrent.Future;
+import io.sunhe.sealion.client.hash.HashBalancer;
+import io.sunhe.sealion.protocol.SeaLionResponse;
+import io.sunhe.sealion.util.Charsets;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Every key is replicated from its primary node to the other one of two
+ * in-process servers.
+ *
+ * @author sunhe
+ * @date 2015年6月25日 下午3:10:20
+ */
+public class SeaLionReplicationTest {
+
+	private static final long TIMEOUT = 5000;
+
+	/**
+	 * The reads of a key, more than enough to hit both replicas.
+	 */
+	private static final int NUM_OF_READS = 20;
+
+	private EventLoopGroup group;
+
+	private FakeServer primary;
+
+	private FakeServer successor;
+
+	private SeaLionClient client;
+
+	/**
+	 * Connected to the successor only, to see its replicas.
+	 */
+	private SeaLionClient successorClient;
+
+	private HashBalancer balancer;
+
+	private String key;
+
+	@Before
+	public void setUp() throws InterruptedException {
+		group = new NioEventLoopGroup(2);
+		FakeServer first = new FakeServer(group);
+		FakeServer second = new FakeServer(group);
+		SeaLionServerNode firstNode = new SeaLionServerNode("127.0.0.1", first.port);
+		SeaLionServerNode secondNode = new SeaLionServerNode("127.0.0.1", second.port);
+		ConcurrentHashMap<String, SeaLionServerNode> nodes = new ConcurrentHashMap<String, SeaLionServerNode>();
+		nodes.put(firstNode.getStrSocketAddress(), firstNode);
+		nodes.put(secondNode.getStrSocketAddress(), secondNode);
+		// the client places the keys the same way by default.
+		balancer = new HashBalancer(nodes);
+		key = "replicated";
+		if (balancer.getServerNodeByKey(key).equals(firstNode)) {
+			primary = first;
+			successor = second;
+		}
+		else {
+			primary = second;
+			successor = first;
+		}
+		client = new SeaLionClient(firstNode.getStrSocketAddress() + " " + secondNode.getStrSocketAddress());
+		client.setNumOfReplicas(1);
+		successorClient = new SeaLionClient("127.0.0.1", successor.port);
+	}
+
+	@After
+	public void tearDown() {
+		if (client != null) {
+			client.close();
+		}
+		if (successorClient != null) {
+			successorClient.close();
+		}
+		if (group != null) {
+			group.shutdownGracefully();
+		}
+	}
+
+	/**
+	 * Keep a request in flight on the primary, so that the reads go to the successor
+	 * unless it's skipped.
+	 */
+	private void holdPrimary() {
+		client.getAsync(primary.getHeldKey(balancer));
+	}
+
+	/**
+	 * The writes are applied to both replicas, and the reads served by the
+	 * successor.
+	 */
+	@Test
+	public void testReplicate() {
+		assertTrue(client.setString(key, "first", 0));
+		assertEquals("first", successorClient.getString(key));
+		holdPrimary();
+		successorClient.setString(key, "successor", 0);
+		assertEquals("successor", client.getString(key));
+
+		assertTrue(client.setString(key, "second", 0));
+		assertEquals("second", successorClient.getString(key));
+		for (int i = 0; i < NUM_OF_READS; i++) {
+			assertEquals("second", client.getString(key));
+		}
+
+		assertTrue(client.deleteValue(key));
+		assertNull(successorClient.getString(key));
+		for (int i = 0; i < NUM_OF_READS; i++) {
+			assertNull(client.getString(key));
+		}
+	}
+
+	/**
+	 * A successor rejecting a replicated SET has the key deleted, instead of
+	 * serving its former value.
+	 */
+	@Test
+	public void testRejectedBySuccessor() {
+		assertTrue(client.setString(key, "first", 0));
+		assertEquals("first", successorClient.getString(key));
+		successor.isRejectingSets = true;
+		assertTrue(client.setString(key, "second", 0));
+		assertNull(successorClient.getString(key));
+		holdPrimary();
+		for (int i = 0; i < NUM_OF_READS; i++) {
+			assertEquals("second", client.getString(key));
+		}
+
+		// the same for the keys of MSET.
+		successor.isRejectingSets = false;
+		assertTrue(client.setString(key, "first", 0));
+		successor.isRejectingSets = true;
+		Map<String, byte[]> keyValues = new HashMap<String, byte[]>();
+		keyValues.put(key, "second".getBytes(Charsets.UTF_8));
+		assertTrue(client.setMultiBytes(keyValues, 0).contains(key));
+		assertNull(successorClient.getString(key));
+		for (int i = 0; i < NUM_OF_READS; i++) {
+			assertEquals("second", client.getString(key));
+		}
+	}
+
+	/**
+	 * A successor that has been off the ring missed the writes meanwhile, so it's
+	 * no longer read from.
+	 */
+	@Test
+	public void testReadmitted() throws InterruptedException {
+		client.setReconnectPolicy(10, 10, 10);
+		assertTrue(client.setString(key, "first", 0));
+		String strSocketAddress = new SeaLionServerNode("127.0.0.1", successor.port).getStrSocketAddress();
+		successor.closeChildren();
+		long deadline = System.currentTimeMillis() + TIMEOUT;
+		while (client.setServerNodeWeight(strSocketAddress, 1)) {
+			assertTrue(System.currentTimeMillis() < deadline);
+			Thread.sleep(10);
+		}
+		// missed by the successor, which is off the ring.
+		assertTrue(client.setString(key, "second", 0));
+		while (! client.setServerNodeWeight(strSocketAddress, 1)) {
+			assertTrue(System.currentTimeMillis() < deadline);
+			Thread.sleep(10);
+		}
+		// its own connections were closed as well.
+		successorClient.close();
+		successorClient = new SeaLionClient("127.0.0.1", successor.port);
+		assertEquals("first", successorClient.getString(key));
+		holdPrimary();
+		for (int i = 0; i < NUM_OF_READS; i++) {
+			assertEquals("second", client.getString(key));
+		}
+	}
+
+	/**
+	 * Concurrent writers of a key, synchronous and asynchronous, leave the successor 
+	 * with the same value as the primary.
+	 */
+	@Test
+	public void testConcurrentWriters() throws Exception {
+		final int numOfThreads = 4;
+		final int numOfWrites = 50;
+		SeaLionClient primaryClient = new SeaLionClient("127.0.0.1", primary.port);
+		try {
+			for (int round = 0; round < 20; round++) {
+				final CountDownLatch startLatch = new CountDownLatch(1);
+				List<Thread> threads = new ArrayList<Thread>();
+				final List<Future<SeaLionResponse>> futures = 
+						Collections.synchronizedList(new ArrayList<Future<SeaLionResponse>>());
+				for (int i = 0; i < numOfThreads; i++) {
+					final int id = i;
+					Thread thread = new Thread() {
+						
+						@Override
+						public void run() {
+							try {
+								startLatch.await();
+							}
+							catch (InterruptedException e) {
+								return;
+							}
+							for (int j = 0; j < numOfWrites; j++) {
+								String value = id + ":" + j;
+								if (id % 2 == 0) {
+									client.setString(key, value, 0);
+								}
+								else {
+									futures.add(client.setAsync(key, value.getBytes(Charsets.UTF_8), 0));
+								}
+							}
+						}
+						
+					};
+					threads.add(thread);
+					thread.start();
+				}
+				startLatch.countDown();
+				for (Thread thread : threads) {
+					thread.join();
+				}
+				for (Future<SeaLionResponse> future : futures) {
+					future.sync();
+				}
+				String value = primaryClient.getString(key);
+				assertNotNull(value);
+				long deadline = System.currentTimeMillis() + TIMEOUT;
+				// the last asynchronous write may still be replicating.
+				while (! value.equals(successorClient.getString(key))) {
+					assertTrue("Round " + round, System.currentTimeMillis() < deadline);
+					Thread.sleep(10);
+				}
+			}
+		}
+		finally {
+			primaryClient.close();
+		}
+	}
+
+	/**
+	 * If only the restarted nodes are re-admitted, a successor that kept its memory
+	 * stays off the ring, though reconnected, until it's restarted.
+	 */
+	@Test
+	public void testReadmittedOnlyIfRestarted() throws InterruptedException {
+		client.setReconnectPolicy(10, 10, 10);
+		client.setReadmitOnlyRestarted(true);
+		assertTrue(client.setString(key, "first", 0));
+		String strSocketAddress = new SeaLionServerNode("127.0.0.1", successor.port).getStrSocketAddress();
+		// only the connection of the client is left.
+		successorClient.close();
+		successorClient = null;
+		successor.closeChildren();
+		long deadline = System.currentTimeMillis() + TIMEOUT;
+		while (client.setServerNodeWeight(strSocketAddress, 1) || ! successor.isConnected()) {
+			assertTrue(System.currentTimeMillis() < deadline);
+			Thread.sleep(10);
+		}
+		// many times the hold-down.
+		Thread.sleep(200);
+		assertFalse(client.setServerNodeWeight(strSocketAddress, 1));
+
+		successor.close();
+		successor = new FakeServer(group, successor.port);
+		while (! client.setServerNodeWeight(strSocketAddress, 1)) {
+			assertTrue(System.currentTimeMillis() < deadline);
+			Thread.sleep(10);
+		}
+		successorClient = new SeaLionClient("127.0.0.1", successor.port);
+		assertNull(successorClient.getString(key));
+	}
+
+}
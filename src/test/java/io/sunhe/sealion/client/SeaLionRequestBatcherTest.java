@@ -0,0 +1,83 @@
+package io.sunhe.sealion.client;
+
+import static org.junit.Assert.*;
+import io.netty.channel.embedded.EmbeddedChannel;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+/**
+ * 
+ * @author sunhe
+ * @date 2015年6月21日 上午11:05:40
+ */
+public class SeaLionRequestBatcherTest {
+
+	/**
+	 * The flushes of the requests written in the meantime are coalesced.
+	 */
+	@Test
+	public void testCoalesce() {
+		SeaLionRequestBatcher batcher = new SeaLionRequestBatcher(0, 64);
+		EmbeddedChannel channel = new EmbeddedChannel(batcher);
+		for (int i = 0; i < 3; i++) {
+			channel.writeAndFlush("request" + i);
+		}
+		assertTrue(channel.outboundMessages().isEmpty());
+		channel.runPendingTasks();
+		assertEquals(3, channel.outboundMessages().size());
+		assertEquals(1, batcher.getNumOfFlushes());
+		assertEquals(3, batcher.getNumOfFlushedRequests());
+		channel.finish();
+	}
+	
+	/**
+	 * A full batch is flushed at once.
+	 */
+	@Test
+	public void testFullBatch() {
+		SeaLionRequestBatcher batcher = new SeaLionRequestBatcher(0, 2);
+		EmbeddedChannel channel = new EmbeddedChannel(batcher);
+		channel.writeAndFlush("request0");
+		assertTrue(channel.outboundMessages().isEmpty());
+		channel.writeAndFlush("request1");
+		assertEquals(2, channel.outboundMessages().size());
+		// nothing left for the scheduled flush.
+		channel.runPendingTasks();
+		assertEquals(1, batcher.getNumOfFlushes());
+		channel.finish();
+	}
+
+	/**
+	 * With a window, the requests written until it's over are flushed together by
+	 * the scheduled flush, and nothing before.
+	 */
+	@Test
+	public void testWindow() throws InterruptedException {
+		long window = TimeUnit.MILLISECONDS.toMicros(50);
+		SeaLionRequestBatcher batcher = new SeaLionRequestBatcher(window, 64);
+		EmbeddedChannel channel = new EmbeddedChannel(batcher);
+		long start = System.nanoTime();
+		channel.writeAndFlush("request0");
+		channel.runPendingTasks();
+		assertTrue(channel.outboundMessages().isEmpty());
+		channel.writeAndFlush("request1");
+		channel.writeAndFlush("request2");
+		long delay;
+		while ((delay = channel.runScheduledPendingTasks()) > 0) {
+			assertTrue(channel.outboundMessages().isEmpty());
+			assertEquals(0, batcher.getNumOfFlushes());
+			TimeUnit.NANOSECONDS.sleep(delay);
+		}
+		assertTrue(System.nanoTime() - start >= TimeUnit.MICROSECONDS.toNanos(window));
+		assertEquals(3, channel.outboundMessages().size());
+		assertEquals(1, batcher.getNumOfFlushes());
+		assertEquals(3, batcher.getNumOfFlushedRequests());
+		// no other flush is left scheduled.
+		assertEquals(-1, channel.runScheduledPendingTasks());
+		assertEquals(1, batcher.getNumOfFlushes());
+		channel.finish();
+	}
+
+}
@@ -0,0 +1,50 @@
+package io.sunhe.sealion.client;
+
+import static org.junit.Assert.*;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.util.HashedWheelTimer;
+
+import org.junit.Test;
+
+/**
+ * 
+ * @author sunhe
+ * @date 2015年6月20日 下午4:40:52
+ */
+public class SeaLionServerNodeTest {
+	
+	private Channel newChannel(HashedWheelTimer timer) {
+		Channel channel = new EmbeddedChannel(new ChannelInboundHandlerAdapter());
+		channel.attr(InFlightTable.KEY).set(new InFlightTable(channel, timer, 5));
+		return channel;
+	}
+
+	/**
+	 * The channel with the fewest requests in flight is selected.
+	 */
+	@Test
+	public void testLeastInFlight() {
+		HashedWheelTimer timer = new HashedWheelTimer();
+		SeaLionServerNode node = new SeaLionServerNode("127.0.0.1", 1113);
+		Channel first = newChannel(timer);
+		Channel second = newChannel(timer);
+		node.addChannel(first);
+		node.addChannel(second);
+		assertEquals(2, node.getChannels().length);
+		
+		first.attr(InFlightTable.KEY).get().register();
+		assertSame(second, node.getChannel());
+		second.attr(InFlightTable.KEY).get().register();
+		second.attr(InFlightTable.KEY).get().register();
+		assertSame(first, node.getChannel());
+		
+		assertEquals(1, node.removeChannel(first));
+		assertSame(second, node.getChannel());
+		assertEquals(0, node.removeChannel(second));
+		assertNull(node.getChannel());
+		timer.stop();
+	}
+
+}
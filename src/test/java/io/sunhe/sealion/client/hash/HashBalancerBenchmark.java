@@ -0,0 +1,140 @@
+package io.sunhe.sealion.client.hash;
+
+import io.sunhe.sealion.client.SeaLionServerNode;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Measure looking up the node of a key with every hash algorithm and node selector.
+ * 
+ * Run the main method, which prints the share of the keys of every node first, 
+ * to compare the evenness of the distributions, and then benchmarks the lookup.
+ * 
+ * @author sunhe
+ * @date 2015年6月22日 上午11:20:48
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class HashBalancerBenchmark {
+	
+	private static final int NUM_OF_NODES = 8;
+	
+	private static final int NUM_OF_KEYS = 1024;
+	
+	@Param({"md5", "murmur3", "xxhash"})
+	private String algorithm;
+	
+	@Param({"ketama", "jump", "rendezvous"})
+	private String selector;
+	
+	private HashBalancer balancer;
+	
+	private String[] keys = new String[NUM_OF_KEYS];
+	
+	private int index = 0;
+	
+	@Setup
+	public void setup() {
+		balancer = new HashBalancer(newNodes(), newAlgorithm(algorithm), selector);
+		for (int i = 0; i < NUM_OF_KEYS; i++) {
+			keys[i] = "user:" + (1234567890 + i);
+		}
+	}
+	
+	@Benchmark
+	public SeaLionServerNode getServerNodeByKey() {
+		index = (index + 1) & (NUM_OF_KEYS - 1);
+		return balancer.getServerNodeByKey(keys[index]);
+	}
+	
+	private static ConcurrentHashMap<String, SeaLionServerNode> newNodes() {
+		ConcurrentHashMap<String, SeaLionServerNode> nodes = new ConcurrentHashMap<String, SeaLionServerNode>();
+		for (int i = 0; i < NUM_OF_NODES; i++) {
+			SeaLionServerNode node = new SeaLionServerNode("10.0.0." + (i + 1), 1113);
+			nodes.put(node.getStrSocketAddress(), node);
+		}
+		return nodes;
+	}
+	
+	private static KeyHashAlgorithm newAlgorithm(String name) {
+		if ("md5".equals(name)) {
+			return new Md5HashAlgorithm();
+		}
+		else if ("murmur3".equals(name)) {
+			return new Murmur3HashAlgorithm();
+		}
+		else {
+			return new XxHashAlgorithm();
+		}
+	}
+	
+	/**
+	 * Print the share of the keys of every node, and the relative standard deviation.
+	 * 
+	 * @param name
+	 * @author sunhe
+	 * @date 2015年6月22日 上午11:30:15
+	 */
+	private static void printDistribution(String name) {
+		ConcurrentHashMap<String, SeaLionServerNode> nodes = newNodes();
+		HashBalancer balancer = new HashBalancer(nodes, newAlgorithm(name));
+		int numOfKeys = 1000000;
+		ConcurrentHashMap<SeaLionServerNode, Integer> counts = new ConcurrentHashMap<SeaLionServerNode, Integer>();
+		for (SeaLionServerNode node : nodes.values()) {
+			counts.put(node, 0);
+		}
+		for (int i = 0; i < numOfKeys; i++) {
+			SeaLionServerNode node = balancer.getServerNodeByKey("user:" + i);
+			counts.put(node, counts.get(node) + 1);
+		}
+		double mean = (double) numOfKeys / nodes.size();
+		double variance = 0;
+		StringBuilder shares = new StringBuilder();
+		for (SeaLionServerNode node : nodes.values()) {
+			int count = counts.get(node);
+			variance += (count - mean) * (count - mean) / nodes.size();
+			shares.append(String.format(" %.2f%%", 100.0 * count / numOfKeys));
+		}
+		System.out.println(String.format("%-8s relative stddev %.2f%%, shares:%s", 
+				name, 100 * Math.sqrt(variance) / mean, shares));
+	}
+	
+	public static void main(String[] args) throws RunnerException {
+		printDistribution("md5");
+		printDistribution("murmur3");
+		printDistribution("xxhash");
+		// with the sample keys of HashBalancer.getKeyShares.
+		System.out.println(new HashBalancer(newNodes(), new XxHashAlgorithm(), 
+				HashBalancer.SELECTOR_JUMP).getSkewReport(1000000));
+		System.out.println(new HashBalancer(newNodes(), new XxHashAlgorithm(), 
+				HashBalancer.SELECTOR_RENDEZVOUS).getSkewReport(1000000));
+		Options options = new OptionsBuilder()
+				.include(HashBalancerBenchmark.class.getSimpleName())
+				.addProfiler(GCProfiler.class)
+				.build();
+		new Runner(options).run();
+	}
+
+}
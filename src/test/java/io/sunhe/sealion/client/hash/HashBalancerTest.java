@@ -0,0 +1,215 @@
+package io.sunhe.sealion.client.hash;
+
+import static org.junit.Assert.*;
+import io.sunhe.sealion.client.SeaLionServerNode;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.junit.Test;
+
+/**
+ * 
+ * @author sunhe
+ * @date 2015年6月21日 下午2:40:15
+ */
+public class HashBalancerTest {
+	
+	private ConcurrentHashMap<String, SeaLionServerNode> newNodes(int n) {
+		ConcurrentHashMap<String, SeaLionServerNode> nodes = new ConcurrentHashMap<String, SeaLionServerNode>();
+		for (int i = 0; i < n; i++) {
+			SeaLionServerNode node = new SeaLionServerNode("127.0.0.1", 1113 + i);
+			nodes.put(node.getStrSocketAddress(), node);
+		}
+		return nodes;
+	}
+
+	@Test
+	public void testRing() {
+		SeaLionServerNode a = new SeaLionServerNode("127.0.0.1", 1);
+		SeaLionServerNode b = new SeaLionServerNode("127.0.0.1", 2);
+		SeaLionServerNode c = new SeaLionServerNode("127.0.0.1", 3);
+		int[] points = {100, -50, 100, 7};
+		SeaLionServerNode[] owners = {a, b, c, a};
+		HashRing ring = new HashRing(points, owners, points.length);
+		assertEquals(3, ring.size());
+		
+		TreeMap<Integer, SeaLionServerNode> reference = new TreeMap<Integer, SeaLionServerNode>();
+		for (int i = 0; i < points.length; i++) {
+			reference.put(points[i], owners[i]);
+		}
+		int[] hashes = {Integer.MIN_VALUE, -51, -50, -49, 7, 8, 99, 100, 101, Integer.MAX_VALUE};
+		for (int hash : hashes) {
+			Map.Entry<Integer, SeaLionServerNode> entry = reference.ceilingEntry(hash);
+			if (entry == null) {
+				entry = reference.firstEntry();
+			}
+			assertSame("hash " + hash, entry.getValue(), ring.select(hash));
+		}
+		// the later of the duplicate points wins.
+		assertSame(c, ring.select(100));
+	}
+	
+	/**
+	 * Only the keys of the removed node move.
+	 */
+	/**
+	 * Unless another hash is chosen, the keys stay where the MD5 ketama placement puts them.
+	 */
+	@Test
+	public void testDefaultHash() {
+		HashBalancer balancer = new HashBalancer(newNodes(4));
+		HashBalancer md5Balancer = new HashBalancer(newNodes(4), new Md5HashAlgorithm());
+		for (int i = 0; i < 1000; i++) {
+			assertEquals(md5Balancer.getServerNodeByKey("key" + i), balancer.getServerNodeByKey("key" + i));
+		}
+	}
+	
+	@Test
+	public void testRemoveServerNode() {
+		ConcurrentHashMap<String, SeaLionServerNode> nodes = newNodes(4);
+		HashBalancer balancer = new HashBalancer(nodes);
+		Map<String, SeaLionServerNode> before = new HashMap<String, SeaLionServerNode>();
+		for (int i = 0; i < 1000; i++) {
+			before.put("key" + i, balancer.getServerNodeByKey("key" + i));
+		}
+		SeaLionServerNode removed = before.get("key0");
+		assertTrue(balancer.removeServerNode(removed));
+		for (Map.Entry<String, SeaLionServerNode> entry : before.entrySet()) {
+			SeaLionServerNode node = balancer.getServerNodeByKey(entry.getKey());
+			assertNotSame(removed, node);
+			if (entry.getValue() != removed) {
+				assertSame(entry.getValue(), node);
+			}
+		}
+		assertTrue(balancer.addServerNode(removed));
+		for (Map.Entry<String, SeaLionServerNode> entry : before.entrySet()) {
+			assertSame(entry.getValue(), balancer.getServerNodeByKey(entry.getKey()));
+		}
+	}
+
+	/**
+	 * A key either stays or moves to the new bucket when a bucket is appended.
+	 */
+	@Test
+	public void testJump() {
+		int[] counts = new int[10];
+		for (long key = 0; key < 100000; key++) {
+			long h = key * 0x9E3779B97F4A7C15L;
+			int bucket = JumpNodeSelector.jump(h, 10);
+			counts[bucket]++;
+			int next = JumpNodeSelector.jump(h, 11);
+			assertTrue(next == bucket || next == 10);
+		}
+		for (int count : counts) {
+			assertEquals(0.1, count / 100000.0, 0.01);
+		}
+	}
+	
+	/**
+	 * Only the keys of the removed node move if it's the last one.
+	 */
+	@Test
+	public void testJumpRemoveServerNode() {
+		ConcurrentHashMap<String, SeaLionServerNode> nodes = newNodes(4);
+		HashBalancer balancer = new HashBalancer(nodes, new XxHashAlgorithm(), HashBalancer.SELECTOR_JUMP);
+		Map<String, SeaLionServerNode> before = new HashMap<String, SeaLionServerNode>();
+		for (int i = 0; i < 1000; i++) {
+			before.put("key" + i, balancer.getServerNodeByKey("key" + i));
+		}
+		SeaLionServerNode removed = nodes.get(new SeaLionServerNode("127.0.0.1", 1116).getStrSocketAddress());
+		assertTrue(balancer.removeServerNode(removed));
+		for (Map.Entry<String, SeaLionServerNode> entry : before.entrySet()) {
+			SeaLionServerNode node = balancer.getServerNodeByKey(entry.getKey());
+			assertNotSame(removed, node);
+			if (entry.getValue() != removed) {
+				assertSame(entry.getValue(), node);
+			}
+		}
+	}
+	
+	@Test
+	public void testRendezvousRemoveServerNode() {
+		ConcurrentHashMap<String, SeaLionServerNode> nodes = newNodes(4);
+		HashBalancer balancer = new HashBalancer(nodes, new XxHashAlgorithm(), HashBalancer.SELECTOR_RENDEZVOUS);
+		Map<String, SeaLionServerNode> before = new HashMap<String, SeaLionServerNode>();
+		for (int i = 0; i < 1000; i++) {
+			before.put("key" + i, balancer.getServerNodeByKey("key" + i));
+		}
+		SeaLionServerNode removed = before.get("key0");
+		assertTrue(balancer.removeServerNode(removed));
+		for (Map.Entry<String, SeaLionServerNode> entry : before.entrySet()) {
+			SeaLionServerNode node = balancer.getServerNodeByKey(entry.getKey());
+			assertNotSame(removed, node);
+			if (entry.getValue() != removed) {
+				assertSame(entry.getValue(), node);
+			}
+		}
+		assertTrue(balancer.addServerNode(removed));
+		for (Map.Entry<String, SeaLionServerNode> entry : before.entrySet()) {
+			assertSame(entry.getValue(), balancer.getServerNodeByKey(entry.getKey()));
+		}
+	}
+	
+	/**
+	 * The shares of the keys are proportional to the weights.
+	 */
+	@Test
+	public void testRendezvousWeights() {
+		ConcurrentHashMap<String, SeaLionServerNode> nodes = newNodes(4);
+		HashBalancer balancer = new HashBalancer(nodes, new XxHashAlgorithm(), HashBalancer.SELECTOR_RENDEZVOUS);
+		SeaLionServerNode heavy = nodes.get(new SeaLionServerNode("127.0.0.1", 1113).getStrSocketAddress());
+		balancer.setServerNodeWeight(heavy, 3.0);
+		Map<SeaLionServerNode, Double> shares = balancer.getKeyShares(100000);
+		assertEquals(4, shares.size());
+		for (Map.Entry<SeaLionServerNode, Double> entry : shares.entrySet()) {
+			assertEquals(entry.getKey() == heavy ? 0.5 : 1.0 / 6, entry.getValue(), 0.01);
+		}
+	}
+
+	/**
+	 * The replicas are distinct, the primary first.
+	 */
+	@Test
+	public void testReplicas() {
+		String[] selectors = {HashBalancer.SELECTOR_KETAMA, HashBalancer.SELECTOR_JUMP, HashBalancer.SELECTOR_RENDEZVOUS};
+		for (String selector : selectors) {
+			HashBalancer balancer = new HashBalancer(newNodes(4), new XxHashAlgorithm(), selector);
+			for (int i = 0; i < 1000; i++) {
+				SeaLionServerNode[] replicas = balancer.getServerNodesByKey("key" + i, 2);
+				assertEquals(3, replicas.length);
+				assertSame(selector, balancer.getServerNodeByKey("key" + i), replicas[0]);
+				assertNotSame(replicas[0], replicas[1]);
+				assertNotSame(replicas[0], replicas[2]);
+				assertNotSame(replicas[1], replicas[2]);
+			}
+			assertEquals(4, balancer.getServerNodesByKey("key", 10).length);
+		}
+	}
+	
+	/**
+	 * The first successor of the ring and of rendezvous hashing takes over the key 
+	 * once the primary is removed, so it already has the replica.
+	 */
+	@Test
+	public void testSuccessorTakesOver() {
+		String[] selectors = {HashBalancer.SELECTOR_KETAMA, HashBalancer.SELECTOR_RENDEZVOUS};
+		for (String selector : selectors) {
+			HashBalancer balancer = new HashBalancer(newNodes(4), new XxHashAlgorithm(), selector);
+			Map<String, SeaLionServerNode[]> before = new HashMap<String, SeaLionServerNode[]>();
+			for (int i = 0; i < 1000; i++) {
+				before.put("key" + i, balancer.getServerNodesByKey("key" + i, 1));
+			}
+			SeaLionServerNode removed = before.get("key0")[0];
+			assertTrue(balancer.removeServerNode(removed));
+			for (Map.Entry<String, SeaLionServerNode[]> entry : before.entrySet()) {
+				if (entry.getValue()[0] == removed) {
+					assertSame(selector, entry.getValue()[1], balancer.getServerNodeByKey(entry.getKey()));
+				}
+			}
+		}
+	}
+
+}
@@ -0,0 +1,71 @@
+package io.sunhe.sealion.client.hash;
+
+import static org.junit.Assert.*;
+import io.sunhe.sealion.util.Charsets;
+
+import org.junit.Test;
+
+/**
+ * Check the algorithms against the reference test vectors.
+ * 
+ * @author sunhe
+ * @date 2015年6月22日 上午11:10:32
+ */
+public class KeyHashAlgorithmTest {
+	
+	private static byte[] bytes(String str) {
+		return str.getBytes(Charsets.UTF_8);
+	}
+
+	@Test
+	public void testXxHash() {
+		assertEquals(0xEF46DB3751D8E999L, XxHashAlgorithm.hash64(bytes("")));
+		assertEquals(0x44BC2CF5AD770999L, XxHashAlgorithm.hash64(bytes("abc")));
+		// longer than a stripe of 32 bytes.
+		assertEquals(0xFBCEA83C8A378BF1L, XxHashAlgorithm.hash64(bytes("Nobody inspects the spammish repetition")));
+	}
+	
+	@Test
+	public void testMurmur3() {
+		KeyHashAlgorithm algorithm = new Murmur3HashAlgorithm();
+		assertEquals(0, algorithm.hash(bytes("")));
+		assertEquals(0x248BFA47, algorithm.hash(bytes("hello")));
+		assertEquals(0x2E4FF723, algorithm.hash(bytes("The quick brown fox jumps over the lazy dog")));
+	}
+	
+	/**
+	 * The first 4 bytes of the MD5 digest in little-endian, as ketama does.
+	 */
+	@Test
+	public void testMd5() {
+		KeyHashAlgorithm algorithm = new Md5HashAlgorithm();
+		// MD5("") = d41d8cd98f00b204e9800998ecf8427e
+		assertEquals(0xD98C1DD4, algorithm.hash(bytes("")));
+		int[] points = new int[8];
+		algorithm.hashNode("127.0.0.1:1113", points, 4, 4);
+		assertEquals(0, points[0]);
+		assertTrue(points[4] != 0 && points[5] != 0);
+	}
+
+	/**
+	 * A string key is placed the same as its UTF-8 bytes, including the multi-byte
+	 * chars, the surrogate pairs, the unpaired surrogates and the keys too long
+	 * for the scratch buffer.
+	 */
+	@Test
+	public void testHashString() {
+		StringBuilder longKey = new StringBuilder();
+		for (int i = 0; i < 2000; i++) {
+			longKey.append((char) ('a' + i % 26));
+		}
+		String[] keys = {"", "key", "\u00e9t\u00e9", "\u6d77\u72ee", "\ud83d\ude00!", 
+				"\ud83d", "a\ude00b", "\ude00\ud83d", longKey.toString(), "\u6d77" + longKey};
+		KeyHashAlgorithm[] algorithms = {new Md5HashAlgorithm(), new Murmur3HashAlgorithm(), new XxHashAlgorithm()};
+		for (KeyHashAlgorithm algorithm : algorithms) {
+			for (String key : keys) {
+				assertEquals(key, algorithm.hash(bytes(key)), algorithm.hash(key));
+			}
+		}
+	}
+
+}
@@ -0,0 +1,81 @@
+/**
+ * 
+ */
+package io.sunhe.sealion.protocol;
+
+import static org.junit.Assert.*;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.sunhe.sealion.util.Charsets;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * 
+ * @author sunhe
+ * @date 2015年6月19日 下午4:40:18
+ */
+public class MultiKeyFormatTest {
+
+	@Test
+	public void testKeyValues() {
+		List<String> keys = Arrays.asList("k1", "key2", "");
+		List<byte[]> values = Arrays.asList("v1".getBytes(Charsets.UTF_8), new byte[0], new byte[2048]);
+		ByteBuf data = MultiKeyFormat.encodeKeyValues(keys, values);
+		
+		List<byte[]> decodedKeys = new ArrayList<byte[]>();
+		List<ByteBuf> decodedValues = new ArrayList<ByteBuf>();
+		MultiKeyFormat.decodeRequest(data, true, decodedKeys, decodedValues);
+		assertEquals(3, decodedKeys.size());
+		for (int i = 0; i < keys.size(); i++) {
+			assertEquals(keys.get(i), new String(decodedKeys.get(i), Charsets.UTF_8));
+			assertEquals(Unpooled.wrappedBuffer(values.get(i)), decodedValues.get(i));
+		}
+		// the indexes are left untouched.
+		assertEquals(0, data.readerIndex());
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void testMalformedRequest() {
+		ByteBuf data = MultiKeyFormat.encodeKeys(Arrays.asList("k1", "k2"));
+		MultiKeyFormat.decodeRequest(data.slice(0, data.readableBytes() - 1), false, 
+				new ArrayList<byte[]>(), new ArrayList<ByteBuf>());
+	}
+	
+	@Test
+	public void testResults() {
+		SeaLionResponse hit = new SeaLionResponse();
+		hit.setStatus(Statuses.SUCCESS);
+		hit.setCas(7);
+		hit.setData(Unpooled.wrappedBuffer("hello".getBytes(Charsets.UTF_8)));
+		SeaLionResponse miss = new SeaLionResponse();
+		miss.setStatus(Statuses.KEY_NONEXISTS);
+		miss.setData(Unpooled.EMPTY_BUFFER);
+		SeaLionResponse large = new SeaLionResponse();
+		large.setStatus(Statuses.SUCCESS);
+		ByteBuf largeData = Unpooled.wrappedBuffer(new byte[SeaLionResponseEncoder.ZERO_COPY_THRESHOLD]);
+		large.setData(largeData);
+		
+		ByteBuf data = MultiKeyFormat.encodeResults(new SeaLionResponse[] {hit, miss, large});
+		// the large value is composed rather than copied.
+		assertEquals(1, largeData.refCnt());
+		
+		List<SeaLionResponse> results = MultiKeyFormat.decodeResults(data);
+		assertEquals(3, results.size());
+		assertEquals(Statuses.SUCCESS, results.get(0).getStatus());
+		assertEquals(7, results.get(0).getCasValue());
+		assertEquals("hello", results.get(0).getData().toString(Charsets.UTF_8));
+		assertEquals(Statuses.KEY_NONEXISTS, results.get(1).getStatus());
+		assertFalse(results.get(1).hasCas());
+		assertEquals(0, results.get(1).getDataLen());
+		assertEquals(SeaLionResponseEncoder.ZERO_COPY_THRESHOLD, results.get(2).getDataLen());
+		
+		data.release();
+		assertEquals(0, largeData.refCnt());
+	}
+	
+}
@@ -0,0 +1,189 @@
+/**
+ * 
+ */
+package io.sunhe.sealion.protocol;
+
+import static org.junit.Assert.*;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.sunhe.sealion.server.dashboard.BlockingTimeAccumulator;
+import io.sunhe.sealion.server.mem.ShardedMapContainer;
+import io.sunhe.sealion.util.Charsets;
+
+import org.junit.Test;
+
+/**
+ * 
+ * @author sunhe
+ * @date 2015年6月18日 下午1:40:16
+ */
+public class SeaLionBinaryProtocolTest {
+	
+	private ShardedMapContainer mapContainer 
+			= new ShardedMapContainer(1, new BlockingTimeAccumulator(), 16 * 1024 * 1024);
+	
+	private SeaLionRequest newRequest() {
+		SeaLionRequest request = new SeaLionRequest();
+		request.setCommand(Commands.SET);
+		request.setKey("key");
+		request.setBinaryOpaque(42);
+		request.setIsSafeMode(true);
+		request.setCas(7L);
+		request.setTimeStamp(123456789L);
+		ByteBuf data = Unpooled.wrappedBuffer("hello, world".getBytes(Charsets.UTF_8));
+		request.setDataLen(data.capacity());
+		request.setData(data);
+		return request;
+	}
+	
+	private ByteBuf encode(Object msg, EmbeddedChannel channel) {
+		assertTrue(channel.writeOutbound(msg));
+		return (ByteBuf) channel.readOutbound();
+	}
+
+	@Test
+	public void testRequestRoundTrip() {
+		ByteBuf frame = encode(newRequest(), new EmbeddedChannel(new SeaLionBinaryRequestEncoder()));
+		assertEquals(BinaryProtocol.REQUEST_HEADER_LENGTH + 3 + 12, frame.readableBytes());
+		
+		EmbeddedChannel channel = new EmbeddedChannel(new SeaLionBinaryRequestDecoder(mapContainer));
+		// feed the frame in two pieces.
+		assertFalse(channel.writeInbound(frame.readSlice(20).retain()));
+		assertTrue(channel.writeInbound(frame));
+		SeaLionRequest request = (SeaLionRequest) channel.readInbound();
+		assertEquals(Commands.SET, request.getCommand());
+		assertEquals("key", request.getKey());
+		assertEquals(42, request.getBinaryOpaque());
+		assertTrue(request.getIsSafeMode());
+		assertTrue(request.hasCas());
+		assertEquals(7L, request.getCasValue());
+		assertEquals(123456789L, request.getTimeStamp());
+		assertEquals("hello, world", request.getData().toString(Charsets.UTF_8));
+		assertNull(channel.readInbound());
+	}
+	
+	@Test
+	public void testResponseRoundTrip() {
+		SeaLionResponse response = new SeaLionResponse();
+		response.setStatus(Statuses.CAS_FAILURE);
+		response.setBinaryOpaque(-1);
+		response.setCas(Long.MAX_VALUE);
+		ByteBuf data = Unpooled.wrappedBuffer("hello".getBytes(Charsets.UTF_8));
+		response.setDataLen(data.capacity());
+		response.setData(data.retain());
+		ByteBuf frame = encode(response, new EmbeddedChannel(new SeaLionBinaryResponseEncoder()));
+		// the encoder releases the reference it's given only, and leaves the indexes untouched.
+		assertEquals(1, data.refCnt());
+		assertEquals(5, data.readableBytes());
+		
+		EmbeddedChannel channel = new EmbeddedChannel(new SeaLionBinaryResponseDecoder());
+		assertTrue(channel.writeInbound(frame));
+		SeaLionResponse decoded = (SeaLionResponse) channel.readInbound();
+		assertEquals(Statuses.CAS_FAILURE, decoded.getStatus());
+		assertEquals(-1, decoded.getBinaryOpaque());
+		assertEquals(String.valueOf(Long.MAX_VALUE), decoded.getCas());
+		assertEquals("hello", decoded.getData().toString(Charsets.UTF_8));
+	}
+	
+	/**
+	 * A frame whose lengths add up past Integer.MAX_VALUE is waited for, 
+	 * instead of being read past the end of the buffer.
+	 */
+	@Test
+	public void testHugeDataLen() {
+		ByteBuf header = Unpooled.buffer(BinaryProtocol.REQUEST_HEADER_LENGTH);
+		header.writeByte(BinaryProtocol.MAGIC_REQUEST);
+		header.writeByte(BinaryProtocol.getOpcode(Commands.SET));
+		header.writeShort(BinaryProtocol.MAX_KEY_LENGTH);
+		header.writeInt(0);
+		header.writeInt(42);
+		header.writeInt(Integer.MAX_VALUE);
+		header.writeLong(0);
+		header.writeLong(0);
+		EmbeddedChannel channel = new EmbeddedChannel(new SeaLionBinaryRequestDecoder(mapContainer), 
+				new SeaLionBinaryResponseEncoder());
+		// rejected as soon as the header arrives.
+		assertFalse(channel.writeInbound(header.retain()));
+		assertNull(channel.readInbound());
+		assertBadRequest((ByteBuf) channel.readOutbound());
+		assertTrue(channel.isOpen());
+		
+		// just beyond the budget, the rest of the frame is discarded as it arrives.
+		int dataLen = 16 * 1024 * 1024 + 1;
+		header.setInt(12, dataLen);
+		header.setShort(2, 3);
+		channel = new EmbeddedChannel(new SeaLionBinaryRequestDecoder(mapContainer), 
+				new SeaLionBinaryResponseEncoder());
+		assertFalse(channel.writeInbound(header.readerIndex(0)));
+		assertBadRequest((ByteBuf) channel.readOutbound());
+		assertFalse(channel.writeInbound(Unpooled.wrappedBuffer(new byte[3 + dataLen / 2])));
+		assertFalse(channel.writeInbound(Unpooled.wrappedBuffer(new byte[dataLen - dataLen / 2])));
+		assertNull(channel.readInbound());
+		assertNull(channel.readOutbound());
+		// the next frame is decoded as usual.
+		assertTrue(channel.writeInbound(encode(newRequest(), new EmbeddedChannel(new SeaLionBinaryRequestEncoder()))));
+		SeaLionRequest request = (SeaLionRequest) channel.readInbound();
+		assertEquals("key", request.getKey());
+		request.getData().release();
+		
+		header = Unpooled.buffer(BinaryProtocol.RESPONSE_HEADER_LENGTH);
+		header.writeByte(BinaryProtocol.MAGIC_RESPONSE);
+		header.writeByte(BinaryProtocol.getStatusCode(Statuses.SUCCESS));
+		header.writeShort(0);
+		header.writeInt(0);
+		header.writeInt(42);
+		header.writeInt(Integer.MAX_VALUE);
+		header.writeLong(0);
+		channel = new EmbeddedChannel(new SeaLionBinaryResponseDecoder());
+		assertFalse(channel.writeInbound(header));
+		assertNull(channel.readInbound());
+	}
+	
+	private void assertBadRequest(ByteBuf reply) {
+		assertEquals(BinaryProtocol.MAGIC_RESPONSE, reply.getByte(0));
+		assertEquals(BinaryProtocol.getStatusCode(Statuses.BAD_REQUEST), reply.getByte(1));
+		assertEquals(42, reply.getInt(8));
+		reply.release();
+	}
+	
+	@Test
+	public void testUnknownOpcode() {
+		SeaLionRequest request = newRequest();
+		request.setCommand(Commands.GET);
+		ByteBuf frame = encode(request, new EmbeddedChannel(new SeaLionBinaryRequestEncoder()));
+		frame.setByte(1, 100);
+		
+		EmbeddedChannel channel = new EmbeddedChannel(new SeaLionBinaryRequestDecoder(mapContainer), 
+				new SeaLionBinaryResponseEncoder());
+		assertFalse(channel.writeInbound(frame));
+		ByteBuf reply = (ByteBuf) channel.readOutbound();
+		assertEquals(BinaryProtocol.MAGIC_RESPONSE, reply.getByte(0));
+		assertEquals(BinaryProtocol.getStatusCode(Statuses.BAD_REQUEST), reply.getByte(1));
+		assertEquals(42, reply.getInt(8));
+	}
+	
+	@Test
+	public void testDetectBinaryProtocol() {
+		ByteBuf frame = encode(newRequest(), new EmbeddedChannel(new SeaLionBinaryRequestEncoder()));
+		SeaLionBinaryResponseEncoder binaryResponseEncoder = new SeaLionBinaryResponseEncoder();
+		EmbeddedChannel channel = new EmbeddedChannel(new SeaLionProtocolDetector(mapContainer, binaryResponseEncoder), 
+				new SeaLionResponseEncoder());
+		assertTrue(channel.writeInbound(frame));
+		SeaLionRequest request = (SeaLionRequest) channel.readInbound();
+		assertEquals("key", request.getKey());
+		assertSame(binaryResponseEncoder, channel.pipeline().get(SeaLionBinaryResponseEncoder.class));
+		assertNull(channel.pipeline().get(SeaLionResponseEncoder.class));
+		assertNull(channel.pipeline().get(SeaLionProtocolDetector.class));
+	}
+	
+	@Test
+	public void testDetectTextProtocol() {
+		EmbeddedChannel channel = new EmbeddedChannel(new SeaLionProtocolDetector(mapContainer, 
+				new SeaLionBinaryResponseEncoder()), new SeaLionResponseEncoder());
+		channel.writeInbound(Unpooled.copiedBuffer("GET key 0001 0 1\r\n", Charsets.UTF_8));
+		assertNotNull(channel.pipeline().get(SeaLionRequestDecoder.class));
+		assertNotNull(channel.pipeline().get(SeaLionResponseEncoder.class));
+	}
+
+}
@@ -0,0 +1,96 @@
+/**
+ * 
+ */
+package io.sunhe.sealion.protocol;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.sunhe.sealion.server.dashboard.BlockingTimeAccumulator;
+import io.sunhe.sealion.server.mem.ShardedMapContainer;
+import io.sunhe.sealion.util.Charsets;
+import io.sunhe.sealion.util.Logger;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Measure decoding a GET request of the text protocol.
+ * 
+ * Run the main method, the GC profiler reports the bytes allocated per decoded 
+ * request (gc.alloc.rate.norm), which doesn't grow with the length of the text line.
+ * 
+ * Decoding a GET is NOT allocation-free: every request still allocates the request 
+ * POJO, the key array used by the map lookup, and the opaque string echoed back by 
+ * the response, so the benchmark shows three objects per request rather than zero.
+ * 
+ * @author sunhe
+ * @date 2015年6月18日 下午3:30:48
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class SeaLionRequestDecoderBenchmark {
+	
+	private SeaLionRequestDecoder decoder;
+	
+	private ChannelHandlerContext ctx;
+	
+	private ByteBuf request;
+	
+	private List<Object> out = new ArrayList<Object>();
+	
+	@Setup
+	public void setup() {
+		Logger.setEnabled(false);
+		decoder = new SeaLionRequestDecoder(new ShardedMapContainer(1, new BlockingTimeAccumulator(), 16 * 1024 * 1024));
+		EmbeddedChannel channel = new EmbeddedChannel(decoder);
+		ctx = channel.pipeline().context(decoder);
+		request = Unpooled.directBuffer();
+		request.writeBytes("GET user:1234567890 a1B2 0 1\r\n".getBytes(Charsets.UTF_8));
+		request.writeLong(0);
+		request.writeBytes("\r\n".getBytes(Charsets.UTF_8));
+	}
+	
+	@Benchmark
+	public Object decodeGet() throws Exception {
+		// rewind instead of duplicating, which would allocate.
+		request.readerIndex(0);
+		// one call for the text line, and one for the data field.
+		decoder.decode(ctx, request, out);
+		decoder.decode(ctx, request, out);
+		Object decoded = out.get(0);
+		out.clear();
+		return decoded;
+	}
+	
+	public static void main(String[] args) throws RunnerException {
+		Options options = new OptionsBuilder()
+				.include(SeaLionRequestDecoderBenchmark.class.getSimpleName())
+				.addProfiler(GCProfiler.class)
+				.build();
+		new Runner(options).run();
+	}
+
+}
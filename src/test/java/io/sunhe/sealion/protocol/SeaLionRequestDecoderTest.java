@@ -0,0 +1,115 @@
+/**
+ * 
+ */
+package io.sunhe.sealion.protocol;
+
+import static org.junit.Assert.*;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.sunhe.sealion.server.dashboard.BlockingTimeAccumulator;
+import io.sunhe.sealion.server.mem.ShardedMapContainer;
+import io.sunhe.sealion.util.Charsets;
+
+import org.junit.Test;
+
+/**
+ * 
+ * @author sunhe
+ * @date 2015年6月18日 下午3:02:10
+ */
+public class SeaLionRequestDecoderTest {
+	
+	private ShardedMapContainer mapContainer 
+			= new ShardedMapContainer(1, new BlockingTimeAccumulator(), 16 * 1024 * 1024);
+	
+	private ByteBuf frame(String textLine, long timeStamp, String data) {
+		ByteBuf buf = Unpooled.buffer();
+		buf.writeBytes((textLine + "\r\n").getBytes(Charsets.UTF_8));
+		buf.writeLong(timeStamp);
+		buf.writeBytes((data + "\r\n").getBytes(Charsets.UTF_8));
+		return buf;
+	}
+
+	@Test
+	public void testDecodeSet() {
+		EmbeddedChannel channel = new EmbeddedChannel(new SeaLionRequestDecoder(mapContainer));
+		ByteBuf frame = frame("SET  key\tab12 5 0 12345678901", 99L, "hello");
+		// feed the frame byte by byte.
+		while (frame.readableBytes() > 1) {
+			assertFalse(channel.writeInbound(frame.readSlice(1).retain()));
+		}
+		assertTrue(channel.writeInbound(frame));
+		SeaLionRequest request = (SeaLionRequest) channel.readInbound();
+		assertSame(Commands.SET, request.getCommand());
+		assertEquals("key", request.getKey());
+		assertEquals("ab12", request.getOpaque());
+		assertEquals(5, request.getDataLen());
+		assertFalse(request.getIsSafeMode());
+		assertEquals(12345678901L, request.getCasValue());
+		assertEquals(99L, request.getTimeStamp());
+		assertEquals("hello", request.getData().toString(Charsets.UTF_8));
+	}
+	
+	@Test
+	public void testDecodePipelined() {
+		EmbeddedChannel channel = new EmbeddedChannel(new SeaLionRequestDecoder(mapContainer));
+		ByteBuf buf = Unpooled.buffer();
+		buf.writeBytes(frame("GET a 0001 0 1", 0, ""));
+		buf.writeBytes(frame("DELETE b 0002 0 1 abcd", 0, ""));
+		assertTrue(channel.writeInbound(buf));
+		SeaLionRequest get = (SeaLionRequest) channel.readInbound();
+		assertSame(Commands.GET, get.getCommand());
+		assertTrue(get.getIsSafeMode());
+		assertFalse(get.hasCas());
+		SeaLionRequest delete = (SeaLionRequest) channel.readInbound();
+		assertEquals("b", delete.getKey());
+		// not a number, so it just fails the CAS check.
+		assertEquals("abcd", delete.getCas());
+	}
+	
+	/**
+	 * A data field which could never be stored is rejected before it arrives,
+	 * and then discarded.
+	 */
+	@Test
+	public void testHugeDataLen() {
+		EmbeddedChannel channel = new EmbeddedChannel(new SeaLionRequestDecoder(mapContainer), 
+				new SeaLionResponseEncoder());
+		assertFalse(channel.writeInbound(Unpooled.copiedBuffer("SET k ab12 2147483647 1\r\n", Charsets.UTF_8)));
+		ByteBuf reply = (ByteBuf) channel.readOutbound();
+		assertEquals(Statuses.BAD_REQUEST + " ab12 0\r\n\r\n", reply.toString(Charsets.UTF_8));
+		assertTrue(channel.isOpen());
+		
+		// just beyond the budget, the data field is discarded as it arrives.
+		int dataLen = 16 * 1024 * 1024 + 1;
+		channel = new EmbeddedChannel(new SeaLionRequestDecoder(mapContainer), new SeaLionResponseEncoder());
+		ByteBuf buf = Unpooled.buffer();
+		buf.writeBytes(("SET k ab13 " + dataLen + " 1\r\n").getBytes(Charsets.UTF_8));
+		buf.writeLong(0);
+		assertFalse(channel.writeInbound(buf));
+		reply = (ByteBuf) channel.readOutbound();
+		assertEquals(Statuses.BAD_REQUEST + " ab13 0\r\n\r\n", reply.toString(Charsets.UTF_8));
+		assertFalse(channel.writeInbound(Unpooled.wrappedBuffer(new byte[dataLen / 2])));
+		buf = Unpooled.buffer();
+		buf.writeBytes(new byte[dataLen - dataLen / 2]);
+		buf.writeBytes("\r\n".getBytes(Charsets.UTF_8));
+		buf.writeBytes(frame("GET a 0001 0 1", 0, ""));
+		assertTrue(channel.writeInbound(buf));
+		SeaLionRequest get = (SeaLionRequest) channel.readInbound();
+		assertSame(Commands.GET, get.getCommand());
+		assertEquals("a", get.getKey());
+		assertNull(channel.readOutbound());
+	}
+	
+	@Test
+	public void testBadRequest() {
+		EmbeddedChannel channel = new EmbeddedChannel(new SeaLionRequestDecoder(mapContainer), 
+				new SeaLionResponseEncoder());
+		assertFalse(channel.writeInbound(frame("GET a 0001 x 1", 0, "")));
+		// the reply passes through the encoder.
+		ByteBuf reply = (ByteBuf) channel.readOutbound();
+		assertEquals(Statuses.BAD_REQUEST + " 0001 0\r\n\r\n", reply.toString(Charsets.UTF_8));
+	}
+
+}
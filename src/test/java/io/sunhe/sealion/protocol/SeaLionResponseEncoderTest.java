@@ -6,6 +6,7 @@ package io.sunhe.sealion.protocol;
 import static org.junit.Assert.*;
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.CompositeByteBuf;
 import io.netty.buffer.Unpooled;
 import io.netty.channel.embedded.EmbeddedChannel;
 import io.sunhe.sealion.util.Charsets;
@@ -45,5 +46,55 @@ public class SeaLionResponseEncoderTest {
 		assertFalse(buf.isReadable());
 		assertNull(channel.readOutbound());
 	}
+	
+	private SeaLionResponse newResponse(ByteBuf data) {
+		SeaLionResponse response = new SeaLionResponse();
+		response.setStatus(Statuses.SUCCESS);
+		response.setOpaque("ab12");
+		response.setCas(7L);
+		response.setDataLen(data.readableBytes());
+		response.setData(data);
+		return response;
+	}
+	
+	/**
+	 * Large data is composed with the header instead of being copied.
+	 */
+	@Test
+	public void testZeroCopy() {
+		ByteBuf data = Unpooled.directBuffer(SeaLionResponseEncoder.ZERO_COPY_THRESHOLD);
+		data.writeZero(SeaLionResponseEncoder.ZERO_COPY_THRESHOLD);
+		// one reference held by the item, and one by the response.
+		data.retain();
+		
+		EmbeddedChannel channel = new EmbeddedChannel(new SeaLionResponseEncoder());
+		assertTrue(channel.writeOutbound(newResponse(data)));
+		ByteBuf buf = (ByteBuf) channel.readOutbound();
+		assertTrue(buf instanceof CompositeByteBuf);
+		String header = Statuses.SUCCESS + " ab12 " + data.readableBytes() + " 7\r\n";
+		assertEquals(header, buf.toString(0, header.length(), Charsets.UTF_8));
+		assertEquals(header.length() + data.readableBytes() + 2, buf.readableBytes());
+		assertEquals("\r\n", buf.toString(buf.readableBytes() - 2, 2, Charsets.UTF_8));
+		// the data is still referenced by the output until it's written.
+		assertEquals(2, data.refCnt());
+		buf.release();
+		assertEquals(1, data.refCnt());
+	}
+	
+	/**
+	 * Small data is copied, and the reference to it is released right away.
+	 */
+	@Test
+	public void testCopySmallData() {
+		ByteBuf data = Unpooled.copiedBuffer("hello", Charsets.UTF_8);
+		data.retain();
+		
+		EmbeddedChannel channel = new EmbeddedChannel(new SeaLionResponseEncoder());
+		assertTrue(channel.writeOutbound(newResponse(data)));
+		ByteBuf buf = (ByteBuf) channel.readOutbound();
+		assertEquals(Statuses.SUCCESS + " ab12 5 7\r\nhello\r\n", buf.toString(Charsets.UTF_8));
+		assertEquals(1, data.refCnt());
+		buf.release();
+	}
 
 }
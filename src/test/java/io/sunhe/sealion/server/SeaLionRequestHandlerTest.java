@@ -0,0 +1,240 @@
+package io.sunhe.sealion.server;
+
+import static org.junit.Assert.*;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.channel.group.DefaultChannelGroup;
+import io.netty.util.concurrent.GlobalEventExecutor;
+import io.sunhe.sealion.protocol.Commands;
+import io.sunhe.sealion.protocol.MultiKeyFormat;
+import io.sunhe.sealion.protocol.SeaLionRequest;
+import io.sunhe.sealion.protocol.SeaLionResponse;
+import io.sunhe.sealion.protocol.Statuses;
+import io.sunhe.sealion.server.dashboard.BlockingTimeAccumulator;
+import io.sunhe.sealion.server.dashboard.HitRatioCollector;
+import io.sunhe.sealion.server.mem.ShardedMapContainer;
+import io.sunhe.sealion.util.Charsets;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * The multi-key requests are split into the shards, and their results are
+ * collected back in the order of the keys, no matter which shard is done first.
+ *
+ * @author sunhe
+ * @date 2015年6月24日 下午2:10:35
+ */
+public class SeaLionRequestHandlerTest {
+
+	private static final int NUM_OF_SHARDS = 2;
+
+	/**
+	 * 16 MBytes per shard.
+	 */
+	private static final long MEM_SIZE = NUM_OF_SHARDS * 16 * 1024 * 1024;
+
+	private static final List<String> KEYS = Arrays.asList("key0", "key1", "key2", "key3", "key4", "key5");
+
+	private ShardedMapContainer mapContainer;
+
+	/**
+	 * The task queues of the workers, which are drained by the test itself.
+	 */
+	private List<BlockingQueue<Task>> taskQueues = new ArrayList<BlockingQueue<Task>>();
+
+	private List<WorkerTask> workers = new ArrayList<WorkerTask>();
+
+	private EmbeddedChannel channel;
+
+	@Before
+	public void setUp() {
+		mapContainer = new ShardedMapContainer(NUM_OF_SHARDS, new BlockingTimeAccumulator(), MEM_SIZE);
+		HitRatioCollector hitRatioCollector = new HitRatioCollector();
+		for (int i = 0; i < NUM_OF_SHARDS; i++) {
+			BlockingQueue<Task> taskQueue = new LinkedBlockingQueue<Task>();
+			taskQueues.add(taskQueue);
+			workers.add(new WorkerTask(taskQueue, mapContainer.getShard(i), hitRatioCollector));
+		}
+		channel = new EmbeddedChannel(new SeaLionRequestHandler(mapContainer, workers,
+				new LinkedBlockingQueue<Task>(), new DefaultChannelGroup(GlobalEventExecutor.INSTANCE)));
+		boolean[] isUsed = new boolean[NUM_OF_SHARDS];
+		for (String key : KEYS) {
+			isUsed[mapContainer.getShardIndex(key)] = true;
+		}
+		for (boolean used : isUsed) {
+			assertTrue("The keys must span all shards", used);
+		}
+	}
+
+	@After
+	public void tearDown() {
+		channel.finish();
+	}
+
+	private SeaLionRequest newRequest(String command, ByteBuf data) {
+		SeaLionRequest request = new SeaLionRequest();
+		request.setCommand(command);
+		request.setKey(MultiKeyFormat.KEY);
+		request.setOpaque("0001");
+		request.setIsSafeMode(true);
+		request.setDataLen(data.readableBytes());
+		request.setData(data);
+		return request;
+	}
+
+	/**
+	 * Process the queued tasks shard by shard, the last shard first.
+	 *
+	 * @return The response to the multi-key request.
+	 */
+	private SeaLionResponse process(SeaLionRequest request) {
+		channel.writeInbound(request);
+		for (int i = NUM_OF_SHARDS - 1; i >= 0; i--) {
+			Task task;
+			while ((task = taskQueues.get(i).poll()) != null) {
+				workers.get(i).processTask(task);
+			}
+		}
+		channel.flush();
+		SeaLionResponse response = (SeaLionResponse) channel.readOutbound();
+		assertNotNull(response);
+		assertNull(channel.readOutbound());
+		assertEquals("0001", response.getOpaque());
+		return response;
+	}
+
+	private List<String> statusesOf(List<SeaLionResponse> results) {
+		List<String> statuses = new ArrayList<String>();
+		for (SeaLionResponse result : results) {
+			statuses.add(result.getStatus());
+		}
+		return statuses;
+	}
+
+	private SeaLionResponse set(List<String> keys, List<byte[]> values) {
+		return process(newRequest(Commands.MSET, MultiKeyFormat.encodeKeyValues(keys, values)));
+	}
+
+	/**
+	 * MGET and MDELETE get their results in the order of the keys.
+	 */
+	@Test
+	public void testResultsInKeyOrder() {
+		List<String> keys = KEYS.subList(0, KEYS.size() - 1);
+		List<byte[]> values = new ArrayList<byte[]>();
+		for (String key : keys) {
+			values.add(("value of " + key).getBytes(Charsets.UTF_8));
+		}
+		SeaLionResponse response = set(keys, values);
+		assertEquals(Statuses.SUCCESS, response.getStatus());
+		for (SeaLionResponse result : MultiKeyFormat.decodeResults(response.getData())) {
+			assertEquals(Statuses.SUCCESS, result.getStatus());
+			assertTrue(result.hasCas());
+		}
+
+		// the last key is missing.
+		response = process(newRequest(Commands.MGET, MultiKeyFormat.encodeKeys(KEYS)));
+		List<SeaLionResponse> results = MultiKeyFormat.decodeResults(response.getData());
+		assertEquals(KEYS.size(), results.size());
+		for (int i = 0; i < keys.size(); i++) {
+			assertEquals(Statuses.SUCCESS, results.get(i).getStatus());
+			assertEquals("value of " + KEYS.get(i), results.get(i).getData().toString(Charsets.UTF_8));
+		}
+		assertEquals(Statuses.KEY_NONEXISTS, results.get(KEYS.size() - 1).getStatus());
+		response.getData().release();
+
+		// the first key is missing this time.
+		response = process(newRequest(Commands.MDELETE, MultiKeyFormat.encodeKeys(KEYS.subList(1, KEYS.size()))));
+		results = MultiKeyFormat.decodeResults(response.getData());
+		List<String> expected = new ArrayList<String>();
+		for (int i = 1; i < KEYS.size() - 1; i++) {
+			expected.add(Statuses.SUCCESS);
+		}
+		expected.add(Statuses.KEY_NONEXISTS);
+		assertEquals(expected, statusesOf(results));
+
+		response = process(newRequest(Commands.MGET, MultiKeyFormat.encodeKeys(KEYS)));
+		results = MultiKeyFormat.decodeResults(response.getData());
+		assertEquals(Statuses.SUCCESS, results.get(0).getStatus());
+		assertEquals("value of " + KEYS.get(0), results.get(0).getData().toString(Charsets.UTF_8));
+		for (int i = 1; i < KEYS.size(); i++) {
+			assertEquals(Statuses.KEY_NONEXISTS, results.get(i).getStatus());
+		}
+		response.getData().release();
+	}
+
+	/**
+	 * A value too large for its shard fails alone, the other keys are still set.
+	 */
+	@Test
+	public void testKeyOutOfMemory() {
+		byte[] huge = new byte[(int) (MEM_SIZE / NUM_OF_SHARDS) + 1];
+		List<byte[]> values = new ArrayList<byte[]>();
+		for (int i = 0; i < KEYS.size(); i++) {
+			values.add(i == 2 ? huge : "small".getBytes(Charsets.UTF_8));
+		}
+		SeaLionResponse response = set(KEYS, values);
+		assertEquals(Statuses.SUCCESS, response.getStatus());
+		List<String> expected = new ArrayList<String>();
+		for (int i = 0; i < KEYS.size(); i++) {
+			expected.add(i == 2 ? Statuses.SERVER_OUT_OF_MEMORY : Statuses.SUCCESS);
+		}
+		assertEquals(expected, statusesOf(MultiKeyFormat.decodeResults(response.getData())));
+
+		response = process(newRequest(Commands.MGET, MultiKeyFormat.encodeKeys(KEYS)));
+		expected.set(2, Statuses.KEY_NONEXISTS);
+		assertEquals(expected, statusesOf(MultiKeyFormat.decodeResults(response.getData())));
+		response.getData().release();
+	}
+
+	/**
+	 * If no key can be stored, no task is submitted, and the response is written right away.
+	 */
+	@Test
+	public void testAllKeysFailed() {
+		byte[] huge = new byte[(int) (MEM_SIZE / NUM_OF_SHARDS) + 1];
+		List<String> keys = KEYS.subList(0, 2);
+		SeaLionRequest request = newRequest(Commands.MSET,
+				MultiKeyFormat.encodeKeyValues(keys, Arrays.asList(huge, huge)));
+		channel.writeInbound(request);
+		for (BlockingQueue<Task> taskQueue : taskQueues) {
+			assertTrue(taskQueue.isEmpty());
+		}
+		SeaLionResponse response = (SeaLionResponse) channel.readOutbound();
+		assertNotNull(response);
+		assertEquals(Statuses.SUCCESS, response.getStatus());
+		assertEquals(Arrays.asList(Statuses.SERVER_OUT_OF_MEMORY, Statuses.SERVER_OUT_OF_MEMORY),
+				statusesOf(MultiKeyFormat.decodeResults(response.getData())));
+	}
+
+	/**
+	 * A malformed body is replied with BAD_REQUEST, without touching any shard.
+	 */
+	@Test
+	public void testMalformedBody() {
+		ByteBuf data = Unpooled.buffer();
+		// 3 keys claimed, only 1 given.
+		data.writeInt(3);
+		data.writeInt(1);
+		data.writeByte('k');
+		channel.writeInbound(newRequest(Commands.MGET, data));
+		SeaLionResponse response = (SeaLionResponse) channel.readOutbound();
+		assertNotNull(response);
+		assertEquals(Statuses.BAD_REQUEST, response.getStatus());
+		assertEquals("0001", response.getOpaque());
+		for (BlockingQueue<Task> taskQueue : taskQueues) {
+			assertTrue(taskQueue.isEmpty());
+		}
+		assertEquals(0, data.refCnt());
+	}
+
+}
@@ -0,0 +1,254 @@
+package io.sunhe.sealion.server;
+
+import static org.junit.Assert.*;
+import io.netty.bootstrap.Bootstrap;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOutboundHandlerAdapter;
+import io.netty.channel.ChannelPromise;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.channel.group.DefaultChannelGroup;
+import io.netty.channel.local.LocalAddress;
+import io.netty.channel.local.LocalChannel;
+import io.netty.channel.local.LocalEventLoopGroup;
+import io.netty.channel.local.LocalServerChannel;
+import io.netty.util.concurrent.EventExecutor;
+import io.netty.util.concurrent.GlobalEventExecutor;
+import io.sunhe.sealion.protocol.Commands;
+import io.sunhe.sealion.protocol.SeaLionRequest;
+import io.sunhe.sealion.protocol.SeaLionResponse;
+import io.sunhe.sealion.protocol.Statuses;
+import io.sunhe.sealion.server.dashboard.BlockingTimeAccumulator;
+import io.sunhe.sealion.server.dashboard.HitRatioCollector;
+import io.sunhe.sealion.server.mem.ShardedMapContainer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * N pipelined requests get N responses, flushed once per batch.
+ *
+ * @author sunhe
+ * @date 2015年6月19日 上午10:20:35
+ */
+public class WorkerTaskTest {
+
+	private static final int NUM_OF_REQUESTS = 32;
+
+	private static final long TIMEOUT = 5000;
+
+	private ShardedMapContainer mapContainer;
+
+	private HitRatioCollector hitRatioCollector;
+
+	private LocalEventLoopGroup group;
+
+	private Channel client;
+
+	/**
+	 * The server side of the local connection, whose event loop isn't
+	 * the thread processing the tasks.
+	 */
+	private Channel serverChild;
+
+	private FlushCounter counter;
+
+	private BlockingQueue<Object> received = new LinkedBlockingQueue<Object>();
+
+	@Before
+	public void setUp() throws InterruptedException {
+		mapContainer = new ShardedMapContainer(1, new BlockingTimeAccumulator(), 16 * 1024 * 1024);
+		hitRatioCollector = new HitRatioCollector();
+		group = new LocalEventLoopGroup(1);
+		counter = new FlushCounter();
+		final BlockingQueue<Channel> accepted = new LinkedBlockingQueue<Channel>();
+		ServerBootstrap serverBootstrap = new ServerBootstrap();
+		serverBootstrap.group(group)
+				.channel(LocalServerChannel.class)
+				.childHandler(new ChannelInitializer<Channel>() {
+
+					@Override
+					protected void initChannel(Channel ch) throws Exception {
+						ch.pipeline().addLast(counter);
+						accepted.add(ch);
+					}
+
+				});
+		// a unique address per test.
+		LocalAddress address = (LocalAddress) serverBootstrap.bind(LocalAddress.ANY).sync().channel().localAddress();
+		Bootstrap bootstrap = new Bootstrap();
+		bootstrap.group(group)
+				.channel(LocalChannel.class)
+				.handler(new ChannelInboundHandlerAdapter() {
+
+					@Override
+					public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+						received.add(msg);
+					}
+
+				});
+		client = bootstrap.connect(address).sync().channel();
+		serverChild = accepted.poll(TIMEOUT, TimeUnit.MILLISECONDS);
+	}
+
+	@After
+	public void tearDown() {
+		if (client != null) {
+			client.close();
+		}
+		if (group != null) {
+			group.shutdownGracefully();
+		}
+	}
+
+	private SeaLionRequest newRequest(int i) {
+		SeaLionRequest request = new SeaLionRequest();
+		request.setCommand(Commands.GET);
+		request.setKey("key" + i);
+		request.setOpaque(Integer.toString(i));
+		request.setIsSafeMode(true);
+		request.setDataLen(0);
+		request.setData(Unpooled.EMPTY_BUFFER);
+		return request;
+	}
+
+	/**
+	 * Assert that the responses of all requests are received in order.
+	 */
+	private void assertReceived() throws InterruptedException {
+		for (int i = 0; i < NUM_OF_REQUESTS; i++) {
+			SeaLionResponse response = (SeaLionResponse) received.poll(TIMEOUT, TimeUnit.MILLISECONDS);
+			assertNotNull(response);
+			assertEquals(Statuses.KEY_NONEXISTS, response.getStatus());
+			assertEquals(Integer.toString(i), response.getOpaque());
+		}
+		assertNull(received.poll(100, TimeUnit.MILLISECONDS));
+	}
+
+	/**
+	 * The tasks drained at once are responded to by a single flush
+	 * on the event loop of the channel.
+	 */
+	@Test
+	public void testQueueMode() throws InterruptedException {
+		BlockingQueue<Task> taskQueue = new LinkedBlockingQueue<Task>();
+		WorkerTask worker = new WorkerTask(taskQueue, mapContainer.getShard(0), hitRatioCollector);
+		// queued before the worker starts, so they're drained as a single batch.
+		for (int i = 0; i < NUM_OF_REQUESTS; i++) {
+			worker.submit(new Task(newRequest(i), serverChild));
+		}
+		Thread thread = new Thread(worker);
+		thread.start();
+		try {
+			assertReceived();
+			assertEquals(NUM_OF_REQUESTS, counter.numOfWrites.get());
+			assertEquals(1, counter.numOfFlushes.get());
+		}
+		finally {
+			thread.interrupt();
+			thread.join();
+		}
+	}
+
+	/**
+	 * The tasks handed off to the owner event loop are responded to by a single
+	 * flush, on the event loop of the channel, once the cycle is done.
+	 */
+	@Test
+	public void testEventLoopModeHandOff() throws InterruptedException {
+		LocalEventLoopGroup ownerGroup = new LocalEventLoopGroup(1);
+		try {
+			EventExecutor owner = ownerGroup.next();
+			WorkerTask worker = new WorkerTask(owner, mapContainer.getShard(0), hitRatioCollector);
+			// hold the owner, so that all hand-offs are queued before the first runs.
+			final CountDownLatch latch = new CountDownLatch(1);
+			owner.execute(new Runnable() {
+
+				public void run() {
+					try {
+						latch.await();
+					}
+					catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					}
+				}
+
+			});
+			for (int i = 0; i < NUM_OF_REQUESTS; i++) {
+				worker.submit(new Task(newRequest(i), serverChild));
+			}
+			latch.countDown();
+			assertReceived();
+			assertEquals(NUM_OF_REQUESTS, counter.numOfWrites.get());
+			assertEquals(1, counter.numOfFlushes.get());
+		}
+		finally {
+			ownerGroup.shutdownGracefully();
+		}
+	}
+
+	/**
+	 * The requests processed inline by the event loop of the channel are written
+	 * without flushing, and flushed once by the request handler after the read.
+	 */
+	@Test
+	public void testEventLoopModeInline() {
+		FlushCounter counter = new FlushCounter();
+		// the worker is owned by the event loop of the channel, added once it's registered.
+		List<WorkerTask> workers = new ArrayList<WorkerTask>();
+		EmbeddedChannel channel = new EmbeddedChannel(counter, new SeaLionRequestHandler(mapContainer, workers,
+				new LinkedBlockingQueue<Task>(), new DefaultChannelGroup(GlobalEventExecutor.INSTANCE)));
+		workers.add(new WorkerTask(channel.eventLoop(), mapContainer.getShard(0), hitRatioCollector));
+		List<Object> requests = new ArrayList<Object>();
+		for (int i = 0; i < NUM_OF_REQUESTS; i++) {
+			requests.add(newRequest(i));
+		}
+		// a single read of all requests.
+		channel.writeInbound(requests.toArray());
+		assertEquals(NUM_OF_REQUESTS, counter.numOfWrites.get());
+		assertEquals(1, counter.numOfFlushes.get());
+		for (int i = 0; i < NUM_OF_REQUESTS; i++) {
+			SeaLionResponse response = (SeaLionResponse) channel.readOutbound();
+			assertEquals(Integer.toString(i), response.getOpaque());
+		}
+		assertNull(channel.readOutbound());
+		channel.finish();
+	}
+
+	/**
+	 * Counts the writes and the flushes passing through.
+	 */
+	private static class FlushCounter extends ChannelOutboundHandlerAdapter {
+
+		private AtomicInteger numOfWrites = new AtomicInteger();
+
+		private AtomicInteger numOfFlushes = new AtomicInteger();
+
+		@Override
+		public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) throws Exception {
+			numOfWrites.incrementAndGet();
+			super.write(ctx, msg, promise);
+		}
+
+		@Override
+		public void flush(ChannelHandlerContext ctx) throws Exception {
+			numOfFlushes.incrementAndGet();
+			super.flush(ctx);
+		}
+
+	}
+
+}
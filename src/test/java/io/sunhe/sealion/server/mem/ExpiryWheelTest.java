@@ -0,0 +1,112 @@
+/**
+ *
+ */
+package io.sunhe.sealion.server.mem;
+
+import static org.junit.Assert.*;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.sunhe.sealion.util.Charsets;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ *
+ * @author sunhe
+ * @date 2015年6月13日 下午2:12:09
+ */
+public class ExpiryWheelTest {
+
+	private static final long START = 1434153600000L;
+
+	private ItemStore store = new ItemStore(new SlabAllocator(16 * 1024 * 1024, PooledByteBufAllocator.DEFAULT));
+
+	private List<Integer> expired = new ArrayList<Integer>();
+
+	private ExpiredItemOperator operator = new ExpiredItemOperator() {
+
+		public void operate(int item) {
+			expired.add(item);
+		}
+
+	};
+
+	private int newItem(String key, long timeStamp) {
+		int item = store.allocate(key.getBytes(Charsets.UTF_8), 0);
+		store.setTimeStamp(item, timeStamp);
+		return item;
+	}
+
+	private void advance(ExpiryWheel wheel, long timeStamp) {
+		wheel.advance(timeStamp, operator, Integer.MAX_VALUE, Long.MAX_VALUE);
+	}
+
+	/**
+	 * Every item must be expired not before its time stamp,
+	 * and must be expired once its time stamp is reached, across all levels.
+	 */
+	@Test
+	public void testAdvance() {
+		ExpiryWheel wheel = new ExpiryWheel(store, START);
+		Random random = new Random(47);
+		List<Integer> items = new ArrayList<Integer>();
+		for (int i = 0; i < 2000; i++) {
+			// up to 3 days, which is beyond the span of the wheel.
+			long delta = i % 2 == 0 ? random.nextInt(100000) : (long) random.nextInt(259200) * 1000L;
+			int item = newItem("key" + i, START + 1 + delta);
+			items.add(item);
+			wheel.add(item);
+		}
+		assertEquals(items.size(), wheel.size());
+		long now = START;
+		while (wheel.size() > 0) {
+			now += 1000 + random.nextInt(1000);
+			advance(wheel, now);
+			for (int item : expired) {
+				assertTrue(store.getTimeStamp(item) <= now);
+				assertTrue(store.getExpiryBucket(item) < 0);
+			}
+			expired.clear();
+			for (int item : items) {
+				if (store.getExpiryBucket(item) >= 0) {
+					assertTrue(store.getTimeStamp(item) > now);
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testRemove() {
+		ExpiryWheel wheel = new ExpiryWheel(store, START);
+		int item1 = newItem("key1", START + 50);
+		int item2 = newItem("key2", START + 50);
+		int item3 = newItem("key3", START + 50);
+		wheel.add(item1);
+		wheel.add(item2);
+		wheel.add(item3);
+		wheel.remove(item2);
+		// removing twice does nothing.
+		wheel.remove(item2);
+		assertEquals(2, wheel.size());
+		advance(wheel, START + 100);
+		assertEquals(2, expired.size());
+		assertFalse(expired.contains(Integer.valueOf(item2)));
+		assertEquals(0, wheel.size());
+	}
+
+	@Test
+	public void testAdvanceWithLimit() {
+		ExpiryWheel wheel = new ExpiryWheel(store, START);
+		for (int i = 0; i < 10; i++) {
+			wheel.add(newItem("key" + i, START + 20));
+		}
+		assertEquals(3, wheel.advance(START + 30, operator, 3, Long.MAX_VALUE));
+		assertEquals(7, wheel.size());
+		assertEquals(7, wheel.advance(START + 30, operator, 100, Long.MAX_VALUE));
+		assertEquals(0, wheel.size());
+	}
+
+}
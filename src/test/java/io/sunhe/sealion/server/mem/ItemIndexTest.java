@@ -0,0 +1,78 @@
+/**
+ *
+ */
+package io.sunhe.sealion.server.mem;
+
+import static org.junit.Assert.*;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.sunhe.sealion.util.Charsets;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ *
+ * @author sunhe
+ * @date 2015年6月15日 下午2:20:41
+ */
+public class ItemIndexTest {
+
+	private ItemStore items = new ItemStore(new SlabAllocator(16 * 1024 * 1024, PooledByteBufAllocator.DEFAULT));
+
+	private int newItem(String key) {
+		return items.allocate(key.getBytes(Charsets.UTF_8), 0);
+	}
+
+	/**
+	 * Random puts and removes, checked against a HashMap,
+	 * the index must survive resizing and backward shifting.
+	 */
+	@Test
+	public void testAgainstHashMap() {
+		ItemIndex index = new ItemIndex(items, PooledByteBufAllocator.DEFAULT, 4);
+		Map<String, Integer> expected = new HashMap<String, Integer>();
+		Random random = new Random(47);
+		for (int i = 0; i < 100000; i++) {
+			String key = "key" + random.nextInt(5000);
+			byte[] keyBytes = key.getBytes(Charsets.UTF_8);
+			Integer old;
+			int removed;
+			if (random.nextInt(3) == 0) {
+				old = expected.remove(key);
+				removed = index.remove(keyBytes);
+			}
+			else {
+				int item = newItem(key);
+				old = expected.put(key, item);
+				removed = index.put(item);
+			}
+			assertEquals(old == null ? ItemStore.NULL : old.intValue(), removed);
+			if (removed != ItemStore.NULL) {
+				items.free(removed);
+			}
+			assertEquals(expected.size(), index.size());
+		}
+		for (Map.Entry<String, Integer> entry : expected.entrySet()) {
+			assertEquals(entry.getValue().intValue(), index.get(entry.getKey().getBytes(Charsets.UTF_8)));
+		}
+		assertEquals(ItemStore.NULL, index.get("absent".getBytes(Charsets.UTF_8)));
+	}
+
+	@Test
+	public void testRemoveItem() {
+		ItemIndex index = new ItemIndex(items, PooledByteBufAllocator.DEFAULT);
+		int item1 = newItem("key");
+		int item2 = newItem("key");
+		index.put(item1);
+		index.put(item2);
+		// item1 has been replaced by item2.
+		assertFalse(index.remove(item1));
+		assertTrue(index.containsKey("key".getBytes(Charsets.UTF_8)));
+		assertTrue(index.remove(item2));
+		assertEquals(0, index.size());
+	}
+
+}
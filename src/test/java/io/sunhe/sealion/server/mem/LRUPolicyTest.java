@@ -0,0 +1,95 @@
+/**
+ *
+ */
+package io.sunhe.sealion.server.mem;
+
+import static org.junit.Assert.*;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.sunhe.sealion.util.Charsets;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ *
+ * @author sunhe
+ * @date 2015年6月23日 下午2:40:18
+ */
+public class LRUPolicyTest {
+
+	private ItemStore items = new ItemStore(new SlabAllocator(16 * 1024 * 1024, PooledByteBufAllocator.DEFAULT));
+
+	private int newItem(String key) {
+		return items.allocate(key.getBytes(Charsets.UTF_8), 0);
+	}
+
+	/**
+	 * Evict exactly one item, as the map container does.
+	 *
+	 * @return The key of the evicted item, null if none.
+	 */
+	private String evictOne(final EvictionPolicy policy) {
+		final List<String> evicted = new ArrayList<String>();
+		policy.evict(Integer.MAX_VALUE, new LRUListItemOperator() {
+
+			public boolean operate(int item) {
+				policy.remove(item);
+				evicted.add(items.getKey(item));
+				items.free(item);
+				return false;
+			}
+
+		});
+		return evicted.isEmpty() ? null : evicted.get(0);
+	}
+
+	/**
+	 * A referenced item is skipped once, losing its reference bit, and then evicted.
+	 */
+	@Test
+	public void testClockSecondChance() {
+		EvictionPolicy policy = new LRUPolicy(items, true);
+		int first = newItem("first");
+		policy.insert(first);
+		policy.insert(newItem("second"));
+		policy.access(first);
+		assertTrue(items.isReferenced(first));
+		assertEquals("second", evictOne(policy));
+		assertFalse(items.isReferenced(first));
+		assertEquals("first", evictOne(policy));
+		assertNull(evictOne(policy));
+		assertEquals(0, policy.size());
+	}
+
+	/**
+	 * In CLOCK mode a hit doesn't touch the list, while plain LRU moves the item to the head.
+	 */
+	@Test
+	public void testHitDoesNotMove() {
+		EvictionPolicy policy = new LRUPolicy(items, true);
+		int first = newItem("first");
+		int second = newItem("second");
+		int third = newItem("third");
+		policy.insert(first);
+		policy.insert(second);
+		policy.insert(third);
+		int prior = items.getPrior(second);
+		int next = items.getNext(second);
+		policy.access(second);
+		assertEquals(prior, items.getPrior(second));
+		assertEquals(next, items.getNext(second));
+		assertEquals("first", evictOne(policy));
+
+		policy = new LRUPolicy(items, false);
+		int fourth = newItem("fourth");
+		int fifth = newItem("fifth");
+		policy.insert(fourth);
+		policy.insert(fifth);
+		policy.access(fourth);
+		assertFalse(items.isReferenced(fourth));
+		assertEquals("fifth", evictOne(policy));
+	}
+
+}
@@ -0,0 +1,79 @@
+/**
+ *
+ */
+package io.sunhe.sealion.server.mem;
+
+import static org.junit.Assert.*;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import io.sunhe.sealion.server.dashboard.BlockingTimeAccumulator;
+import io.sunhe.sealion.util.Charsets;
+
+import org.junit.Test;
+
+/**
+ *
+ * @author sunhe
+ * @date 2015年6月23日 上午10:12:40
+ */
+public class MapContainerTest {
+
+	/**
+	 * 64 pages of 64 KBytes.
+	 */
+	private static final long MEM_SIZE = 4 * 1024 * 1024;
+
+	private static final int PAGE_SIZE = 65536;
+
+	private int store(MapContainer mapContainer, String key, int dataSize) {
+		ByteBuf data = Unpooled.wrappedBuffer(new byte[dataSize]);
+		return mapContainer.storeItem(key.getBytes(Charsets.UTF_8), data, 0);
+	}
+
+	/**
+	 * Once all pages are taken, the huge items mustn't be swept by the watermarks,
+	 * their pages are never partially used.
+	 */
+	@Test
+	public void testHugeItemNotSwept() {
+		MapContainer mapContainer = new MapContainer(new BlockingTimeAccumulator(), MEM_SIZE,
+				PooledByteBufAllocator.DEFAULT);
+		assertTrue(store(mapContainer, "huge", PAGE_SIZE * 2) != ItemStore.NULL);
+		// rebalancing won't come round during the test.
+		mapContainer.ensureMemory();
+		for (int i = 0; i < 8192; i++) {
+			assertTrue(store(mapContainer, "key" + i, 1000) != ItemStore.NULL);
+		}
+		for (int i = 0; i < 100; i++) {
+			mapContainer.ensureMemory();
+		}
+		assertTrue(mapContainer.getMap().containsKey("huge".getBytes(Charsets.UTF_8)));
+		assertTrue(mapContainer.getMemPercentage() <= 1);
+	}
+
+	/**
+	 * A full class makes room for a new item by evicting its own items right away.
+	 */
+	@Test
+	public void testEvictOnStore() {
+		MapContainer mapContainer = new MapContainer(new BlockingTimeAccumulator(), MEM_SIZE,
+				PooledByteBufAllocator.DEFAULT);
+		int count = 8192;
+		for (int i = 0; i < count; i++) {
+			assertTrue(store(mapContainer, "key" + i, 1000) != ItemStore.NULL);
+		}
+		assertTrue(mapContainer.getLRUListSize() < count);
+		assertEquals(mapContainer.getLRUListSize(), mapContainer.getMap().size());
+		// the least recently used ones are gone.
+		assertFalse(mapContainer.getMap().containsKey("key0".getBytes(Charsets.UTF_8)));
+		int item = mapContainer.getMap().get(("key" + (count - 1)).getBytes(Charsets.UTF_8));
+		assertTrue(item != ItemStore.NULL);
+		ByteBuf data = mapContainer.copyData(item);
+		assertEquals(1000, data.readableBytes());
+		data.release();
+		// larger than the whole memory space.
+		assertEquals(ItemStore.NULL, store(mapContainer, "oversize", (int) MEM_SIZE));
+	}
+
+}
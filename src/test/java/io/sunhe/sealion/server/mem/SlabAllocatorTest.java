@@ -0,0 +1,181 @@
+/**
+ *
+ */
+package io.sunhe.sealion.server.mem;
+
+import static org.junit.Assert.*;
+import io.netty.buffer.PooledByteBufAllocator;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ *
+ * @author sunhe
+ * @date 2015年6月16日 下午3:10:27
+ */
+public class SlabAllocatorTest {
+
+	/**
+	 * 64 pages of 4 KBytes.
+	 */
+	private static final long MEM_SIZE = 64 * 4096;
+
+	@Test
+	public void testClassOf() {
+		SlabAllocator allocator = new SlabAllocator(MEM_SIZE, PooledByteBufAllocator.DEFAULT);
+		assertEquals(4096, allocator.getPageSize());
+		assertEquals(0, allocator.classOf(1));
+		assertEquals(0, allocator.classOf(SlabAllocator.MIN_CHUNK_SIZE));
+		assertEquals(1, allocator.classOf(SlabAllocator.MIN_CHUNK_SIZE + 1));
+		int hugeClass = allocator.getNumOfClasses() - 1;
+		assertTrue(allocator.isHugeClass(hugeClass));
+		assertEquals(hugeClass - 1, allocator.classOf(4096));
+		assertEquals(hugeClass, allocator.classOf(4097));
+	}
+
+	/**
+	 * Once all pages are taken by a class, the others cann't allocate any more,
+	 * until a wholly free page is moved out of it.
+	 */
+	@Test
+	public void testPagesAndMove() {
+		SlabAllocator allocator = new SlabAllocator(MEM_SIZE, PooledByteBufAllocator.DEFAULT);
+		int small = allocator.classOf(100);
+		int large = allocator.classOf(1000);
+		List<Integer> refs = new ArrayList<Integer>();
+		int ref;
+		while ((ref = allocator.allocate(100)) != SlabAllocator.NULL) {
+			refs.add(ref);
+		}
+		assertEquals(0, allocator.getFreePages());
+		assertEquals(64, allocator.getPages(small));
+		assertEquals(64L * allocator.getChunksPerPage(small), refs.size());
+		assertEquals(1.0, allocator.getFullness(small), 0);
+		assertEquals(SlabAllocator.NULL, allocator.allocate(1000));
+		assertFalse(allocator.movePage(small));
+
+		int perPage = allocator.getChunksPerPage(small);
+		for (int i = 0; i < perPage; i++) {
+			allocator.free(refs.remove(refs.size() - 1));
+		}
+		assertTrue(allocator.movePage(small));
+		assertEquals(1, allocator.getFreePages());
+		ref = allocator.allocate(1000);
+		assertTrue(ref != SlabAllocator.NULL);
+		assertEquals(large, allocator.classOfChunk(ref));
+		assertEquals(1, allocator.getPages(large));
+		assertEquals(1, allocator.getAndClearRecentFailures(large));
+		assertEquals(0, allocator.getAndClearRecentFailures(large));
+		allocator.free(ref);
+		for (int r : refs) {
+			allocator.free(r);
+		}
+		assertEquals(0, allocator.getUsedBytes());
+	}
+
+	/**
+	 * The chunks don't overlap, and what's written into a chunk stays there.
+	 */
+	@Test
+	public void testChunks() {
+		SlabAllocator allocator = new SlabAllocator(MEM_SIZE, PooledByteBufAllocator.DEFAULT);
+		List<Integer> refs = new ArrayList<Integer>();
+		int ref;
+		for (int i = 0; (ref = allocator.allocate(SlabAllocator.CHUNK_OVERHEAD + 4)) != SlabAllocator.NULL; i++) {
+			allocator.getPage(ref).setInt(allocator.getOffset(ref), i);
+			refs.add(ref);
+		}
+		for (int i = 0; i < refs.size(); i++) {
+			ref = refs.get(i);
+			assertEquals(i, allocator.getPage(ref).getInt(allocator.getOffset(ref)));
+		}
+		allocator.free(refs.get(0));
+		try {
+			allocator.free(refs.get(0));
+			fail();
+		}
+		catch (IllegalStateException e) {
+		}
+		// the freed chunk is reused.
+		assertEquals((int) refs.get(0), allocator.allocate(SlabAllocator.CHUNK_OVERHEAD + 4));
+	}
+
+	/**
+	 * A page being drained hands out the chunks still in use, doesn't reuse the
+	 * ones freed, and is moved out of its class once it's wholly free.
+	 */
+	@Test
+	public void testDraining() {
+		SlabAllocator allocator = new SlabAllocator(MEM_SIZE, PooledByteBufAllocator.DEFAULT);
+		int small = allocator.classOf(100);
+		List<Integer> refs = new ArrayList<Integer>();
+		int ref;
+		while ((ref = allocator.allocate(100)) != SlabAllocator.NULL) {
+			refs.add(ref);
+		}
+		// the last page is the emptiest one.
+		int perPage = allocator.getChunksPerPage(small);
+		for (int i = 0; i < perPage / 2; i++) {
+			allocator.free(refs.remove(refs.size() - 1));
+		}
+		assertTrue(allocator.startDraining(small));
+		assertTrue(allocator.isDraining());
+		assertEquals(small, allocator.getDrainingClass());
+		assertFalse(allocator.startDraining(small));
+		// the free chunks of the draining page are withdrawn.
+		assertEquals(SlabAllocator.NULL, allocator.allocate(100));
+		int drained = 0;
+		while ((ref = allocator.nextDrainingChunk()) != SlabAllocator.NULL) {
+			assertTrue(refs.remove(Integer.valueOf(ref)));
+			allocator.free(ref);
+			drained++;
+		}
+		assertEquals(perPage - perPage / 2, drained);
+		assertFalse(allocator.isDraining());
+		assertEquals(1, allocator.getFreePages());
+		assertEquals(63, allocator.getPages(small));
+		assertTrue(allocator.allocate(1000) != SlabAllocator.NULL);
+	}
+
+	/**
+	 * The pages of a huge item are returned as soon as it's freed.
+	 */
+	@Test
+	public void testHugeItem() {
+		SlabAllocator allocator = new SlabAllocator(MEM_SIZE, PooledByteBufAllocator.DEFAULT);
+		int ref = allocator.allocate(4096 * 3 + 1);
+		assertTrue(ref != SlabAllocator.NULL);
+		assertEquals(60, allocator.getFreePages());
+		SlabClassStat stat = allocator.getStat(allocator.getNumOfClasses() - 1, 1);
+		assertEquals(0, stat.getChunkSize());
+		assertEquals(4, stat.getPages());
+		assertEquals(4096 * 3 + 1, stat.getRequestedBytes());
+		allocator.getPage(ref).setByte(allocator.getOffset(ref) + 4096 * 3 - SlabAllocator.CHUNK_OVERHEAD, 1);
+		assertEquals(4.0 / 64, allocator.getFullness(allocator.getNumOfClasses() - 1), 0);
+		allocator.free(ref);
+		assertEquals(64, allocator.getFreePages());
+		assertEquals(0, allocator.getFullness(allocator.getNumOfClasses() - 1), 0);
+		assertFalse(allocator.canHold(4096 * 65));
+	}
+
+	/**
+	 * The allocations larger than the whole memory space are rejected before
+	 * reserving anything, even if counting their pages overflows an int.
+	 */
+	@Test
+	public void testOversize() {
+		SlabAllocator allocator = new SlabAllocator(MEM_SIZE, PooledByteBufAllocator.DEFAULT);
+		int hugeClass = allocator.getNumOfClasses() - 1;
+		assertEquals(SlabAllocator.NULL, allocator.allocate(4096 * 64 + 1));
+		assertEquals(SlabAllocator.NULL, allocator.allocate(Integer.MAX_VALUE));
+		assertEquals(64, allocator.getFreePages());
+		assertEquals(0, allocator.getAndClearRecentFailures(hugeClass));
+		assertFalse(allocator.canHold((long) Integer.MAX_VALUE + 1));
+		assertTrue(allocator.allocate(4096 * 64) != SlabAllocator.NULL);
+		assertEquals(0, allocator.getFreePages());
+	}
+
+}
@@ -0,0 +1,148 @@
+/**
+ *
+ */
+package io.sunhe.sealion.server.mem;
+
+import static org.junit.Assert.*;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.sunhe.sealion.util.Charsets;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ *
+ * @author sunhe
+ * @date 2015年6月17日 下午3:30:12
+ */
+public class TinyLFUPolicyTest {
+
+	private ItemStore items = new ItemStore(new SlabAllocator(16 * 1024 * 1024, PooledByteBufAllocator.DEFAULT));
+
+	private int newItem(String key) {
+		return items.allocate(key.getBytes(Charsets.UTF_8), 0);
+	}
+
+	/**
+	 * Evict exactly one item, as the map container does.
+	 *
+	 * @return The key of the evicted item, null if none.
+	 */
+	private String evictOne(final EvictionPolicy policy) {
+		final List<String> evicted = new ArrayList<String>();
+		policy.evict(Integer.MAX_VALUE, new LRUListItemOperator() {
+
+			public boolean operate(int item) {
+				policy.remove(item);
+				evicted.add(items.getKey(item));
+				items.free(item);
+				return false;
+			}
+
+		});
+		return evicted.isEmpty() ? null : evicted.get(0);
+	}
+
+	@Test
+	public void testFrequencySketch() {
+		FrequencySketch sketch = new FrequencySketch(1024);
+		int hot = ItemIndex.hash("hot".getBytes(Charsets.UTF_8));
+		int cold = ItemIndex.hash("cold".getBytes(Charsets.UTF_8));
+		for (int i = 0; i < 100; i++) {
+			sketch.increment(hot);
+		}
+		sketch.increment(cold);
+		assertEquals(FrequencySketch.MAX_FREQUENCY, sketch.frequency(hot));
+		assertTrue(sketch.frequency(cold) >= 1);
+		assertTrue(sketch.frequency(cold) < sketch.frequency(hot));
+	}
+
+	/**
+	 * The counters are halved once the sample size is reached.
+	 */
+	@Test
+	public void testFrequencySketchAging() {
+		FrequencySketch sketch = new FrequencySketch(16);
+		int hot = ItemIndex.hash("hot".getBytes(Charsets.UTF_8));
+		for (int i = 0; i < 15; i++) {
+			sketch.increment(hot);
+		}
+		for (int i = 0; i < 200; i++) {
+			sketch.increment(ItemIndex.hash(("key" + i).getBytes(Charsets.UTF_8)));
+		}
+		assertTrue(sketch.frequency(hot) < FrequencySketch.MAX_FREQUENCY);
+	}
+
+	/**
+	 * A burst of one-shot items mustn't flush the hot ones out.
+	 */
+	@Test
+	public void testScanResistance() {
+		EvictionPolicy policy = new TinyLFUPolicy(items, new FrequencySketch(65536), true);
+		List<Integer> hotItems = new ArrayList<Integer>();
+		for (int i = 0; i < 100; i++) {
+			int item = newItem("hot" + i);
+			policy.insert(item);
+			hotItems.add(item);
+		}
+		for (int round = 0; round < 10; round++) {
+			for (int item : hotItems) {
+				policy.access(item);
+			}
+		}
+		// the window always holds the newest item, so the burst starts with a one-shot
+		// item there, and all hot items in the main queue.
+		policy.insert(newItem("scan"));
+		// the class is full from now on, every insert is followed by an eviction.
+		for (int i = 0; i < 10000; i++) {
+			policy.insert(newItem("scan" + i));
+			String evicted = evictOne(policy);
+			assertNotNull(evicted);
+			assertTrue(evicted.startsWith("scan"));
+		}
+		assertEquals(101, policy.size());
+	}
+
+	/**
+	 * The window holds 1% of all items, both before and after the class gets full.
+	 */
+	@Test
+	public void testWindowSize() {
+		TinyLFUPolicy policy = new TinyLFUPolicy(items, new FrequencySketch(65536), false);
+		for (int i = 0; i < 10000; i++) {
+			policy.insert(newItem("key" + i));
+			assertEquals(Math.max(1, policy.size() / 100), policy.getWindowSize());
+		}
+		// the class is full from now on.
+		for (int i = 0; i < 10000; i++) {
+			policy.insert(newItem("full" + i));
+			assertNotNull(evictOne(policy));
+			assertEquals(10000, policy.size());
+			assertEquals(100, policy.getWindowSize());
+		}
+	}
+
+	/**
+	 * Plain LRU evicts the hot items under the same burst.
+	 */
+	@Test
+	public void testLRUIsFlushed() {
+		EvictionPolicy policy = new LRUPolicy(items, true);
+		for (int i = 0; i < 100; i++) {
+			int item = newItem("hot" + i);
+			policy.insert(item);
+			policy.access(item);
+		}
+		int hotEvicted = 0;
+		for (int i = 0; i < 1000; i++) {
+			policy.insert(newItem("scan" + i));
+			if (evictOne(policy).startsWith("hot")) {
+				hotEvicted++;
+			}
+		}
+		assertEquals(100, hotEvicted);
+	}
+
+}